@@ -30,6 +30,7 @@ import java.rmi.*;
 import java.util.StringTokenizer;
 
 import visad.browser.Convert;
+import visad.util.Parallel;
 import visad.util.Util;
 
 /**
@@ -496,50 +497,20 @@ public class BaseColorControl
     synchronized (lock) {
       if (table != null) {
         colors = new float[components][valLen];
-        float scale = (float) tableLength;
-        try {
-          for (int i=0; i<valLen; i++) {
-            if (values[i] != values[i]) {
-              colors[RED][i] = Float.NaN;
-              colors[GREEN][i] = Float.NaN;
-              colors[BLUE][i] = Float.NaN;
-              if (components > ALPHA) {
-                colors[ALPHA][i] = Float.NaN;
-              }
+        final float[][] t = table;
+        final int tLen = tableLength;
+        final float[][] c = colors;
+        final float[] v = values;
+        final float scale = (float) tableLength;
+        Parallel.forRange(valLen, new Parallel.Chunk() {
+          public void run(int start, int end) {
+            try {
+              lookupChunk(t, tLen, tblEnd, scale, v, c, start, end);
             }
-            else {
-              int j = (int) (scale * values[i]);
-              // note actual table length is tableLength + 1
-              // extend first and last table entries to 'infinity'
-              if (j < 0) {
-                colors[RED][i] = table[RED][0];
-                colors[GREEN][i] = table[GREEN][0];
-                colors[BLUE][i] = table[BLUE][0];
-                if (components > ALPHA) {
-                  colors[ALPHA][i] = table[ALPHA][0];
-                }
-              }
-              else if (tableLength <= j) {
-                colors[RED][i] = table[RED][tblEnd];
-                colors[GREEN][i] = table[GREEN][tblEnd];
-                colors[BLUE][i] = table[BLUE][tblEnd];
-                if (components > ALPHA) {
-                  colors[ALPHA][i] = table[ALPHA][tblEnd];
-                }
-              }
-              else {
-                colors[RED][i] = table[RED][j];
-                colors[GREEN][i] = table[GREEN][j];
-                colors[BLUE][i] = table[BLUE][j];
-                if (components > ALPHA) {
-                  colors[ALPHA][i] = table[ALPHA][j];
-                }
-              }
+            catch (ArrayIndexOutOfBoundsException e) {
             }
-          } // end for (int i=0; i<valLen; i++)
-        }
-        catch (ArrayIndexOutOfBoundsException e) {
-        }
+          }
+        });
       }
       else if (function != null) {
         List1DSet set = new List1DSet(values, functionDomainType,
@@ -553,6 +524,134 @@ public class BaseColorControl
     return colors;
   }
 
+  private void lookupChunk(float[][] table, int tableLength, int tblEnd,
+                           float scale, float[] values, float[][] colors,
+                           int start, int end)
+  {
+    for (int i=start; i<end; i++) {
+      if (values[i] != values[i]) {
+        colors[RED][i] = Float.NaN;
+        colors[GREEN][i] = Float.NaN;
+        colors[BLUE][i] = Float.NaN;
+        if (components > ALPHA) {
+          colors[ALPHA][i] = Float.NaN;
+        }
+      }
+      else {
+        int j = (int) (scale * values[i]);
+        // note actual table length is tableLength + 1
+        // extend first and last table entries to 'infinity'
+        if (j < 0) {
+          colors[RED][i] = table[RED][0];
+          colors[GREEN][i] = table[GREEN][0];
+          colors[BLUE][i] = table[BLUE][0];
+          if (components > ALPHA) {
+            colors[ALPHA][i] = table[ALPHA][0];
+          }
+        }
+        else if (tableLength <= j) {
+          colors[RED][i] = table[RED][tblEnd];
+          colors[GREEN][i] = table[GREEN][tblEnd];
+          colors[BLUE][i] = table[BLUE][tblEnd];
+          if (components > ALPHA) {
+            colors[ALPHA][i] = table[ALPHA][tblEnd];
+          }
+        }
+        else {
+          colors[RED][i] = table[RED][j];
+          colors[GREEN][i] = table[GREEN][j];
+          colors[BLUE][i] = table[BLUE][j];
+          if (components > ALPHA) {
+            colors[ALPHA][i] = table[ALPHA][j];
+          }
+        }
+      }
+    } // end for (int i=start; i<end; i++)
+  }
+
+  /**
+   * Convert a color table to bytes the way ShadowType.assembleColor
+   * converts colors: each component is scaled by 255, truncated and
+   * clamped to 0 through 255.  NaN components become 0.
+   */
+  static byte[][] tableToBytes(float[][] t)
+  {
+    byte[][] b = new byte[t.length][];
+    for (int i=0; i<t.length; i++) {
+      int len = t[i].length;
+      b[i] = new byte[len];
+      for (int j=0; j<len; j++) {
+        int k = (int) (t[i][j] * 255.0);
+        k = (k < 0) ? 0 : (k > 255) ? 255 : k;
+        b[i][j] = (byte) k;
+      }
+    }
+    return b;
+  }
+
+  /**
+   * Get the colors as bytes.  Element <code>[i][j]</code> is the
+   * <code>i</code>-th color component of table entry <code>j</code>,
+   * scaled to the range 0 through 255.  If the colors are defined
+   * using a <CODE>Function</CODE> it is sampled at the table length.
+   *
+   * @return The color table as bytes.
+   *
+   * @exception RemoteException If there was an RMI-related problem.
+   * @exception VisADException If the function encountered a problem.
+   */
+  public byte[][] getByteTable()
+    throws RemoteException, VisADException
+  {
+    float[][] t = getTable();
+    if (t == null) {
+      t = lookupRange(0, tableLength - 1);
+    }
+    return (t == null) ? null : tableToBytes(t);
+  }
+
+  /**
+   * Return packed colors for table indices, such as the bytes
+   * returned by <CODE>ScalarMap.scaleValues(byte[], int)</CODE> with a
+   * factor of the table length.  Indices are unsigned and are clamped to
+   * the last table entry.  Large arrays are looked up in parallel.
+   *
+   * @param indices Table indices.
+   *
+   * @return Colors packed as in <CODE>BufferedImage.TYPE_INT_ARGB</CODE>;
+   *         alpha is 255 if this control has no alpha component.
+   *
+   * @exception RemoteException If there was an RMI-related problem.
+   * @exception VisADException If the function encountered a problem.
+   */
+  public int[] lookupPackedValues(byte[] indices)
+    throws RemoteException, VisADException
+  {
+    if (indices == null) {
+      return null;
+    }
+    byte[][] b = getByteTable();
+    // pack every possible index once
+    final int[] packed = new int[256];
+    int tblEnd = b[RED].length - 1;
+    for (int j=0; j<256; j++) {
+      int k = (j > tblEnd) ? tblEnd : j;
+      int a = (components > ALPHA) ? (b[ALPHA][k] & 0xff) : 0xff;
+      packed[j] = (a << 24) | ((b[RED][k] & 0xff) << 16) |
+                  ((b[GREEN][k] & 0xff) << 8) | (b[BLUE][k] & 0xff);
+    }
+    final byte[] in = indices;
+    final int[] colors = new int[indices.length];
+    Parallel.forRange(indices.length, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end; i++) {
+          colors[i] = packed[in[i] & 0xff];
+        }
+      }
+    });
+    return colors;
+  }
+
   /**
    * Return a list of colors for the specified range.
    */
@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import visad.util.Parallel;
 import visad.util.Trace;
 import visad.util.HersheyFont;
 import java.awt.Font;
@@ -239,13 +240,9 @@ public class Contour2D {
 			Gridded3DSet spatial_set) throws VisADException {
 
 		dash = fill ? false : dash;
-		int ir, ic;
 		int nrm, ncm;
-		int numc, il;
-		int lr, lc, lc2, lrr, lr2, lcc;
-		float xd, yd, xx, yy;
+		float xd, yd;
 		float xdd, ydd;
-		float gg;
 
 		// these are just estimates
 		// int est = 2 * Length; WLH 14 April 2000
@@ -258,10 +255,6 @@ public class Contour2D {
 		// setup colors arrays
 		int interval_length = (interval_colors.length > 0) ? interval_colors[0].length : 0;
 
-		// setup display coordinate arrays
-		float[] vx = new float[maxsize];
-		float[] vy = new float[maxsize];
-
 		int numv;
 
 		// JDM:Find the max and min values of the data
@@ -348,17 +341,7 @@ public class Contour2D {
 			interval_colors = tmpColors;
 		}
 
-		int low;
-		int hi;
-
-		int t;
-
-		byte[][] auxLevels = null;
 		int naux = (auxValues != null) ? auxValues.length : 0;
-		byte[] auxa = null;
-		byte[] auxb = null;
-		byte[] auxc = null;
-		byte[] auxd = null;
 		if (naux > 0) {
 			for (int i = 0; i < naux; i++) {
 				if (auxValues[i].length != g.length) {
@@ -366,11 +349,6 @@ public class Contour2D {
 							+ "auxValues lengths don't match");
 				}
 			}
-			auxa = new byte[naux];
-			auxb = new byte[naux];
-			auxc = new byte[naux];
-			auxd = new byte[naux];
-			auxLevels = new byte[naux][maxsize];
 		}
 
 		if (values == null)
@@ -384,8 +362,6 @@ public class Contour2D {
 		boolean[] dashFlags = new boolean[myvals.length];
 
 		int numLevels = myvals.length;
-		float minLevelValue = myvals[0];
-		float maxLevelValue = myvals[numLevels - 1];
 
 		/*
 		 * DRM: 1999-05-19 - Not needed since dash is a boolean // check for bad
@@ -407,52 +383,6 @@ public class Contour2D {
 		xd = xdd - 0.00002f;
 		yd = ydd - 0.00002f;
 
-		/*
-		 * set up mark array mark= 0 if avail for label center, 2 if in label,
-		 * and 1 if not available and not in label
-		 * 
-		 * lr and lc give label size in grid boxes lrr and lcc give unavailable
-		 * radius
-		 */
-		if (swap[0]) {
-			lr = 1 + (nr - 2) / 10;
-			lc = 1 + (nc - 2) / 50;
-		} else {
-			lr = 1 + (nr - 2) / 50;
-			lc = 1 + (nc - 2) / 10;
-		}
-		lc2 = lc / 2;
-		lr2 = lr / 2;
-		lrr = 1 + (nr - 2) / 8;
-		lcc = 1 + (nc - 2) / 8;
-
-		// allocate mark array
-		char[] mark = new char[nr * nc];
-
-		// set top and bottom rows to 1
-		float max_g = -Float.MAX_VALUE;
-		float min_g = Float.MAX_VALUE;
-		for (ic = 0; ic < nc; ic++) {
-			for (ir = 0; ir < lr; ir++) {
-				mark[(ic) * nr + (ir)] = 1;
-				mark[(ic) * nr + (nr - ir - 2)] = 1;
-				float val = g[(ic) * nr + (ir)];
-				if (val > max_g)
-					max_g = val;
-				if (val < min_g)
-					min_g = val;
-			}
-		}
-
-		// set left and right columns to 1
-		for (ir = 0; ir < nr; ir++) {
-			for (ic = 0; ic < lc; ic++) {
-				mark[(ic) * nr + (ir)] = 1;
-				mark[(nc - ic - 2) * nr + (ir)] = 1;
-			}
-		}
-		numv = 0;
-
 		// - color fill arrays
 		byte[][] color_bin = null;
 		byte[][][] o_flags = null;
@@ -472,8 +402,175 @@ public class Contour2D {
 		visad.util.Trace.call1("Contour2d.loop", " nrm=" + nrm + " ncm=" + ncm
 				+ " naux=" + naux + " myvals.length=" + myvals.length);
 
-		// compute contours
-		for (ic = 0; ic < ncm; ic++) {
+		// contour blocks of grid columns in parallel, then join their
+		// vertices in column order, as one pass over the grid makes them
+		final ContourTile[] tiles = new ContourTile[ncm > 0 ? ncm : 1];
+		if (nrm > 0 && ncm > 0) {
+			final float[] f_g = g;
+			final int f_nr = nr;
+			final int f_nrm = nrm;
+			final int f_ncm = ncm;
+			final int f_maxsize = maxsize;
+			final int f_naux = naux;
+			final float[] f_myvals = myvals;
+			final float f_lowlimit = lowlimit;
+			final float f_highlimit = highlimit;
+			final float f_base = base;
+			final boolean f_dash = dash;
+			final boolean[] f_dashFlags = dashFlags;
+			final byte[][] f_auxValues = auxValues;
+			final boolean f_fill = fill;
+			final byte[][][] f_o_flags = o_flags;
+			final short[][] f_n_lines = n_lines;
+			final short[][] f_ctrLow = ctrLow;
+			final float f_xd = xd;
+			final float f_yd = yd;
+			final float f_xdd = xdd;
+			final float f_ydd = ydd;
+			Parallel.forRange(ncm * nrm, nrm, new Parallel.Chunk() {
+				public void run(int start, int end) {
+					int ic0 = start / f_nrm;
+					int ic1 = (end + f_nrm - 1) / f_nrm;
+					int size = (int) Math.min(f_maxsize,
+							8 + ((long) f_maxsize * (ic1 - ic0)) / f_ncm);
+					ContourTile tile = new ContourTile(size, f_naux);
+					contourTile(tile, ic0, ic1, f_g, f_nr, f_nrm, f_myvals,
+							f_lowlimit, f_highlimit, f_base, f_dash,
+							f_dashFlags, f_auxValues, f_fill, f_o_flags,
+							f_n_lines, f_ctrLow, f_xd, f_yd, f_xdd, f_ydd);
+					tiles[ic0] = tile;
+				}
+			});
+		}
+
+		numv = 0;
+		int numSegments = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null) {
+				numv += tiles[i].numv;
+				numSegments += tiles[i].numSegments;
+			}
+		}
+		final float[] vx = new float[numv];
+		final float[] vy = new float[numv];
+		byte[][] auxLevels = (naux > 0) ? new byte[naux][numv] : null;
+
+		// sort segments by level, keeping grid order within each level
+		final int[] levelStart = new int[numLevels + 1];
+		for (int i = 0; i < tiles.length; i++) {
+			if (tiles[i] != null) {
+				for (int k = 0; k < tiles[i].numSegments; k++) {
+					levelStart[tiles[i].levels[k] + 1]++;
+				}
+			}
+		}
+		for (int l = 0; l < numLevels; l++) {
+			levelStart[l + 1] += levelStart[l];
+		}
+		int[] next = new int[numLevels];
+		System.arraycopy(levelStart, 0, next, 0, numLevels);
+		final int[] segments = new int[numSegments];
+		int offset = 0;
+		for (int i = 0; i < tiles.length; i++) {
+			ContourTile tile = tiles[i];
+			if (tile == null)
+				continue;
+			System.arraycopy(tile.vx, 0, vx, offset, tile.numv);
+			System.arraycopy(tile.vy, 0, vy, offset, tile.numv);
+			for (int a = 0; a < naux; a++) {
+				System.arraycopy(tile.auxLevels[a], 0, auxLevels[a], offset,
+						tile.numv);
+			}
+			for (int k = 0; k < tile.numSegments; k++) {
+				segments[next[tile.levels[k]]++] = offset + tile.segments[k];
+			}
+			offset += tile.numv;
+			tiles[i] = null;
+		}
+
+		// stitch the segments into strips; levels are independent
+		final ContourStripSet f_ctrSet = ctrSet;
+		Parallel.forRange(numLevels, 1, numSegments, new Parallel.Chunk() {
+			public void run(int start, int end) {
+				for (int l = start; l < end; l++) {
+					for (int k = levelStart[l]; k < levelStart[l + 1]; k++) {
+						f_ctrSet.add(vx, vy, segments[k], segments[k] + 1, l);
+					}
+				}
+			}
+		});
+
+		// System.err.println ("ii:" + ii1 + " " +ii2 + " " +ii3 + " " +ii4 +
+		// " "
+		// +ii5 + " " +ii6);
+		visad.util.Trace.call2("Contour2d.loop");
+
+		/** ------------------- Color Fill ------------------------- */
+		TriangleStripBuilder triStripBldr = null;
+
+		if (fill) {
+			triStripBldr = new TriangleStripBuilder(ncm, nrm, color_bin.length);
+			fillGridBox(g, n_lines, vx, vy, xd, xdd, yd, ydd, nr, nrm, nc, ncm,
+					ctrLow, o_flags, myvals, color_bin, grd_normals,
+					triStripBldr);
+			// BMF 2006-10-04 do not return, ie. draw labels on filled contours
+			// for now, just return because we don't need to do labels
+			// return;
+		}
+
+		// ---TDR, build Contour Strips
+
+		Trace.call1("Contour2d.getLineColorArrays");
+		ctrSet.getLineColorArrays(vx, vy, auxLevels, labelColor, labelFont,
+				labelAlign, sphericalDisplayCS, dashFlags);
+		Trace.call2("Contour2d.getLineColorArrays");
+
+		return new ContourOutput(ctrSet, triStripBldr);
+	}
+
+	/**
+	 * Contour the grid boxes in columns [ic0, ic1) into a tile.  Vertices
+	 * are added to the tile in grid order, and each line segment is
+	 * recorded with its level for stitching into strips later.
+	 */
+	private static void contourTile(ContourTile tile, int ic0, int ic1,
+			float[] g, int nr, int nrm, float[] myvals, float lowlimit,
+			float highlimit, float base, boolean dash, boolean[] dashFlags,
+			byte[][] auxValues, boolean fill, byte[][][] o_flags,
+			short[][] n_lines, short[][] ctrLow, float xd, float yd,
+			float xdd, float ydd) {
+		int ir, ic;
+		int numc, il;
+		float xx, yy;
+		float gg;
+		int low;
+		int hi;
+		int t;
+
+		float[] vx = tile.vx;
+		float[] vy = tile.vy;
+		byte[][] auxLevels = tile.auxLevels;
+		int maxsize = vx.length;
+		int numv = 0;
+
+		int naux = (auxValues != null) ? auxValues.length : 0;
+		byte[] auxa = null;
+		byte[] auxb = null;
+		byte[] auxc = null;
+		byte[] auxd = null;
+		if (naux > 0) {
+			auxa = new byte[naux];
+			auxb = new byte[naux];
+			auxc = new byte[naux];
+			auxd = new byte[naux];
+		}
+
+		int numLevels = myvals.length;
+		float minLevelValue = myvals[0];
+		float maxLevelValue = myvals[numLevels - 1];
+
+
+		for (ic = ic0; ic < ic1; ic++) {
 			int ic_plus1 = ic + 1;
 			yy = ydd * ic + 0.0f; // = ic
 			for (ir = 0; ir < nrm; ir++) {
@@ -708,46 +805,6 @@ public class Contour2D {
 							ctrLow[ir][ic] = (short) (low + il);
 					}
 
-					// DO LABEL HERE
-					if ((mark[(ic) * nr + (ir)]) == 0) {
-						int kc, kr, mc, mr, jc, jr;
-
-						// Insert a label
-
-						// BOX TO AVOID
-						kc = ic - lc2 - lcc;
-						kr = ir - lr2 - lrr;
-						mc = kc + 2 * lcc + lc - 1;
-						mr = kr + 2 * lrr + lr - 1;
-						// OK here
-						for (jc = kc; jc <= mc; jc++) {
-							if (jc >= 0 && jc < nc) {
-								for (jr = kr; jr <= mr; jr++) {
-									if (jr >= 0 && jr < nr) {
-										if ((mark[(jc) * nr + (jr)]) != 2) {
-											mark[(jc) * nr + (jr)] = 1;
-										}
-									}
-								}
-							}
-						}
-
-						// BOX TO HOLD LABEL
-						kc = ic - lc2;
-						kr = ir - lr2;
-						mc = kc + lc - 1;
-						mr = kr + lr - 1;
-						for (jc = kc; jc <= mc; jc++) {
-							if (jc >= 0 && jc < nc) {
-								for (jr = kr; jr <= mr; jr++) {
-									if (jr >= 0 && jr < nr) {
-										mark[(jc) * nr + (jr)] = 2;
-									}
-								}
-							}
-						}
-					}
-
 					float gba, gca, gdb, gdc;
 					switch (ii) {
 					case 1:
@@ -1239,42 +1296,20 @@ public class Contour2D {
 					 */
 
 					if (ii == 6) { // - add last two pairs
-                                                ctrSet.add(vx, vy, numv - 4, numv - 3, low + il);
-                                                ctrSet.add(vx, vy, numv - 2, numv - 1, low + il);
+                                                tile.add(numv - 4, low + il);
+                                                tile.add(numv - 2, low + il);
 					} else {
-                                                ctrSet.add(vx, vy, numv - 2, numv - 1, low + il);
+                                                tile.add(numv - 2, low + il);
 					}
 
 				} // for il -- NOTE: gg incremented in for statement
 			} // for ic
 		} // for ir
 
-		// System.err.println ("ii:" + ii1 + " " +ii2 + " " +ii3 + " " +ii4 +
-		// " "
-		// +ii5 + " " +ii6);
-		visad.util.Trace.call2("Contour2d.loop");
-
-		/** ------------------- Color Fill ------------------------- */
-		TriangleStripBuilder triStripBldr = null;
-
-		if (fill) {
-			triStripBldr = new TriangleStripBuilder(ncm, nrm, color_bin.length);
-			fillGridBox(g, n_lines, vx, vy, xd, xdd, yd, ydd, nr, nrm, nc, ncm,
-					ctrLow, o_flags, myvals, color_bin, grd_normals,
-					triStripBldr);
-			// BMF 2006-10-04 do not return, ie. draw labels on filled contours
-			// for now, just return because we don't need to do labels
-			// return;
-		}
-
-		// ---TDR, build Contour Strips
-
-		Trace.call1("Contour2d.getLineColorArrays");
-		ctrSet.getLineColorArrays(vx, vy, auxLevels, labelColor, labelFont,
-				labelAlign, sphericalDisplayCS, dashFlags);
-		Trace.call2("Contour2d.getLineColorArrays");
-
-		return new ContourOutput(ctrSet, triStripBldr);
+		tile.vx = vx;
+		tile.vy = vy;
+		tile.auxLevels = auxLevels;
+		tile.numv = numv;
 	}
 
 	/**
@@ -3546,6 +3581,47 @@ public class Contour2D {
 		return new int[] { firstOrient, lastOrient };
 	}
 
+	/**
+	 * Contour vertices and line segments of a block of grid columns.
+	 */
+	private static final class ContourTile {
+
+		float[] vx;
+		float[] vy;
+		byte[][] auxLevels;
+		int numv;
+
+		/** index of the first vertex of each segment */
+		int[] segments = new int[64];
+
+		/** level index of each segment */
+		int[] levels = new int[64];
+
+		int numSegments;
+
+		ContourTile(int size, int naux) {
+			vx = new float[size];
+			vy = new float[size];
+			if (naux > 0) {
+				auxLevels = new byte[naux][size];
+			}
+		}
+
+		void add(int idx0, int lev_idx) {
+			if (numSegments == segments.length) {
+				int[] ts = new int[2 * numSegments];
+				int[] tl = new int[2 * numSegments];
+				System.arraycopy(segments, 0, ts, 0, numSegments);
+				System.arraycopy(levels, 0, tl, 0, numSegments);
+				segments = ts;
+				levels = tl;
+			}
+			segments[numSegments] = idx0;
+			levels[numSegments] = lev_idx;
+			numSegments++;
+		}
+	}
+
 	static final class ContourOutput {
 
 		public final ContourStripSet stripSet;
@@ -4269,14 +4345,9 @@ class ContourStripSet {
 	/** Contour strips by level. */
 	List<ContourStrip>[] vecArray;
 
-	/**           */
-	List<ContourStrip> vec;
-
         /** Closed strips by level. */
 	List<ContourStrip>[] closedStripArray;
 
-        List<ContourStrip> closedStripList;
-
 	/**           */
 	boolean[] swap;
 
@@ -4412,8 +4483,8 @@ class ContourStripSet {
                     return;
                 }
 
-		vec = vecArray[lev_idx];
-                closedStripList = closedStripArray[lev_idx];
+		List<ContourStrip> vec = vecArray[lev_idx];
+		List<ContourStrip> closedStripList = closedStripArray[lev_idx];
 		int n_strip = vec.size();
 
 		if (n_strip == 0) {
@@ -0,0 +1,515 @@
+//
+// ContourCache.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import visad.util.Parallel;
+
+/**
+   ContourCache holds the contour geometry that Gridded3DSet.makeIsoLines
+   makes, so transforms that contour the same grid values with the same
+   levels and label settings again (e.g. after a pan, zoom or a change
+   to an unrelated ScalarMap, or in another display of the same data)
+   reuse the lines, fill triangles and labels instead of recomputing
+   them.<P>
+
+   Entries are keyed by the contents of the grid values, the spatial
+   samples and colors, and by the contour parameters, so they match
+   even though each transform makes new arrays.  They are kept in a
+   least recently used cache limited to a number of bytes, taken from
+   the system property <code>visad.contour.cacheSize</code> (default
+   1/32 of the maximum heap size; 0 disables the cache).  Cached
+   entries are softly referenced, so the garbage collector may reclaim
+   them.<P>
+*/
+public class ContourCache {
+
+  private static long maxBytes =
+    Long.getLong("visad.contour.cacheSize",
+                 Runtime.getRuntime().maxMemory() / 32).longValue();
+
+  private static long cacheBytes = 0;
+
+  private static long hits = 0;
+
+  private static long misses = 0;
+
+  private static final LinkedHashMap<Key, EntryReference> cache =
+    new LinkedHashMap<Key, EntryReference>(16, 0.75f, true);
+
+  /** number of values hashed as one block */
+  private static final int HASH_BLOCK = 1 << 16;
+
+  private ContourCache() {
+  }
+
+  /**
+   * Set the maximum number of bytes of cached contours.
+   *
+   * @param bytes  cache size; 0 disables the cache
+   */
+  public static void setCacheSize(long bytes) {
+    synchronized (cache) {
+      maxBytes = Math.max(0, bytes);
+      trim(0);
+    }
+  }
+
+  /**
+   * @return the maximum number of bytes of cached contours
+   */
+  public static long getCacheSize() {
+    synchronized (cache) {
+      return maxBytes;
+    }
+  }
+
+  /**
+   * @return true if contours are cached
+   */
+  public static boolean isEnabled() {
+    synchronized (cache) {
+      return maxBytes > 0;
+    }
+  }
+
+  /** remove all cached contours */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+      cacheBytes = 0;
+    }
+  }
+
+  /**
+   * @return the number of lookups that found cached contours
+   */
+  public static long getHitCount() {
+    synchronized (cache) {
+      return hits;
+    }
+  }
+
+  /**
+   * @return the number of lookups that did not find cached contours
+   */
+  public static long getMissCount() {
+    synchronized (cache) {
+      return misses;
+    }
+  }
+
+  /** set the hit and miss counts to zero */
+  public static void resetCounts() {
+    synchronized (cache) {
+      hits = 0;
+      misses = 0;
+    }
+  }
+
+  /**
+   * Return a copy of the contours cached for key.
+   *
+   * @param key  cache key, or null
+   * @return the contours, or null if none are cached
+   */
+  static VisADGeometryArray[][] get(Key key) {
+    if (key == null) return null;
+    Entry entry = null;
+    synchronized (cache) {
+      EntryReference ref = cache.get(key);
+      if (ref != null) {
+        entry = ref.get();
+        if (entry == null) {
+          cache.remove(key);
+          cacheBytes -= ref.size;
+        }
+      }
+    }
+    // compare contents outside the lock; hashes rarely collide
+    boolean hit = entry != null && entry.sameValues(key);
+    synchronized (cache) {
+      if (hit) hits++;
+      else misses++;
+    }
+    return hit ? copy(entry.arrays) : null;
+  }
+
+  /**
+   * Cache contours under key, evicting the least recently used entries
+   * to stay within the cache size.  Contours larger than the cache are
+   * not cached.  The caller may change arrays after this returns, but
+   * must not use key again.
+   *
+   * @param key     cache key, or null to not cache arrays
+   * @param arrays  contours made for key
+   */
+  static void put(Key key, VisADGeometryArray[][] arrays) {
+    if (key == null || arrays == null) return;
+    long size = key.getSize() + getSize(arrays);
+    synchronized (cache) {
+      if (size > maxBytes) return;
+    }
+    // the map holds the key strongly, so only the softly referenced
+    // entry may hold the grid arrays
+    Entry entry = new Entry(key, copy(arrays));
+    key.values = null;
+    key.samples = null;
+    key.colors = null;
+    synchronized (cache) {
+      EntryReference old = cache.remove(key);
+      if (old != null) cacheBytes -= old.size;
+      trim(size);
+      cache.put(key, new EntryReference(entry, size));
+      cacheBytes += size;
+    }
+  }
+
+  /** drop reclaimed entries, then least recently used entries until
+      size more bytes fit; caller must hold the cache lock */
+  private static void trim(long size) {
+    Iterator<Map.Entry<Key, EntryReference>> it =
+      cache.entrySet().iterator();
+    while (it.hasNext()) {
+      EntryReference ref = it.next().getValue();
+      if (ref.get() == null) {
+        cacheBytes -= ref.size;
+        it.remove();
+      }
+    }
+    it = cache.entrySet().iterator();
+    while (cacheBytes + size > maxBytes && it.hasNext()) {
+      cacheBytes -= it.next().getValue().size;
+      it.remove();
+    }
+  }
+
+  /** deep copy of makeIsoLines results, which callers modify */
+  private static VisADGeometryArray[][] copy(VisADGeometryArray[][] arrays) {
+    // keep the array types, which callers may cast to
+    VisADGeometryArray[][] result = (VisADGeometryArray[][])
+      Array.newInstance(arrays.getClass().getComponentType(), arrays.length);
+    for (int i=0; i<arrays.length; i++) {
+      if (arrays[i] == null) continue;
+      result[i] = (VisADGeometryArray[])
+        Array.newInstance(arrays[i].getClass().getComponentType(),
+                          arrays[i].length);
+      for (int j=0; j<arrays[i].length; j++) {
+        result[i][j] = copy(arrays[i][j]);
+      }
+    }
+    return result;
+  }
+
+  private static VisADGeometryArray copy(VisADGeometryArray array) {
+    if (array == null) return null;
+    if (!(array instanceof ContourLabelGeometry)) {
+      return (VisADGeometryArray) array.clone();
+    }
+    // ContourLabelGeometry.clone() does not copy
+    ContourLabelGeometry label = (ContourLabelGeometry) array;
+    ContourLabelGeometry result = new ContourLabelGeometry(
+      copy(label.label), (VisADLineArray) copy(label.labelAnchor),
+      (VisADLineArray) copy(label.expSegLeft),
+      (VisADLineArray) copy(label.segLeftAnchor),
+      copy(label.segLeftScaleInfo),
+      (VisADLineArray) copy(label.expSegRight),
+      (VisADLineArray) copy(label.segRightAnchor),
+      copy(label.segRightScaleInfo));
+    label.copy(result);
+    result.isStyled = label.isStyled;
+    return result;
+  }
+
+  private static float[] copy(float[] values) {
+    return (values == null) ? null : (float[]) values.clone();
+  }
+
+  private static long getSize(VisADGeometryArray[][] arrays) {
+    long size = 16;
+    for (int i=0; i<arrays.length; i++) {
+      if (arrays[i] == null) continue;
+      for (int j=0; j<arrays[i].length; j++) {
+        size += getSize(arrays[i][j]);
+      }
+    }
+    return size;
+  }
+
+  private static long getSize(VisADGeometryArray array) {
+    if (array == null) return 0;
+    long size = 64;
+    if (array.coordinates != null) size += 4L * array.coordinates.length;
+    if (array.normals != null) size += 4L * array.normals.length;
+    if (array.colors != null) size += array.colors.length;
+    if (array.texCoords != null) size += 4L * array.texCoords.length;
+    if (array instanceof ContourLabelGeometry) {
+      ContourLabelGeometry label = (ContourLabelGeometry) array;
+      size += getSize(label.label) + getSize(label.labelAnchor) +
+              getSize(label.expSegLeft) + getSize(label.segLeftAnchor) +
+              getSize(label.expSegRight) + getSize(label.segRightAnchor);
+    }
+    return size;
+  }
+
+  /**
+   * Hash values in fixed blocks, so the hash does not depend on how
+   * the blocks are split across threads.
+   */
+  private static long hash(final float[] values) throws VisADException {
+    if (values == null) return 0;
+    int nblocks = (values.length + HASH_BLOCK - 1) / HASH_BLOCK;
+    final long[] blocks = new long[nblocks];
+    Parallel.forRange(values.length, HASH_BLOCK, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int b=start; b<end; b+=HASH_BLOCK) {
+          int last = Math.min(end, b + HASH_BLOCK);
+          long h = 17;
+          for (int i=b; i<last; i++) {
+            h = 31 * h + Float.floatToIntBits(values[i]);
+          }
+          blocks[b / HASH_BLOCK] = h;
+        }
+      }
+    });
+    long h = values.length;
+    for (int b=0; b<nblocks; b++) h = 1000003 * h + blocks[b];
+    return h;
+  }
+
+  private static long hash(byte[] values) {
+    if (values == null) return 0;
+    long h = values.length;
+    for (int i=0; i<values.length; i++) h = 31 * h + values[i];
+    return h;
+  }
+
+  private static byte[][] copy(byte[][] values) {
+    if (values == null) return null;
+    byte[][] result = new byte[values.length][];
+    for (int i=0; i<values.length; i++) {
+      result[i] = (values[i] == null) ? null : (byte[]) values[i].clone();
+    }
+    return result;
+  }
+
+  private static boolean equals(float[][] a, float[][] b) {
+    if (a == b) return true;
+    if (a == null || b == null || a.length != b.length) return false;
+    for (int i=0; i<a.length; i++) {
+      if (!Arrays.equals(a[i], b[i])) return false;
+    }
+    return true;
+  }
+
+  private static boolean equals(byte[][] a, byte[][] b) {
+    if (a == b) return true;
+    if (a == null || b == null || a.length != b.length) return false;
+    for (int i=0; i<a.length; i++) {
+      if (!Arrays.equals(a[i], b[i])) return false;
+    }
+    return true;
+  }
+
+  private static class Entry {
+    final float[] values;
+    final float[][] samples;
+    final byte[][] colors;
+    final VisADGeometryArray[][] arrays;
+
+    Entry(Key key, VisADGeometryArray[][] arrays) {
+      values = key.values;
+      samples = key.samples;
+      colors = key.colors;
+      this.arrays = arrays;
+    }
+
+    /** compare the grid arrays of an equal key with this entry's */
+    boolean sameValues(Key key) {
+      return Arrays.equals(values, key.values) &&
+             ContourCache.equals(samples, key.samples) &&
+             ContourCache.equals(colors, key.colors);
+    }
+  }
+
+  private static class EntryReference extends SoftReference<Entry> {
+    final long size;
+
+    EntryReference(Entry entry, long size) {
+      super(entry);
+      this.size = size;
+    }
+  }
+
+  /** identifies the grid and parameters of a contour */
+  static class Key {
+    // grid arrays are compared by hash, and by contents on a hit
+    private float[] values;
+    private float[][] samples;
+    private byte[][] colors;
+    private final long valuesHash;
+    private final long samplesHash;
+    private final long colorsHash;
+
+    // parameters are copied, as callers may reuse their arrays
+    private final int nr;
+    private final int nc;
+    private final float[] intervals;
+    private final float lowlimit;
+    private final float highlimit;
+    private final float base;
+    private final boolean[] swap;
+    private final boolean dash;
+    private final boolean fill;
+    private final double[] scale;
+    private final double labelSize;
+    private final boolean sphericalDisplayCS;
+    private final byte[][] intervalColors;
+    private final boolean labelAlign;
+    private final byte[] labelColor;
+    private final Object labelFont;
+    private final int labelFreq;
+    private final int labelLineSkip;
+    private final int hash;
+
+    /**
+     * @param values          grid values
+     * @param samples         spatial samples of the grid
+     * @param colors          colors at grid points, or null
+     * @param nr              grid rows
+     * @param nc              grid columns
+     * @param intervals       contour levels
+     * @param lowlimit        lowest contour level
+     * @param highlimit       highest contour level
+     * @param base            base contour level
+     * @param swap            axis swap flags
+     * @param dash            dash levels below base
+     * @param fill            color fill between levels
+     * @param scale           display scale
+     * @param labelSize       label size
+     * @param sphericalDisplayCS  true for a spherical display
+     * @param intervalColors  fill colors of the levels
+     * @param labelAlign      align labels with lines
+     * @param labelColor      label color, or null
+     * @param labelFont       label font, or null
+     * @param labelFreq       label frequency
+     * @param labelLineSkip   label every nth line
+     * @throws VisADException  if values cannot be hashed
+     */
+    Key(float[] values, float[][] samples, byte[][] colors, int nr, int nc,
+        float[] intervals, float lowlimit, float highlimit, float base,
+        boolean[] swap, boolean dash, boolean fill, double[] scale,
+        double labelSize, boolean sphericalDisplayCS,
+        byte[][] intervalColors, boolean labelAlign, byte[] labelColor,
+        Object labelFont, int labelFreq, int labelLineSkip)
+        throws VisADException {
+      this.values = values;
+      this.samples = samples;
+      this.colors = colors;
+      valuesHash = hash(values);
+      long h = 0;
+      for (int i=0; i<samples.length; i++) h = 31 * h + hash(samples[i]);
+      samplesHash = h;
+      h = 0;
+      if (colors != null) {
+        for (int i=0; i<colors.length; i++) h = 31 * h + hash(colors[i]);
+      }
+      colorsHash = h;
+
+      this.nr = nr;
+      this.nc = nc;
+      this.intervals = (float[]) intervals.clone();
+      this.lowlimit = lowlimit;
+      this.highlimit = highlimit;
+      this.base = base;
+      this.swap = (boolean[]) swap.clone();
+      this.dash = dash;
+      this.fill = fill;
+      this.scale = (double[]) scale.clone();
+      this.labelSize = labelSize;
+      this.sphericalDisplayCS = sphericalDisplayCS;
+      this.intervalColors = copy(intervalColors);
+      this.labelAlign = labelAlign;
+      this.labelColor = (labelColor == null) ? null : (byte[]) labelColor.clone();
+      this.labelFont = labelFont;
+      this.labelFreq = labelFreq;
+      this.labelLineSkip = labelLineSkip;
+
+      hash = (int) (valuesHash ^ (valuesHash >>> 32) ^ (31 * samplesHash) ^
+                    colorsHash) ^ Arrays.hashCode(this.intervals) ^
+             (nr * 31 + nc);
+    }
+
+    /** bytes of the arrays held by this key */
+    long getSize() {
+      long size = 256 + 4L * values.length;
+      for (int i=0; i<samples.length; i++) size += 4L * samples[i].length;
+      if (colors != null) {
+        for (int i=0; i<colors.length; i++) size += colors[i].length;
+      }
+      return size;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key key = (Key) obj;
+      return hash == key.hash && valuesHash == key.valuesHash &&
+             samplesHash == key.samplesHash && colorsHash == key.colorsHash &&
+             nr == key.nr && nc == key.nc &&
+             Arrays.equals(intervals, key.intervals) &&
+             Float.compare(lowlimit, key.lowlimit) == 0 &&
+             Float.compare(highlimit, key.highlimit) == 0 &&
+             Float.compare(base, key.base) == 0 &&
+             Arrays.equals(swap, key.swap) && dash == key.dash &&
+             fill == key.fill && Arrays.equals(scale, key.scale) &&
+             Double.compare(labelSize, key.labelSize) == 0 &&
+             sphericalDisplayCS == key.sphericalDisplayCS &&
+             ContourCache.equals(intervalColors, key.intervalColors) &&
+             labelAlign == key.labelAlign &&
+             Arrays.equals(labelColor, key.labelColor) &&
+             same(labelFont, key.labelFont) &&
+             labelFreq == key.labelFreq &&
+             labelLineSkip == key.labelLineSkip;
+    }
+
+    private static boolean same(Object a, Object b) {
+      return (a == b) || (a != null && a.equals(b));
+    }
+  }
+
+}
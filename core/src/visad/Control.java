@@ -251,6 +251,24 @@ if (tickFlag) {
    */
   public void animation_string(RealType real, Set set, double value,
               int current) throws VisADException {
+    getDisplayRenderer().setAnimationString(
+      makeAnimationString(real, set, value, current));
+  }
+
+  /**
+   * make the animation string for a step, without setting it in the
+   * DisplayRenderer
+   * @param real - RealType mapped to Display.Animation
+   * @param set - Set from AnimationSetControl
+   * @param value - real value associated with the animation step
+   * @param current - index of the animation step
+   * @return the two lines of the animation string, or nulls if set
+   *         is null
+   * @throws VisADException a VisAD error occurred
+   */
+  protected String[] makeAnimationString(RealType real, Set set,
+                                         double value, int current)
+            throws VisADException {
     if (set != null) {
       Unit[] units = set.getSetUnits();
 
@@ -277,9 +295,9 @@ if (tickFlag) {
         new Real(real, value, units == null ? null : units[0]).toValueString();
       String t = Integer.toString(current+1) + " of " +
                  Integer.toString(set.getLength());
-      getDisplayRenderer().setAnimationString(new String[] {s, t});
+      return new String[] {s, t};
     } else { // null set
-      getDisplayRenderer().setAnimationString(new String[] {null, null});
+      return new String[] {null, null};
     }
   }
 
@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.Parallel;
+
 /**
    CoordinateSystem is the VisAD abstract superclass for coordinate systems for
    vectors in R^n for n>0.  Specific coordinate systems are defined by
@@ -214,6 +216,164 @@ public abstract class CoordinateSystem extends Object
     return Set.doubleToFloat(val);
   }
 
+  /**
+   * Test whether toReference and fromReference may run on separate parts
+   * of an array in several threads at once.  Subclasses whose transforms
+   * keep no state between calls should return true, so that large arrays
+   * passed to {@link #toReferenceInto(double[][], double[][])} and the other
+   * in-place variants, or to the Unit[] variants used by
+   * transformCoordinates, are split across threads.  The default is
+   * false.
+   * @return true if the transforms may run concurrently
+   */
+  protected boolean canTransformInParallel() {
+    return false;
+  }
+
+  /**
+   *  Convert values to Reference coordinates, storing them in a caller
+   *  supplied array.  If {@link #canTransformInParallel()} is true, large
+   *  arrays are transformed in parallel chunks.
+   *  @param  value  array of values assumed to be in coordinateSystem
+   *                 units; it may be modified.
+   *  @param  result array for the values in reference coordinates, with
+   *                 the same dimensions as value; may be value itself, to
+   *                 transform in place, or null to allocate one.
+   *  @return result, or the allocated array
+   *  @throws VisADException  if problem with conversion.
+   */
+  public double[][] toReferenceInto(double[][] value, double[][] result)
+         throws VisADException {
+    return transform(value, result, true);
+  }
+
+  /**
+   *  Convert values from Reference coordinates, storing them in a caller
+   *  supplied array.  If {@link #canTransformInParallel()} is true, large
+   *  arrays are transformed in parallel chunks.
+   *  @param  value  array of values assumed to be in reference Units;
+   *                 it may be modified.
+   *  @param  result array for the values in CoordinateSystem Units, with
+   *                 the same dimensions as value; may be value itself, to
+   *                 transform in place, or null to allocate one.
+   *  @return result, or the allocated array
+   *  @throws VisADException  if problem with conversion.
+   */
+  public double[][] fromReferenceInto(double[][] value, double[][] result)
+         throws VisADException {
+    return transform(value, result, false);
+  }
+
+  /**
+   *  Convert values to Reference coordinates, storing them in a caller
+   *  supplied array.  If {@link #canTransformInParallel()} is true, large
+   *  arrays are transformed in parallel chunks.
+   *  @param  value  array of values assumed to be in coordinateSystem
+   *                 units; it may be modified.
+   *  @param  result array for the values in reference coordinates, with
+   *                 the same dimensions as value; may be value itself, to
+   *                 transform in place, or null to allocate one.
+   *  @return result, or the allocated array
+   *  @throws VisADException  if problem with conversion.
+   */
+  public float[][] toReferenceInto(float[][] value, float[][] result)
+         throws VisADException {
+    return transform(value, result, true);
+  }
+
+  /**
+   *  Convert values from Reference coordinates, storing them in a caller
+   *  supplied array.  If {@link #canTransformInParallel()} is true, large
+   *  arrays are transformed in parallel chunks.
+   *  @param  value  array of values assumed to be in reference Units;
+   *                 it may be modified.
+   *  @param  result array for the values in CoordinateSystem Units, with
+   *                 the same dimensions as value; may be value itself, to
+   *                 transform in place, or null to allocate one.
+   *  @return result, or the allocated array
+   *  @throws VisADException  if problem with conversion.
+   */
+  public float[][] fromReferenceInto(float[][] value, float[][] result)
+         throws VisADException {
+    return transform(value, result, false);
+  }
+
+  private double[][] transform(final double[][] value, double[][] result,
+                               final boolean toRef) throws VisADException {
+    final int n = value.length;
+    final int len = (n == 0 || value[0] == null) ? 0 : value[0].length;
+    boolean parallel = canTransformInParallel() && Parallel.isParallel(len);
+    if (result == null && !parallel) {
+      return toRef ? toReference(value) : fromReference(value);
+    }
+    if (result == null) result = new double[n][];
+    for (int i=0; i<n; i++) {
+      if (result[i] == null) result[i] = new double[len];
+    }
+    final double[][] out = result;
+    if (parallel) {
+      Parallel.forRange(len, new Parallel.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          double[][] part = new double[n][end - start];
+          for (int i=0; i<n; i++) {
+            System.arraycopy(value[i], start, part[i], 0, end - start);
+          }
+          part = toRef ? toReference(part) : fromReference(part);
+          for (int i=0; i<n; i++) {
+            System.arraycopy(part[i], 0, out[i], start, end - start);
+          }
+        }
+      });
+    }
+    else {
+      double[][] trans = toRef ? toReference(value) : fromReference(value);
+      for (int i=0; i<n; i++) {
+        if (trans[i] != out[i]) {
+          System.arraycopy(trans[i], 0, out[i], 0, len);
+        }
+      }
+    }
+    return out;
+  }
+
+  private float[][] transform(final float[][] value, float[][] result,
+                              final boolean toRef) throws VisADException {
+    final int n = value.length;
+    final int len = (n == 0 || value[0] == null) ? 0 : value[0].length;
+    boolean parallel = canTransformInParallel() && Parallel.isParallel(len);
+    if (result == null && !parallel) {
+      return toRef ? toReference(value) : fromReference(value);
+    }
+    if (result == null) result = new float[n][];
+    for (int i=0; i<n; i++) {
+      if (result[i] == null) result[i] = new float[len];
+    }
+    final float[][] out = result;
+    if (parallel) {
+      Parallel.forRange(len, new Parallel.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          float[][] part = new float[n][end - start];
+          for (int i=0; i<n; i++) {
+            System.arraycopy(value[i], start, part[i], 0, end - start);
+          }
+          part = toRef ? toReference(part) : fromReference(part);
+          for (int i=0; i<n; i++) {
+            System.arraycopy(part[i], 0, out[i], start, end - start);
+          }
+        }
+      });
+    }
+    else {
+      float[][] trans = toRef ? toReference(value) : fromReference(value);
+      for (int i=0; i<n; i++) {
+        if (trans[i] != out[i]) {
+          System.arraycopy(trans[i], 0, out[i], 0, len);
+        }
+      }
+    }
+    return out;
+  }
+
   /**
    * Check to see if a conversion can be done between values
    * of one RealTupleType and another given the CoordinateSystems
@@ -841,6 +1001,9 @@ public abstract class CoordinateSystem extends Object
     else {
       for (int i=0; i<n; i++) units[i] = null;
     }
+    if (canTransformInParallel()) {
+      return toReferenceInto(value, null);
+    }
     return toReference(value);
   }
 
@@ -876,6 +1039,9 @@ public abstract class CoordinateSystem extends Object
     else {
       for (int i=0; i<n; i++) units[i] = null;
     }
+    if (canTransformInParallel()) {
+      return toReferenceInto(value, null);
+    }
     return toReference(value);
   }
 
@@ -911,6 +1077,9 @@ public abstract class CoordinateSystem extends Object
     else {
       for (int i=0; i<n; i++) units[i] = null;
     }
+    if (canTransformInParallel()) {
+      return fromReferenceInto(value, null);
+    }
     return fromReference(value);
   }
 
@@ -946,6 +1115,9 @@ public abstract class CoordinateSystem extends Object
     else {
       for (int i=0; i<n; i++) units[i] = null;
     }
+    if (canTransformInParallel()) {
+      return fromReferenceInto(value, null);
+    }
     return fromReference(value);
   }
 
@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.Parallel;
+
 /**
    Delaunay represents an abstract class for calculating an
    N-dimensional Delaunay triangulation, that can be extended
@@ -137,7 +139,7 @@ public abstract class Delaunay implements java.io.Serializable {
    * to the Delaunay abstract class to use in order to construct the
    * fastest triangulation, and calls that extension, returning the
    * finished triangulation. The method chooses from among the Fast,
-   * Clarkson, and Watson methods.
+   * Clarkson, Watson, and Parallel methods.
    * @param samples locations of points for topology - dimensioned
    *                float[dimension][number_of_points]
    * @param exact flag indicating need for exact Delaunay triangulation
@@ -163,6 +165,7 @@ public abstract class Delaunay implements java.io.Serializable {
     int FAST = 0;
     int CLARKSON = 1;
     int WATSON = 2;
+    int PARALLEL = 3;
 
     int dim = samples.length;
     if (dim < 2) throw new VisADException("Delaunay.factory: "
@@ -177,7 +180,12 @@ public abstract class Delaunay implements java.io.Serializable {
       for (int i=1; i<dim; i++) {
         nrs = Math.min(nrs, samples[i].length);
       }
-      if (dim == 2 && !exact && nrs > 10000) {
+      if (dim == 2 && DelaunayParallel.isEnabled() &&
+          Parallel.isParallel(nrs)) {
+        // use parallel in 2-D with a set large enough to split
+        choice = PARALLEL;
+      }
+      else if (dim == 2 && !exact && nrs > 10000) {
         // use fast in 2-D with a very large set and exact not required
         choice = FAST;
       }
@@ -207,6 +215,11 @@ public abstract class Delaunay implements java.io.Serializable {
         DelaunayWatson delan = new DelaunayWatson(samples);
         return (Delaunay) delan;
       }
+      if (choice == PARALLEL) {
+        // triangulate with the divide and conquer method
+        DelaunayParallel delan = new DelaunayParallel(samples);
+        return (Delaunay) delan;
+      }
     }
     catch (Exception e) {
       if (choice != CLARKSON) {
@@ -0,0 +1,784 @@
+//
+// DelaunayIncremental.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.HashMap;
+import java.util.Random;
+
+/* Samples are inserted with the Bowyer-Watson algorithm -
+ *    Bowyer, A., 1981, Computing Dirichlet tessellations:
+ *                                      The Computer J., 24(2), p. 162-166.
+ *    Watson, D.F., 1981, Computing the n-dimensional Delaunay tessellation
+ *          with application to Voronoi polytopes:
+ *                                      The Computer J., 24(2), p. 167-172.
+ * starting from a triangle found by a jump-and-walk search.  A deleted
+ * sample's star is replaced by ear clipping its link polygon, taking
+ * only ears whose circumcircles hold no other polygon vertex.  Each edge
+ * of the convex hull is closed off by a "ghost" triangle whose third
+ * vertex is at infinity, so samples outside the hull need no special
+ * case. */
+
+/**
+   DelaunayIncremental maintains the Delaunay triangulation of a
+   changing set of samples of R^2, e.g. a feed of station observations
+   where a few samples arrive and age out at a time.  Inserting or
+   deleting a sample only changes the triangles near it.  getDelaunay()
+   and makeSet() take a snapshot as an ordinary Delaunay or
+   Irregular2DSet; the snapshot costs one pass over the arrays but
+   no geometry.<P>
+
+   Each sample has an id, returned by insert(), that stays fixed while
+   the sample is present; the ids of deleted samples are reused.  The
+   samples of a snapshot are ordered by id, and getIds() gives the id
+   of each.<P>
+*/
+public class DelaunayIncremental {
+
+  /** vertex index of the point at infinity */
+  private static final int INF = -1;
+
+  // sample locations, by id
+  private float[] xs;
+  private float[] ys;
+
+  /** a triangle incident to each sample, or -1 if the id is free */
+  private int[] vertTri;
+
+  /** ids in use, in no order, and position of each id in that list */
+  private int[] live;
+  private int[] livePos;
+  private int numLive = 0;
+
+  /** free ids */
+  private int[] freeIds;
+  private int numFreeIds = 0;
+
+  /** number of ids handed out */
+  private int numIds = 0;
+
+  // triangles: vertices are counterclockwise, a ghost triangle has INF
+  // as its third vertex, and nbr[3*t+k] is the triangle across the
+  // edge from vertex k to vertex k+1, as in Delaunay.Walk
+  private int[] tv;
+  private int[] nbr;
+  private int[] mark;
+  private int stamp = 0;
+  private int numSlots = 0;
+  private int[] freeSlots;
+  private int numFreeSlots = 0;
+  private int numFinite = 0;
+
+  private final Random random = new Random(0);
+
+  // the last snapshot, or null after a change
+  private float[][] snapSamples = null;
+  private int[] snapIds = null;
+  private Delaunay snapDelaunay = null;
+
+  /**
+   * construct an incremental triangulation of the points in the
+   * samples array; their ids are 0 to number_of_points - 1
+   * @param samples locations of points for topology - dimensioned
+   *                float[2][number_of_points]; there must be at least
+   *                3 distinct points that are not collinear
+   * @throws VisADException a VisAD error occurred
+   */
+  public DelaunayIncremental(float[][] samples) throws VisADException {
+    if (samples.length != 2) {
+      throw new SetException("DelaunayIncremental: dimension must be 2");
+    }
+    int nrs = Math.min(samples[0].length, samples[1].length);
+    Delaunay delan = new DelaunayParallel(samples);
+    int[][] tri = delan.Tri;
+    int[][] walk = delan.Walk;
+
+    int cap = Math.max(16, nrs + nrs/2);
+    xs = new float[cap];
+    ys = new float[cap];
+    vertTri = new int[cap];
+    live = new int[cap];
+    livePos = new int[cap];
+    freeIds = new int[16];
+    System.arraycopy(samples[0], 0, xs, 0, nrs);
+    System.arraycopy(samples[1], 0, ys, 0, nrs);
+    for (int i=0; i<nrs; i++) {
+      live[i] = i;
+      livePos[i] = i;
+    }
+    numLive = nrs;
+    numIds = nrs;
+
+    // finite triangles keep their indices; the ghosts follow them
+    int ntris = tri.length;
+    int nghosts = 0;
+    for (int t=0; t<ntris; t++) {
+      for (int k=0; k<3; k++) {
+        if (walk[t][k] < 0) nghosts++;
+      }
+    }
+    int slots = Math.max(64, 2 * (ntris + nghosts));
+    tv = new int[3*slots];
+    nbr = new int[3*slots];
+    mark = new int[slots];
+    freeSlots = new int[16];
+    for (int t=0; t<ntris; t++) {
+      for (int k=0; k<3; k++) {
+        tv[3*t+k] = tri[t][k];
+        nbr[3*t+k] = walk[t][k];
+        vertTri[tri[t][k]] = t;
+      }
+    }
+    numSlots = ntris;
+    numFinite = ntris;
+
+    // ghost across each hull edge a->b is (b, a, INF); ghostFrom[x] is
+    // the ghost whose first vertex is x
+    int[] ghostFrom = new int[nrs];
+    for (int t=0; t<ntris; t++) {
+      for (int k=0; k<3; k++) {
+        if (walk[t][k] < 0) {
+          int a = tri[t][k];
+          int b = tri[t][(k+1)%3];
+          int g = numSlots++;
+          tv[3*g] = b;
+          tv[3*g+1] = a;
+          tv[3*g+2] = INF;
+          nbr[3*g] = t;
+          nbr[3*t+k] = g;
+          ghostFrom[b] = g;
+        }
+      }
+    }
+    for (int g=ntris; g<numSlots; g++) {
+      // edge a->INF of (b, a, INF) is edge INF->a of (a, c, INF)
+      int h = ghostFrom[tv[3*g+1]];
+      nbr[3*g+1] = h;
+      nbr[3*h+2] = g;
+    }
+  }
+
+  /**
+   * @return the number of samples
+   */
+  public synchronized int getLength() {
+    return numLive;
+  }
+
+  /**
+   * insert a sample
+   * @param x first coordinate of the sample
+   * @param y second coordinate of the sample
+   * @return the id of the sample
+   * @throws VisADException the sample is missing or duplicates one
+   *                        already present
+   */
+  public synchronized int insert(float x, float y) throws VisADException {
+    if (x != x || y != y) {
+      throw new SetException("DelaunayIncremental.insert: missing sample");
+    }
+    int start = locate(x, y);
+    if (!isGhost(start)) {
+      for (int k=0; k<3; k++) {
+        int v = tv[3*start+k];
+        if (xs[v] == x && ys[v] == y) {
+          throw new SetException("DelaunayIncremental.insert: " +
+                                 "duplicate of sample " + v);
+        }
+      }
+    }
+
+    // collect the triangles whose circumcircles contain the sample
+    stamp++;
+    IntList cavity = new IntList();
+    cavity.add(start);
+    mark[start] = stamp;
+    IntList boundary = new IntList();
+    for (int c=0; c<cavity.size; c++) {
+      int t = cavity.data[c];
+      for (int k=0; k<3; k++) {
+        int n = nbr[3*t+k];
+        if (mark[n] != stamp && inConflict(n, x, y)) {
+          mark[n] = stamp;
+          cavity.add(n);
+        }
+      }
+    }
+
+    int id = newId(x, y);
+
+    // join the sample to the edges on the cavity boundary
+    for (int c=0; c<cavity.size; c++) {
+      int t = cavity.data[c];
+      for (int k=0; k<3; k++) {
+        if (mark[nbr[3*t+k]] != stamp) {
+          int u = tv[3*t+k];
+          int w = tv[3*t+(k+1)%3];
+          if (w == INF) boundary.add3(id, u, INF);
+          else if (u == INF) boundary.add3(w, id, INF);
+          else boundary.add3(u, w, id);
+        }
+      }
+    }
+    replace(cavity, boundary);
+    return id;
+  }
+
+  /**
+   * insert samples
+   * @param samples locations of points - dimensioned
+   *                float[2][number_of_points]
+   * @return the ids of the samples
+   * @throws VisADException a sample is missing or duplicates one
+   *                        already present; the samples before it
+   *                        have been inserted
+   */
+  public int[] insert(float[][] samples) throws VisADException {
+    int n = Math.min(samples[0].length, samples[1].length);
+    int[] ids = new int[n];
+    for (int i=0; i<n; i++) ids[i] = insert(samples[0][i], samples[1][i]);
+    return ids;
+  }
+
+  /**
+   * delete a sample
+   * @param id the id of the sample
+   * @throws VisADException there is no sample with this id, or the
+   *                        remaining samples would not have a
+   *                        triangulation
+   */
+  public synchronized void delete(int id) throws VisADException {
+    if (id < 0 || id >= numIds || vertTri[id] < 0) {
+      throw new SetException("DelaunayIncremental.delete: no sample " + id);
+    }
+
+    // walk counterclockwise around the sample to find its star and
+    // the link polygon
+    IntList star = new IntList();
+    IntList ring = new IntList();
+    int t0 = vertTri[id];
+    int t = t0;
+    int inf = -1;
+    do {
+      int i = indexOf(t, id);
+      int a = tv[3*t+(i+1)%3];
+      if (a == INF) inf = ring.size;
+      star.add(t);
+      ring.add(a);
+      t = nbr[3*t+(i+2)%3];
+      if (star.size > numSlots) {
+        throw new SetException("DelaunayIncremental.delete: " +
+                               "error in triangulation");
+      }
+    } while (t != t0);
+
+    IntList fill = new IntList();
+    int newFinite;
+    if (inf < 0) {
+      newFinite = clipPolygon(ring, fill);
+    }
+    else {
+      // the link is a chain from the vertex after INF round to the one
+      // before it
+      IntList chain = new IntList();
+      for (int j=1; j<ring.size; j++) {
+        chain.add(ring.data[(inf + j) % ring.size]);
+      }
+      newFinite = clipChain(chain, fill);
+    }
+    int oldFinite = 0;
+    for (int s=0; s<star.size; s++) {
+      if (!isGhost(star.data[s])) oldFinite++;
+    }
+    if (numFinite - oldFinite + newFinite == 0) {
+      throw new SetException("DelaunayIncremental.delete: remaining " +
+                             "samples are collinear");
+    }
+
+    stamp++;
+    for (int s=0; s<star.size; s++) mark[star.data[s]] = stamp;
+    freeId(id);
+    replace(star, fill);
+  }
+
+  /**
+   * delete samples
+   * @param ids the ids of the samples
+   * @throws VisADException see delete(int); the samples before the
+   *                        failing one have been deleted
+   */
+  public void delete(int[] ids) throws VisADException {
+    for (int i=0; i<ids.length; i++) delete(ids[i]);
+  }
+
+  /**
+   * @return the locations of the samples, ordered by id - dimensioned
+   *         float[2][getLength()]; shared with the last snapshot, so
+   *         the caller must not modify it
+   */
+  public synchronized float[][] getSamples() {
+    snapshot();
+    return snapSamples;
+  }
+
+  /**
+   * @return the id of each sample in getSamples()
+   */
+  public synchronized int[] getIds() {
+    snapshot();
+    return (int[]) snapIds.clone();
+  }
+
+  /**
+   * @return the triangulation of getSamples()
+   * @throws VisADException a VisAD error occurred
+   */
+  public synchronized Delaunay getDelaunay() throws VisADException {
+    snapshot();
+    if (snapDelaunay == null) {
+      int[][] tri = new int[numFinite][];
+      int[][] walk = new int[numFinite][];
+      int[][] edges = new int[numFinite][];
+      int[] index = new int[numSlots];
+      int[] sample = new int[numIds];
+      int[] nverts = new int[numLive];
+      for (int i=0; i<snapIds.length; i++) sample[snapIds[i]] = i;
+      int n = 0;
+      for (int t=0; t<numSlots; t++) {
+        index[t] = isGhost(t) ? -1 : n++;
+      }
+      int numEdges = 0;
+      for (int t=0; t<numSlots; t++) {
+        int s = index[t];
+        if (s < 0) continue;
+        int[] row = {sample[tv[3*t]], sample[tv[3*t+1]], sample[tv[3*t+2]]};
+        tri[s] = row;
+        walk[s] = new int[] {index[nbr[3*t]], index[nbr[3*t+1]],
+                             index[nbr[3*t+2]]};
+        edges[s] = new int[3];
+        for (int k=0; k<3; k++) {
+          nverts[row[k]]++;
+          // number each edge from the first of its triangles
+          int o = walk[s][k];
+          if (o < 0 || o > s) {
+            edges[s][k] = numEdges++;
+          }
+          else {
+            int u = nbr[3*t+k];
+            int j = (nbr[3*u] == t) ? 0 : (nbr[3*u+1] == t) ? 1 : 2;
+            edges[s][k] = edges[o][j];
+          }
+        }
+      }
+      int[][] vertices = new int[numLive][];
+      for (int i=0; i<numLive; i++) {
+        vertices[i] = new int[nverts[i]];
+        nverts[i] = 0;
+      }
+      for (int s=0; s<numFinite; s++) {
+        for (int k=0; k<3; k++) {
+          int v = tri[s][k];
+          vertices[v][nverts[v]++] = s;
+        }
+      }
+      snapDelaunay = new DelaunayCustom(snapSamples, tri, vertices, walk,
+                                        edges, numEdges, false);
+    }
+    return snapDelaunay;
+  }
+
+  /**
+   * @return an Irregular2DSet of getSamples() with the triangulation
+   *         from getDelaunay()
+   * @param type MathType of the set
+   * @param coord_sys CoordinateSystem of the set, or null
+   * @param units Units of the set, or null
+   * @param errors ErrorEstimates of the set, or null
+   * @throws VisADException a VisAD error occurred
+   */
+  public synchronized Irregular2DSet makeSet(MathType type,
+                                             CoordinateSystem coord_sys,
+                                             Unit[] units,
+                                             ErrorEstimate[] errors)
+         throws VisADException {
+    Delaunay delan = getDelaunay();
+    return new Irregular2DSet(type, snapSamples, coord_sys, units, errors,
+                              delan, false);
+  }
+
+  /**
+   * @return an Irregular2DSet of getSamples() with the triangulation
+   *         from getDelaunay()
+   * @param type MathType of the set
+   * @throws VisADException a VisAD error occurred
+   */
+  public Irregular2DSet makeSet(MathType type) throws VisADException {
+    return makeSet(type, null, null, null);
+  }
+
+  /** build the sample arrays of the snapshot */
+  private void snapshot() {
+    if (snapSamples != null) return;
+    int[] ids = new int[numLive];
+    int n = 0;
+    for (int id=0; id<numIds; id++) {
+      if (vertTri[id] >= 0) ids[n++] = id;
+    }
+    float[][] samples = new float[2][numLive];
+    for (int i=0; i<numLive; i++) {
+      samples[0][i] = xs[ids[i]];
+      samples[1][i] = ys[ids[i]];
+    }
+    snapIds = ids;
+    snapSamples = samples;
+  }
+
+  /**
+   * find a triangle that contains the point, or a ghost triangle
+   * whose hull edge the point is outside of
+   */
+  private int locate(float x, float y) throws VisADException {
+    // jump to the closest of a few random samples
+    int best = live[random.nextInt(numLive)];
+    double bestDist = dist2(best, x, y);
+    int tries = (int) Math.cbrt(numLive);
+    for (int i=0; i<tries; i++) {
+      int id = live[random.nextInt(numLive)];
+      double d = dist2(id, x, y);
+      if (d < bestDist) {
+        best = id;
+        bestDist = d;
+      }
+    }
+    int t = vertTri[best];
+    if (isGhost(t)) t = nbr[3*t];
+
+    // then walk towards the point
+    for (int step=0; step<=numSlots; step++) {
+      int r = random.nextInt(3);
+      int next = -1;
+      for (int j=0; j<3 && next<0; j++) {
+        int k = (r + j) % 3;
+        if (orient(tv[3*t+k], tv[3*t+(k+1)%3], x, y) < 0.0) {
+          next = nbr[3*t+k];
+        }
+      }
+      if (next < 0 || isGhost(next)) return (next < 0) ? t : next;
+      t = next;
+    }
+    throw new SetException("DelaunayIncremental: error in triangulation");
+  }
+
+  /** true if the circumcircle of triangle t contains the point */
+  private boolean inConflict(int t, float x, float y) {
+    int a = tv[3*t];
+    int b = tv[3*t+1];
+    int c = tv[3*t+2];
+    if (c != INF) return inCircle(a, b, c, x, y) > 0.0;
+    // a ghost's circle is the half plane outside its hull edge, plus
+    // the open edge itself
+    double o = orient(a, b, x, y);
+    if (o > 0.0) return true;
+    if (o < 0.0) return false;
+    double dot = (x - xs[a]) * (double) (xs[b] - xs[a]) +
+                 (y - ys[a]) * (double) (ys[b] - ys[a]);
+    double len = (xs[b] - xs[a]) * (double) (xs[b] - xs[a]) +
+                 (ys[b] - ys[a]) * (double) (ys[b] - ys[a]);
+    return dot > 0.0 && dot < len;
+  }
+
+  /**
+   * triangulate the link polygon of an interior sample
+   * @return the number of triangles added to fill
+   */
+  private int clipPolygon(IntList poly, IntList fill)
+          throws VisADException {
+    int count = 0;
+    while (poly.size > 3) {
+      int i = findEar(poly, true, true);
+      if (i < 0) i = findEar(poly, true, false);
+      if (i < 0) {
+        throw new SetException("DelaunayIncremental.delete: " +
+                               "cannot fill hole");
+      }
+      clipEar(poly, i, fill);
+      count++;
+    }
+    fill.add3(poly.data[0], poly.data[1], poly.data[2]);
+    return count + 1;
+  }
+
+  /**
+   * triangulate the link chain of a hull sample; the chain vertices
+   * that are left become the new hull
+   * @return the number of finite triangles added to fill
+   */
+  private int clipChain(IntList chain, IntList fill) {
+    int count = 0;
+    while (chain.size > 2) {
+      int i = findEar(chain, false, true);
+      if (i < 0) break;
+      clipEar(chain, i, fill);
+      count++;
+    }
+    for (int j=0; j+1<chain.size; j++) {
+      fill.add3(chain.data[j], chain.data[j+1], INF);
+    }
+    return count;
+  }
+
+  /**
+   * find a convex ear of a polygon, or of a chain if closed is false
+   * @param delaunay true to require that the ear's circumcircle
+   *                 holds no other vertex, false to require only that
+   *                 the ear holds none
+   * @return the index of the ear tip, or -1
+   */
+  private int findEar(IntList poly, boolean closed, boolean delaunay) {
+    int n = poly.size;
+    int first = closed ? 0 : 1;
+    int last = closed ? n : n - 1;
+  Ears:
+    for (int i=first; i<last; i++) {
+      int a = poly.data[(i + n - 1) % n];
+      int b = poly.data[i];
+      int c = poly.data[(i + 1) % n];
+      if (orient(a, b, xs[c], ys[c]) <= 0.0) continue;
+      for (int j=0; j<n; j++) {
+        int d = poly.data[j];
+        if (d == a || d == b || d == c) continue;
+        if (delaunay) {
+          if (inCircle(a, b, c, xs[d], ys[d]) > 0.0) continue Ears;
+        }
+        else if (orient(a, b, xs[d], ys[d]) > 0.0 &&
+                 orient(b, c, xs[d], ys[d]) > 0.0 &&
+                 orient(c, a, xs[d], ys[d]) > 0.0) {
+          continue Ears;
+        }
+      }
+      return i;
+    }
+    return -1;
+  }
+
+  private void clipEar(IntList poly, int i, IntList fill) {
+    int n = poly.size;
+    fill.add3(poly.data[(i + n - 1) % n], poly.data[i],
+              poly.data[(i + 1) % n]);
+    System.arraycopy(poly.data, i + 1, poly.data, i, n - i - 1);
+    poly.size--;
+  }
+
+  /**
+   * replace the triangles in region, which are marked with the current
+   * stamp, by the triangles in fill (three vertices each), and link
+   * the new triangles to each other and to the triangles around the
+   * region
+   */
+  private void replace(IntList region, IntList fill) throws VisADException {
+    // triangles across the region boundary, by directed edge
+    HashMap<Long, Integer> outer = new HashMap<Long, Integer>();
+    for (int r=0; r<region.size; r++) {
+      int t = region.data[r];
+      for (int k=0; k<3; k++) {
+        int n = nbr[3*t+k];
+        if (mark[n] != stamp) {
+          int a = tv[3*t+k];
+          int b = tv[3*t+(k+1)%3];
+          int s = 0;
+          while (s < 3 && !(tv[3*n+s] == b && tv[3*n+(s+1)%3] == a)) s++;
+          outer.put(Long.valueOf(edgeKey(a, b)), Integer.valueOf(3*n+s));
+        }
+      }
+    }
+    for (int r=0; r<region.size; r++) {
+      int t = region.data[r];
+      if (!isGhost(t)) numFinite--;
+      freeSlot(t);
+    }
+
+    int nfill = fill.size / 3;
+    int[] slots = new int[nfill];
+    HashMap<Long, Integer> inner = new HashMap<Long, Integer>();
+    for (int f=0; f<nfill; f++) {
+      int t = newSlot();
+      slots[f] = t;
+      for (int k=0; k<3; k++) tv[3*t+k] = fill.data[3*f+k];
+      if (!isGhost(t)) numFinite++;
+      for (int k=0; k<3; k++) {
+        int a = tv[3*t+k];
+        if (a != INF) vertTri[a] = t;
+        inner.put(Long.valueOf(edgeKey(a, tv[3*t+(k+1)%3])),
+                  Integer.valueOf(3*t+k));
+      }
+    }
+    for (int f=0; f<nfill; f++) {
+      int t = slots[f];
+      for (int k=0; k<3; k++) {
+        int a = tv[3*t+k];
+        int b = tv[3*t+(k+1)%3];
+        Integer twin = inner.get(Long.valueOf(edgeKey(b, a)));
+        if (twin == null) {
+          twin = outer.get(Long.valueOf(edgeKey(a, b)));
+          if (twin == null) {
+            throw new SetException("DelaunayIncremental: " +
+                                   "error in triangulation");
+          }
+          nbr[twin.intValue()] = t;
+        }
+        nbr[3*t+k] = twin.intValue() / 3;
+      }
+    }
+    snapSamples = null;
+    snapIds = null;
+    snapDelaunay = null;
+  }
+
+  private static long edgeKey(int a, int b) {
+    return ((long) (a + 1) << 32) | (b + 1);
+  }
+
+  private boolean isGhost(int t) {
+    return tv[3*t+2] == INF;
+  }
+
+  private int indexOf(int t, int v) {
+    return (tv[3*t] == v) ? 0 : (tv[3*t+1] == v) ? 1 : 2;
+  }
+
+  private double dist2(int a, float x, float y) {
+    double dx = xs[a] - (double) x;
+    double dy = ys[a] - (double) y;
+    return dx * dx + dy * dy;
+  }
+
+  /** positive if the point is to the left of a->b */
+  private double orient(int a, int b, float x, float y) {
+    double ax = xs[a];
+    double ay = ys[a];
+    return (xs[b] - ax) * (y - ay) - (ys[b] - ay) * (x - ax);
+  }
+
+  /** positive if the point is inside the circle through the
+      counterclockwise triangle a, b, c */
+  private double inCircle(int a, int b, int c, float x, float y) {
+    double adx = xs[a] - (double) x;
+    double ady = ys[a] - (double) y;
+    double bdx = xs[b] - (double) x;
+    double bdy = ys[b] - (double) y;
+    double cdx = xs[c] - (double) x;
+    double cdy = ys[c] - (double) y;
+    return (adx * adx + ady * ady) * (bdx * cdy - cdx * bdy)
+         + (bdx * bdx + bdy * bdy) * (cdx * ady - adx * cdy)
+         + (cdx * cdx + cdy * cdy) * (adx * bdy - bdx * ady);
+  }
+
+  private int newId(float x, float y) {
+    int id;
+    if (numFreeIds > 0) {
+      id = freeIds[--numFreeIds];
+    }
+    else {
+      if (numIds == xs.length) {
+        int cap = 2 * xs.length;
+        xs = grow(xs, cap);
+        ys = grow(ys, cap);
+        vertTri = grow(vertTri, cap);
+        live = grow(live, cap);
+        livePos = grow(livePos, cap);
+      }
+      id = numIds++;
+    }
+    xs[id] = x;
+    ys[id] = y;
+    live[numLive] = id;
+    livePos[id] = numLive++;
+    return id;
+  }
+
+  private void freeId(int id) {
+    int last = live[--numLive];
+    live[livePos[id]] = last;
+    livePos[last] = livePos[id];
+    vertTri[id] = -1;
+    if (numFreeIds == freeIds.length) {
+      freeIds = grow(freeIds, 2 * freeIds.length);
+    }
+    freeIds[numFreeIds++] = id;
+  }
+
+  private int newSlot() {
+    if (numFreeSlots > 0) return freeSlots[--numFreeSlots];
+    if (numSlots == mark.length) {
+      int cap = 2 * mark.length;
+      tv = grow(tv, 3*cap);
+      nbr = grow(nbr, 3*cap);
+      mark = grow(mark, cap);
+    }
+    return numSlots++;
+  }
+
+  private void freeSlot(int t) {
+    // a free slot looks like a ghost with no vertices
+    tv[3*t] = INF;
+    tv[3*t+1] = INF;
+    tv[3*t+2] = INF;
+    if (numFreeSlots == freeSlots.length) {
+      freeSlots = grow(freeSlots, 2 * freeSlots.length);
+    }
+    freeSlots[numFreeSlots++] = t;
+  }
+
+  private static float[] grow(float[] a, int cap) {
+    float[] b = new float[cap];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  private static int[] grow(int[] a, int cap) {
+    int[] b = new int[cap];
+    System.arraycopy(a, 0, b, 0, a.length);
+    return b;
+  }
+
+  /** a growable list of ints */
+  private static final class IntList {
+    int[] data = new int[16];
+    int size = 0;
+
+    void add(int v) {
+      if (size == data.length) data = grow(data, 2 * size);
+      data[size++] = v;
+    }
+
+    void add3(int a, int b, int c) {
+      add(a);
+      add(b);
+      add(c);
+    }
+  }
+
+}
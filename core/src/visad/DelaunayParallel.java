@@ -0,0 +1,660 @@
+//
+// DelaunayParallel.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.util.Arrays;
+
+import visad.util.Parallel;
+
+/* The Delaunay triangulation algorithm in this class is the divide and
+ * conquer algorithm described in -
+ *    Guibas, L. and Stolfi, J., 1985, Primitives for the manipulation of
+ *          general subdivisions and the computation of Voronoi diagrams:
+ *                                      ACM Trans. Graphics, 4(2), p. 74-123.
+ *
+ * The samples are sorted lexicographically and cut into vertical strips.
+ * The strips are triangulated on separate threads, then adjacent pairs
+ * are merged, again in parallel, until one triangulation is left.  The
+ * quad-edges are kept in int arrays; each strip allocates them from its
+ * own part of the arrays, and a merge hands the free edges of both
+ * strips to the merged strip. */
+
+/**
+   DelaunayParallel represents an O(N*log(N)) method that finds the
+   Delaunay triangulation of a set of samples of R^2 on several
+   threads.  Samples must be distinct; the factory falls back to
+   DelaunayClarkson for sets with duplicate samples.<P>
+*/
+public class DelaunayParallel extends Delaunay {
+
+  /** minimum number of samples in a strip */
+  private static final int MIN_STRIP = 1000;
+
+  private static volatile boolean enabled =
+    Boolean.parseBoolean(System.getProperty("visad.delaunay.parallel",
+                                            "true"));
+
+  /**
+   * Let Delaunay.factory() choose this method for large 2-D sets.
+   * @param enable false to use only the single-threaded methods
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * @return flag indicating whether Delaunay.factory() may choose this
+   *         method
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * construct a Delaunay triangulation of the points in the
+   * samples array using the divide and conquer algorithm
+   * @param samples locations of points for topology - dimensioned
+   *                float[2][number_of_points]
+   * @throws VisADException a VisAD error occurred
+   */
+  public DelaunayParallel(float[][] samples) throws VisADException {
+    if (samples.length != 2) {
+      throw new VisADException("DelaunayParallel: dimension must be 2");
+    }
+    final int nrs = Math.min(samples[0].length, samples[1].length);
+    if (nrs < 3) {
+      throw new VisADException("DelaunayParallel: triangulation is "
+                              +"futile with less than 3 samples");
+    }
+
+    // sort the samples lexicographically
+    final int[] order = sort(samples[0], samples[1], nrs);
+    final double[] sx = new double[nrs];
+    final double[] sy = new double[nrs];
+    final float[] samp0 = samples[0];
+    final float[] samp1 = samples[1];
+    Parallel.forRange(nrs, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        for (int i=start; i<end; i++) {
+          sx[i] = samp0[order[i]];
+          sy[i] = samp1[order[i]];
+          if (i > 0 && sx[i] == samp0[order[i-1]]
+                    && sy[i] == samp1[order[i-1]]) {
+            throw new SetException("DelaunayParallel: duplicate samples " +
+                                   order[i-1] + " and " + order[i]);
+          }
+        }
+      }
+    });
+
+    // cut the sorted samples into a power of two strips
+    int nstrips = 1;
+    if (Parallel.isParallel(nrs)) {
+      int most = Math.min(Parallel.getParallelism(), nrs / MIN_STRIP);
+      while (2 * nstrips <= most) nstrips *= 2;
+    }
+    final int[] first = new int[nstrips + 1];
+    final int[] base = new int[nstrips + 1];
+    for (int s=0; s<=nstrips; s++) {
+      first[s] = (int) (((long) nrs * s) / nstrips);
+      base[s] = 3 * first[s] + 3 * s;
+    }
+    final Mesh mesh = new Mesh(sx, sy, base[nstrips]);
+    final Strip[] strips = new Strip[nstrips];
+
+    // triangulate the strips
+    Parallel.forRange(nstrips, 1, nrs, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        for (int s=start; s<end; s++) {
+          strips[s] = new Strip(mesh, base[s], base[s+1]);
+          strips[s].triangulate(first[s], first[s+1]);
+        }
+      }
+    });
+
+    // merge adjacent strips until there is one left
+    for (int width=1; width<nstrips; width*=2) {
+      final int w = width;
+      Parallel.forRange(nstrips / (2 * w), 1, nrs, new Parallel.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          for (int p=start; p<end; p++) {
+            Strip left = strips[2 * p * w];
+            Strip right = strips[(2 * p + 1) * w];
+            left.merge(right);
+            strips[(2 * p + 1) * w] = null;
+          }
+        }
+      });
+    }
+
+    extract(mesh, order, nrs);
+    finish_triang(samples);
+  }
+
+  /**
+   * sort the samples lexicographically by x, then y
+   * @return indices of the samples in sorted order
+   */
+  private static int[] sort(final float[] x, final float[] y, final int nrs)
+          throws VisADException {
+    // keys are the sortable bits of x and the sample index
+    final long[] keys = new long[nrs];
+    Parallel.forRange(nrs, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        for (int i=start; i<end; i++) {
+          if (x[i] != x[i] || y[i] != y[i]) {
+            throw new SetException("DelaunayParallel: sample " + i +
+                                   " is missing");
+          }
+          keys[i] = ((long) sortable(x[i]) << 32) | i;
+        }
+      }
+    });
+    parallelSort(keys);
+
+    // sort runs of equal x by y
+    final int[] order = new int[nrs];
+    Parallel.forRange(nrs, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        int i = start;
+        // a run that started in the previous chunk belongs to it
+        while (i > 0 && i < end && (keys[i] >> 32) == (keys[i-1] >> 32)) i++;
+        while (i < end) {
+          int j = i + 1;
+          while (j < nrs && (keys[j] >> 32) == (keys[i] >> 32)) j++;
+          if (j - i == 1) {
+            order[i] = (int) keys[i];
+          }
+          else {
+            long[] run = new long[j - i];
+            for (int k=i; k<j; k++) {
+              int index = (int) keys[k];
+              run[k - i] = ((long) sortable(y[index]) << 32) | index;
+            }
+            Arrays.sort(run);
+            for (int k=i; k<j; k++) order[k] = (int) run[k - i];
+          }
+          i = j;
+        }
+      }
+    });
+    return order;
+  }
+
+  /**
+   * @return an int that orders like f, with -0 equal to 0
+   */
+  private static int sortable(float f) {
+    int bits = Float.floatToIntBits(f + 0.0f);
+    return (bits < 0) ? bits ^ 0x7fffffff : bits;
+  }
+
+  /**
+   * sort keys by sorting chunks in parallel, then merging pairs
+   * of sorted runs in parallel
+   */
+  private static void parallelSort(long[] keys) throws VisADException {
+    final int n = keys.length;
+    int runs = 1;
+    if (Parallel.isParallel(n)) {
+      while (2 * runs <= Parallel.getParallelism()) runs *= 2;
+    }
+    if (runs == 1) {
+      Arrays.sort(keys);
+      return;
+    }
+    final int[] bounds = new int[runs + 1];
+    for (int r=0; r<=runs; r++) bounds[r] = (int) (((long) n * r) / runs);
+
+    final long[][] buf = {keys, new long[n]};
+    Parallel.forRange(runs, 1, n, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int r=start; r<end; r++) {
+          Arrays.sort(buf[0], bounds[r], bounds[r+1]);
+        }
+      }
+    });
+    int src = 0;
+    for (int width=1; width<runs; width*=2) {
+      final int w = width;
+      final long[] from = buf[src];
+      final long[] to = buf[1 - src];
+      Parallel.forRange(runs / (2 * w), 1, n, new Parallel.Chunk() {
+        public void run(int start, int end) {
+          for (int p=start; p<end; p++) {
+            int lo = bounds[2 * p * w];
+            int mid = bounds[(2 * p + 1) * w];
+            int hi = bounds[(2 * p + 2) * w];
+            int a = lo;
+            int b = mid;
+            int k = lo;
+            while (a < mid && b < hi) {
+              to[k++] = (from[a] <= from[b]) ? from[a++] : from[b++];
+            }
+            while (a < mid) to[k++] = from[a++];
+            while (b < hi) to[k++] = from[b++];
+          }
+        }
+      });
+      src = 1 - src;
+    }
+    if (src != 0) System.arraycopy(buf[src], 0, keys, 0, n);
+  }
+
+  /**
+   * build Tri and Walk from the faces of the finished mesh
+   */
+  private void extract(final Mesh mesh, final int[] order, int nrs)
+          throws VisADException {
+    final int nquads = mesh.org.length / 2;
+
+    // count the triangles and the hull edges in each chunk
+    int nchunks = Parallel.isParallel(nrs) ? Parallel.getParallelism() : 1;
+    final int[] bounds = new int[nchunks + 1];
+    for (int c=0; c<=nchunks; c++) {
+      bounds[c] = (int) (((long) nquads * c) / nchunks);
+    }
+    final int[] count = new int[nchunks + 1];
+    final int[] hull = new int[nchunks];
+    Parallel.forRange(nchunks, 1, nrs, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int c=start; c<end; c++) {
+          for (int q=bounds[c]; q<bounds[c+1]; q++) {
+            if (mesh.org[2*q] < 0) continue;
+            for (int r=0; r<4; r+=2) {
+              int e = 4*q + r;
+              if (mesh.isTriangle(e)) {
+                if (e == mesh.firstOfFace(e)) count[c+1]++;
+              }
+              else {
+                hull[c]++;
+              }
+            }
+          }
+        }
+      }
+    });
+    int nhull = 0;
+    for (int c=0; c<nchunks; c++) {
+      count[c+1] += count[c];
+      nhull += hull[c];
+    }
+    int ntris = count[nchunks];
+
+    // every triangulation of nrs points with nhull points on its
+    // boundary has 2*nrs - 2 - nhull triangles
+    if (ntris == 0 || ntris != 2*nrs - 2 - nhull) {
+      throw new SetException("DelaunayParallel: error in triangulation " +
+                             "(" + ntris + " triangles, " + nhull +
+                             " hull edges)");
+    }
+
+    // record each triangle, its edge from vertex 0 and the triangle
+    // to the left of each directed edge
+    final int[][] tri = new int[ntris][];
+    final int[] edge = new int[ntris];
+    final int[] face = new int[2*nquads];
+    Arrays.fill(face, -1);
+    Parallel.forRange(nchunks, 1, nrs, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int c=start; c<end; c++) {
+          int t = count[c];
+          for (int q=bounds[c]; q<bounds[c+1]; q++) {
+            if (mesh.org[2*q] < 0) continue;
+            for (int r=0; r<4; r+=2) {
+              int e0 = 4*q + r;
+              if (mesh.isTriangle(e0) && e0 == mesh.firstOfFace(e0)) {
+                int e1 = mesh.lnext(e0);
+                int e2 = mesh.lnext(e1);
+                tri[t] = new int[] {order[mesh.org(e0)], order[mesh.org(e1)],
+                                    order[mesh.org(e2)]};
+                edge[t] = e0;
+                face[e0 >> 1] = t;
+                face[e1 >> 1] = t;
+                face[e2 >> 1] = t;
+                t++;
+              }
+            }
+          }
+        }
+      }
+    });
+
+    final int[][] walk = new int[ntris][3];
+    Parallel.forRange(ntris, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int t=start; t<end; t++) {
+          int e = edge[t];
+          for (int j=0; j<3; j++) {
+            walk[t][j] = face[(e ^ 2) >> 1];
+            e = mesh.lnext(e);
+          }
+        }
+      }
+    });
+    Tri = tri;
+    Walk = walk;
+  }
+
+  /** quad-edge mesh kept in arrays, shared by all strips */
+  private static final class Mesh {
+
+    /** sample coordinates, in sorted order */
+    final double[] x;
+    final double[] y;
+
+    /** onext of each directed edge e = 4*quad + rotation */
+    final int[] onext;
+
+    /** origin (sorted sample index) of the even directed edges, at
+        e >> 1; -1 at 2*quad if the quad is free */
+    final int[] org;
+
+    /** the next free quad in a strip's free list */
+    final int[] nextFree;
+
+    Mesh(double[] x, double[] y, int nquads) {
+      this.x = x;
+      this.y = y;
+      onext = new int[4*nquads];
+      org = new int[2*nquads];
+      nextFree = new int[nquads];
+    }
+
+    static int rot(int e) {
+      return (e & ~3) | ((e + 1) & 3);
+    }
+
+    static int rotInv(int e) {
+      return (e & ~3) | ((e + 3) & 3);
+    }
+
+    static int sym(int e) {
+      return e ^ 2;
+    }
+
+    int org(int e) {
+      return org[e >> 1];
+    }
+
+    int dest(int e) {
+      return org[(e ^ 2) >> 1];
+    }
+
+    int onext(int e) {
+      return onext[e];
+    }
+
+    int oprev(int e) {
+      return rot(onext[rot(e)]);
+    }
+
+    int lnext(int e) {
+      return rot(onext[rotInv(e)]);
+    }
+
+    int rprev(int e) {
+      return onext[e ^ 2];
+    }
+
+    void splice(int a, int b) {
+      int alpha = rot(onext[a]);
+      int beta = rot(onext[b]);
+      int t1 = onext[b];
+      int t2 = onext[a];
+      int t3 = onext[beta];
+      int t4 = onext[alpha];
+      onext[a] = t1;
+      onext[b] = t2;
+      onext[alpha] = t3;
+      onext[beta] = t4;
+    }
+
+    /** true if a, b, c turn counterclockwise */
+    boolean ccw(int a, int b, int c) {
+      return (x[b] - x[a]) * (y[c] - y[a]) -
+             (y[b] - y[a]) * (x[c] - x[a]) > 0.0;
+    }
+
+    /** true if d is inside the circle through a, b, c */
+    boolean inCircle(int a, int b, int c, int d) {
+      double adx = x[a] - x[d];
+      double ady = y[a] - y[d];
+      double bdx = x[b] - x[d];
+      double bdy = y[b] - y[d];
+      double cdx = x[c] - x[d];
+      double cdy = y[c] - y[d];
+      double alift = adx * adx + ady * ady;
+      double blift = bdx * bdx + bdy * bdy;
+      double clift = cdx * cdx + cdy * cdy;
+      return alift * (bdx * cdy - cdx * bdy)
+           + blift * (cdx * ady - adx * cdy)
+           + clift * (adx * bdy - bdx * ady) > 0.0;
+    }
+
+    boolean rightOf(int p, int e) {
+      return ccw(p, dest(e), org(e));
+    }
+
+    boolean leftOf(int p, int e) {
+      return ccw(p, org(e), dest(e));
+    }
+
+    /** true if the face to the left of e is a counterclockwise triangle */
+    boolean isTriangle(int e) {
+      int e1 = lnext(e);
+      int e2 = lnext(e1);
+      return lnext(e2) == e && ccw(org(e), org(e1), org(e2));
+    }
+
+    /** @return the smallest directed edge around the face left of e */
+    int firstOfFace(int e) {
+      int e1 = lnext(e);
+      int e2 = lnext(e1);
+      return Math.min(e, Math.min(e1, e2));
+    }
+  }
+
+  /** a strip of sorted samples and its part of the edge arrays */
+  private static final class Strip {
+
+    private final Mesh m;
+
+    /** head and tail of the free list */
+    private int head;
+    private int tail;
+
+    /** counterclockwise hull edge out of the leftmost sample, and
+        clockwise hull edge out of the rightmost sample */
+    private int left;
+    private int right;
+
+    Strip(Mesh m, int firstQuad, int endQuad) {
+      this.m = m;
+      for (int q=firstQuad; q<endQuad; q++) {
+        m.nextFree[q] = q + 1;
+        m.org[2*q] = -1;
+      }
+      m.nextFree[endQuad - 1] = -1;
+      head = firstQuad;
+      tail = endQuad - 1;
+    }
+
+    void triangulate(int start, int end) throws VisADException {
+      long le = divide(start, end);
+      left = (int) (le >> 32);
+      right = (int) le;
+    }
+
+    /** merge the strip on the right into this one */
+    void merge(Strip other) throws VisADException {
+      if (other.head >= 0) {
+        if (head < 0) {
+          head = other.head;
+        }
+        else {
+          m.nextFree[tail] = other.head;
+        }
+        tail = other.tail;
+      }
+      long le = join(left, right, other.left, other.right);
+      left = (int) (le >> 32);
+      right = (int) le;
+    }
+
+    private int makeEdge(int a, int b) throws VisADException {
+      int q = head;
+      if (q < 0) {
+        throw new SetException("DelaunayParallel: out of edges");
+      }
+      head = m.nextFree[q];
+      if (head < 0) tail = -1;
+      int e = 4*q;
+      int[] onext = m.onext;
+      onext[e] = e;
+      onext[e+1] = e+3;
+      onext[e+2] = e+2;
+      onext[e+3] = e+1;
+      m.org[e >> 1] = a;
+      m.org[(e+2) >> 1] = b;
+      return e;
+    }
+
+    private void deleteEdge(int e) {
+      m.splice(e, m.oprev(e));
+      m.splice(e ^ 2, m.oprev(e ^ 2));
+      int q = e >> 2;
+      m.org[2*q] = -1;
+      m.nextFree[q] = head;
+      head = q;
+      if (tail < 0) tail = q;
+    }
+
+    private int connect(int a, int b) throws VisADException {
+      int e = makeEdge(m.dest(a), m.org(b));
+      m.splice(e, m.lnext(a));
+      m.splice(e ^ 2, b);
+      return e;
+    }
+
+    /**
+     * triangulate the sorted samples [start, end)
+     * @return the left hull edge in the high 32 bits and the right
+     *         hull edge in the low 32 bits
+     */
+    private long divide(int start, int end) throws VisADException {
+      int n = end - start;
+      if (n == 2) {
+        int a = makeEdge(start, start+1);
+        return pack(a, a ^ 2);
+      }
+      if (n == 3) {
+        int s1 = start;
+        int s2 = start+1;
+        int s3 = start+2;
+        int a = makeEdge(s1, s2);
+        int b = makeEdge(s2, s3);
+        m.splice(a ^ 2, b);
+        if (m.ccw(s1, s2, s3)) {
+          connect(b, a);
+          return pack(a, b ^ 2);
+        }
+        else if (m.ccw(s1, s3, s2)) {
+          int c = connect(b, a);
+          return pack(c ^ 2, c);
+        }
+        // the three samples are collinear
+        return pack(a, b ^ 2);
+      }
+      int mid = start + n/2;
+      long lh = divide(start, mid);
+      long rh = divide(mid, end);
+      return join((int) (lh >> 32), (int) lh, (int) (rh >> 32), (int) rh);
+    }
+
+    /** merge two triangulations separated by a vertical line */
+    private long join(int ldo, int ldi, int rdi, int rdo)
+            throws VisADException {
+      // find the lower common tangent
+      while (true) {
+        if (m.leftOf(m.org(rdi), ldi)) {
+          ldi = m.lnext(ldi);
+        }
+        else if (m.rightOf(m.org(ldi), rdi)) {
+          rdi = m.rprev(rdi);
+        }
+        else {
+          break;
+        }
+      }
+
+      int basel = connect(rdi ^ 2, ldi);
+      if (m.org(ldi) == m.org(ldo)) ldo = basel ^ 2;
+      if (m.org(rdi) == m.org(rdo)) rdo = basel;
+
+      // zip the triangulations together from bottom to top
+      while (true) {
+        int lcand = m.onext(basel ^ 2);
+        boolean lvalid = m.rightOf(m.dest(lcand), basel);
+        if (lvalid) {
+          while (m.inCircle(m.dest(basel), m.org(basel), m.dest(lcand),
+                            m.dest(m.onext(lcand)))) {
+            int t = m.onext(lcand);
+            deleteEdge(lcand);
+            lcand = t;
+          }
+        }
+        int rcand = m.oprev(basel);
+        boolean rvalid = m.rightOf(m.dest(rcand), basel);
+        if (rvalid) {
+          while (m.inCircle(m.dest(basel), m.org(basel), m.dest(rcand),
+                            m.dest(m.oprev(rcand)))) {
+            int t = m.oprev(rcand);
+            deleteEdge(rcand);
+            rcand = t;
+          }
+        }
+        lvalid = m.rightOf(m.dest(lcand), basel);
+        rvalid = m.rightOf(m.dest(rcand), basel);
+        if (!lvalid && !rvalid) break;
+        if (!lvalid || (rvalid && m.inCircle(m.dest(lcand), m.org(lcand),
+                                             m.org(rcand), m.dest(rcand)))) {
+          basel = connect(rcand, basel ^ 2);
+        }
+        else {
+          basel = connect(basel ^ 2, lcand ^ 2);
+        }
+      }
+      return pack(ldo, rdo);
+    }
+
+    private static long pack(int le, int re) {
+      return ((long) le << 32) | (re & 0xffffffffL);
+    }
+  }
+
+}
@@ -30,6 +30,8 @@ import java.rmi.RemoteException;
 import java.util.Arrays;
 import java.util.Random;
 
+import visad.util.Parallel;
+
 /**
    FlatField is the VisAD class for finite samplings of functions whose
    range type and range coordinate systems are simple enough to allow
@@ -720,7 +722,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
        so in operations (e.g., unary, binary) that deal with the data we try
        to keep it to be floats if we can (for size efficiency).
      **/
-    private boolean  shouldBeDouble () {
+    boolean  shouldBeDouble () {
       for (int i=0; i<TupleDimension; i++) {
           if (RangeMode[i] == DOUBLE) {
               return true;
@@ -729,6 +731,20 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       return false;
     }
 
+    /**
+       This returns true if any of the RangeMode values is BYTE, SHORT or
+       INT, i.e. if unpacking the range would inflate it to floats.
+     **/
+    private boolean anyPackedRange () {
+      for (int i=0; i<TupleDimension; i++) {
+          if (RangeMode[i] == BYTE || RangeMode[i] == SHORT ||
+              RangeMode[i] == INT) {
+              return true;
+          }
+      }
+      return false;
+    }
+
 
   /** update a subset of a FlatField's range samples, where
       start is the index of the first sample to update and
@@ -943,7 +959,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
   /** pack an array of doubles into field sample values according to the
       RangeSet-s; copies data */
-  private void packValues(double[][] range, boolean copy)
+  void packValues(double[][] range, boolean copy)
           throws VisADException {
     // NOTE INVERTED ORDER OF range ARRAY INDICES !!!
     int[] index;
@@ -1012,7 +1028,7 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
    *
    * @throws VisADException if {@link #nullRanges()} fails.
    */
-  private void packValues(float[][] range, boolean copy)
+  void packValues(float[][] range, boolean copy)
           throws VisADException {
 
     // NOTE INVERTED ORDER OF range ARRAY INDICES !!!
@@ -1533,6 +1549,92 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     return range;
   }
 
+  /**
+   * Returns read-only views of the range values in their range units
+   * (the units of {@link #unpackFloats()}).  Components packed as bytes,
+   * shorts or ints are decoded on access rather than unpacked.
+   *
+   * @return                    One view per component of the flat range.
+   * @throws VisADException     if a VisAD object couldn't be created.
+   */
+  public RangeView[] getRangeViews() throws VisADException {
+    RangeView[] views = new RangeView[TupleDimension];
+    boolean unpack = false;
+    synchronized (DoubleRange) {
+      if (isMissing()) {
+        for (int i=0; i<TupleDimension; i++) {
+          views[i] = RangeView.missing(getLength());
+        }
+        return views;
+      }
+      for (int i=0; i<TupleDimension; i++) {
+        switch (RangeMode[i]) {
+          case DOUBLE:
+            if (DoubleRange[i] != null) {
+              views[i] = RangeView.of(DoubleRange[i]);
+            }
+            break;
+          case FLOAT:
+            if (FloatRange[i] != null) {
+              views[i] = RangeView.of(FloatRange[i]);
+            }
+            break;
+          case BYTE:
+            if (ByteRange[i] != null) {
+              views[i] = RangeView.of(ByteRange[i], MISSING1 + 1, RangeSet[i]);
+            }
+            break;
+          case SHORT:
+            if (ShortRange[i] != null) {
+              views[i] = RangeView.of(ShortRange[i], MISSING2 + 1, RangeSet[i]);
+            }
+            break;
+          case INT:
+            if (IntRange[i] != null) {
+              views[i] = RangeView.of(IntRange[i], MISSING4 + 1, RangeSet[i]);
+            }
+            break;
+          default:
+            throw new SetException("FlatField.getRangeViews: bad RangeMode");
+        }
+        if (views[i] == null) unpack = true;
+      }
+    }
+    if (unpack) {
+      // values are not held in this FlatField's arrays (e.g. they are
+      // supplied by a subclass that overrides unpackFloats)
+      float[][] values = unpackFloats(false);
+      for (int i=0; i<TupleDimension; i++) {
+        if (views[i] == null) views[i] = RangeView.of(values[i]);
+      }
+    }
+    return views;
+  }
+
+  /**
+   * Returns read-only views of the range values in their default units,
+   * as for {@link #getFloats(boolean)}.  Only components whose range
+   * Unit differs from the default Unit are copied.
+   *
+   * @return                    One view per component of the flat range.
+   * @throws VisADException     if a VisAD object couldn't be created.
+   */
+  public RangeView[] getDefaultUnitRangeViews() throws VisADException {
+    RangeView[] views = getRangeViews();
+    Unit[] units_out = ((FunctionType) Type).getFlatRange().getDefaultUnits();
+    for (int i=0; i<TupleDimension; i++) {
+      Unit unit_in = RangeUnits[i];
+      if (unit_in == null ? units_out[i] != null : !unit_in.equals(units_out[i])) {
+        float[][] values = Unit.convertTuple(
+                             new float[][] {views[i].toFloats()},
+                             new Unit[] {unit_in}, new Unit[] {units_out[i]},
+                             false);
+        views[i] = RangeView.of(values[0]);
+      }
+    }
+    return views;
+  }
+
   /**
    * Returns the range values in their default units as floats.
    *
@@ -2042,7 +2144,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
       throw new TypeException("binary: new_type may not be null");
     }
 
-
+    // defer the operation if lazy evaluation is on and allows it
+    if (LazyFlatField.isLazy()) {
+      FlatField lazy =
+        LazyFlatField.binary(this, data, op, new_type, error_mode);
+      if (lazy != null) return lazy;
+    }
 
     if (data instanceof Field) {
       /*- TDR June  1998 */
@@ -2303,61 +2410,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 outUnits[j] = null;
               }
             }
-            double[]thisLineD = null;
-            double[]thatLineD = null;
-            float[]thisLineF = null;
-            float[]thatLineF = null;
-            switch (op) {
-              case ADD:
-                  if (thisValuesD != null) {
-                      double[]thisValuesLineD = thisValuesD[j];
-                      double[]thatValuesLineD = thatValuesD[j];
-                      for (int i=0; i<getLength(); i++) {
-                          thisValuesLineD[i] += thatValuesLineD[i];
-                      }
-                  }
-                  if (thisValuesF != null) {
-                      float[]thisValuesLineF = thisValuesF[j];
-                      float[]thatValuesLineF = thatValuesF[j];
-                      for (int i=0; i<getLength(); i++) {
-                          thisValuesLineF[i] += thatValuesLineF[i];
-                      }
-                  }
-
-                break;
-              case SUBTRACT:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++) 
-                          thisValuesD[j][i] -= thatValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++) 
-                          thisValuesF[j][i] -= thatValuesF[j][i];
-                break;
-              case INV_SUBTRACT:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++) 
-                          thisValuesD[j][i] = thatValuesD[j][i] - thisValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++) 
-                          thisValuesF[j][i] = thatValuesF[j][i] - thisValuesF[j][i];
-                break;
-              case MAX:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = Math.max(thisValuesD[j][i], thatValuesD[j][i]);
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = Math.max(thisValuesF[j][i], thatValuesF[j][i]);
-                break;
-              case MIN:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = Math.min (thisValuesD[j][i], thatValuesD[j][i]);
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = Math.min (thisValuesF[j][i], thatValuesF[j][i]);
-                break;
-            }
           }
           break;
 
@@ -2413,32 +2465,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                   break;
               }
             }
-            switch(op) {
-              case MULTIPLY:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] *= thatValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] *= thatValuesF[j][i];
-                break;
-              case DIVIDE:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] /= thatValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] /= thatValuesF[j][i];
-                break;
-              case INV_DIVIDE:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = thatValuesD[j][i] / thisValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = thatValuesF[j][i] / thisValuesF[j][i];
-                break;
-            }
           }
           break;
 
@@ -2473,12 +2499,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             else {
               outUnits[j] = null;
             }
-            if (thisValuesD != null)
-                for (int i=0; i<getLength(); i++)
-                    thisValuesD[j][i] = (double)(Math.pow(thisValuesD[j][i], thatValuesD[j][i]));
-            if (thisValuesF != null)
-                for (int i=0; i<getLength(); i++)
-                    thisValuesF[j][i] = (float)(Math.pow(thisValuesF[j][i], thatValuesF[j][i]));
           }
           break;
 
@@ -2513,12 +2533,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             else {
               outUnits[j] = null;
             }
-            if (thisValuesD != null)
-                for (int i=0; i<getLength(); i++)
-                    thisValuesD[j][i] = (double)(Math.pow(thatValuesD[j][i], thisValuesD[j][i]));
-            if (thisValuesF != null)
-                for (int i=0; i<getLength(); i++)
-                    thisValuesF[j][i] = (float)(Math.pow(thatValuesF[j][i], thisValuesF[j][i]));
           }
           break;
 
@@ -2548,58 +2562,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             switch(op) {
               case ATAN2:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.atan2(thisValuesD[j][i], thatValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.atan2(thisValuesF[j][i], thatValuesF[j][i]));
-                  outUnits[j] = CommonUnit.radian;
-                  break;
-              case ATAN2_DEGREES:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Data.RADIANS_TO_DEGREES * Math.atan2(thisValuesD[j][i], thatValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Data.RADIANS_TO_DEGREES * Math.atan2(thisValuesF[j][i], thatValuesF[j][i]));
-                outUnits[j] = CommonUnit.degree;
-                break;
               case INV_ATAN2:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.atan2(thatValuesD[j][i], thisValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.atan2(thatValuesF[j][i], thisValuesF[j][i]));
-                  outUnits[j] = CommonUnit.radian;
+                outUnits[j] = CommonUnit.radian;
                 break;
+              case ATAN2_DEGREES:
               case INV_ATAN2_DEGREES:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Data.RADIANS_TO_DEGREES * Math.atan2(thatValuesD[j][i], thisValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Data.RADIANS_TO_DEGREES * Math.atan2(thatValuesF[j][i], thisValuesF[j][i]));
-
-                  outUnits[j] = CommonUnit.degree;
-                  break;
+                outUnits[j] = CommonUnit.degree;
+                break;
               case REMAINDER:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] %= thatValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] %= thatValuesF[j][i];
                 outUnits[j] = thisUnits[j];
                 break;
               case INV_REMAINDER:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = thatValuesD[j][i] % thisValuesD[j][i];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = thatValuesF[j][i] % thisValuesF[j][i];
                 outUnits[j] = thatUnits[j];
                 break;
             }
@@ -2610,6 +2583,21 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
           throw new ArithmeticException("FlatField.binary: illegal operation");
       }
 
+      /*
+       * Apply the operation to the (unit converted) values, in parallel
+       * for large fields.
+       */
+      final int fop = op;
+      final double[][] thisD = thisValuesD;
+      final double[][] thatD = thatValuesD;
+      final float[][] thisF = thisValuesF;
+      final float[][] thatF = thatValuesF;
+      Parallel.forRange(getLength(), new Parallel.Chunk() {
+        public void run(int start, int end) {
+          binaryValues(fop, thisD, thatD, thisF, thatF, start, end);
+        }
+      });
+
       /*
        * Compute ErrorEstimate-s for the result.
        */
@@ -2830,48 +2818,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                       outUnits[j] = null;
                   }
               }
-              switch (op) {
-              case ADD:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] += thatValues[j];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] += thatValues[j];
-                  break;
-              case SUBTRACT:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] -= thatValues[j];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] -= thatValues[j];
-                  break;
-              case INV_SUBTRACT:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(thatValues[j] - thisValuesD[j][i]);
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(thatValues[j] - thisValuesF[j][i]);
-                  break;
-              case MAX:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.max(thisValuesD[j][i], thatValues[j]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.max(thisValuesF[j][i], thatValues[j]));
-                  break;
-              case MIN:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.min(thisValuesD[j][i], thatValues[j]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.min(thisValuesF[j][i], thatValues[j]));
-                  break;
-              }
           }
           break;
 
@@ -2921,32 +2867,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                       break;
                   }
               }
-              switch(op) {
-              case MULTIPLY:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] *= thatValues[j];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] *= thatValues[j];
-                  break;
-              case DIVIDE:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] /= thatValues[j];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] /= thatValues[j];
-                  break;
-              case INV_DIVIDE:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(thatValues[j] / thisValuesD[j][i]);
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(thatValues[j] / thisValuesF[j][i]);
-                  break;
-              }
           }
           break;
 
@@ -2976,12 +2896,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               else {
                   outUnits[j] = null;
               }
-              if (thisValuesD != null)
-                  for (int i=0; i<getLength(); i++)
-                      thisValuesD[j][i] = (double)(Math.pow(thisValuesD[j][i], thatValues[j]));
-              if (thisValuesF != null)
-                  for (int i=0; i<getLength(); i++)
-                      thisValuesF[j][i] = (float)(Math.pow(thisValuesF[j][i], thatValues[j]));
           }
           break;
 
@@ -3011,12 +2925,6 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               else {
                   outUnits[j] = null;
               }
-              if (thisValuesD != null)
-                  for (int i=0; i<getLength(); i++)
-                      thisValuesD[j][i] = (double)(Math.pow(thatValues[j], thisValuesD[j][i]));
-              if (thisValuesF != null)
-                  for (int i=0; i<getLength(); i++)
-                      thisValuesF[j][i] = (float)(Math.pow(thatValues[j], thisValuesF[j][i]));
           }
           break;
 
@@ -3043,61 +2951,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
               }
               switch(op) {
               case ATAN2:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.atan2(thisValuesD[j][i], thatValues[j]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.atan2(thisValuesF[j][i], thatValues[j]));
-                  outUnits[j] = CommonUnit.radian;
-                  break;
-              case ATAN2_DEGREES:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Data.RADIANS_TO_DEGREES * 
-                                                       Math.atan2(thisValuesD[j][i], thatValues[j]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Data.RADIANS_TO_DEGREES * 
-                                                       Math.atan2(thisValuesF[j][i], thatValues[j]));
-                  outUnits[j] = CommonUnit.degree;
-                  break;
               case INV_ATAN2:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Math.atan2(thatValues[j], thisValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Math.atan2(thatValues[j], thisValuesF[j][i]));
                   outUnits[j] = CommonUnit.radian;
                   break;
+              case ATAN2_DEGREES:
               case INV_ATAN2_DEGREES:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(Data.RADIANS_TO_DEGREES * 
-                                                       Math.atan2(thatValues[j], thisValuesD[j][i]));
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(Data.RADIANS_TO_DEGREES * 
-                                                       Math.atan2(thatValues[j], thisValuesF[j][i]));
                   outUnits[j] = CommonUnit.degree;
                   break;
               case REMAINDER:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] %= thatValues[j];
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] %= thatValues[j];
                   outUnits[j] = thisUnits[j];
                   break;
               case INV_REMAINDER:
-                  if (thisValuesD != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesD[j][i] = (double)(thatValues[j] % thisValuesD[j][i]);
-                  if (thisValuesF != null)
-                      for (int i=0; i<getLength(); i++)
-                          thisValuesF[j][i] = (float)(thatValues[j] % thisValuesF[j][i]);
                   outUnits[j] = thatUnits[j];
                   break;
               }
@@ -3108,6 +2972,20 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
           throw new ArithmeticException("FlatField.binary: illegal operation");
       }
 
+      /*
+       * Apply the operation to the (unit converted) values, in parallel
+       * for large fields.
+       */
+      final int fop = op;
+      final double[][] thisD = thisValuesD;
+      final float[][] thisF = thisValuesF;
+      final double[] thatV = thatValues;
+      Parallel.forRange(getLength(), new Parallel.Chunk() {
+        public void run(int start, int end) {
+          binaryValues(fop, thisD, thisF, thatV, start, end);
+        }
+      });
+
       /*
        * Compute ErrorEstimate-s for the result.
        */
@@ -3145,6 +3023,264 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
     }
   }
 
+  /**
+   * Apply a binary operation to samples [start, end) of two sets of
+   * values in the same (already converted) units; the result replaces
+   * the first operand.  Exactly one of the double and float pairs is
+   * non-null.
+   */
+  static void binaryValues(int op, double[][] thisD, double[][] thatD,
+                           float[][] thisF, float[][] thatF,
+                           int start, int end) {
+    int dim = (thisD != null) ? thisD.length : thisF.length;
+    for (int j=0; j<dim; j++) {
+      if (thisD != null) {
+        double[] a = thisD[j];
+        double[] b = thatD[j];
+        switch (op) {
+          case ADD:
+            for (int i=start; i<end; i++) a[i] += b[i];
+            break;
+          case SUBTRACT:
+            for (int i=start; i<end; i++) a[i] -= b[i];
+            break;
+          case INV_SUBTRACT:
+            for (int i=start; i<end; i++) a[i] = b[i] - a[i];
+            break;
+          case MAX:
+            for (int i=start; i<end; i++) a[i] = Math.max(a[i], b[i]);
+            break;
+          case MIN:
+            for (int i=start; i<end; i++) a[i] = Math.min(a[i], b[i]);
+            break;
+          case MULTIPLY:
+            for (int i=start; i<end; i++) a[i] *= b[i];
+            break;
+          case DIVIDE:
+            for (int i=start; i<end; i++) a[i] /= b[i];
+            break;
+          case INV_DIVIDE:
+            for (int i=start; i<end; i++) a[i] = b[i] / a[i];
+            break;
+          case POW:
+            for (int i=start; i<end; i++) a[i] = Math.pow(a[i], b[i]);
+            break;
+          case INV_POW:
+            for (int i=start; i<end; i++) a[i] = Math.pow(b[i], a[i]);
+            break;
+          case ATAN2:
+            for (int i=start; i<end; i++) a[i] = Math.atan2(a[i], b[i]);
+            break;
+          case ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(a[i], b[i]);
+            }
+            break;
+          case INV_ATAN2:
+            for (int i=start; i<end; i++) a[i] = Math.atan2(b[i], a[i]);
+            break;
+          case INV_ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(b[i], a[i]);
+            }
+            break;
+          case REMAINDER:
+            for (int i=start; i<end; i++) a[i] %= b[i];
+            break;
+          case INV_REMAINDER:
+            for (int i=start; i<end; i++) a[i] = b[i] % a[i];
+            break;
+        }
+      }
+      if (thisF != null) {
+        float[] a = thisF[j];
+        float[] b = thatF[j];
+        switch (op) {
+          case ADD:
+            for (int i=start; i<end; i++) a[i] += b[i];
+            break;
+          case SUBTRACT:
+            for (int i=start; i<end; i++) a[i] -= b[i];
+            break;
+          case INV_SUBTRACT:
+            for (int i=start; i<end; i++) a[i] = b[i] - a[i];
+            break;
+          case MAX:
+            for (int i=start; i<end; i++) a[i] = Math.max(a[i], b[i]);
+            break;
+          case MIN:
+            for (int i=start; i<end; i++) a[i] = Math.min(a[i], b[i]);
+            break;
+          case MULTIPLY:
+            for (int i=start; i<end; i++) a[i] *= b[i];
+            break;
+          case DIVIDE:
+            for (int i=start; i<end; i++) a[i] /= b[i];
+            break;
+          case INV_DIVIDE:
+            for (int i=start; i<end; i++) a[i] = b[i] / a[i];
+            break;
+          case POW:
+            for (int i=start; i<end; i++) a[i] = (float) Math.pow(a[i], b[i]);
+            break;
+          case INV_POW:
+            for (int i=start; i<end; i++) a[i] = (float) Math.pow(b[i], a[i]);
+            break;
+          case ATAN2:
+            for (int i=start; i<end; i++) a[i] = (float) Math.atan2(a[i], b[i]);
+            break;
+          case ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = (float) (Data.RADIANS_TO_DEGREES * Math.atan2(a[i], b[i]));
+            }
+            break;
+          case INV_ATAN2:
+            for (int i=start; i<end; i++) a[i] = (float) Math.atan2(b[i], a[i]);
+            break;
+          case INV_ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = (float) (Data.RADIANS_TO_DEGREES * Math.atan2(b[i], a[i]));
+            }
+            break;
+          case REMAINDER:
+            for (int i=start; i<end; i++) a[i] %= b[i];
+            break;
+          case INV_REMAINDER:
+            for (int i=start; i<end; i++) a[i] = b[i] % a[i];
+            break;
+        }
+      }
+    }
+  }
+
+  /**
+   * Apply a binary operation to samples [start, end) of values and a
+   * scalar per component, in the same (already converted) units; the
+   * result replaces the values.  Exactly one of thisD and thisF is
+   * non-null.
+   */
+  static void binaryValues(int op, double[][] thisD, float[][] thisF,
+                           double[] that, int start, int end) {
+    int dim = (thisD != null) ? thisD.length : thisF.length;
+    for (int j=0; j<dim; j++) {
+      double b = that[j];
+      if (thisD != null) {
+        double[] a = thisD[j];
+        switch (op) {
+          case ADD:
+            for (int i=start; i<end; i++) a[i] += b;
+            break;
+          case SUBTRACT:
+            for (int i=start; i<end; i++) a[i] -= b;
+            break;
+          case INV_SUBTRACT:
+            for (int i=start; i<end; i++) a[i] = b - a[i];
+            break;
+          case MAX:
+            for (int i=start; i<end; i++) a[i] = Math.max(a[i], b);
+            break;
+          case MIN:
+            for (int i=start; i<end; i++) a[i] = Math.min(a[i], b);
+            break;
+          case MULTIPLY:
+            for (int i=start; i<end; i++) a[i] *= b;
+            break;
+          case DIVIDE:
+            for (int i=start; i<end; i++) a[i] /= b;
+            break;
+          case INV_DIVIDE:
+            for (int i=start; i<end; i++) a[i] = b / a[i];
+            break;
+          case POW:
+            for (int i=start; i<end; i++) a[i] = Math.pow(a[i], b);
+            break;
+          case INV_POW:
+            for (int i=start; i<end; i++) a[i] = Math.pow(b, a[i]);
+            break;
+          case ATAN2:
+            for (int i=start; i<end; i++) a[i] = Math.atan2(a[i], b);
+            break;
+          case ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(a[i], b);
+            }
+            break;
+          case INV_ATAN2:
+            for (int i=start; i<end; i++) a[i] = Math.atan2(b, a[i]);
+            break;
+          case INV_ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = Data.RADIANS_TO_DEGREES * Math.atan2(b, a[i]);
+            }
+            break;
+          case REMAINDER:
+            for (int i=start; i<end; i++) a[i] %= b;
+            break;
+          case INV_REMAINDER:
+            for (int i=start; i<end; i++) a[i] = b % a[i];
+            break;
+        }
+      }
+      if (thisF != null) {
+        float[] a = thisF[j];
+        switch (op) {
+          case ADD:
+            for (int i=start; i<end; i++) a[i] += b;
+            break;
+          case SUBTRACT:
+            for (int i=start; i<end; i++) a[i] -= b;
+            break;
+          case INV_SUBTRACT:
+            for (int i=start; i<end; i++) a[i] = (float) (b - a[i]);
+            break;
+          case MAX:
+            for (int i=start; i<end; i++) a[i] = (float) Math.max(a[i], b);
+            break;
+          case MIN:
+            for (int i=start; i<end; i++) a[i] = (float) Math.min(a[i], b);
+            break;
+          case MULTIPLY:
+            for (int i=start; i<end; i++) a[i] *= b;
+            break;
+          case DIVIDE:
+            for (int i=start; i<end; i++) a[i] /= b;
+            break;
+          case INV_DIVIDE:
+            for (int i=start; i<end; i++) a[i] = (float) (b / a[i]);
+            break;
+          case POW:
+            for (int i=start; i<end; i++) a[i] = (float) Math.pow(a[i], b);
+            break;
+          case INV_POW:
+            for (int i=start; i<end; i++) a[i] = (float) Math.pow(b, a[i]);
+            break;
+          case ATAN2:
+            for (int i=start; i<end; i++) a[i] = (float) Math.atan2(a[i], b);
+            break;
+          case ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = (float) (Data.RADIANS_TO_DEGREES * Math.atan2(a[i], b));
+            }
+            break;
+          case INV_ATAN2:
+            for (int i=start; i<end; i++) a[i] = (float) Math.atan2(b, a[i]);
+            break;
+          case INV_ATAN2_DEGREES:
+            for (int i=start; i<end; i++) {
+              a[i] = (float) (Data.RADIANS_TO_DEGREES * Math.atan2(b, a[i]));
+            }
+            break;
+          case REMAINDER:
+            for (int i=start; i<end; i++) a[i] %= b;
+            break;
+          case INV_REMAINDER:
+            for (int i=start; i<end; i++) a[i] = (float) (b % a[i]);
+            break;
+        }
+      }
+    }
+  }
+
 
     /** 
      * Return new FlatField with value 'this op'.
@@ -3176,6 +3312,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             throw new TypeException("unary: new_type may not be null");
         }
 
+        // defer the operation if lazy evaluation is on and allows it
+        if (LazyFlatField.isLazy()) {
+            FlatField lazy =
+                LazyFlatField.unary(this, op, new_type, error_mode);
+            if (lazy != null) return lazy;
+        }
+
         Unit[] units_out = new Unit[TupleDimension];
 
         /*
@@ -3199,22 +3342,85 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
         }
 
 
+        /*
+         * Apply the operation, in parallel for large fields.  Every chunk
+         * computes the same output Units; keep those of the first.
+         */
+        final int fop = op;
+        final double[][] fvaluesD = valuesD;
+        final float[][] fvaluesF = valuesF;
+        final Unit[] funits_in = units_in;
+        final Unit[] funits_out = units_out;
+        Parallel.forRange(getLength(), new Parallel.Chunk() {
+            public void run(int start, int end) {
+                Unit[] chunk_units = (start == 0) ? funits_out
+                                                  : new Unit[TupleDimension];
+                unaryValues(fop, fvaluesD, fvaluesF, funits_in, chunk_units,
+                            start, end);
+            }
+        });
+
+        // compute ErrorEstimates for result
+        int j;
+        ErrorEstimate[] errors_out = new ErrorEstimate[TupleDimension];
+        for (j=0; j<TupleDimension; j++) {
+            if (error_mode == NO_ERRORS || errors_in[j] == null) {
+                errors_out[j] = null;
+            }
+            else {
+                if (valuesD != null)
+                    errors_out[j] = new ErrorEstimate(valuesD[j], units_out[j], op,
+                                                      errors_in[j], error_mode);
+                if (valuesF != null)
+                    errors_out[j] = new ErrorEstimate(valuesF[j], units_out[j], op,
+                                                      errors_in[j], error_mode);
+            }
+        }
+
+        // create a FlatField for return
+        /*- TDR July 1998
+          FlatField new_field = cloneDouble(units_out, errors_out);
+        */
+
+        FlatField newField=null;
+        if (valuesD!=null) {
+            newField = cloneDouble (new_type, units_out, errors_out, valuesD);
+        }
+        if (valuesF!=null) {
+            newField = cloneFloat (new_type, units_out, errors_out, valuesF);
+        }
+
+
+
+        // new_field.DoubleRange = values;
+        newField.clearMissing();
+        return newField;
+    }
+
+    /**
+     * Apply a unary operation to samples [start, end) of values in
+     * rational units, and set the output Units.  Exactly one of valuesD
+     * and valuesF is non-null.
+     */
+    static void unaryValues(int op, double[][] valuesD, float[][] valuesF,
+                            Unit[] units_in, Unit[] units_out,
+                            int start, int end) {
         int i, j; // loop indices
         double[] valuesDJ;
         float[] valuesFJ;
 
         switch (op) {
         case ABS:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = Math.abs(valuesDJ[i]);
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = Math.abs(valuesFJ[i]);
                     }
                 }
@@ -3222,16 +3428,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ACOS:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.acos(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.acos(valuesFJ[i]));
                     }
                 }
@@ -3240,16 +3446,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ACOS_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.acos(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.acos(valuesFJ[i]));
                     }
                 }
@@ -3258,16 +3464,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ASIN:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.asin(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.asin(valuesFJ[i]));
                     }
                 }
@@ -3276,16 +3482,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ASIN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.asin(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.asin(valuesFJ[i]));
                     }
                 }
@@ -3294,16 +3500,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ATAN:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.atan(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.atan(valuesFJ[i]));
                     }
                 }
@@ -3312,16 +3518,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ATAN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Data.RADIANS_TO_DEGREES * Math.atan(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Data.RADIANS_TO_DEGREES * Math.atan(valuesFJ[i]));
                     }
                 }
@@ -3329,16 +3535,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case CEIL:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.ceil(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.ceil(valuesFJ[i]));
                     }
                 }
@@ -3348,17 +3554,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             break;
         case COS:
             // do cos in degrees, unless unit is radians
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (CommonUnit.degree.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.cos(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.cos(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3367,13 +3573,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.cos(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.cos(valuesFJ[i]));
                         }
                     }
@@ -3383,19 +3589,19 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case COS_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
 
 
                 if (CommonUnit.radian.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.cos(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.cos(valuesFJ[i]));
                         }
                     }
@@ -3404,13 +3610,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.cos(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.cos(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3421,16 +3627,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case EXP:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.exp(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.exp(valuesFJ[i]));
                     }
                 }
@@ -3440,16 +3646,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case FLOOR:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.floor(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.floor(valuesFJ[i]));
                     }
                 }
@@ -3458,16 +3664,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case LOG:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.log(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.log(valuesFJ[i]));
                     }
                 }
@@ -3477,16 +3683,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case RINT:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.rint(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.rint(valuesFJ[i]));
                     }
                 }
@@ -3495,16 +3701,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case ROUND:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = Math.round(valuesDJ[i]);
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = Math.round(valuesFJ[i]);
                     }
                 }
@@ -3513,17 +3719,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case SIN:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (CommonUnit.degree.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.sin(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.sin(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3532,13 +3738,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.sin(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.sin(valuesFJ[i]));
                         }
                     }
@@ -3549,18 +3755,18 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case SIN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
 
                 if (CommonUnit.radian.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.sin(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.sin(valuesFJ[i]));
                         }
                     }
@@ -3569,13 +3775,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.sin(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.sin(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3586,16 +3792,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case SQRT:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = (double)(Math.sqrt(valuesDJ[i]));
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = (float)(Math.sqrt(valuesFJ[i]));
                     }
                 }
@@ -3620,17 +3826,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case TAN:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (CommonUnit.degree.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.tan(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.tan(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3639,13 +3845,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.tan(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.tan(valuesFJ[i]));
                         }
                     }
@@ -3656,17 +3862,17 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case TAN_DEGREES:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (CommonUnit.radian.equals(units_in[j])) {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.tan(valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.tan(valuesFJ[i]));
                         }
                     }
@@ -3675,13 +3881,13 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
                 else {
                     if (valuesD != null) {
                         valuesDJ = valuesD[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesDJ[i] = (double)(Math.tan(Data.DEGREES_TO_RADIANS * valuesDJ[i]));
                         }
                     }
                     if (valuesF != null) {
                         valuesFJ = valuesF[j];
-                        for (i=0; i<getLength(); i++) {
+                        for (i=start; i<end; i++) {
                             valuesFJ[i] = (float)(Math.tan(Data.DEGREES_TO_RADIANS * valuesFJ[i]));
                         }
                     }
@@ -3692,16 +3898,16 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case NEGATE:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 if (valuesD != null) {
                     valuesDJ = valuesD[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesDJ[i] = -valuesDJ[i];
                     }
                 }
                 if (valuesF != null) {
                     valuesFJ = valuesF[j];
-                    for (i=0; i<getLength(); i++) {
+                    for (i=start; i<end; i++) {
                         valuesFJ[i] = -valuesFJ[i];
                     }
                 }
@@ -3710,46 +3916,12 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
             }
             break;
         case NOP:
-            for (j=0; j<TupleDimension; j++) {
+            for (j=0; j<units_out.length; j++) {
                 units_out[j] = units_in[j];
             }
             break;
         }
 
-        // compute ErrorEstimates for result
-        ErrorEstimate[] errors_out = new ErrorEstimate[TupleDimension];
-        for (j=0; j<TupleDimension; j++) {
-            if (error_mode == NO_ERRORS || errors_in[j] == null) {
-                errors_out[j] = null;
-            }
-            else {
-                if (valuesD != null)
-                    errors_out[j] = new ErrorEstimate(valuesD[j], units_out[j], op,
-                                                      errors_in[j], error_mode);
-                if (valuesF != null)
-                    errors_out[j] = new ErrorEstimate(valuesF[j], units_out[j], op,
-                                                      errors_in[j], error_mode);
-            }
-        }
-
-        // create a FlatField for return
-        /*- TDR July 1998
-          FlatField new_field = cloneDouble(units_out, errors_out);
-        */
-
-        FlatField newField=null;
-        if (valuesD!=null) {
-            newField = cloneDouble (new_type, units_out, errors_out, valuesD);
-        }
-        if (valuesF!=null) {
-            newField = cloneFloat (new_type, units_out, errors_out, valuesF);
-        }
-
-
-
-        // new_field.DoubleRange = values;
-        newField.clearMissing();
-        return newField;
     }
 
 
@@ -4571,27 +4743,50 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // create an array containing all indices of 'this'
     int length = set.getLength();
-    int[] wedge = set.getWedge();
-
-    // get values from wedge and possibly transform coordinates
-    float[][] vals = set.indexToValue(wedge);
+    int[] wedge;
+
+    // interpolation plans depend only on the Sets, so they are cached
+    // unless sampling errors may be needed
+    int plan_mode =
+      (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) ?
+      WEIGHTED_AVERAGE : NEAREST_NEIGHBOR;
+    ResamplePlan.Key plan_key = (error_mode != NO_ERRORS) ? null :
+      new ResamplePlan.Key(((FunctionType) Type).getDomain(), domainSet,
+                           getDomainCoordinateSystem(), getDomainUnits(),
+                           ((SetType) set.getType()).getDomain(), set,
+                           plan_mode);
+    ResamplePlan plan = ResamplePlan.get(plan_key);
+
+    float[][] vals = null;
+    float[][] oldvals = null;
     // holder for sampling errors of transformed set; these are
     // only useful to help estmate range errors due to resampling
     ErrorEstimate[] errors_out = new ErrorEstimate[dim];
-    float[][] oldvals = vals;
-    visad.util.Trace.call1("FlatField.resample:transformCoords");
-    try {  // this is only to throw a more meaningful message
-      vals = CoordinateSystem.transformCoordinates(
-                      ((FunctionType) Type).getDomain(), 
-                      getDomainCoordinateSystem(),
-                      getDomainUnits(), errors_out,
-                      ((SetType) set.getType()).getDomain(), coord_sys,
-                      units, errors, vals, false);
-    } catch (UnitException ue) {
-        throw new VisADException("Sampling set is not compatible with domain");
+    boolean coord_transform;
+    if (plan != null && !plan.coordTransform) {
+      wedge = plan.wedge;
+      coord_transform = false;
+    }
+    else {
+      wedge = set.getWedge();
+
+      // get values from wedge and possibly transform coordinates
+      vals = set.indexToValue(wedge);
+      oldvals = vals;
+      visad.util.Trace.call1("FlatField.resample:transformCoords");
+      try {  // this is only to throw a more meaningful message
+        vals = CoordinateSystem.transformCoordinates(
+                        ((FunctionType) Type).getDomain(), 
+                        getDomainCoordinateSystem(),
+                        getDomainUnits(), errors_out,
+                        ((SetType) set.getType()).getDomain(), coord_sys,
+                        units, errors, vals, false);
+      } catch (UnitException ue) {
+          throw new VisADException("Sampling set is not compatible with domain");
+      }
+      visad.util.Trace.call2("FlatField.resample:transformCoords");
+      coord_transform = !(vals == oldvals);
     }
-    visad.util.Trace.call2("FlatField.resample:transformCoords");
-    boolean coord_transform = !(vals == oldvals);
 
     // check whether we need to do sampling error calculations
     boolean sampling_errors = (error_mode != NO_ERRORS);
@@ -4614,94 +4809,30 @@ public class FlatField extends FieldImpl implements FlatFieldIface {
 
     // WLH 20 July 2000
     float[][] values = null;
+    RangeView[] views = null;
     if (sampling_errors || (10 * length > getLength()) || 
         !shouldBeDouble() || sampling_mode == WEIGHTED_AVERAGE) {
-      values = unpackFloats(false);
-      // values = Set.doubleToFloat(unpackValues());
+      if (!sampling_errors && anyPackedRange()) {
+        // decode packed range values as they are gathered, rather
+        // than unpacking every sample
+        views = getRangeViews();
+      }
+      else {
+        values = unpackFloats(false);
+        // values = Set.doubleToFloat(unpackValues());
+      }
     }
 
     float[][] new_values = new float[TupleDimension][length];
-    float[] new_valuesJ;
-    float[] valuesJ;
 
-    if (sampling_mode == WEIGHTED_AVERAGE && domainSet instanceof SimpleSet) {
+    if (plan_mode == WEIGHTED_AVERAGE) {
       // resample by interpolation
-      int[][] indices = new int[length][];
-      float[][] coefs = new float[length][];
-      ((SimpleSet) domainSet).valueToInterp(vals, indices, coefs);
-
-/* DEBUG
-// System.out.println("DomainSet = " + domainSet);
-// System.out.println("set = " + set);
-
-// for (i=0; i<length; i++) {
-boolean pr = false;
-int ii = length;
-if (ii > 0) ii = 1;
-if (indices == null) ii = 0;
-for (i=0; i<ii; i++) {
-  if (indices[i] != null && coefs[i] != null) {
-    pr = true;
-    if (i == 0) {
-      System.out.println("DomainSet = " + domainSet);
-      System.out.println("set = " + set);
-    }
-    System.out.println("vals[0][" + i + "] = " + vals[0][i] +
-                      " vals[1][" + i + "] = " + vals[1][i]);
-    String s = "indices[" + i + "] = ";
-    for (j=0; j<indices[i].length; j++) s = s + indices[i][j] + " ";
-    System.out.println(s);
-    s = "coefs[" + i + "] = ";
-    for (j=0; j<coefs[i].length; j++) s = s + coefs[i][j] + " ";
-    System.out.println(s);
-  }
-}
-*/
-      // WLH 20 July 2000
-      if (values != null) {
-        for (j=0; j<TupleDimension; j++) {
-          valuesJ = values[j];
-          new_valuesJ = new_values[j];
-          for (i=0; i<length; i++) {
-            float v = Float.NaN;
-            int len = indices[i] == null ? 0 : indices[i].length;
-            if (len > 0) {
-              v = valuesJ[indices[i][0]] * coefs[i][0];
-              for (k=1; k<len; k++) {
-                v += valuesJ[indices[i][k]] * coefs[i][k];
-              }
-              new_valuesJ[wedge[i]] = v;
-            }
-            else { // values outside grid
-              new_valuesJ[wedge[i]] = Float.NaN;
-            }
-          }
-        }
+      if (plan == null) {
+        plan = ResamplePlan.interpolate((SimpleSet) domainSet, vals, wedge,
+                                        coord_transform);
+        ResamplePlan.put(plan_key, plan);
       }
-      else {
-        for (i=0; i<length; i++) {
-          int len = indices[i] == null ? 0 : indices[i].length;
-          if (len > 0) {
-            float[][] xvals = new float[len][];
-            for (k = 0; k<len; k++) {
-              xvals[k] = unpackFloats(indices[i][k]);
-            }
-            for (j=0; j<TupleDimension; j++) {
-              float v = xvals[0][j] * coefs[i][0];
-              for (k=1; k<len; k++) v += xvals[k][j] * coefs[i][k];
-              new_values[j][wedge[i]] = v;
-            }
-          }         
-          else { // values outside grid
-            for (j=0; j<TupleDimension; j++) {
-              new_values[j][wedge[i]] = Float.NaN;
-            }
-          }
-        }
-      }
-/* DEBUG
-if (pr) System.out.println("value = " + new_values[0][0]);
-*/
+      plan.apply(this, values, views, new_values);
 
       if (sampling_errors) {
         int[][] error_indices = new int[2 * dim][];
@@ -4735,56 +4866,11 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     }
     else { // NEAREST_NEIGHBOR or set is not SimpleSet
       // simple resampling
-      int[] indices = domainSet.valueToIndex(vals);
-/* DEBUG
-// System.out.println("DomainSet = " + domainSet);
-// System.out.println("set = " + set);
-
-// for (i=0; i<length; i++) {
-boolean pr = false;
-int ii = length;
-if (ii > 0) ii = 1;
-if (indices == null) ii = 0;
-for (i=0; i<ii; i++) {
-  if (indices[i] >= 0) {
-    pr = true;
-    if (i == 0) {
-      System.out.println("DomainSet = " + domainSet);
-      System.out.println("set = " + set);
-    }
-    System.out.println("NEAREST_NEIGHBOR indices[" + i + "] = " + indices[i]);
-  }
-}
-*/
-      // WLH 20 July 2000
-      if (values != null) {
-        for (j=0; j<TupleDimension; j++) {
-          valuesJ = values[j];
-          new_valuesJ = new_values[j];
-          for (i=0; i<length; i++) {
-            new_valuesJ[wedge[i]] =
-              ((indices[i] >= 0) ? valuesJ[indices[i]]: Float.NaN);
-          }
-        }
+      if (plan == null) {
+        plan = ResamplePlan.nearest(domainSet, vals, wedge, coord_transform);
+        ResamplePlan.put(plan_key, plan);
       }
-      else {
-        for (i=0; i<length; i++) {
-          if (indices[i] >= 0) {
-            float[] xvals = unpackFloats(indices[i]);
-            for (j=0; j<TupleDimension; j++) {
-              new_values[j][wedge[i]] = xvals[j];
-            }
-          }
-          else { // values outside grid
-            for (j=0; j<TupleDimension; j++) {
-              new_values[j][wedge[i]] = Float.NaN;
-            }
-          }
-        }
-      }
-/* DEBUG
-if (pr) System.out.println("value = " + new_values[0][0]);
-*/
+      plan.apply(this, values, views, new_values);
 
       if (sampling_errors) {
         int[] error_indices = domainSet.valueToIndex(error_values);
@@ -5797,6 +5883,14 @@ if (pr) System.out.println("value = " + new_values[0][0]);
     }
 
     FlatField fld = (FlatField )obj;
+    if (fld instanceof LazyFlatField) {
+      try {
+        ((LazyFlatField) fld).evaluate();
+      }
+      catch (VisADException e) {
+        return false;
+      }
+    }
 
     if (RangeMode == null || fld.RangeMode == null) {
       if (RangeMode != null || fld.RangeMode != null) {
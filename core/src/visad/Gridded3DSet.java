@@ -27,8 +27,11 @@ MA 02111-1307, USA
 package visad;
 
 import java.io.InputStreamReader;
+import java.lang.ref.SoftReference;
 import java.util.Enumeration;
 
+import visad.util.Parallel;
+
 /**
  * Gridded3DSet represents a finite set of samples of R^3.
  * <P>
@@ -42,6 +45,20 @@ public class Gridded3DSet extends GriddedSet {
 
   float LowX, HiX, LowY, HiY, LowZ, HiZ;
 
+  /** minimum number of samples for which valueToGrid builds a cell
+      index */
+  private static final int CELL_INDEX_MIN = 4096;
+
+  /** maximum number of buckets in a cell index */
+  private static final int CELL_INDEX_MAX = 1 << 21;
+
+  private static volatile boolean cellIndexEnabled =
+    Boolean.parseBoolean(System.getProperty("visad.gridded3d.cellIndex",
+                                            "true"));
+
+  /** spatial index over grid boxes, built on first use */
+  private transient volatile CellIndex cellIndex = null;
+
   /**
    * a 3-D set whose topology is a lengthX x lengthY x lengthZ grid, with null
    * errors, CoordinateSystem and Units are defaults from type
@@ -1061,7 +1078,6 @@ public class Gridded3DSet extends GriddedSet {
    */
   public float[][] valueToGrid(float[][] value, int[] guess) throws VisADException {
 
-    float[][]mySamples = getMySamples();
     if (value.length < DomainDimension) {
       throw new SetException("Gridded3DSet.valueToGrid: value dimension "
           + value.length + " not equal to Domain dimension " + DomainDimension);
@@ -1081,8 +1097,34 @@ public class Gridded3DSet extends GriddedSet {
     // Avoid any ArrayOutOfBounds exceptions by taking the shortest length
     int length = Math.min(value[0].length, value[1].length);
     length = Math.min(length, value[2].length);
-    float[][] grid = new float[ManifoldDimension][length];
+    final float[][] grid = new float[ManifoldDimension][length];
+
+    // with a cell index each value is located independently of the
+    // others, so long arrays of values are split across threads
+    final CellIndex index = (guess == null) ? getCellIndex() : null;
+    if (index != null) {
+      final float[][] fvalue = value;
+      Parallel.forRange(length, new Parallel.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          valueToGrid(fvalue, null, grid, index, start, end);
+        }
+      });
+    }
+    else {
+      valueToGrid(value, guess, grid, null, 0, length);
+    }
+    return grid;
+  }
 
+  /**
+   * locate values start through end - 1, writing grid coordinates into
+   * grid; starting boxes come from index if it is not null, else from
+   * guess and the previous value
+   */
+  private void valueToGrid(float[][] value, int[] guess, float[][] grid,
+                           CellIndex index, int start, int end) {
+
+    float[][]mySamples = getMySamples();
     // (gx, gy, gz) is the current grid box guess
     int gx = (LengthX-1)/2; 
     int gy = (LengthY-1)/2; 
@@ -1111,7 +1153,7 @@ public class Gridded3DSet extends GriddedSet {
     float[] X = new float[3];
     float[] Y = new float[3];
 
-    for (int i = 0; i < length; i++) {
+    for (int i = start; i < end; i++) {
       // a flag indicating whether point is off the grid
       boolean offgrid = false;
       // the first guess should be the last box unless there was no solution
@@ -1130,7 +1172,7 @@ public class Gridded3DSet extends GriddedSet {
         continue;
       }
       // test for missing
-      if ((i != 0) && grid[0][i - 1] != grid[0][i - 1]) {
+      if ((i != start) && grid[0][i - 1] != grid[0][i - 1]) {
         // gx = (LengthX-1)/2;
         // gy = (LengthY-1)/2;
         // gz = (LengthZ-1)/2;
@@ -1149,11 +1191,19 @@ public class Gridded3DSet extends GriddedSet {
       float sx = mySamples[0][gii];
       float sy = mySamples[1][gii];
       float sz = mySamples[2][gii];
+      if (index != null) {
+        // missing values are never on the grid
+        if (v_x != v_x || v_y != v_y || v_z != v_z) continue;
+        int cell = index.getCell(v_x, v_y, v_z);
+        gx = cell % LengthX;
+        gy = (cell / LengthX) % LengthY;
+        gz = cell / (LengthX * LengthY);
+      }
       //GHANSHAM: Added this if condition. It tries to get start point
       //when i = 0 (first time) or when the last guess is not a valid value
-      if (i == 0 || ((i != 0) && grid[0][i - 1] != grid[0][i - 1])) {
+      else if (i == start || ((i != start) && grid[0][i - 1] != grid[0][i - 1])) {
         // TDR: special check if i==0 when a first value guess is supplied.
-        if (i == 0 && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
+        if (i == start && guess != null && guess[0] >= 0 && guess[1] >= 0 && guess[2] >= 0) {
           gx = guess[0];
           gy = guess[1];
           gz = guess[2];
@@ -2304,8 +2354,6 @@ public class Gridded3DSet extends GriddedSet {
       guess[1] = gy;
       guess[2] = gz;
     }
-    
-    return grid;
   }
 
   public float[] getStartPoint(float x, float y, float z) {
@@ -2338,6 +2386,212 @@ public class Gridded3DSet extends GriddedSet {
     return new float[] { gx, gy, gz };
   }
 
+  /**
+   * Turn the cell index used by valueToGrid on or off.  The default
+   * comes from the system property <code>visad.gridded3d.cellIndex</code>
+   * (default true).  Without the index, valueToGrid starts each search
+   * at the box of the previous value, which is slow for scattered
+   * values on large curvilinear grids.
+   *
+   * @param enable  true to build and use cell indices
+   */
+  public static void setCellIndexEnabled(boolean enable) {
+    cellIndexEnabled = enable;
+  }
+
+  /**
+   * @return true if valueToGrid uses cell indices
+   */
+  public static boolean isCellIndexEnabled() {
+    return cellIndexEnabled;
+  }
+
+  /** return the cell index of this set, building it if necessary, or
+      null if this set is too small or indices are disabled */
+  private CellIndex getCellIndex() {
+    if (!cellIndexEnabled || Length < CELL_INDEX_MIN) return null;
+    CellIndex index = cellIndex;
+    if (index == null) {
+      synchronized (this) {
+        index = cellIndex;
+        if (index == null) {
+          float[][] mySamples = getMySamples();
+          if (mySamples == null) return null;
+          index = new CellIndex(mySamples, LengthX, LengthY, LengthZ,
+                                new float[] {LowX, LowY, LowZ},
+                                new float[] {HiX, HiY, HiZ});
+          cellIndex = index;
+        }
+      }
+    }
+    return index;
+  }
+
+  /** cube flags buffer kept between isosurface calls */
+  private static SoftReference<int[]> flagScratch = null;
+
+  /** return a buffer of at least length cube flags, reusing the one
+      left by an earlier isosurface if it is big enough */
+  private static synchronized int[] takeFlagScratch(int length) {
+    int[] flags = (flagScratch == null) ? null : flagScratch.get();
+    if (flags != null && flags.length >= length) {
+      flagScratch = null;
+      return flags;
+    }
+    return new int[length];
+  }
+
+  /** keep flags for the next isosurface, unless a bigger buffer is
+      already kept */
+  private static synchronized void giveFlagScratch(int[] flags) {
+    int[] kept = (flagScratch == null) ? null : flagScratch.get();
+    if (kept == null || kept.length < flags.length) {
+      flagScratch = new SoftReference<int[]>(flags);
+    }
+  }
+
+  /**
+   * A uniform grid of buckets over the bounding box of a Gridded3DSet.
+   * Each bucket holds a grid box whose bounding box overlaps it, or for
+   * buckets no box overlaps, a box of a nearby bucket.  Values are
+   * located by starting the search of valueToGrid at the box of their
+   * bucket.
+   */
+  private static class CellIndex {
+    private final int nx, ny, nz;
+    private final float[] low = new float[3];
+    private final float[] scale = new float[3];
+    /** base sample index of a box in each bucket */
+    private final int[] cells;
+
+    CellIndex(float[][] samples, int lengthX, int lengthY, int lengthZ,
+              float[] lo, float[] hi) {
+      // about two boxes per bucket along each axis
+      int bx = Math.max(1, (lengthX - 1) / 2);
+      int by = Math.max(1, (lengthY - 1) / 2);
+      int bz = Math.max(1, (lengthZ - 1) / 2);
+      while ((long) bx * by * bz > CELL_INDEX_MAX) {
+        bx = Math.max(1, bx / 2);
+        by = Math.max(1, by / 2);
+        bz = Math.max(1, bz / 2);
+      }
+      nx = bx;
+      ny = by;
+      nz = bz;
+      int[] n = {nx, ny, nz};
+      for (int j=0; j<3; j++) {
+        low[j] = lo[j];
+        scale[j] = (hi[j] > lo[j]) ? n[j] / (hi[j] - lo[j]) : 0.0f;
+      }
+      cells = new int[nx * ny * nz];
+      java.util.Arrays.fill(cells, -1);
+
+      int lxy = lengthX * lengthY;
+      int[] bmin = new int[3];
+      int[] bmax = new int[3];
+      for (int gz=0; gz<lengthZ-1; gz++) {
+        for (int gy=0; gy<lengthY-1; gy++) {
+          for (int gx=0; gx<lengthX-1; gx++) {
+            int base = gz * lxy + gy * lengthX + gx;
+            boolean missing = false;
+            for (int j=0; j<3 && !missing; j++) {
+              float min = Float.POSITIVE_INFINITY;
+              float max = Float.NEGATIVE_INFINITY;
+              for (int c=0; c<8; c++) {
+                int k = base + ((c & 1) != 0 ? 1 : 0) +
+                        ((c & 2) != 0 ? lengthX : 0) +
+                        ((c & 4) != 0 ? lxy : 0);
+                float v = samples[j][k];
+                if (v != v) {
+                  missing = true;
+                  break;
+                }
+                if (v < min) min = v;
+                if (v > max) max = v;
+              }
+              bmin[j] = bucket(j, min);
+              bmax[j] = bucket(j, max);
+            }
+            if (missing) continue;
+            for (int kz=bmin[2]; kz<=bmax[2]; kz++) {
+              for (int ky=bmin[1]; ky<=bmax[1]; ky++) {
+                int b = (kz * ny + ky) * nx;
+                for (int kx=bmin[0]; kx<=bmax[0]; kx++) {
+                  if (cells[b + kx] < 0) cells[b + kx] = base;
+                }
+              }
+            }
+          }
+        }
+      }
+
+      // give empty buckets the box of the nearest filled bucket along
+      // each axis in turn
+      fill(nx, 1);
+      fill(ny, nx);
+      fill(nz, nx * ny);
+      for (int b=0; b<cells.length; b++) {
+        if (cells[b] < 0) cells[b] = 0;
+      }
+    }
+
+    /** return the bucket coordinate along axis j of v, clamped to the
+        index */
+    private int bucket(int j, float v) {
+      int n = (j == 0) ? nx : ((j == 1) ? ny : nz);
+      int k = (int) ((v - low[j]) * scale[j]);
+      if (k < 0 || v != v) k = 0;
+      if (k > n - 1) k = n - 1;
+      return k;
+    }
+
+    /** fill empty buckets along all lines of n buckets with the given
+        stride */
+    private void fill(int n, int stride) {
+      if (n < 2) return;
+      int[] line = new int[n];
+      int[] dist = new int[n];
+      int total = cells.length;
+      for (int first=0; first<total; first++) {
+        // first bucket of a line has coordinate 0 along this axis
+        if ((first / stride) % n != 0) continue;
+        boolean any = false;
+        boolean empty = false;
+        for (int k=0; k<n; k++) {
+          line[k] = cells[first + k * stride];
+          if (line[k] < 0) empty = true;
+          else any = true;
+        }
+        if (!any || !empty) continue;
+        int last = -1;
+        for (int k=0; k<n; k++) {
+          if (line[k] >= 0) {
+            last = k;
+            dist[k] = 0;
+          }
+          else {
+            dist[k] = (last < 0) ? Integer.MAX_VALUE : k - last;
+            if (last >= 0) cells[first + k * stride] = line[last];
+          }
+        }
+        last = -1;
+        for (int k=n-1; k>=0; k--) {
+          if (line[k] >= 0) {
+            last = k;
+          }
+          else if (last >= 0 && last - k < dist[k]) {
+            cells[first + k * stride] = line[last];
+          }
+        }
+      }
+    }
+
+    /** return the base sample index of a grid box near (x, y, z) */
+    int getCell(float x, float y, float z) {
+      return cells[(bucket(2, z) * ny + bucket(1, y)) * nx + bucket(0, x)];
+    }
+  }
+
   /*
    * (non-Javadoc)
    * 
@@ -2381,55 +2635,7 @@ public class Gridded3DSet extends GriddedSet {
     }
     byte[][] interval_colors = new byte[color_length][intervals.length];
 
-    if (fill) { // - compute normals at grid points
-      float[][] samples = getSamples(false);
-      grd_normals = new float[nc][nr][3];
-      // calculate normals
-      int k3 = 0;
-      int ki, kj;
-      for (int i = 0; i < LengthY; i++) {
-        for (int j = 0; j < LengthX; j++) {
-          float c0 = samples[0][k3];
-          float c1 = samples[1][k3];
-          float c2 = samples[2][k3];
-          float n0 = 0.0f;
-          float n1 = 0.0f;
-          float n2 = 0.0f;
-          float n, m, m0, m1, m2;
-          for (int ip = -1; ip <= 1; ip += 2) {
-            for (int jp = -1; jp <= 1; jp += 2) {
-              int ii = i + ip;
-              int jj = j + jp;
-              if (0 <= ii && ii < LengthY && 0 <= jj && jj < LengthX) {
-                ki = k3 + ip * LengthX;
-                kj = k3 + jp;
-                m0 = (samples[2][kj] - c2) * (samples[1][ki] - c1)
-                    - (samples[1][kj] - c1) * (samples[2][ki] - c2);
-                m1 = (samples[0][kj] - c0) * (samples[2][ki] - c2)
-                    - (samples[2][kj] - c2) * (samples[0][ki] - c0);
-                m2 = (samples[1][kj] - c1) * (samples[0][ki] - c0)
-                    - (samples[0][kj] - c0) * (samples[1][ki] - c1);
-                m = (float) Math.sqrt(m0 * m0 + m1 * m1 + m2 * m2);
-                if (ip == jp) {
-                  n0 += m0 / m;
-                  n1 += m1 / m;
-                  n2 += m2 / m;
-                } else {
-                  n0 -= m0 / m;
-                  n1 -= m1 / m;
-                  n2 -= m2 / m;
-                }
-              }
-            }
-          }
-          n = (float) Math.sqrt(n0 * n0 + n1 * n1 + n2 * n2);
-          grd_normals[i][j][0] = n0 / n;
-          grd_normals[i][j][1] = n1 / n;
-          grd_normals[i][j][2] = n2 / n;
-          k3++;
-        }
-      }
-
+    if (fill) {
       // -- compute color at field contour intervals
       float[] default_intervals = null;
       Unit ounit = smap[0].getOverrideUnit();
@@ -2471,6 +2677,38 @@ public class Gridded3DSet extends GriddedSet {
     int labelFreq = ctrl.getLabelFreq();
     int labelLineSkip = ctrl.getEveryNth();
 
+    // reuse the contours of an earlier transform of the same grid
+    ContourCache.Key key = null;
+    if (ContourCache.isEnabled()) {
+      key = new ContourCache.Key(g, getSamples(false), color_values, nr, nc,
+          intervals, lowlimit, highlimit, base, swap, dash, fill, scale,
+          label_size, sphericalDisplayCS, interval_colors, labelAlign,
+          labelColor, labelFont, labelFreq, labelLineSkip);
+      VisADGeometryArray[][] arrays = ContourCache.get(key);
+      if (arrays != null) return arrays;
+    }
+
+    if (fill) { // - compute normals at grid points
+      grd_normals = makeGridNormals();
+    }
+
+    VisADGeometryArray[][] arrays = makeIsoLines(g, nr, nc, intervals,
+        lowlimit, highlimit, base, dash, color_values, swap, fill,
+        grd_normals, interval_colors, scale, scale_ratio, labelFreq,
+        labelLineSkip, label_size, labelAlign, labelColor, labelFont,
+        sphericalDisplayCS);
+    ContourCache.put(key, arrays);
+    return arrays;
+  }
+
+  /** contour the grid and collect the geometry for makeIsoLines */
+  private VisADGeometryArray[][] makeIsoLines(float[] g, int nr, int nc,
+      float[] intervals, float lowlimit, float highlimit, float base,
+      boolean dash, byte[][] color_values, boolean[] swap, boolean fill,
+      float[][][] grd_normals, byte[][] interval_colors, double[] scale,
+      double scale_ratio, int labelFreq, int labelLineSkip,
+      double label_size, boolean labelAlign, byte[] labelColor,
+      Object labelFont, boolean sphericalDisplayCS) throws VisADException {
     Contour2D.ContourOutput contour = Contour2D.contour(g, nr, nc, intervals,
         lowlimit, highlimit, base, dash, color_values, swap, fill, grd_normals,
         interval_colors, scale, scale_ratio, labelFreq, labelLineSkip,
@@ -2540,6 +2778,63 @@ public class Gridded3DSet extends GriddedSet {
       { basicLines[0], fillLines, labelLines, basicLines[1] };
   }
 
+  /** normals at the grid points of a 2-D manifold, indexed
+      [column][row][component], for filled contours */
+  private float[][][] makeGridNormals() throws VisADException {
+    int[] Lengths = getLengths();
+    int LengthX = Lengths[0];
+    int LengthY = Lengths[1];
+    float[][] samples = getSamples(false);
+    float[][][] grd_normals = new float[LengthY][LengthX][3];
+
+    // calculate normals
+    int k3 = 0;
+    int ki, kj;
+    for (int i = 0; i < LengthY; i++) {
+      for (int j = 0; j < LengthX; j++) {
+        float c0 = samples[0][k3];
+        float c1 = samples[1][k3];
+        float c2 = samples[2][k3];
+        float n0 = 0.0f;
+        float n1 = 0.0f;
+        float n2 = 0.0f;
+        float n, m, m0, m1, m2;
+        for (int ip = -1; ip <= 1; ip += 2) {
+          for (int jp = -1; jp <= 1; jp += 2) {
+            int ii = i + ip;
+            int jj = j + jp;
+            if (0 <= ii && ii < LengthY && 0 <= jj && jj < LengthX) {
+              ki = k3 + ip * LengthX;
+              kj = k3 + jp;
+              m0 = (samples[2][kj] - c2) * (samples[1][ki] - c1)
+                  - (samples[1][kj] - c1) * (samples[2][ki] - c2);
+              m1 = (samples[0][kj] - c0) * (samples[2][ki] - c2)
+                  - (samples[2][kj] - c2) * (samples[0][ki] - c0);
+              m2 = (samples[1][kj] - c1) * (samples[0][ki] - c0)
+                  - (samples[0][kj] - c0) * (samples[1][ki] - c1);
+              m = (float) Math.sqrt(m0 * m0 + m1 * m1 + m2 * m2);
+              if (ip == jp) {
+                n0 += m0 / m;
+                n1 += m1 / m;
+                n2 += m2 / m;
+              } else {
+                n0 -= m0 / m;
+                n1 -= m1 / m;
+                n2 -= m2 / m;
+              }
+            }
+          }
+        }
+        n = (float) Math.sqrt(n0 * n0 + n1 * n1 + n2 * n2);
+        grd_normals[i][j][0] = n0 / n;
+        grd_normals[i][j][1] = n1 / n;
+        grd_normals[i][j][2] = n2 / n;
+        k3++;
+      }
+    }
+    return grd_normals;
+  }
+
   public float[][] getNormals(float[][] grid) throws VisADException {
     int[] Lengths = getLengths();
     int LengthX = Lengths[0];
@@ -2979,14 +3274,6 @@ public class Gridded3DSet extends GriddedSet {
 
   public VisADGeometryArray makeIsoSurface(float isolevel, float[] fieldValues,
       byte[][] color_values, boolean indexed) throws VisADException {
-    boolean debug = false;
-
-    int i;
-    int size_stripe;
-    int xdim_x_ydim, xdim_x_ydim_x_zdim;
-    int num_cubes, nvertex, npolygons;
-    int ix, iy, ii;
-    int nvertex_estimate;
 
     if (ManifoldDimension != 3) {
       throw new DisplayException("Gridded3DSet.makeIsoSurface: "
@@ -2999,20 +3286,41 @@ public class Gridded3DSet extends GriddedSet {
     int ydim = LengthX;
     int zdim = LengthZ;
 
-    float[] ptGRID = fieldValues;
+    int[] ptFLAG = takeFlagScratch((xdim - 1) * (ydim - 1) * (zdim - 1));
+    try {
+      // System.out.println("pre-flags: isolevel = " + isolevel +
+      // " xdim, ydim, zdim = " + xdim + " " + ydim + " " + zdim);
 
-    xdim_x_ydim = xdim * ydim;
-    xdim_x_ydim_x_zdim = xdim_x_ydim * zdim;
-    num_cubes = (xdim - 1) * (ydim - 1) * (zdim - 1);
+      int npolygons = flags(isolevel, ptFLAG, fieldValues, xdim, ydim, zdim);
+      return makeIsoSurface(isolevel, ptFLAG, npolygons, fieldValues,
+                            color_values, indexed, 0, zdim - 1);
+    }
+    finally {
+      giveFlagScratch(ptFLAG);
+    }
+  }
 
-    int[] ptFLAG = new int[num_cubes];
-    int[] ptAUX = new int[xdim_x_ydim_x_zdim];
-    int[] pcube = new int[num_cubes + 1];
+  /**
+   * Make the isosurface for cube flags already computed by flags, for
+   * the cubes in z layers zlo through zhi - 1.
+   */
+  private VisADGeometryArray makeIsoSurface(float isolevel, int[] ptFLAG,
+      int npolygons, float[] fieldValues, byte[][] color_values,
+      boolean indexed, int zlo, int zhi) throws VisADException {
+    boolean debug = false;
 
-    // System.out.println("pre-flags: isolevel = " + isolevel +
-    // " xdim, ydim, zdim = " + xdim + " " + ydim + " " + zdim);
+    int i;
+    int size_stripe;
+    int nvertex;
+    int ix, iy, ii;
+    int nvertex_estimate;
 
-    npolygons = flags(isolevel, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim);
+    // NOTE X & Y swap
+    int xdim = LengthY;
+    int ydim = LengthX;
+    int zdim = LengthZ;
+
+    float[] ptGRID = fieldValues;
 
     if (debug)
       System.out.println("npolygons= " + npolygons);
@@ -3020,9 +3328,6 @@ public class Gridded3DSet extends GriddedSet {
     if (npolygons == 0)
       return null;
 
-    // take the garbage out
-    pcube = null;
-
     nvertex_estimate = 4 * npolygons + 100;
     ix = 9 * (nvertex_estimate + 50);
     iy = 7 * npolygons;
@@ -3042,15 +3347,11 @@ public class Gridded3DSet extends GriddedSet {
 
     nvertex = isosurf(isolevel, ptFLAG, nvertex_estimate, npolygons, ptGRID,
         xdim, ydim, zdim, VX, VY, VZ, color_values, color_temps,
-        arg_Pol_f_Vert, Vert_f_Pol);
+        arg_Pol_f_Vert, Vert_f_Pol, zlo, zhi);
     Pol_f_Vert = arg_Pol_f_Vert[0];
 
     if (nvertex == 0)
       return null;
-
-    // take the garbage out
-    ptFLAG = null;
-    ptAUX = null;
     /*
      * for (int j=0; j<nvertex; j++) { System.out.println("iso vertex[" + j +
      * "] " + VX[0][j] + " " + VY[0][j] + " " + VZ[0][j]); }
@@ -3207,6 +3508,181 @@ public class Gridded3DSet extends GriddedSet {
     } // end if (!indexed)
   }
 
+  /** rank of missing grid values in makeIsoSurfaces */
+  private static final int MISSING_RANK = 0xFF;
+
+  /**
+   * Make isosurfaces at several levels.  The grid is classified against
+   * all levels in one pass, and each surface is then extracted only from
+   * the z layers it crosses, so N levels cost much less than N calls to
+   * makeIsoSurface.
+   *
+   * @param isolevels     isosurface levels
+   * @param fieldValues   grid values
+   * @param color_values  colors at grid points, or null
+   * @param indexed       true for indexed triangle strips
+   * @return element i is the surface makeIsoSurface would return for
+   *         isolevels[i] (null if it is empty or isolevels[i] is NaN)
+   * @throws VisADException  if the surfaces cannot be made
+   */
+  public VisADGeometryArray[] makeIsoSurfaces(float[] isolevels,
+      float[] fieldValues, byte[][] color_values, boolean indexed)
+      throws VisADException {
+
+    if (ManifoldDimension != 3) {
+      throw new DisplayException("Gridded3DSet.makeIsoSurfaces: "
+          + "ManifoldDimension must be 3");
+    }
+    VisADGeometryArray[] arrays = new VisADGeometryArray[isolevels.length];
+
+    // sort the levels that can have surfaces
+    int n = 0;
+    for (int i = 0; i < isolevels.length; i++) {
+      if (isolevels[i] == isolevels[i]) n++;
+    }
+    float[] levels = new float[n];
+    int[] index = new int[n];
+    n = 0;
+    for (int i = 0; i < isolevels.length; i++) {
+      if (isolevels[i] == isolevels[i]) {
+        levels[n] = isolevels[i];
+        index[n++] = i;
+      }
+    }
+    int[] order = QuickSort.sort(levels);
+    for (int k = 0; k < n; k++) order[k] = index[order[k]];
+
+    // ranks are bytes, so classify at most MISSING_RANK - 1 levels per pass
+    for (int first = 0; first < n; first += MISSING_RANK - 1) {
+      int count = Math.min(n - first, MISSING_RANK - 1);
+      float[] batch = new float[count];
+      int[] batch_order = new int[count];
+      System.arraycopy(levels, first, batch, 0, count);
+      System.arraycopy(order, first, batch_order, 0, count);
+      makeIsoSurfaces(batch, batch_order, fieldValues, color_values, indexed,
+                      arrays);
+    }
+    return arrays;
+  }
+
+  /** make the isosurfaces for ascending levels, storing the surface of
+      levels[k] in arrays[order[k]] */
+  private void makeIsoSurfaces(final float[] levels, int[] order,
+      final float[] fieldValues, byte[][] color_values, boolean indexed,
+      VisADGeometryArray[] arrays) throws VisADException {
+    // NOTE X & Y swap
+    final int xdim = LengthY;
+    final int ydim = LengthX;
+    int zdim = LengthZ;
+    final int xdim_x_ydim = xdim * ydim;
+    final int num_cubes_xy = (xdim - 1) * (ydim - 1);
+    // no cubes when a grid dimension is 1, so every surface is empty
+    if (num_cubes_xy == 0 || zdim < 2) return;
+
+    // rank of each grid value: the number of levels at or below it
+    final byte[] ranks = new byte[xdim_x_ydim * zdim];
+    final int[] plane_min = new int[zdim];
+    final int[] plane_max = new int[zdim];
+    final boolean[] plane_missing = new boolean[zdim];
+    Parallel.forRange(ranks.length, xdim_x_ydim, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int iz = start / xdim_x_ydim; iz * xdim_x_ydim < end; iz++) {
+          int min = MISSING_RANK;
+          int max = -1;
+          boolean missing = false;
+          int last = (iz + 1) * xdim_x_ydim;
+          for (int ii = iz * xdim_x_ydim; ii < last; ii++) {
+            float v = fieldValues[ii];
+            int r;
+            if (v != v) {
+              r = MISSING_RANK;
+              missing = true;
+            }
+            else {
+              int lo = 0;
+              int hi = levels.length;
+              while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (v >= levels[mid]) lo = mid + 1;
+                else hi = mid;
+              }
+              r = lo;
+              if (r < min) min = r;
+              if (r > max) max = r;
+            }
+            ranks[ii] = (byte) r;
+          }
+          plane_min[iz] = min;
+          plane_max[iz] = max;
+          plane_missing[iz] = missing;
+        }
+      }
+    });
+
+    int[] ptFLAG = takeFlagScratch(num_cubes_xy * (zdim - 1));
+    try {
+      for (int k = 0; k < levels.length; k++) {
+        // find the z layers of cubes that cross this level
+        int zlo = -1;
+        int zhi = -1;
+        for (int iz = 0; iz < zdim - 1; iz++) {
+          if (plane_missing[iz] || plane_missing[iz + 1] ||
+              (Math.min(plane_min[iz], plane_min[iz + 1]) <= k &&
+               Math.max(plane_max[iz], plane_max[iz + 1]) > k)) {
+            if (zlo < 0) zlo = iz;
+            zhi = iz + 1;
+          }
+        }
+        if (zlo < 0) continue;
+
+        // flags of the crossing layers and the layers next to them
+        final int level = k;
+        final int[] flags = ptFLAG;
+        final int z0 = Math.max(0, zlo - 1);
+        int z1 = Math.min(zdim - 1, zhi + 1);
+        Parallel.forRange((z1 - z0) * num_cubes_xy, num_cubes_xy,
+                          new Parallel.Chunk() {
+          public void run(int start, int end) {
+            int[] lower = new int[xdim_x_ydim];
+            int[] upper = new int[xdim_x_ydim];
+            int first = z0 + start / num_cubes_xy;
+            int last = z0 + (end + num_cubes_xy - 1) / num_cubes_xy;
+            classify(level, ranks, first * xdim_x_ydim, lower);
+            for (int iz = first; iz < last; iz++) {
+              classify(level, ranks, (iz + 1) * xdim_x_ydim, upper);
+              layer_flags(lower, upper, flags, iz * num_cubes_xy, xdim, ydim);
+              int[] t = lower;
+              lower = upper;
+              upper = t;
+            }
+          }
+        });
+
+        int npolygons = special_cases(ptFLAG, xdim, ydim, zdim, zlo, zhi);
+        arrays[order[k]] = makeIsoSurface(levels[k], ptFLAG, npolygons,
+            fieldValues, color_values, indexed, zlo, zhi);
+      }
+    }
+    finally {
+      giveFlagScratch(ptFLAG);
+    }
+  }
+
+  /** classify one z plane of grid value ranks against the level with
+      the given rank, as classify does for grid values */
+  private static void classify(int level, byte[] ranks, int offset,
+                               int[] aux) {
+    for (int ii = 0; ii < aux.length; ii++) {
+      int r = ranks[offset + ii] & 0xFF;
+      if (r == MISSING_RANK)
+        aux[ii] = 0x1001;
+      else if (r > level)
+        aux[ii] = 1;
+      else
+        aux[ii] = 0;
+    }
+  }
+
   public VisADGeometryArray makeIsoSurfaceMissingSpatial(float isolevel,
       float[] fieldValues, byte[][] color_values, boolean indexed,
       ShadowRealTupleType Domain, ShadowRealTupleType domain_reference,
@@ -3240,23 +3716,20 @@ public class Gridded3DSet extends GriddedSet {
     xdim_x_ydim_x_zdim = xdim_x_ydim * zdim;
     num_cubes = (xdim - 1) * (ydim - 1) * (zdim - 1);
 
-    int[] ptFLAG = new int[num_cubes];
-    int[] ptAUX = new int[xdim_x_ydim_x_zdim];
-    int[] pcube = new int[num_cubes + 1];
+    int[] ptFLAG = takeFlagScratch(num_cubes);
 
     // System.out.println("pre-flags: isolevel = " + isolevel +
     // " xdim, ydim, zdim = " + xdim + " " + ydim + " " + zdim);
 
-    npolygons = flags(isolevel, ptFLAG, ptAUX, pcube, ptGRID, xdim, ydim, zdim);
+    npolygons = flags(isolevel, ptFLAG, ptGRID, xdim, ydim, zdim);
 
     if (debug)
       System.out.println("npolygons= " + npolygons);
 
-    if (npolygons == 0)
+    if (npolygons == 0) {
+      giveFlagScratch(ptFLAG);
       return null;
-
-    // take the garbage out
-    pcube = null;
+    }
 
     nvertex_estimate = 4 * npolygons + 100;
     ix = 9 * (nvertex_estimate + 50);
@@ -3275,9 +3748,14 @@ public class Gridded3DSet extends GriddedSet {
     int[] Vert_f_Pol = new int[iy];
     int[][] arg_Pol_f_Vert = new int[][] { Pol_f_Vert };
 
-    nvertex = isosurf(isolevel, ptFLAG, nvertex_estimate, npolygons, ptGRID,
-        xdim, ydim, zdim, VX, VY, VZ, color_values, color_temps,
-        arg_Pol_f_Vert, Vert_f_Pol);
+    try {
+      nvertex = isosurf(isolevel, ptFLAG, nvertex_estimate, npolygons, ptGRID,
+          xdim, ydim, zdim, VX, VY, VZ, color_values, color_temps,
+          arg_Pol_f_Vert, Vert_f_Pol);
+    }
+    finally {
+      giveFlagScratch(ptFLAG);
+    }
     Pol_f_Vert = arg_Pol_f_Vert[0];
 
     if (nvertex == 0)
@@ -3285,7 +3763,6 @@ public class Gridded3DSet extends GriddedSet {
 
     // take the garbage out
     ptFLAG = null;
-    ptAUX = null;
     /*
      * for (int j=0; j<nvertex; j++) { System.out.println("iso vertex[" + j +
      * "] " + VX[0][j] + " " + VY[0][j] + " " + VZ[0][j]); }
@@ -3495,11 +3972,10 @@ public class Gridded3DSet extends GriddedSet {
 
   public static int flags(float isovalue, int[] ptFLAG, int[] ptAUX,
       int[] pcube, float[] ptGRID, int xdim, int ydim, int zdim) {
-    int ii, jj, ix, iy, iz, cb, SF, bcase;
+    int ii, ix, iy, iz, cb;
     int num_cubes, num_cubes_xy, num_cubes_y;
     int xdim_x_ydim = xdim * ydim;
     int xdim_x_ydim_x_zdim = xdim_x_ydim * zdim;
-    int npolygons;
 
     num_cubes_y = ydim - 1;
     num_cubes_xy = (xdim - 1) * num_cubes_y;
@@ -3559,16 +4035,113 @@ public class Gridded3DSet extends GriddedSet {
     }
     /* After this Point it is not more used pcube */
 
+    return special_cases(ptFLAG, xdim, ydim, zdim, 0, zdim - 1);
+  }
+
+  /**
+   * Compute the marching cubes flag of each cube of a grid and return
+   * the number of polygons.  This produces the same flags as
+   * {@link #flags(float, int[], int[], int[], float[], int, int, int)}
+   * without the grid sized ptAUX and pcube temporaries, and classifies
+   * z-slabs of cubes in parallel.
+   *
+   * @param isovalue  isosurface level
+   * @param ptFLAG    flags of the (xdim-1)*(ydim-1)*(zdim-1) cubes
+   * @param ptGRID    grid values, y varying fastest, then x, then z
+   * @param xdim      grid size in x
+   * @param ydim      grid size in y
+   * @param zdim      grid size in z
+   * @return number of polygons
+   * @throws VisADException  if a parallel chunk fails
+   */
+  public static int flags(final float isovalue, final int[] ptFLAG,
+      final float[] ptGRID, final int xdim, final int ydim, final int zdim)
+      throws VisADException {
+    final int xdim_x_ydim = xdim * ydim;
+    final int num_cubes_xy = (xdim - 1) * (ydim - 1);
+    int num_cubes = (zdim - 1) * num_cubes_xy;
+    // no cubes when a grid dimension is 1
+    if (num_cubes_xy == 0 || num_cubes == 0) return 0;
+
+    Parallel.forRange(num_cubes, num_cubes_xy, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        int z0 = start / num_cubes_xy;
+        int z1 = (end + num_cubes_xy - 1) / num_cubes_xy;
+        // vertex classifications of the bottom and top of a layer
+        int[] lower = new int[xdim_x_ydim];
+        int[] upper = new int[xdim_x_ydim];
+        classify(isovalue, ptGRID, z0 * xdim_x_ydim, lower);
+        for (int iz = z0; iz < z1; iz++) {
+          classify(isovalue, ptGRID, (iz + 1) * xdim_x_ydim, upper);
+          layer_flags(lower, upper, ptFLAG, iz * num_cubes_xy, xdim, ydim);
+          int[] t = lower;
+          lower = upper;
+          upper = t;
+        }
+      }
+    });
+
+    return special_cases(ptFLAG, xdim, ydim, zdim, 0, zdim - 1);
+  }
+
+  /** set the flags of one z layer of cubes, starting at cube ii, from
+      the vertex classifications of its bottom and top planes */
+  private static void layer_flags(int[] lower, int[] upper, int[] ptFLAG,
+      int ii, int xdim, int ydim) {
+    for (int ix = 0; ix < (xdim - 1); ix++) {
+      int pt = ix * ydim;
+      for (int iy = 0; iy < (ydim - 1); iy++) {
+        ptFLAG[ii++] = (lower[pt]) | (lower[pt + ydim] << 1)
+            | (lower[pt + 1] << 2) | (lower[pt + ydim + 1] << 3)
+            | (upper[pt] << 4) | (upper[pt + ydim] << 5)
+            | (upper[pt + 1] << 6) | (upper[pt + 1 + ydim] << 7);
+        pt++;
+      }
+    }
+  }
+
+  /** classify one z plane of grid values against isovalue, as flags
+      does for ptAUX */
+  private static void classify(float isovalue, float[] ptGRID, int offset,
+                               int[] aux) {
+    for (int ii = 0; ii < aux.length; ii++) {
+      float v = ptGRID[offset + ii];
+      // test for missing
+      if (v != v)
+        aux[ii] = 0x1001;
+      else if (v >= isovalue)
+        aux[ii] = 1;
+      else
+        aux[ii] = 0;
+    }
+  }
+
+  /** resolve ambiguous cubes in z layers zlo through zhi - 1 from the
+      flags of their neighbors, and return the number of polygons in
+      those layers; flags of the layers next to the range must be set */
+  private static int special_cases(int[] ptFLAG, int xdim, int ydim,
+      int zdim, int zlo, int zhi) {
+    int ii, jj, ix, iy, iz, cb, SF, bcase;
+    int num_cubes, num_cubes_xy, num_cubes_y;
+    int npolygons, last;
+
+    num_cubes_y = ydim - 1;
+    num_cubes_xy = (xdim - 1) * num_cubes_y;
+    num_cubes = (zdim - 1) * num_cubes_xy;
+    last = zhi * num_cubes_xy;
+    cb = 0;
+
     /* Analyse Special Cases in FLAG */
-    ii = npolygons = 0;
+    ii = zlo * num_cubes_xy;
+    npolygons = 0;
     while (TRUE) {
-      for (; ii < num_cubes; ii++) {
+      for (; ii < last; ii++) {
         if (((ptFLAG[ii] != 0) && (ptFLAG[ii] != 0xFF))
             && ptFLAG[ii] < MAX_FLAG_NUM)
           break;
       }
 
-      if (ii == num_cubes)
+      if (ii == last)
         break;
 
       bcase = pol_edges[ptFLAG[ii]][0];
@@ -3680,6 +4253,23 @@ public class Gridded3DSet extends GriddedSet {
       float[][] VX, float[][] VY, float[][] VZ, byte[][] auxValues,
       byte[][] auxLevels, int[][] Pol_f_Vert, int[] Vert_f_Pol)
       throws VisADException {
+    return isosurf(isovalue, ptFLAG, nvertex_estimate, npolygons, ptGRID,
+        xdim, ydim, zdim, VX, VY, VZ, auxValues, auxLevels, Pol_f_Vert,
+        Vert_f_Pol, 0, zdim - 1);
+  }
+
+  /**
+   * Generate isosurface vertices and polygons for the cubes in z layers
+   * zlo through zhi - 1.  The layers below zlo and from zhi up must not
+   * cross the isosurface, so no vertex lies on the bottom plane of
+   * layer zlo.
+   */
+  private int isosurf(float isovalue, int[] ptFLAG, int nvertex_estimate,
+      int npolygons, float[] ptGRID, int xdim, int ydim, int zdim,
+      float[][] VX, float[][] VY, float[][] VZ, byte[][] auxValues,
+      byte[][] auxLevels, int[][] Pol_f_Vert, int[] Vert_f_Pol,
+      int zlo, int zhi)
+      throws VisADException {
 
     int ix, iy, iz, caseA, above, bellow, front, rear, mm, nn;
     int ii, jj, kk, ncube, cpl, pvp, pa, ve;
@@ -3765,9 +4355,11 @@ public class Gridded3DSet extends GriddedSet {
     /*
      * Calculate the Vertex of the Polygons which edges were calculated above
      */
-    nvet = ncube = cpl = pvp = 0;
+    nvet = cpl = pvp = 0;
+    ncube = zlo * (xdim - 1) * (ydim - 1);
+    pt = zlo * xdim_x_ydim;
 
-    for (iz = 0; iz < zdim - 1; iz++) {
+    for (iz = zlo; iz < zhi; iz++) {
 
       for (ix = 0; ix < xdim - 1; ix++) {
 
@@ -4824,15 +5416,17 @@ public class Gridded3DSet extends GriddedSet {
     return nvet;
   }
 
-  public static void make_normals(float[] VX, float[] VY, float[] VZ,
-      float[] NX, float[] NY, float[] NZ, int nvertex, int npolygons,
-      float[] Pnx, float[] Pny, float[] Pnz, float[] NxA, float[] NxB,
-      float[] NyA, float[] NyB, float[] NzA, float[] NzB, int[] Pol_f_Vert,
-      int[] Vert_f_Pol) throws VisADException {
+  public static void make_normals(final float[] VX, final float[] VY,
+      final float[] VZ, final float[] NX, final float[] NY, final float[] NZ,
+      int nvertex, int npolygons, final float[] Pnx, final float[] Pny,
+      final float[] Pnz, final float[] NxA, final float[] NxB,
+      final float[] NyA, final float[] NyB, final float[] NzA,
+      final float[] NzB, int[] Pol_f_Vert, final int[] Vert_f_Pol)
+      throws VisADException {
 
     int i, k, n;
     int max_vert_per_pol, swap_flag;
-    float x, y, z, minimum_area, len;
+    float x, y, z;
 
     int iv[] = new int[3];
 
@@ -4844,7 +5438,7 @@ public class Gridded3DSet extends GriddedSet {
 
     // WLH 12 Nov 2001
     // minimum_area = (float) ((1.e-4 > EPS_0) ? 1.e-4 : EPS_0);
-    minimum_area = Float.MIN_VALUE;
+    final float minimum_area = Float.MIN_VALUE;
 
     /* Calculate maximum number of vertices per polygon */
     k = 6;
@@ -4861,56 +5455,71 @@ public class Gridded3DSet extends GriddedSet {
 
     /* Calculate the Normals vector components for each Polygon */
     /* $dir vector */
-    for (i = 0; i < npolygons; i++) { /* Vectorized */
-      if (Vert_f_Pol[6 + i * 7] > 0) { /*
-                                        * check for valid polygon added by BEP
-                                        * 2-13-92
-                                        */
-        NxA[i] = VX[Vert_f_Pol[1 + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
-        NyA[i] = VY[Vert_f_Pol[1 + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
-        NzA[i] = VZ[Vert_f_Pol[1 + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
+    /* the vectorized loops are split across threads; the loop that
+       accumulates vertex normals stays serial so sums are unchanged */
+    Parallel.forRange(npolygons, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i = start; i < end; i++) { /* Vectorized */
+          if (Vert_f_Pol[6 + i * 7] > 0) { /*
+                                            * check for valid polygon added by
+                                            * BEP 2-13-92
+                                            */
+            NxA[i] = VX[Vert_f_Pol[1 + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
+            NyA[i] = VY[Vert_f_Pol[1 + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
+            NzA[i] = VZ[Vert_f_Pol[1 + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
+          }
+        }
       }
-    }
+    });
 
     swap_flag = 0;
     for (k = 2; k < max_vert_per_pol; k++) {
+      final int kk = k;
 
       if (swap_flag == 0) {
         /* $dir no_recurrence *//* Vectorized */
-        for (i = 0; i < npolygons; i++) {
-          if (Vert_f_Pol[k + i * 7] >= 0) {
-            NxB[i] = VX[Vert_f_Pol[k + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
-            NyB[i] = VY[Vert_f_Pol[k + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
-            NzB[i] = VZ[Vert_f_Pol[k + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
-            Pnx[i] = NyA[i] * NzB[i] - NzA[i] * NyB[i];
-            Pny[i] = NzA[i] * NxB[i] - NxA[i] * NzB[i];
-            Pnz[i] = NxA[i] * NyB[i] - NyA[i] * NxB[i];
-            NxA[i] = Pnx[i] * Pnx[i] + Pny[i] * Pny[i] + Pnz[i] * Pnz[i];
-            if (NxA[i] > minimum_area) {
-              Pnx[i] /= NxA[i];
-              Pny[i] /= NxA[i];
-              Pnz[i] /= NxA[i];
+        Parallel.forRange(npolygons, new Parallel.Chunk() {
+          public void run(int start, int end) {
+            for (int i = start; i < end; i++) {
+              if (Vert_f_Pol[kk + i * 7] >= 0) {
+                NxB[i] = VX[Vert_f_Pol[kk + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
+                NyB[i] = VY[Vert_f_Pol[kk + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
+                NzB[i] = VZ[Vert_f_Pol[kk + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
+                Pnx[i] = NyA[i] * NzB[i] - NzA[i] * NyB[i];
+                Pny[i] = NzA[i] * NxB[i] - NxA[i] * NzB[i];
+                Pnz[i] = NxA[i] * NyB[i] - NyA[i] * NxB[i];
+                NxA[i] = Pnx[i] * Pnx[i] + Pny[i] * Pny[i] + Pnz[i] * Pnz[i];
+                if (NxA[i] > minimum_area) {
+                  Pnx[i] /= NxA[i];
+                  Pny[i] /= NxA[i];
+                  Pnz[i] /= NxA[i];
+                }
+              }
             }
           }
-        }
+        });
       } else { /* swap_flag!=0 */
         /* $dir no_recurrence *//* Vectorized */
-        for (i = 0; i < npolygons; i++) {
-          if (Vert_f_Pol[k + i * 7] >= 0) {
-            NxA[i] = VX[Vert_f_Pol[k + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
-            NyA[i] = VY[Vert_f_Pol[k + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
-            NzA[i] = VZ[Vert_f_Pol[k + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
-            Pnx[i] = NyB[i] * NzA[i] - NzB[i] * NyA[i];
-            Pny[i] = NzB[i] * NxA[i] - NxB[i] * NzA[i];
-            Pnz[i] = NxB[i] * NyA[i] - NyB[i] * NxA[i];
-            NxB[i] = Pnx[i] * Pnx[i] + Pny[i] * Pny[i] + Pnz[i] * Pnz[i];
-            if (NxB[i] > minimum_area) {
-              Pnx[i] /= NxB[i];
-              Pny[i] /= NxB[i];
-              Pnz[i] /= NxB[i];
+        Parallel.forRange(npolygons, new Parallel.Chunk() {
+          public void run(int start, int end) {
+            for (int i = start; i < end; i++) {
+              if (Vert_f_Pol[kk + i * 7] >= 0) {
+                NxA[i] = VX[Vert_f_Pol[kk + i * 7]] - VX[Vert_f_Pol[0 + i * 7]];
+                NyA[i] = VY[Vert_f_Pol[kk + i * 7]] - VY[Vert_f_Pol[0 + i * 7]];
+                NzA[i] = VZ[Vert_f_Pol[kk + i * 7]] - VZ[Vert_f_Pol[0 + i * 7]];
+                Pnx[i] = NyB[i] * NzA[i] - NzB[i] * NyA[i];
+                Pny[i] = NzB[i] * NxA[i] - NxB[i] * NzA[i];
+                Pnz[i] = NxB[i] * NyA[i] - NyB[i] * NxA[i];
+                NxB[i] = Pnx[i] * Pnx[i] + Pny[i] * Pny[i] + Pnz[i] * Pnz[i];
+                if (NxB[i] > minimum_area) {
+                  Pnx[i] /= NxB[i];
+                  Pny[i] /= NxB[i];
+                  Pnz[i] /= NxB[i];
+                }
+              }
             }
           }
-        }
+        });
       }
 
       /* This Loop <CAN'T> be Vectorized */
@@ -4944,15 +5553,20 @@ public class Gridded3DSet extends GriddedSet {
     }
 
     /* Normalize the Normals */
-    for (i = 0; i < nvertex; i++) /* Vectorized */
-    {
-      len = (float) Math.sqrt(NX[i] * NX[i] + NY[i] * NY[i] + NZ[i] * NZ[i]);
-      if (len > EPS_0) {
-        NX[i] /= len;
-        NY[i] /= len;
-        NZ[i] /= len;
+    Parallel.forRange(nvertex, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i = start; i < end; i++) /* Vectorized */
+        {
+          float len =
+            (float) Math.sqrt(NX[i] * NX[i] + NY[i] * NY[i] + NZ[i] * NZ[i]);
+          if (len > EPS_0) {
+            NX[i] /= len;
+            NY[i] /= len;
+            NZ[i] /= len;
+          }
+        }
       }
-    }
+    });
 
   }
 
@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.Parallel;
+
 /**
  * <P>{@link IrregularSet} for a finite number of samples of R.</P>
  *
@@ -239,14 +241,29 @@ public class Irregular2DSet extends IrregularSet {
       throw new SetException("Irregular2DSet.valueToTri: triangulation " +
                              "undefined");
     }
-    int[] tri = new int[length];
-    int curtri = 0;
-    float[][]mySamples = getMySamples();
-    for (int i=0; i<length; i++) {
+    final int[] tri = new int[length];
+    final float[][] val = value;
+    final float[][] mySamples = getMySamples();
+    final PointLocator locator = getPointLocator();
+    Parallel.forRange(length, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        valueToTri(val, tri, start, end, mySamples, locator);
+      }
+    });
+    return tri;
+  }
+
+  /** locate the points [start, end) of value, walking from the
+      triangle the locator picks for each point */
+  private void valueToTri(float[][] value, int[] tri, int start, int end,
+                          float[][] mySamples, PointLocator locator) {
+    for (int i=start; i<end; i++) {
       // Return -1 if iteration loop fails
       tri[i] = -1;
+      // no triangle contains a missing point or one outside the box
+      if (locator.isOutside(value[0][i], value[1][i])) continue;
       boolean foundit = false;
-      if (curtri < 0) curtri = 0;
+      int curtri = locator.seed(value[0][i], value[1][i]);
       for (int itnum=0; (itnum<Delan.Tri.length) && !foundit; itnum++) {
         // define data
         int t0 = Delan.Tri[curtri][0];
@@ -324,7 +341,6 @@ public class Irregular2DSet extends IrregularSet {
         if (foundit) tri[i] = curtri;
       }
     }
-    return tri;
   }
 
   /** convert an array of values in R^DomainDimension to an array of 1-D indices */
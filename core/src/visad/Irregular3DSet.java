@@ -26,6 +26,8 @@ MA 02111-1307, USA
 
 package visad;
 
+import visad.util.Parallel;
+
 /**
    Irregular3DSet represents a finite set of samples of R^3.<P>
 
@@ -166,6 +168,22 @@ public class Irregular3DSet extends IrregularSet {
                              "don't match");
     }
 
+    final int[] tri = new int[length];
+    final float[][] val = value;
+    final float[][] mySamples = getMySamples();
+    final PointLocator locator = getPointLocator();
+    Parallel.forRange(length, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        valueToTri(val, tri, start, end, mySamples, locator);
+      }
+    });
+    return tri;
+  }
+
+  /** locate the points [start, end) of value, walking from the
+      tetrahedron the locator picks for each point */
+  private void valueToTri(float[][] value, int[] tri, int start, int end,
+                          float[][] mySamples, PointLocator locator) {
     boolean nonConvex = Delan.getNonConvex();
 
     float[] PA = new float[3];
@@ -188,21 +206,19 @@ public class Irregular3DSet extends IrregularSet {
     int [] fail_list = null;
     int fail_length = 0;
 
-    int[] tri = new int[length];
-    int curtri = 0;
-
 // System.out.println("length = " + length + " Delan.Tri.length = " +
 //                    Delan.Tri.length);
 
-    float[][]mySamples = getMySamples();
-    for (int i=0; i<length; i++) {
+    for (int i=start; i<end; i++) {
 
       // System.out.println("\nvalue["+i+"] = ("+value[0][i]+", "+value[1][i]+", "+value[2][i]+")");
 
       // Return -1 if iteration loop fails
       tri[i] = -1;
+      // no tetrahedron contains a missing point or one outside the box
+      if (locator.isOutside(value[0][i], value[1][i], value[2][i])) continue;
       boolean foundit = false;
-      if (curtri < 0) curtri = 0;
+      int curtri = locator.seed(value[0][i], value[1][i], value[2][i]);
       int itnum;
       for (itnum=0; (itnum<Delan.Tri.length) && !foundit; itnum++) {
         // define data
@@ -381,9 +397,7 @@ public class Irregular3DSet extends IrregularSet {
         fail_list = null;
       }
 
-    } // end for (int i=0; i<length; i++)
-
-    return tri;
+    } // end for (int i=start; i<end; i++)
   }
 
   /** convert an array of values in R^DomainDimension to an array of
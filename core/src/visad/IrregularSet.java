@@ -46,6 +46,9 @@ public class IrregularSet extends SampledSet {
   /** maps sorted samples indices to old samples indices */
   int[] newToOld;
 
+  /** seeds for valueToTri walks, built when first needed */
+  private transient PointLocator locator = null;
+
   /** construct an IrregularSet */
   public IrregularSet(MathType type, float[][] samples)
          throws VisADException {
@@ -106,6 +109,15 @@ public class IrregularSet extends SampledSet {
     }
   }
 
+  /** return the PointLocator for Delan, building it if Delan has
+      changed since the last call */
+  synchronized PointLocator getPointLocator() throws VisADException {
+    if (locator == null || !locator.isFor(Delan.Tri)) {
+      locator = new PointLocator(getMySamples(), Delan.Tri);
+    }
+    return locator;
+  }
+
   /** convert an array of 1-D indices to an array of values in R^DomainDimension */
   public float[][] indexToValue(int[] index) throws VisADException {
     float[][] value = new float[DomainDimension][index.length];
@@ -250,6 +262,7 @@ public class IrregularSet extends SampledSet {
 
     if (Delan != null)
       clone.Delan = (Delaunay)Delan.clone();
+    clone.locator = null;
 
     return clone;
   }
@@ -0,0 +1,923 @@
+//
+// LazyFlatField.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.rmi.RemoteException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import visad.util.Parallel;
+
+/**
+   LazyFlatField is a FlatField whose range values are the result of
+   a chain of binary and unary operations on other FlatFields, and
+   are not computed until they are first read.<P>
+
+   When lazy evaluation is on (see setEnabled and setLazy), binary
+   and unary operations on FlatFields return a LazyFlatField holding
+   the operation instead of its result.  Operations on a LazyFlatField
+   that has not been evaluated extend its expression, so an expression
+   such as a.add(b).multiply(c).sqrt() is computed in one pass over
+   the samples, block by block, without any intermediate range arrays.
+   The result is identical to eager evaluation, including Units.<P>
+
+   An operation is only deferred when it needs no resampling, range
+   coordinate transformation or ErrorEstimate propagation, i.e. when
+   both operands have equal domain Sets and MathTypes and error_mode
+   is NO_ERRORS or there are no ErrorEstimates.  Otherwise it is
+   evaluated eagerly as usual.<P>
+
+   The operands of a LazyFlatField are read when it is evaluated, so
+   they must not be modified until then.<P>
+*/
+public class LazyFlatField extends FlatField {
+
+  /** number of samples evaluated at a time by one thread */
+  private static final int BLOCK = 4096;
+
+  private static boolean enabled =
+    Boolean.parseBoolean(System.getProperty("visad.lazy.enabled", "false"));
+
+  private static final ThreadLocal<Boolean> threadLazy =
+    new ThreadLocal<Boolean>();
+
+  /** expression for the range values; null once evaluated */
+  private transient volatile Node node;
+
+  private transient Object lock = new Object();
+
+  private LazyFlatField(FunctionType type, Set domain_set,
+                        CoordinateSystem range_coord_sys,
+                        CoordinateSystem[] range_coord_syses,
+                        Unit[] units, Node node)
+          throws VisADException {
+    super(type, domain_set, range_coord_sys, range_coord_syses,
+          rangeSets(type, node.isDouble), units);
+    this.node = node;
+    clearMissing();
+  }
+
+  private static Set[] rangeSets(FunctionType type, boolean isDouble)
+          throws VisADException {
+    RealTupleType range = type.getFlatRange();
+    Set[] sets = new Set[range.getDimension()];
+    for (int i=0; i<sets.length; i++) {
+      SetType set_type = new SetType(range.getComponent(i));
+      sets[i] = isDouble ? (Set) new DoubleSet(set_type)
+                         : (Set) new FloatSet(set_type);
+    }
+    return sets;
+  }
+
+  /**
+   * Turn lazy evaluation on or off for all threads that have not
+   * called setLazy.  The default comes from the system property
+   * <code>visad.lazy.enabled</code>, and is false.
+   *
+   * @param enable  true to defer FlatField operations
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * @return true if lazy evaluation is on for threads that have not
+   *         called setLazy
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Turn lazy evaluation on or off for the current thread.
+   *
+   * @param lazy  true or false, or null to follow isEnabled()
+   * @return the previous setting for the current thread
+   */
+  public static Boolean setLazy(Boolean lazy) {
+    Boolean old = threadLazy.get();
+    threadLazy.set(lazy);
+    return old;
+  }
+
+  /**
+   * @return true if FlatField operations on the current thread are
+   *         deferred
+   */
+  public static boolean isLazy() {
+    Boolean lazy = threadLazy.get();
+    return (lazy != null) ? lazy.booleanValue() : enabled;
+  }
+
+  /**
+   * @return true if the range values have been computed
+   */
+  public boolean isEvaluated() {
+    return node == null;
+  }
+
+  /**
+   * Compute the range values, if that has not already been done.
+   * This is called by every method that reads or modifies part of
+   * the range.
+   *
+   * @throws VisADException  unable to read an operand or convert Units
+   */
+  public void evaluate() throws VisADException {
+    if (node == null) return;
+    synchronized (lock) {
+      final Node n = node;
+      if (n == null) return;
+      final Bindings bindings = new Bindings();
+      n.prepare(n.isDouble, bindings);
+
+      int length = getLength();
+      final double[][] valuesD = n.isDouble ? new double[n.dim][length] : null;
+      final float[][] valuesF = n.isDouble ? null : new float[n.dim][length];
+      Parallel.forRange(length, new Parallel.Chunk() {
+        public void run(int start, int end) throws VisADException {
+          for (int s=start; s<end; s+=BLOCK) {
+            int count = Math.min(BLOCK, end - s);
+            Object block = n.eval(s, count, n.isDouble, bindings);
+            for (int j=0; j<n.dim; j++) {
+              if (valuesD != null) {
+                System.arraycopy(((double[][]) block)[j], 0, valuesD[j], s, count);
+              }
+              else {
+                System.arraycopy(((float[][]) block)[j], 0, valuesF[j], s, count);
+              }
+            }
+          }
+        }
+      });
+
+      if (valuesD != null) packValues(valuesD, false);
+      else packValues(valuesF, false);
+      node = null;
+    }
+  }
+
+  /** drop the expression before the range is replaced */
+  private void discard() {
+    if (node == null) return;
+    synchronized (lock) {
+      node = null;
+    }
+  }
+
+  /**
+   * Return a LazyFlatField for 'field op data', or null if the
+   * operation cannot be deferred.
+   */
+  static FlatField binary(FlatField field, Data data, int op,
+                          MathType new_type, int error_mode)
+         throws VisADException {
+    if (!(new_type instanceof FunctionType) ||
+        !field.getType().equalsExceptName(new_type) ||
+        op < Data.ADD || op > Data.INV_REMAINDER || field.isMissing()) {
+      return null;
+    }
+    int dim = field.TupleDimension;
+    Node left = nodeOf(field);
+
+    if (data instanceof FlatField) {
+      FlatField that = (FlatField) data;
+      if (!field.getType().equals(that.getType()) || that.isMissing() ||
+          !field.getDomainSet().equals(that.getDomainSet()) ||
+          !sameCoordinateSystems(field, that) ||
+          (error_mode != Data.NO_ERRORS &&
+           !(noErrors(field.getRangeErrors()) && noErrors(that.getRangeErrors())))) {
+        return null;
+      }
+      Node right = nodeOf(that);
+      Binary node = new Binary(op, left, right);
+      return make(field, (FunctionType) new_type, node.units, node);
+    }
+    else if (data instanceof Real) {
+      Real real = (Real) data;
+      if (real.isMissing() ||
+          (error_mode != Data.NO_ERRORS &&
+           !(noErrors(field.getRangeErrors()) && real.getError() == null))) {
+        return null;
+      }
+      double[] values = new double[dim];
+      Unit[] units = new Unit[dim];
+      for (int j=0; j<dim; j++) {
+        values[j] = real.getValue();
+        units[j] = real.getUnit();
+      }
+      Scalar node = new Scalar(op, left, values, units);
+      return make(field, (FunctionType) new_type, node.units, node);
+    }
+    return null;
+  }
+
+  /**
+   * Return a LazyFlatField for 'op field', or null if the operation
+   * cannot be deferred.
+   */
+  static FlatField unary(FlatField field, int op, MathType new_type,
+                         int error_mode)
+         throws VisADException {
+    if (!(new_type instanceof FunctionType) ||
+        !((op >= Data.ABS && op <= Data.NOP)) || field.isMissing() ||
+        (error_mode != Data.NO_ERRORS && !noErrors(field.getRangeErrors()))) {
+      return null;
+    }
+    Unary node = new Unary(op, nodeOf(field));
+    return make(field, (FunctionType) new_type, node.units, node);
+  }
+
+  private static FlatField make(FlatField field, FunctionType type,
+                                Unit[] units, Node node)
+          throws VisADException {
+    // same domain Set handling as FlatField.cloneDouble and cloneFloat
+    Set domain_set = field.getDomainSet();
+    if (!type.getDomain().equals(((FunctionType) field.getType()).getDomain())) {
+      domain_set = (Set) domain_set.cloneButType(type.getDomain());
+    }
+    return new LazyFlatField(type, domain_set, field.RangeCoordinateSystem,
+                             field.RangeCoordinateSystems, units, node);
+  }
+
+  /** return the expression for the range of field */
+  private static Node nodeOf(FlatField field) {
+    if (field instanceof LazyFlatField) {
+      Node n = ((LazyFlatField) field).node;
+      if (n != null) return n;
+    }
+    return new Leaf(field);
+  }
+
+  private static boolean noErrors(ErrorEstimate[] errors) {
+    if (errors == null) return true;
+    for (int i=0; i<errors.length; i++) {
+      if (errors[i] != null) return false;
+    }
+    return true;
+  }
+
+  private static boolean sameCoordinateSystems(FlatField a, FlatField b) {
+    if (!same(a.RangeCoordinateSystem, b.RangeCoordinateSystem)) return false;
+    CoordinateSystem[] as = a.RangeCoordinateSystems;
+    CoordinateSystem[] bs = b.RangeCoordinateSystems;
+    if (as == null || bs == null) return as == bs;
+    if (as.length != bs.length) return false;
+    for (int i=0; i<as.length; i++) {
+      if (!same(as[i], bs[i])) return false;
+    }
+    return true;
+  }
+
+  private static boolean same(Object a, Object b) {
+    return (a == null) ? (b == null) : a.equals(b);
+  }
+
+  /** throw the UnitException that converting from to to would throw */
+  private static void checkConvert(Unit to, Unit from) throws VisADException {
+    to.toThis(new double[1], from);
+  }
+
+  /** convert values[j] from from[j] to to[j] where to[j] is non-null */
+  private static void convert(Object values, Unit[] to, Unit[] from)
+          throws VisADException {
+    for (int j=0; j<to.length; j++) {
+      if (to[j] == null) continue;
+      if (values instanceof double[][]) {
+        double[][] v = (double[][]) values;
+        v[j] = to[j].toThis(v[j], from[j]);
+      }
+      else {
+        float[][] v = (float[][]) values;
+        v[j] = to[j].toThis(v[j], from[j]);
+      }
+    }
+  }
+
+  /** operand arrays for one evaluation */
+  private static class Bindings {
+    final Map<Leaf, double[][]> doubles = new IdentityHashMap<Leaf, double[][]>();
+    final Map<Leaf, float[][]> floats = new IdentityHashMap<Leaf, float[][]>();
+  }
+
+  /** a node of an expression over the range of a FlatField */
+  private static abstract class Node {
+    final int dim;
+    final boolean isDouble;
+    Unit[] units;
+
+    Node(int dim, boolean isDouble) {
+      this.dim = dim;
+      this.isDouble = isDouble;
+    }
+
+    /** read the operands this node needs as doubles or floats */
+    abstract void prepare(boolean asDouble, Bindings bindings)
+             throws VisADException;
+
+    /** return new arrays of count values, as double[][] or float[][] */
+    abstract Object eval(int start, int count, boolean asDouble,
+                         Bindings bindings) throws VisADException;
+
+    /** convert a result from this node's precision */
+    Object as(Object values, boolean asDouble) {
+      if (asDouble == isDouble) return values;
+      if (asDouble) {
+        float[][] v = (float[][]) values;
+        double[][] d = new double[v.length][];
+        for (int j=0; j<v.length; j++) {
+          d[j] = new double[v[j].length];
+          for (int i=0; i<v[j].length; i++) d[j][i] = v[j][i];
+        }
+        return d;
+      }
+      else {
+        double[][] v = (double[][]) values;
+        float[][] f = new float[v.length][];
+        for (int j=0; j<v.length; j++) {
+          f[j] = new float[v[j].length];
+          for (int i=0; i<v[j].length; i++) f[j][i] = (float) v[j][i];
+        }
+        return f;
+      }
+    }
+  }
+
+  /** the range of an evaluated FlatField */
+  private static class Leaf extends Node {
+    private final FlatField field;
+
+    Leaf(FlatField field) {
+      super(field.TupleDimension, field.shouldBeDouble());
+      this.field = field;
+      units = (Unit[]) field.RangeUnits.clone();
+    }
+
+    void prepare(boolean asDouble, Bindings bindings) throws VisADException {
+      if (asDouble) {
+        if (!bindings.doubles.containsKey(this)) {
+          bindings.doubles.put(this, field.unpackValues(false));
+        }
+      }
+      else {
+        if (!bindings.floats.containsKey(this)) {
+          bindings.floats.put(this, field.unpackFloats(false));
+        }
+      }
+    }
+
+    Object eval(int start, int count, boolean asDouble, Bindings bindings) {
+      if (asDouble) {
+        double[][] values = bindings.doubles.get(this);
+        double[][] block = new double[dim][count];
+        for (int j=0; j<dim; j++) {
+          System.arraycopy(values[j], start, block[j], 0, count);
+        }
+        return block;
+      }
+      else {
+        float[][] values = bindings.floats.get(this);
+        float[][] block = new float[dim][count];
+        for (int j=0; j<dim; j++) {
+          System.arraycopy(values[j], start, block[j], 0, count);
+        }
+        return block;
+      }
+    }
+  }
+
+  /**
+   * 'left op right' for two fields.  The Unit handling follows the
+   * field case of FlatField.binary, with conversions recorded here and
+   * applied to each block.
+   */
+  private static class Binary extends Node {
+    private final int op;
+    private final Node left;
+    private final Node right;
+    private final Unit[] leftTo;
+    private final Unit[] leftFrom;
+    private final Unit[] rightTo;
+    private final Unit[] rightFrom;
+
+    Binary(int op, Node left, Node right) throws VisADException {
+      super(left.dim, left.isDouble && right.isDouble);
+      this.op = op;
+      this.left = left;
+      this.right = right;
+      leftTo = new Unit[dim];
+      leftFrom = (Unit[]) left.units.clone();
+      rightTo = new Unit[dim];
+      rightFrom = (Unit[]) right.units.clone();
+      units = new Unit[dim];
+
+      Unit[] thisUnits = (Unit[]) left.units.clone();
+      Unit[] thatUnits = (Unit[]) right.units.clone();
+      for (int j=0; j<dim; j++) {
+        switch (op) {
+          case ADD:
+          case SUBTRACT:
+          case INV_SUBTRACT:
+          case MAX:
+          case MIN:
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              units[j] = null;
+            }
+            else if (thisUnits[j] == CommonUnit.promiscuous) {
+              units[j] = thatUnits[j].getAbsoluteUnit();
+            }
+            else if (thatUnits[j] == CommonUnit.promiscuous) {
+              units[j] = thisUnits[j].getAbsoluteUnit();
+            }
+            else {
+              units[j] = thisUnits[j].getAbsoluteUnit();
+              // FlatField.binary always converts float values
+              if (!isDouble || !units[j].equals(thisUnits[j])) {
+                leftTo[j] = units[j];
+              }
+              if (!units[j].equals(thatUnits[j])) {
+                try {
+                  checkConvert(units[j], thatUnits[j]);
+                  rightTo[j] = units[j];
+                }
+                catch (UnitException e) {       // inconvertible units
+                  units[j] = null;
+                }
+              }
+            }
+            break;
+
+          case MULTIPLY:
+          case DIVIDE:
+          case INV_DIVIDE:
+            absolute(j, thisUnits, leftTo);
+            absolute(j, thatUnits, rightTo);
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              units[j] = null;
+            }
+            else if (op == MULTIPLY) {
+              units[j] =
+                thisUnits[j].equals(CommonUnit.promiscuous)
+                  ? thatUnits[j]
+                  : thatUnits[j].equals(CommonUnit.promiscuous)
+                    ? thisUnits[j]
+                    : thisUnits[j].multiply(thatUnits[j]);
+            }
+            else if (op == DIVIDE) {
+              units[j] =
+                thatUnits[j].equals(CommonUnit.promiscuous)
+                  ? thisUnits[j]
+                  : thisUnits[j].divide(thatUnits[j]);
+            }
+            else {
+              units[j] =
+                thisUnits[j].equals(CommonUnit.promiscuous)
+                  ? thatUnits[j]
+                  : thatUnits[j].divide(thisUnits[j]);
+            }
+            break;
+
+          case POW:
+            absolute(j, thisUnits, leftTo);
+            if (!CommonUnit.promiscuous.equals(thatUnits[j])) {
+              absolute(j, thatUnits, rightTo);
+            }
+            units[j] = dimensionless(thisUnits[j]);
+            break;
+
+          case INV_POW:
+            absolute(j, thatUnits, rightTo);
+            if (!CommonUnit.promiscuous.equals(thisUnits[j])) {
+              absolute(j, thisUnits, leftTo);
+            }
+            units[j] = dimensionless(thatUnits[j]);
+            break;
+
+          default:  // ATAN2, ATAN2_DEGREES, INV_ATAN2, INV_ATAN2_DEGREES,
+                    // REMAINDER, INV_REMAINDER
+            if (thisUnits[j] != null && thatUnits[j] != null) {
+              Unit absUnit = thisUnits[j].getAbsoluteUnit();
+              if (!absUnit.equals(thisUnits[j])) {
+                leftTo[j] = absUnit;
+                thisUnits[j] = absUnit;
+              }
+              if (!absUnit.equals(thatUnits[j])) {
+                checkConvert(absUnit, thatUnits[j]);
+                rightTo[j] = absUnit;
+                thatUnits[j] = absUnit;
+              }
+            }
+            units[j] =
+              (op == ATAN2 || op == INV_ATAN2) ? CommonUnit.radian :
+              (op == ATAN2_DEGREES || op == INV_ATAN2_DEGREES) ?
+                CommonUnit.degree :
+              (op == REMAINDER) ? thisUnits[j] : thatUnits[j];
+            break;
+        }
+      }
+    }
+
+    void prepare(boolean asDouble, Bindings bindings) throws VisADException {
+      left.prepare(isDouble, bindings);
+      right.prepare(isDouble, bindings);
+    }
+
+    Object eval(int start, int count, boolean asDouble, Bindings bindings)
+           throws VisADException {
+      Object a = left.eval(start, count, isDouble, bindings);
+      Object b = right.eval(start, count, isDouble, bindings);
+      convert(a, leftTo, leftFrom);
+      convert(b, rightTo, rightFrom);
+      if (isDouble) {
+        FlatField.binaryValues(op, (double[][]) a, (double[][]) b, null, null,
+                               0, count);
+      }
+      else {
+        FlatField.binaryValues(op, null, null, (float[][]) a, (float[][]) b,
+                               0, count);
+      }
+      return as(a, asDouble);
+    }
+  }
+
+  /**
+   * 'left op value' for a field and a Real.  The Unit handling follows
+   * the Real case of FlatField.binary.
+   */
+  private static class Scalar extends Node {
+    private final int op;
+    private final Node left;
+    private final double[] values;
+    private final Unit[] leftTo;
+    private final Unit[] leftFrom;
+
+    Scalar(int op, Node left, double[] values, Unit[] thatUnits)
+           throws VisADException {
+      super(left.dim, left.isDouble);
+      this.op = op;
+      this.left = left;
+      this.values = values;
+      leftTo = new Unit[dim];
+      leftFrom = (Unit[]) left.units.clone();
+      units = new Unit[dim];
+
+      Unit[] thisUnits = (Unit[]) left.units.clone();
+      for (int j=0; j<dim; j++) {
+        switch (op) {
+          case ADD:
+          case SUBTRACT:
+          case INV_SUBTRACT:
+          case MAX:
+          case MIN:
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              units[j] = null;
+            }
+            else if (thisUnits[j] == CommonUnit.promiscuous) {
+              units[j] = thatUnits[j].getAbsoluteUnit();
+            }
+            else if (thatUnits[j] == CommonUnit.promiscuous) {
+              units[j] = thisUnits[j].getAbsoluteUnit();
+            }
+            else {
+              units[j] = thisUnits[j].getAbsoluteUnit();
+              // FlatField.binary always converts float values
+              if (!isDouble || !units[j].equals(thisUnits[j])) {
+                leftTo[j] = units[j];
+              }
+              if (!units[j].equals(thatUnits[j])) {
+                try {
+                  values[j] = units[j].toThis(values[j], thatUnits[j]);
+                }
+                catch (UnitException e) {       // inconvertible units
+                  units[j] = null;
+                }
+              }
+            }
+            break;
+
+          case MULTIPLY:
+          case DIVIDE:
+          case INV_DIVIDE:
+            absolute(j, thisUnits, leftTo);
+            scalarAbsolute(j, thatUnits);
+            if (thisUnits[j] == null || thatUnits[j] == null) {
+              units[j] = null;
+            }
+            else if (op == MULTIPLY) {
+              units[j] =
+                thisUnits[j].equals(CommonUnit.promiscuous)
+                  ? thatUnits[j]
+                  : thatUnits[j].equals(CommonUnit.promiscuous)
+                    ? thisUnits[j]
+                    : thisUnits[j].multiply(thatUnits[j]);
+            }
+            else if (op == DIVIDE) {
+              units[j] =
+                thatUnits[j].equals(CommonUnit.promiscuous)
+                  ? thisUnits[j]
+                  : thisUnits[j].divide(thatUnits[j]);
+            }
+            else {
+              units[j] =
+                thisUnits[j].equals(CommonUnit.promiscuous)
+                  ? thatUnits[j]
+                  : thatUnits[j].divide(thisUnits[j]);
+            }
+            break;
+
+          case POW:
+            absolute(j, thisUnits, leftTo);
+            if (!CommonUnit.promiscuous.equals(thatUnits[j])) {
+              scalarAbsolute(j, thatUnits);
+            }
+            units[j] = dimensionless(thisUnits[j]);
+            break;
+
+          case INV_POW:
+            scalarAbsolute(j, thatUnits);
+            if (!CommonUnit.promiscuous.equals(thisUnits[j])) {
+              absolute(j, thisUnits, leftTo);
+            }
+            units[j] = dimensionless(thatUnits[j]);
+            break;
+
+          default:  // ATAN2, ATAN2_DEGREES, INV_ATAN2, INV_ATAN2_DEGREES,
+                    // REMAINDER, INV_REMAINDER
+            if (thisUnits[j] != null && thatUnits[j] != null) {
+              Unit absUnit = thisUnits[j].getAbsoluteUnit();
+              if (!absUnit.equals(thisUnits[j])) {
+                leftTo[j] = absUnit;
+                thisUnits[j] = absUnit;
+              }
+              if (!absUnit.equals(thatUnits[j])) {
+                values[j] = absUnit.toThis(values[j], thatUnits[j]);
+                thatUnits[j] = absUnit;
+              }
+            }
+            units[j] =
+              (op == ATAN2 || op == INV_ATAN2) ? CommonUnit.radian :
+              (op == ATAN2_DEGREES || op == INV_ATAN2_DEGREES) ?
+                CommonUnit.degree :
+              (op == REMAINDER) ? thisUnits[j] : thatUnits[j];
+            break;
+        }
+      }
+    }
+
+    /** convert values[j] and thatUnits[j] to the absolute Unit */
+    private void scalarAbsolute(int j, Unit[] thatUnits)
+            throws VisADException {
+      if (thatUnits[j] != null) {
+        Unit absUnit = thatUnits[j].getAbsoluteUnit();
+        if (!absUnit.equals(thatUnits[j])) {
+          values[j] = absUnit.toThis(values[j], thatUnits[j]);
+          thatUnits[j] = absUnit;
+        }
+      }
+    }
+
+    void prepare(boolean asDouble, Bindings bindings) throws VisADException {
+      left.prepare(isDouble, bindings);
+    }
+
+    Object eval(int start, int count, boolean asDouble, Bindings bindings)
+           throws VisADException {
+      Object a = left.eval(start, count, isDouble, bindings);
+      convert(a, leftTo, leftFrom);
+      if (isDouble) {
+        FlatField.binaryValues(op, (double[][]) a, null, values, 0, count);
+      }
+      else {
+        FlatField.binaryValues(op, null, (float[][]) a, values, 0, count);
+      }
+      return as(a, asDouble);
+    }
+  }
+
+  /**
+   * 'op child'.  Values are first made rational as in
+   * FlatField.makeRational, then FlatField.unary's operation is applied.
+   */
+  private static class Unary extends Node {
+    private final int op;
+    private final Node child;
+    private final Unit[] rationalTo;
+    private final Unit[] rationalFrom;
+    private final Unit[] rationalUnits;
+
+    Unary(int op, Node child) throws VisADException {
+      super(child.dim, child.isDouble);
+      this.op = op;
+      this.child = child;
+      rationalTo = new Unit[dim];
+      rationalFrom = (Unit[]) child.units.clone();
+      rationalUnits = (Unit[]) child.units.clone();
+      for (int j=0; j<dim; j++) {
+        Unit inputUnit = rationalUnits[j];
+        if (inputUnit != null && !(inputUnit instanceof PromiscuousUnit)) {
+          Unit outputUnit = inputUnit.getAbsoluteUnit();
+          if (Unit.canConvert(outputUnit, CommonUnit.dimensionless)) {
+            outputUnit = CommonUnit.dimensionless;
+          }
+          if (!outputUnit.equals(inputUnit)) {
+            checkConvert(outputUnit, inputUnit);
+            rationalTo[j] = outputUnit;
+            rationalUnits[j] = outputUnit;
+          }
+        }
+      }
+      // the output Units of the operation, from an empty range
+      units = new Unit[dim];
+      if (isDouble) {
+        FlatField.unaryValues(op, new double[dim][0], null, rationalUnits,
+                              units, 0, 0);
+      }
+      else {
+        FlatField.unaryValues(op, null, new float[dim][0], rationalUnits,
+                              units, 0, 0);
+      }
+    }
+
+    void prepare(boolean asDouble, Bindings bindings) throws VisADException {
+      child.prepare(isDouble, bindings);
+    }
+
+    Object eval(int start, int count, boolean asDouble, Bindings bindings)
+           throws VisADException {
+      Object a = child.eval(start, count, isDouble, bindings);
+      convert(a, rationalTo, rationalFrom);
+      Unit[] units_out = new Unit[dim];
+      if (isDouble) {
+        FlatField.unaryValues(op, (double[][]) a, null, rationalUnits,
+                              units_out, 0, count);
+      }
+      else {
+        FlatField.unaryValues(op, null, (float[][]) a, rationalUnits,
+                              units_out, 0, count);
+      }
+      return as(a, asDouble);
+    }
+  }
+
+  /** record conversion of units[j] to its absolute Unit in to[j] */
+  private static void absolute(int j, Unit[] units, Unit[] to) {
+    if (units[j] != null) {
+      Unit absUnit = units[j].getAbsoluteUnit();
+      if (!absUnit.equals(units[j])) {
+        to[j] = absUnit;
+        units[j] = absUnit;
+      }
+    }
+  }
+
+  /** the Unit of a power whose base has Unit unit */
+  private static Unit dimensionless(Unit unit) {
+    if (unit != null && (unit.equals(CommonUnit.promiscuous) ||
+                         unit.equals(CommonUnit.dimensionless))) {
+      return unit;
+    }
+    return null;
+  }
+
+  // every method that reads or partly writes the range evaluates first
+
+  protected double[][] unpackValues(boolean copy)
+            throws SetException, VisADException {
+    evaluate();
+    return super.unpackValues(copy);
+  }
+
+  protected float[][] unpackFloats(boolean copy) throws VisADException {
+    evaluate();
+    return super.unpackFloats(copy);
+  }
+
+  protected double[] unpackOneRangeComp(int comp, boolean copy)
+            throws VisADException {
+    evaluate();
+    return super.unpackOneRangeComp(comp, copy);
+  }
+
+  protected float[] unpackOneFloatRangeComp(int comp, boolean copy)
+            throws VisADException {
+    evaluate();
+    return super.unpackOneFloatRangeComp(comp, copy);
+  }
+
+  protected double[] unpackValues(int s_index) throws VisADException {
+    evaluate();
+    return super.unpackValues(s_index);
+  }
+
+  protected float[] unpackFloats(int s_index) throws VisADException {
+    evaluate();
+    return super.unpackFloats(s_index);
+  }
+
+  public RangeView[] getRangeViews() throws VisADException {
+    evaluate();
+    return super.getRangeViews();
+  }
+
+  public byte[][] grabBytes() {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      return null;
+    }
+    return super.grabBytes();
+  }
+
+  public Data getSample(int index) throws VisADException, RemoteException {
+    evaluate();
+    return super.getSample(index);
+  }
+
+  public void setSample(int index, Data range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSample(index, range);
+  }
+
+  public void setSamples(int start, double[][] range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSamples(start, range);
+  }
+
+  public void setSamples(int[] indices, double[][] range)
+         throws VisADException, RemoteException {
+    evaluate();
+    super.setSamples(indices, range);
+  }
+
+  public void setSamples(double[][] range, ErrorEstimate[] errors,
+              boolean copy) throws VisADException, RemoteException {
+    discard();
+    super.setSamples(range, errors, copy);
+  }
+
+  public void setSamples(float[][] range, ErrorEstimate[] errors,
+              boolean copy) throws VisADException, RemoteException {
+    discard();
+    super.setSamples(range, errors, copy);
+  }
+
+  public Object clone() {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      throw new RuntimeException(e.toString());
+    }
+    return super.clone();
+  }
+
+  public boolean equals(Object obj) {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      return false;
+    }
+    return super.equals(obj);
+  }
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    try {
+      evaluate();
+    }
+    catch (VisADException e) {
+      throw new IOException(e.toString());
+    }
+    out.defaultWriteObject();
+  }
+
+}
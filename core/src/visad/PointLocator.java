@@ -0,0 +1,206 @@
+//
+// PointLocator.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+/**
+   PointLocator picks the triangle (or tetrahedron) of a Delaunay
+   topology from which a point location walk should start.  It covers
+   the samples' bounding box with a grid of about one cell per two
+   simplices, and records in each cell a simplex whose centroid lies in
+   or near it, so that a walk from the seed of a point's cell takes a
+   few steps rather than a number proportional to the size of the
+   set.<P>
+
+   IrregularSet builds one per set the first time it is needed.<P>
+*/
+class PointLocator {
+
+  /** the topology the seeds were computed for */
+  private final int[][] tri;
+
+  private final int dim;
+  private final float[] low;
+  private final float[] high;
+  private final float[] scale;
+  private final int[] count;
+
+  /** seed simplex of each cell, first component increasing fastest */
+  private final int[] seed;
+
+  /**
+   * construct a PointLocator for a topology
+   * @param samples locations of points - dimensioned
+   *                float[dimension][number_of_points]
+   * @param tri simplices of the topology, as in Delaunay.Tri
+   * @throws VisADException a VisAD error occurred
+   */
+  PointLocator(float[][] samples, int[][] tri) throws VisADException {
+    this.tri = tri;
+    dim = samples.length;
+    if (dim < 2 || dim > 3) {
+      throw new SetException("PointLocator: dimension must be 2 or 3");
+    }
+    int ntris = tri.length;
+    int nverts = Math.min(dim + 1, (ntris > 0) ? tri[0].length : 0);
+
+    // bounding box of the vertices
+    low = new float[dim];
+    high = new float[dim];
+    for (int d=0; d<dim; d++) {
+      low[d] = Float.POSITIVE_INFINITY;
+      high[d] = Float.NEGATIVE_INFINITY;
+    }
+    for (int t=0; t<ntris; t++) {
+      for (int k=0; k<nverts; k++) {
+        for (int d=0; d<dim; d++) {
+          float v = samples[d][tri[t][k]];
+          if (v < low[d]) low[d] = v;
+          if (v > high[d]) high[d] = v;
+        }
+      }
+    }
+
+    // cells of about equal extent along each axis
+    double cells = Math.max(1.0, ntris / 2.0);
+    double volume = 1.0;
+    int flat = 0;
+    for (int d=0; d<dim; d++) {
+      double extent = high[d] - low[d];
+      if (extent > 0.0) volume *= extent;
+      else flat++;
+    }
+    double side = Math.pow(volume / cells, 1.0 / Math.max(1, dim - flat));
+    count = new int[dim];
+    scale = new float[dim];
+    int total = 1;
+    for (int d=0; d<dim; d++) {
+      double extent = high[d] - low[d];
+      count[d] = 1;
+      if (extent > 0.0 && side > 0.0) {
+        count[d] = (int) Math.max(1, Math.min(4096, Math.round(extent / side)));
+      }
+      scale[d] = (extent > 0.0) ? (float) (count[d] / extent) : 0.0f;
+      total *= count[d];
+    }
+
+    // seed each cell with a simplex whose centroid it contains
+    seed = new int[total];
+    for (int c=0; c<total; c++) seed[c] = -1;
+    float[] centroid = new float[dim];
+    for (int t=0; t<ntris; t++) {
+      for (int d=0; d<dim; d++) {
+        float sum = 0.0f;
+        for (int k=0; k<nverts; k++) sum += samples[d][tri[t][k]];
+        centroid[d] = sum / nverts;
+      }
+      seed[cell(centroid)] = t;
+    }
+
+    // give empty cells the seed of the nearest cell along each axis
+    int stride = 1;
+    for (int d=0; d<dim; d++) {
+      int n = count[d];
+      int lines = total / n;
+      for (int line=0; line<lines; line++) {
+        // index of the first cell of this line along axis d
+        int start = (line / stride) * stride * n + (line % stride);
+        int last = -1;
+        for (int i=0; i<n; i++) {
+          int c = start + i * stride;
+          if (seed[c] >= 0) last = seed[c];
+          else seed[c] = last;
+        }
+        last = -1;
+        for (int i=n-1; i>=0; i--) {
+          int c = start + i * stride;
+          if (seed[c] >= 0) last = seed[c];
+          else seed[c] = last;
+        }
+      }
+      stride *= n;
+    }
+  }
+
+  /**
+   * @return flag indicating whether this was built for the topology
+   */
+  boolean isFor(int[][] tri) {
+    return this.tri == tri;
+  }
+
+  /**
+   * @return flag indicating whether the point with the given
+   *         coordinates is missing or outside the bounding box of the
+   *         topology, so that no triangle can contain it
+   */
+  boolean isOutside(float x, float y) {
+    return !(low[0] <= x && x <= high[0] && low[1] <= y && y <= high[1]);
+  }
+
+  /**
+   * @return flag indicating whether the point with the given
+   *         coordinates is missing or outside the bounding box of the
+   *         topology, so that no tetrahedron can contain it
+   */
+  boolean isOutside(float x, float y, float z) {
+    return !(low[0] <= x && x <= high[0] && low[1] <= y && y <= high[1] &&
+             low[2] <= z && z <= high[2]);
+  }
+
+  /**
+   * @return a simplex near the point with the given coordinates, or
+   *         0 if there is no better guess
+   */
+  int seed(float x, float y) {
+    int c = index(0, x) + count[0] * index(1, y);
+    return Math.max(0, seed[c]);
+  }
+
+  /**
+   * @return a simplex near the point with the given coordinates, or
+   *         0 if there is no better guess
+   */
+  int seed(float x, float y, float z) {
+    int c = index(0, x) + count[0] * (index(1, y) + count[1] * index(2, z));
+    return Math.max(0, seed[c]);
+  }
+
+  private int cell(float[] p) {
+    int c = 0;
+    for (int d=dim-1; d>=0; d--) c = c * count[d] + index(d, p[d]);
+    return c;
+  }
+
+  private int index(int d, float v) {
+    float f = (v - low[d]) * scale[d];
+    // also catches NaN
+    if (!(f > 0.0f)) return 0;
+    int i = (int) f;
+    return (i < count[d]) ? i : count[d] - 1;
+  }
+
+}
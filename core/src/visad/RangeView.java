@@ -0,0 +1,267 @@
+//
+// RangeView.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.nio.FloatBuffer;
+
+/**
+   RangeView is a read-only view of one component of the range
+   values of a FlatField.  Values are decoded on access, so a range
+   packed as bytes, shorts or ints (according to its range Set) is
+   never inflated to a float array unless toFloats() is called.<P>
+
+   A RangeView shares storage with the field it came from; it is
+   not a copy, and it must not be held across calls to setSamples.<P>
+*/
+public abstract class RangeView {
+
+  protected final int length;
+
+  protected RangeView(int length) {
+    this.length = length;
+  }
+
+  /** return the number of samples */
+  public int getLength() {
+    return length;
+  }
+
+  /** return the value of sample index, or NaN if it is missing */
+  public abstract float getFloat(int index);
+
+  /** return the value of sample index as a double */
+  public double getDouble(int index) {
+    return getFloat(index);
+  }
+
+  /** decode count values starting at sample start into
+      dest[offset] ... dest[offset + count - 1] */
+  public void getFloats(int start, float[] dest, int offset, int count) {
+    for (int i=0; i<count; i++) {
+      dest[offset + i] = getFloat(start + i);
+    }
+  }
+
+  /** return the array backing this view if it is a float array,
+      otherwise null */
+  float[] getFloatArray() {
+    return null;
+  }
+
+  /** return a new array of all values */
+  public float[] toFloats() {
+    float[] values = new float[length];
+    getFloats(0, values, 0, length);
+    return values;
+  }
+
+  /** return a view of a float array */
+  public static RangeView of(float[] values) {
+    return new FloatView(values);
+  }
+
+  /** return a view of a double array */
+  public static RangeView of(double[] values) {
+    return new DoubleView(values);
+  }
+
+  /** return a view of a FloatBuffer, starting at its position */
+  public static RangeView of(FloatBuffer values) {
+    return new BufferView(values);
+  }
+
+  /** return a view of length missing values */
+  public static RangeView missing(int length) {
+    return new MissingView(length);
+  }
+
+  /** return a view of byte-packed values; packed[i] - bias is an
+      index into set, and an index outside set is missing */
+  public static RangeView of(byte[] packed, int bias, Set set)
+         throws VisADException {
+    return new ByteView(packed, bias, set);
+  }
+
+  /** return a view of short-packed values; packed[i] - bias is an
+      index into set, and an index outside set is missing */
+  public static RangeView of(short[] packed, int bias, Set set)
+         throws VisADException {
+    return new ShortView(packed, bias, set);
+  }
+
+  /** return a view of int-packed values; packed[i] - bias is an
+      index into set, and an index outside set is missing */
+  public static RangeView of(int[] packed, int bias, Set set)
+         throws VisADException {
+    return new IntView(packed, bias, set);
+  }
+
+  private static class FloatView extends RangeView {
+    private final float[] values;
+
+    FloatView(float[] values) {
+      super(values.length);
+      this.values = values;
+    }
+
+    public float getFloat(int index) {
+      return values[index];
+    }
+
+    public void getFloats(int start, float[] dest, int offset, int count) {
+      System.arraycopy(values, start, dest, offset, count);
+    }
+
+    float[] getFloatArray() {
+      return values;
+    }
+  }
+
+  private static class DoubleView extends RangeView {
+    private final double[] values;
+
+    DoubleView(double[] values) {
+      super(values.length);
+      this.values = values;
+    }
+
+    public float getFloat(int index) {
+      return (float) values[index];
+    }
+
+    public double getDouble(int index) {
+      return values[index];
+    }
+  }
+
+  private static class BufferView extends RangeView {
+    private final FloatBuffer values;
+
+    BufferView(FloatBuffer values) {
+      super(values.remaining());
+      this.values = values.slice();
+    }
+
+    public float getFloat(int index) {
+      return values.get(index);
+    }
+
+    public void getFloats(int start, float[] dest, int offset, int count) {
+      FloatBuffer buf = values.duplicate();
+      buf.position(start);
+      buf.get(dest, offset, count);
+    }
+  }
+
+  private static class MissingView extends RangeView {
+    MissingView(int length) {
+      super(length);
+    }
+
+    public float getFloat(int index) {
+      return Float.NaN;
+    }
+  }
+
+  /** values stored as indices into a 1-D Set; a Linear1DSet is
+      decoded as first + index * step, any other Set through a
+      table of its samples */
+  private static abstract class PackedView extends RangeView {
+    private final int bias;
+    private final int setLength;
+    private final double first;
+    private final double step;
+    private final float[] table;
+
+    PackedView(int length, int bias, Set set) throws VisADException {
+      super(length);
+      this.bias = bias;
+      setLength = set.getLength();
+      if (set instanceof Linear1DSet) {
+        first = ((Linear1DSet) set).getFirst();
+        step = ((Linear1DSet) set).getStep();
+        table = null;
+      }
+      else {
+        first = 0.0;
+        step = 0.0;
+        int[] index = new int[setLength];
+        for (int i=0; i<setLength; i++) index[i] = i;
+        table = set.indexToValue(index)[0];
+      }
+    }
+
+    abstract int packed(int index);
+
+    public float getFloat(int index) {
+      int k = packed(index) - bias;
+      if (k < 0 || k >= setLength) return Float.NaN;
+      return (table == null) ? (float) (first + ((double) k) * step) :
+                               table[k];
+    }
+  }
+
+  private static class ByteView extends PackedView {
+    private final byte[] packed;
+
+    ByteView(byte[] packed, int bias, Set set) throws VisADException {
+      super(packed.length, bias, set);
+      this.packed = packed;
+    }
+
+    int packed(int index) {
+      return packed[index];
+    }
+  }
+
+  private static class ShortView extends PackedView {
+    private final short[] packed;
+
+    ShortView(short[] packed, int bias, Set set) throws VisADException {
+      super(packed.length, bias, set);
+      this.packed = packed;
+    }
+
+    int packed(int index) {
+      return packed[index];
+    }
+  }
+
+  private static class IntView extends PackedView {
+    private final int[] packed;
+
+    IntView(int[] packed, int bias, Set set) throws VisADException {
+      super(packed.length, bias, set);
+      this.packed = packed;
+    }
+
+    int packed(int index) {
+      return packed[index];
+    }
+  }
+
+}
@@ -0,0 +1,443 @@
+//
+// ResamplePlan.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import visad.util.Parallel;
+
+/**
+   ResamplePlan holds the sample indices and interpolation weights
+   that FlatField.resample uses to resample from one domain Set to
+   another.  Plans depend only on the two Sets (and the domain type,
+   CoordinateSystem and Units of the source field), so resampling many
+   fields between the same Sets, e.g. the time steps of an animation,
+   computes the plan once and then only gathers and weights range
+   values.<P>
+
+   Plans are kept in a least recently used cache limited to a number
+   of bytes, taken from the system property
+   <code>visad.resample.cacheSize</code> (default 1/32 of the maximum
+   heap size; 0 disables the cache).  Cached plans are softly
+   referenced, so the garbage collector may reclaim them.<P>
+*/
+public class ResamplePlan {
+
+  private static long maxBytes =
+    Long.getLong("visad.resample.cacheSize",
+                 Runtime.getRuntime().maxMemory() / 32).longValue();
+
+  private static long cacheBytes = 0;
+
+  private static final LinkedHashMap<Key, PlanReference> cache =
+    new LinkedHashMap<Key, PlanReference>(16, 0.75f, true);
+
+  /** indices into the target Set, in the order of the plan's samples */
+  final int[] wedge;
+
+  /** true if samples were transformed to the source coordinates */
+  final boolean coordTransform;
+
+  /** for interpolation, sample i is the sum of source samples
+      indices[offsets[i]] ... indices[offsets[i+1]-1] weighted by
+      coefs; null for nearest neighbor */
+  private final int[] offsets;
+  private final int[] indices;
+  private final float[] coefs;
+
+  /** for nearest neighbor, the source sample of each sample, or -1;
+      null for interpolation */
+  private final int[] nearest;
+
+  private ResamplePlan(int[] wedge, boolean coordTransform, int[] offsets,
+                       int[] indices, float[] coefs, int[] nearest) {
+    this.wedge = wedge;
+    this.coordTransform = coordTransform;
+    this.offsets = offsets;
+    this.indices = indices;
+    this.coefs = coefs;
+    this.nearest = nearest;
+  }
+
+  /**
+   * Set the maximum number of bytes of cached plans.
+   *
+   * @param bytes  cache size; 0 disables the cache
+   */
+  public static void setCacheSize(long bytes) {
+    synchronized (cache) {
+      maxBytes = Math.max(0, bytes);
+      trim(0);
+    }
+  }
+
+  /**
+   * @return the maximum number of bytes of cached plans
+   */
+  public static long getCacheSize() {
+    synchronized (cache) {
+      return maxBytes;
+    }
+  }
+
+  /** remove all cached plans */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+      cacheBytes = 0;
+    }
+  }
+
+  /**
+   * Build an interpolation plan.
+   *
+   * @param domainSet  Set being resampled from
+   * @param vals       target samples in the coordinates of domainSet
+   * @param wedge      target indices of vals
+   * @param coordTransform  true if vals were transformed
+   * @return the plan
+   * @throws VisADException  if domainSet cannot interpolate
+   */
+  static ResamplePlan interpolate(SimpleSet domainSet, float[][] vals,
+                                  int[] wedge, boolean coordTransform)
+         throws VisADException {
+    int length = wedge.length;
+    int[][] ind = new int[length][];
+    float[][] cf = new float[length][];
+    domainSet.valueToInterp(vals, ind, cf);
+
+    int[] offsets = new int[length + 1];
+    for (int i=0; i<length; i++) {
+      int len = (ind[i] == null) ? 0 : ind[i].length;
+      offsets[i + 1] = offsets[i] + len;
+    }
+    int[] indices = new int[offsets[length]];
+    float[] coefs = new float[offsets[length]];
+    for (int i=0; i<length; i++) {
+      int len = offsets[i + 1] - offsets[i];
+      if (len > 0) {
+        System.arraycopy(ind[i], 0, indices, offsets[i], len);
+        System.arraycopy(cf[i], 0, coefs, offsets[i], len);
+      }
+    }
+    return new ResamplePlan(wedge, coordTransform, offsets, indices, coefs,
+                            null);
+  }
+
+  /**
+   * Build a nearest neighbor plan.
+   *
+   * @param domainSet  Set being resampled from
+   * @param vals       target samples in the coordinates of domainSet
+   * @param wedge      target indices of vals
+   * @param coordTransform  true if vals were transformed
+   * @return the plan
+   * @throws VisADException  if domainSet cannot locate vals
+   */
+  static ResamplePlan nearest(Set domainSet, float[][] vals, int[] wedge,
+                              boolean coordTransform)
+         throws VisADException {
+    int[] nearest = domainSet.valueToIndex(vals);
+    return new ResamplePlan(wedge, coordTransform, null, null, null,
+                            nearest);
+  }
+
+  /** @return approximate number of bytes held by this plan */
+  long getSize() {
+    long size = 4L * wedge.length;
+    if (nearest != null) size += 4L * nearest.length;
+    if (offsets != null) {
+      size += 4L * (offsets.length + indices.length + coefs.length);
+    }
+    return size;
+  }
+
+  /**
+   * Resample range values using this plan, splitting the samples
+   * across threads with {@link Parallel}.  Values come from values if
+   * it is not null, else from views if it is not null, else from
+   * field.unpackFloats(int).
+   *
+   * @param field       field being resampled
+   * @param values      range values of field, or null
+   * @param views       range views of field, or null
+   * @param new_values  resampled values, indexed by target Set index
+   * @throws VisADException  if range values cannot be unpacked
+   */
+  void apply(final FlatField field, final float[][] values,
+             final RangeView[] views, final float[][] new_values)
+       throws VisADException {
+    Parallel.forRange(wedge.length, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        if (nearest == null) {
+          interpolate(field, values, views, new_values, start, end);
+        }
+        else {
+          nearest(field, values, views, new_values, start, end);
+        }
+      }
+    });
+  }
+
+  private void interpolate(FlatField field, float[][] values,
+                           RangeView[] views, float[][] new_values,
+                           int start, int end)
+          throws VisADException {
+    int dim = new_values.length;
+    if (values != null) {
+      for (int j=0; j<dim; j++) {
+        float[] valuesJ = values[j];
+        float[] new_valuesJ = new_values[j];
+        for (int i=start; i<end; i++) {
+          int lo = offsets[i];
+          int hi = offsets[i + 1];
+          if (hi > lo) {
+            float v = valuesJ[indices[lo]] * coefs[lo];
+            for (int k=lo+1; k<hi; k++) {
+              v += valuesJ[indices[k]] * coefs[k];
+            }
+            new_valuesJ[wedge[i]] = v;
+          }
+          else { // values outside grid
+            new_valuesJ[wedge[i]] = Float.NaN;
+          }
+        }
+      }
+    }
+    else if (views != null) {
+      for (int j=0; j<dim; j++) {
+        RangeView viewJ = views[j];
+        float[] new_valuesJ = new_values[j];
+        for (int i=start; i<end; i++) {
+          int lo = offsets[i];
+          int hi = offsets[i + 1];
+          if (hi > lo) {
+            float v = viewJ.getFloat(indices[lo]) * coefs[lo];
+            for (int k=lo+1; k<hi; k++) {
+              v += viewJ.getFloat(indices[k]) * coefs[k];
+            }
+            new_valuesJ[wedge[i]] = v;
+          }
+          else { // values outside grid
+            new_valuesJ[wedge[i]] = Float.NaN;
+          }
+        }
+      }
+    }
+    else {
+      for (int i=start; i<end; i++) {
+        int lo = offsets[i];
+        int hi = offsets[i + 1];
+        if (hi > lo) {
+          float[][] xvals = new float[hi - lo][];
+          for (int k=lo; k<hi; k++) {
+            xvals[k - lo] = field.unpackFloats(indices[k]);
+          }
+          for (int j=0; j<dim; j++) {
+            float v = xvals[0][j] * coefs[lo];
+            for (int k=lo+1; k<hi; k++) v += xvals[k - lo][j] * coefs[k];
+            new_values[j][wedge[i]] = v;
+          }
+        }
+        else { // values outside grid
+          for (int j=0; j<dim; j++) {
+            new_values[j][wedge[i]] = Float.NaN;
+          }
+        }
+      }
+    }
+  }
+
+  private void nearest(FlatField field, float[][] values,
+                       RangeView[] views, float[][] new_values,
+                       int start, int end)
+          throws VisADException {
+    int dim = new_values.length;
+    if (values != null) {
+      for (int j=0; j<dim; j++) {
+        float[] valuesJ = values[j];
+        float[] new_valuesJ = new_values[j];
+        for (int i=start; i<end; i++) {
+          new_valuesJ[wedge[i]] =
+            ((nearest[i] >= 0) ? valuesJ[nearest[i]]: Float.NaN);
+        }
+      }
+    }
+    else if (views != null) {
+      for (int j=0; j<dim; j++) {
+        RangeView viewJ = views[j];
+        float[] new_valuesJ = new_values[j];
+        for (int i=start; i<end; i++) {
+          new_valuesJ[wedge[i]] =
+            ((nearest[i] >= 0) ? viewJ.getFloat(nearest[i]) : Float.NaN);
+        }
+      }
+    }
+    else {
+      for (int i=start; i<end; i++) {
+        if (nearest[i] >= 0) {
+          float[] xvals = field.unpackFloats(nearest[i]);
+          for (int j=0; j<dim; j++) {
+            new_values[j][wedge[i]] = xvals[j];
+          }
+        }
+        else { // values outside grid
+          for (int j=0; j<dim; j++) {
+            new_values[j][wedge[i]] = Float.NaN;
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * Return the cached plan for key.
+   *
+   * @param key  cache key, or null
+   * @return the plan, or null if none is cached
+   */
+  static ResamplePlan get(Key key) {
+    if (key == null) return null;
+    synchronized (cache) {
+      PlanReference ref = cache.get(key);
+      if (ref == null) return null;
+      ResamplePlan plan = ref.get();
+      if (plan == null) {
+        cache.remove(key);
+        cacheBytes -= ref.size;
+      }
+      return plan;
+    }
+  }
+
+  /**
+   * Cache plan under key, evicting the least recently used plans to
+   * stay within the cache size.  Plans larger than the cache are not
+   * cached.
+   *
+   * @param key   cache key, or null to not cache plan
+   * @param plan  plan to cache
+   */
+  static void put(Key key, ResamplePlan plan) {
+    if (key == null || plan == null) return;
+    long size = plan.getSize();
+    synchronized (cache) {
+      if (size > maxBytes) return;
+      PlanReference old = cache.remove(key);
+      if (old != null) cacheBytes -= old.size;
+      trim(size);
+      cache.put(key, new PlanReference(plan, size));
+      cacheBytes += size;
+    }
+  }
+
+  /** drop reclaimed plans, then least recently used plans until
+      size more bytes fit; caller must hold the cache lock */
+  private static void trim(long size) {
+    Iterator<Map.Entry<Key, PlanReference>> it =
+      cache.entrySet().iterator();
+    while (it.hasNext()) {
+      PlanReference ref = it.next().getValue();
+      if (ref.get() == null) {
+        cacheBytes -= ref.size;
+        it.remove();
+      }
+    }
+    it = cache.entrySet().iterator();
+    while (cacheBytes + size > maxBytes && it.hasNext()) {
+      cacheBytes -= it.next().getValue().size;
+      it.remove();
+    }
+  }
+
+  private static class PlanReference extends SoftReference<ResamplePlan> {
+    final long size;
+
+    PlanReference(ResamplePlan plan, long size) {
+      super(plan);
+      this.size = size;
+    }
+  }
+
+  /** identifies the source and target of a plan */
+  static class Key {
+    private final MathType domainType;
+    private final Set domainSet;
+    private final CoordinateSystem domainCS;
+    private final Unit[] domainUnits;
+    private final MathType setType;
+    private final Set set;
+    private final int mode;
+    private final int hash;
+
+    /**
+     * @param domainType   domain type of the field being resampled
+     * @param domainSet    domain Set of the field being resampled
+     * @param domainCS     domain CoordinateSystem of the field
+     * @param domainUnits  domain Units of the field
+     * @param setType      domain type of set
+     * @param set          Set being resampled to
+     * @param mode         Data.WEIGHTED_AVERAGE or Data.NEAREST_NEIGHBOR
+     */
+    Key(MathType domainType, Set domainSet, CoordinateSystem domainCS,
+        Unit[] domainUnits, MathType setType, Set set, int mode) {
+      this.domainType = domainType;
+      this.domainSet = domainSet;
+      this.domainCS = domainCS;
+      this.domainUnits = domainUnits;
+      this.setType = setType;
+      this.set = set;
+      this.mode = mode;
+      hash = domainSet.hashCode() ^ (31 * set.hashCode()) ^ mode;
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object obj) {
+      if (this == obj) return true;
+      if (!(obj instanceof Key)) return false;
+      Key key = (Key) obj;
+      return hash == key.hash && mode == key.mode &&
+             same(domainSet, key.domainSet) && same(set, key.set) &&
+             same(domainType, key.domainType) &&
+             same(setType, key.setType) &&
+             same(domainCS, key.domainCS) &&
+             Arrays.equals(domainUnits, key.domainUnits);
+    }
+
+    private static boolean same(Object a, Object b) {
+      return (a == b) || (a != null && a.equals(b));
+    }
+  }
+
+}
@@ -1103,6 +1103,41 @@ if (overrideUnit != null) {
     return new_values;
   }
 
+  /** return an array of display (DisplayRealType) values by
+   *  linear scaling (if applicable) the values of a RangeView
+   *  (RealType values); packed values are decoded straight into
+   *  the returned array
+   * @param   view   values to scale
+   * @return  array of display values
+   */
+  public float[] scaleValues(RangeView view) {
+    if (view == null) return null;
+    if (badRange() || (overrideUnit != null &&
+        !overrideUnit.equals(((RealType) Scalar).getDefaultUnit()))) {
+      return scaleValues(view.toFloats(), false);
+    }
+    if (!isScaled && view.getFloatArray() != null) {
+      // as scaleValues(float[]), unscaled values are not copied
+      return view.getFloatArray();
+    }
+    int n = view.getLength();
+    float[] new_values = new float[n];
+    if (isScaled) {
+      for (int i=0; i<n; i++) {
+        float v = view.getFloat(i);
+        if (v == v) {
+          new_values[i] = (float) (offset + scale * v);
+        } else {
+          new_values[i] = Float.NaN;
+        }
+      }
+    }
+    else {
+      view.getFloats(0, new_values, 0, n);
+    }
+    return new_values;
+  }
+
   /** return an array of display (DisplayRealType) values by
    *  linear scaling (if applicable) the data_values array
    *  (RealType values); results are scaled by the given scale factor
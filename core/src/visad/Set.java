@@ -491,6 +491,27 @@ public abstract class Set extends DataImpl implements SetIface {
     throw new SetException("Set.makeIsoSurface: not valid for this Set");
   }
 
+  /**
+   * Make isosurfaces at several levels.
+   *
+   * @param isolevels     isosurface levels
+   * @param fieldValues   values at samples
+   * @param color_values  colors at samples, or null
+   * @param indexed       true for indexed triangle strips
+   * @return element i is the result of makeIsoSurface for isolevels[i]
+   * @throws VisADException  if the surfaces cannot be made
+   */
+  public VisADGeometryArray[] makeIsoSurfaces(float[] isolevels,
+         float[] fieldValues, byte[][] color_values, boolean indexed)
+         throws VisADException {
+    VisADGeometryArray[] arrays = new VisADGeometryArray[isolevels.length];
+    for (int i=0; i<isolevels.length; i++) {
+      arrays[i] = makeIsoSurface(isolevels[i], fieldValues, color_values,
+                                 indexed);
+    }
+    return arrays;
+  }
+
   /**
    * Returns an array of sample-point values corresponding to an array of 
    * sample-point indicies.
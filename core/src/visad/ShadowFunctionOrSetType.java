@@ -1399,18 +1399,32 @@ for (int i=0; i<DomainReferenceComponents.length; i++) {
 // if (link != null) System.out.println("start range " + (System.currentTimeMillis() - link.start_time));
 
       // get range_values for RealType and RealTupleType
-      // components, in defaultUnits for RealType-s
-      // MEM - may copy (in convertTuple)
-      float[][] range_values = ((Field) data).getFloats(false);
+      // components, in defaultUnits for RealType-s; without range
+      // CoordinateSystems, a FlatField's range is mapped through
+      // RangeViews so packed values are not unpacked first
+      float[][] range_values = null;
+      RangeView[] range_views = null;
+      if (data instanceof FlatField && getRefToComponent() == null) {
+        range_views = ((FlatField) data).getDefaultUnitRangeViews();
+      }
+      else {
+        // MEM - may copy (in convertTuple)
+        range_values = ((Field) data).getFloats(false);
+      }
 
       // System.out.println("got range_values");
 
-      if (range_values != null) {
+      if (range_values != null || range_views != null) {
         visad.util.Trace.call1("ShadowFunctionOrSetType:range_values != null");
         // map range_values to appropriate DisplayRealType-s
         ShadowRealType[] RangeComponents = getRangeComponents();
         // MEM
-        mapValues(display_values, range_values, RangeComponents, true);
+        if (range_views != null) {
+          mapValues(display_values, range_views, RangeComponents);
+        }
+        else {
+          mapValues(display_values, range_values, RangeComponents, true);
+        }
 
         // System.out.println("mapped range_values");
 
@@ -32,9 +32,11 @@ import java.rmi.RemoteException;
 import java.util.Enumeration;
 import java.util.Vector;
 import java.util.ArrayList;
+import java.util.Arrays;
 import visad.data.DataCacheManager;
 
 import visad.util.HersheyFont;
+import visad.util.Parallel;
 
 /**
  * The ShadowType hierarchy shadows the MathType hierarchy, within a
@@ -1210,6 +1212,34 @@ public abstract class ShadowType extends Object implements java.io.Serializable
     }
   }
 
+  /**
+   * Map the values of RangeViews into display_values according to
+   * ScalarMap-s in reals, without first unpacking them to float arrays
+   *
+   * @param display_values
+   *          return display values
+   * @param views
+   *          data values
+   * @param reals
+   *          the ShadowRealTypes corresponding to the Scalar in maps
+   */
+  public static void mapValues(float[][] display_values, RangeView[] views,
+      ShadowRealType[] reals) throws VisADException {
+    int n = views.length;
+    if (n != reals.length) {
+      throw new DisplayException("lengths don't match: ShadowType.mapValues");
+    }
+    for (int i = 0; i < n; i++) {
+      Enumeration maps = reals[i].getSelectedMapVector().elements();
+      while (maps.hasMoreElements()) {
+        ScalarMap map = (ScalarMap) maps.nextElement();
+        int value_index = map.getValueIndex();
+        // MEM
+        display_values[value_index] = map.scaleValues(views[i]);
+      }
+    }
+  }
+
   /* CTR: 13 Oct 1998 - BEGIN CHANGES */
   public static VisADGeometryArray makePointGeometry(float[][] spatial_values,
       byte[][] color_values) throws VisADException {
@@ -3298,6 +3328,10 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
       int[] valueToScalar, DisplayImpl display, float[] default_values,
       boolean[][] range_select, boolean[] single_missing, ShadowType shadow_api)
       throws VisADException, RemoteException {
+    byte[][] table_colors = assembleTableColor(display_values,
+        valueArrayLength, valueToScalar, display, default_values, range_select);
+    if (table_colors != null) return table_colors;
+
     float[][] rgba_values = new float[4][];
     float[] rgba_value_counts = { 0.0f, 0.0f, 0.0f, 0.0f };
     float[] rgba_singles = new float[4];
@@ -3539,6 +3573,96 @@ System.out.println("adjusted flow values = " + flow_values[0][0] + " " +
     return b;
   }
 
+  /**
+   * assembleColor for the common case where the only color input is one
+   * array of RGB or RGBA values looked up in a color table: index the
+   * table converted to bytes, without intermediate float colors, in
+   * parallel for long arrays; the result is the same as the general
+   * path; return null, changing nothing, in any other case
+   */
+  private static byte[][] assembleTableColor(float[][] display_values,
+      int valueArrayLength, int[] valueToScalar, DisplayImpl display,
+      float[] default_values, final boolean[][] range_select)
+      throws VisADException, RemoteException {
+    int color_index = -1;
+    for (int i = 0; i < valueArrayLength; i++) {
+      if (display_values[i] == null) continue;
+      DisplayRealType real = display.getDisplayScalar(valueToScalar[i]);
+      DisplayTupleType tuple = real.getTuple();
+      if ((tuple != null
+          && (tuple.equals(Display.DisplayRGBTuple) || (tuple
+              .getCoordinateSystem() != null && tuple.getCoordinateSystem()
+              .getReference().equals(Display.DisplayRGBTuple))))
+          || real.equals(Display.RGB) || real.equals(Display.HSV)
+          || real.equals(Display.CMY) || real.equals(Display.RGBA)
+          || real.equals(Display.Alpha)) {
+        if (color_index >= 0) return null; // more than one color input
+        color_index = i;
+      }
+    }
+    if (color_index < 0) return null;
+    final float[] values = display_values[color_index];
+    final int len = values.length;
+    if (len < 2) return null;
+    DisplayRealType real = display.getDisplayScalar(valueToScalar[color_index]);
+    final boolean rgba = real.equals(Display.RGBA);
+    if (!rgba && !real.equals(Display.RGB)) return null;
+
+    ScalarMap map = (ScalarMap) display.getMapVector().elementAt(
+        display.getValueToMap()[color_index]);
+    float[][] table = ((BaseColorControl) map.getControl()).getTable();
+    if (table == null) return null; // colors defined by a Function
+    for (int i = 0; i < table.length; i++) {
+      for (int j = 0; j < table[i].length; j++) {
+        if (table[i][j] != table[i][j]) return null;
+      }
+    }
+    final byte[][] b = new byte[4][];
+    if (!rgba) {
+      // Alpha is not extended to the array length, as in
+      // equalizeAndDefault
+      float alpha = default_values[display.getDisplayScalarIndex(Display.Alpha)];
+      if (alpha != alpha) return null;
+      b[3] = BaseColorControl.tableToBytes(new float[][] {{alpha}})[0];
+    }
+    final byte[][] tb = BaseColorControl.tableToBytes(table);
+    final int tableLength = table[0].length;
+    final int tblEnd = tableLength - 1;
+    final float scale = (float) tableLength;
+    final int ncomps = rgba ? 4 : 3;
+    for (int i = 0; i < ncomps; i++) b[i] = new byte[len];
+
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i = start; i < end; i++) {
+          float v = values[i];
+          if (v != v) {
+            // missing: colors stay 0 and the point is not selected
+            boolean[] select;
+            synchronized (range_select) {
+              if (range_select[0] == null) {
+                range_select[0] = new boolean[len];
+                Arrays.fill(range_select[0], true);
+              }
+              select = range_select[0];
+            }
+            select[i] = false;
+            continue;
+          }
+          // same index as BaseColorControl.lookupValues
+          int j = (int) (scale * v);
+          j = (j < 0) ? 0 : (tableLength <= j) ? tblEnd : j;
+          for (int k = 0; k < ncomps; k++) {
+            b[k][i] = tb[k][j];
+          }
+        }
+      }
+    });
+    // FREE
+    display_values[color_index] = null;
+    return b;
+  }
+
   public static final float byteToFloat(byte b) {
     return (b < 0) ? (((float) b) + 256.0f) / 255.0f : ((float) b) / 255.0f;
     //
@@ -26,11 +26,13 @@ MA 02111-1307, USA
 
 package visad.bom;
 
+import java.awt.Rectangle;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
 import java.rmi.RemoteException;
+import java.util.ArrayList;
 
 import javax.media.j3d.BranchGroup;
 import javax.swing.BoxLayout;
@@ -547,6 +549,76 @@ public class ImageRendererJ3D extends DefaultRendererJ3D {
     return suggestedBufImgType;
   }
 
+  // regions marked by addDirtyRegion and addDirtySamples, as
+  // {x, y, width, height} or {first, count}
+  private ArrayList<int[]> dirtyRegions = new ArrayList<int[]>();
+
+  /**
+   * Mark a rectangle of image samples as changed.  When the samples
+   * of the rendered FlatField (or of every image in a sequence) are
+   * modified in place, e.g. with setSamples, and all modified samples
+   * have been marked, the next transform recolors only the marked
+   * samples and updates only those sub-rectangles of the affected
+   * texture tiles.  Any other reason for a transform (new Data, a new
+   * color table, alpha or geometry change) clears the marks and
+   * rebuilds the whole image.  Several marks are merged into their
+   * bounding rectangle.  Only applies when rendering images by
+   * reference.
+   * @param x first column of changed samples
+   * @param y first row of changed samples
+   * @param width number of changed columns
+   * @param height number of changed rows
+   */
+  public synchronized void addDirtyRegion(int x, int y, int width,
+                                          int height) {
+    if (width > 0 && height > 0) {
+      dirtyRegions.add(new int[] {x, y, width, height});
+    }
+  }
+
+  /**
+   * Mark a range of image samples, in FlatField sample order (columns
+   * varying fastest), as changed.
+   * @see #addDirtyRegion(int, int, int, int)
+   * @param first index of first changed sample
+   * @param count number of changed samples
+   */
+  public synchronized void addDirtySamples(int first, int count) {
+    if (count > 0) {
+      dirtyRegions.add(new int[] {first, count});
+    }
+  }
+
+  /**
+   * Return the bounding rectangle of all marked regions, clipped to an
+   * image of the given size, and clear the marks.
+   * @return null if nothing is marked or the marks miss the image
+   */
+  synchronized Rectangle takeDirtyRegion(int data_width, int data_height) {
+    if (dirtyRegions.isEmpty()) return null;
+    Rectangle region = null;
+    for (int[] d : dirtyRegions) {
+      Rectangle r;
+      if (d.length == 4) {
+        r = new Rectangle(d[0], d[1], d[2], d[3]);
+      }
+      else {
+        int y0 = d[0] / data_width;
+        int y1 = (d[0] + d[1] - 1) / data_width;
+        if (y0 == y1) {
+          r = new Rectangle(d[0] % data_width, y0, d[1], 1);
+        }
+        else {
+          r = new Rectangle(0, y0, data_width, y1 - y0 + 1);
+        }
+      }
+      region = (region == null) ? r : region.union(r);
+    }
+    dirtyRegions.clear();
+    region = region.intersection(new Rectangle(0, 0, data_width, data_height));
+    return region.isEmpty() ? null : region;
+  }
+
   public void setImageNode(VisADImageNode node) {
     this.imagesNode = node;
   }
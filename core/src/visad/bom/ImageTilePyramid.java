@@ -0,0 +1,132 @@
+//
+// ImageTilePyramid.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.bom;
+
+import java.util.ArrayList;
+
+/**
+   ImageTilePyramid holds the color bytes of one texture tile at
+   successively halved resolutions.  Level 0 is the full resolution
+   tile; each coarser level is built from the one below it the first
+   time it is requested, by averaging each 2 x 2 block of pixels or by
+   taking its first pixel.  Levels stop before either dimension would
+   drop below 2, so every level can be drawn by buildLinearTexture.<P>
+*/
+class ImageTilePyramid {
+
+  private final boolean average;
+
+  private final int[] widths;
+  private final int[] heights;
+  private final byte[][][] levels;
+
+  /**
+   * @param bytes color bytes (usually 4 components) of the full
+   *              resolution tile, row major with width columns
+   * @param width tile width in pixels
+   * @param height tile height in pixels
+   * @param average true to average 2 x 2 blocks, false to take
+   *                the nearest (first) pixel of each block
+   */
+  ImageTilePyramid(byte[][] bytes, int width, int height, boolean average) {
+    this.average = average;
+    ArrayList<int[]> dims = new ArrayList<int[]>();
+    int w = width;
+    int h = height;
+    dims.add(new int[] {w, h});
+    while (w > 3 && h > 3) {
+      w = (w + 1) / 2;
+      h = (h + 1) / 2;
+      dims.add(new int[] {w, h});
+    }
+    int n = dims.size();
+    widths = new int[n];
+    heights = new int[n];
+    for (int i=0; i<n; i++) {
+      widths[i] = dims.get(i)[0];
+      heights[i] = dims.get(i)[1];
+    }
+    levels = new byte[n][][];
+    levels[0] = bytes;
+  }
+
+  /** @return number of levels, at least 1 */
+  int getNumLevels() {
+    return levels.length;
+  }
+
+  /** @return width in pixels of level */
+  int getWidth(int level) {
+    return widths[level];
+  }
+
+  /** @return height in pixels of level */
+  int getHeight(int level) {
+    return heights[level];
+  }
+
+  /**
+   * return the color bytes of level, building it and any missing
+   * finer levels first
+   */
+  synchronized byte[][] getLevel(int level) {
+    if (levels[level] == null) {
+      levels[level] = reduce(getLevel(level - 1), widths[level - 1],
+                             heights[level - 1], widths[level],
+                             heights[level]);
+    }
+    return levels[level];
+  }
+
+  private byte[][] reduce(byte[][] src, int sw, int sh, int dw, int dh) {
+    byte[][] dst = new byte[src.length][dw * dh];
+    for (int c=0; c<src.length; c++) {
+      byte[] s = src[c];
+      byte[] d = dst[c];
+      for (int y=0; y<dh; y++) {
+        int y0 = 2 * y;
+        int y1 = Math.min(y0 + 1, sh - 1);
+        int row0 = y0 * sw;
+        int row1 = y1 * sw;
+        int k = y * dw;
+        for (int x=0; x<dw; x++) {
+          int x0 = 2 * x;
+          if (average) {
+            int x1 = Math.min(x0 + 1, sw - 1);
+            int sum = (s[row0 + x0] & 0xff) + (s[row0 + x1] & 0xff) +
+                      (s[row1 + x0] & 0xff) + (s[row1 + x1] & 0xff);
+            d[k + x] = (byte) ((sum + 2) >> 2);
+          }
+          else {
+            d[k + x] = s[row0 + x0];
+          }
+        }
+      }
+    }
+    return dst;
+  }
+}
@@ -28,6 +28,7 @@ package visad.bom;
 
 import visad.*;
 import visad.georef.*;
+import visad.util.Parallel;
 
 /**
    Radar2DCoordinateSystem is the VisAD CoordinateSystem class
@@ -146,7 +147,8 @@ public class Radar2DCoordinateSystem extends NavigatedCoordinateSystem {
    *
    * @throws VisADException  tuples is null or wrong dimension
    */
-  public double[][] toReference(double[][] tuples) throws VisADException {
+  public double[][] toReference(final double[][] tuples)
+         throws VisADException {
     if (tuples == null || tuples.length != 2) {
       throw new CoordinateSystemException("Radar2DCoordinateSystem." +
              "toReference: tuples wrong dimension");
@@ -154,28 +156,32 @@ public class Radar2DCoordinateSystem extends NavigatedCoordinateSystem {
     int len = tuples[0].length;
 // System.out.println("toReference double len = " + len);
     //double[][] value = new double[2][len];
-    double[][] value = tuples;
-    for (int i=0; i<len ;i++) {
-      double rad = radlow + radres * tuples[0][i];
-      if (rad < 0.0) {
-        value[0][i] = Double.NaN;
-        value[1][i] = Double.NaN;
+    final double[][] value = tuples;
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end ;i++) {
+          double rad = radlow + radres * tuples[0][i];
+          if (rad < 0.0) {
+            value[0][i] = Double.NaN;
+            value[1][i] = Double.NaN;
 // System.out.println(i + " missing  rad = " + rad);
-      }
-      else {
-        double az = azlow + azres * tuples[1][i];
-        double cosaz = Math.cos(Data.DEGREES_TO_RADIANS * az);
-        double sinaz = Math.sin(Data.DEGREES_TO_RADIANS * az);
-        // assume azimuth = 0 at north, then clockwise
-        value[0][i] = centlat + cosaz * rad / latscale;
-        value[1][i] = centlon + sinaz * rad / lonscale;
+          }
+          else {
+            double az = azlow + azres * tuples[1][i];
+            double cosaz = Math.cos(Data.DEGREES_TO_RADIANS * az);
+            double sinaz = Math.sin(Data.DEGREES_TO_RADIANS * az);
+            // assume azimuth = 0 at north, then clockwise
+            value[0][i] = centlat + cosaz * rad / latscale;
+            value[1][i] = centlon + sinaz * rad / lonscale;
 /*
 System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
                    value[0][i] + " " + value[1][i] +
                    " az, rad = " + az + " " + rad);
 */
+          }
+        }
       }
-    }
+    });
     return value;
   }
 
@@ -189,7 +195,8 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
    *
    * @throws VisADException  tuples is null or wrong dimension
    */
-  public double[][] fromReference(double[][] tuples) throws VisADException {
+  public double[][] fromReference(final double[][] tuples)
+         throws VisADException {
     if (tuples == null || tuples.length != 2) {
       throw new CoordinateSystemException("Radar2DCoordinateSystem." +
              "fromReference: tuples wrong dimension");
@@ -197,15 +204,19 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
     int len = tuples[0].length;
 // System.out.println("fromReference double len = " + len);
     // double[][] value = new double[2][len];
-    double[][] value = tuples;
-    for (int i=0; i<len ;i++) {
-      double slat = (tuples[0][i] - centlat) * latscale;
-      double slon = (tuples[1][i] - centlon) * lonscale;
-      value[0][i] = (Math.sqrt(slat * slat + slon * slon) - radlow) / radres;
-      value[1][i] =
-        (Data.RADIANS_TO_DEGREES * Math.atan2(slon, slat) - azlow) / azres;
-      if (value[1][i] < 0.0) value[1][i] += 360.0;
-    }
+    final double[][] value = tuples;
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end ;i++) {
+          double slat = (tuples[0][i] - centlat) * latscale;
+          double slon = (tuples[1][i] - centlon) * lonscale;
+          value[0][i] = (Math.sqrt(slat * slat + slon * slon) - radlow) / radres;
+          value[1][i] =
+            (Data.RADIANS_TO_DEGREES * Math.atan2(slon, slat) - azlow) / azres;
+          if (value[1][i] < 0.0) value[1][i] += 360.0;
+        }
+      }
+    });
     return value;
   }
 
@@ -219,7 +230,8 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
    *
    * @throws VisADException  tuples is null or wrong dimension
    */
-  public float[][] toReference(float[][] tuples) throws VisADException {
+  public float[][] toReference(final float[][] tuples)
+         throws VisADException {
     if (tuples == null || tuples.length != 2) {
       throw new CoordinateSystemException("Radar2DCoordinateSystem." +
              "toReference: tuples wrong dimension");
@@ -227,22 +239,26 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
     int len = tuples[0].length;
 // System.out.println("toReference float len = " + len);
     // float[][] value = new float[2][len];
-    float[][] value = tuples;
-    for (int i=0; i<len ;i++) {
-      double rad = radlow + radres * tuples[0][i];
-      if (rad < 0.0) {
-        value[0][i] = Float.NaN;
-        value[1][i] = Float.NaN;
-      }
-      else {
-        double az = azlow + azres * tuples[1][i];
-        double cosaz = Math.cos(Data.DEGREES_TO_RADIANS * az);
-        double sinaz = Math.sin(Data.DEGREES_TO_RADIANS * az);
-        // assume azimuth = 0 at north, then clockwise
-        value[0][i] = (float) (centlat + cosaz * rad / latscale);
-        value[1][i] = (float) (centlon + sinaz * rad / lonscale);
+    final float[][] value = tuples;
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end ;i++) {
+          double rad = radlow + radres * tuples[0][i];
+          if (rad < 0.0) {
+            value[0][i] = Float.NaN;
+            value[1][i] = Float.NaN;
+          }
+          else {
+            double az = azlow + azres * tuples[1][i];
+            double cosaz = Math.cos(Data.DEGREES_TO_RADIANS * az);
+            double sinaz = Math.sin(Data.DEGREES_TO_RADIANS * az);
+            // assume azimuth = 0 at north, then clockwise
+            value[0][i] = (float) (centlat + cosaz * rad / latscale);
+            value[1][i] = (float) (centlon + sinaz * rad / lonscale);
+          }
+        }
       }
-    }
+    });
     return value;
   }
 
@@ -256,7 +272,8 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
    *
    * @throws VisADException  tuples is null or wrong dimension
    */
-  public float[][] fromReference(float[][] tuples) throws VisADException {
+  public float[][] fromReference(final float[][] tuples)
+         throws VisADException {
     if (tuples == null || tuples.length != 2) {
       throw new CoordinateSystemException("Radar2DCoordinateSystem." +
              "fromReference: tuples wrong dimension");
@@ -264,16 +281,20 @@ System.out.println(tuples[0][i] + " " + tuples[1][i] + " -> " +
     int len = tuples[0].length;
 // System.out.println("fromReference float len = " + len);
     //float[][] value = new float[2][len];
-    float[][] value = tuples;
-    for (int i=0; i<len ;i++) {
-      double slat = (tuples[0][i] - centlat) * latscale;
-      double slon = (tuples[1][i] - centlon) * lonscale;
-      value[0][i] = (float)
-        ((Math.sqrt(slat * slat + slon * slon) - radlow) / radres);
-      value[1][i] = (float)
-        ((Data.RADIANS_TO_DEGREES * Math.atan2(slon, slat) - azlow) / azres);
-      if (value[1][i] < 0.0) value[1][i] += 360.0f;
-    }
+    final float[][] value = tuples;
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end ;i++) {
+          double slat = (tuples[0][i] - centlat) * latscale;
+          double slon = (tuples[1][i] - centlon) * lonscale;
+          value[0][i] = (float)
+            ((Math.sqrt(slat * slat + slon * slon) - radlow) / radres);
+          value[1][i] = (float)
+            ((Data.RADIANS_TO_DEGREES * Math.atan2(slon, slat) - azlow) / azres);
+          if (value[1][i] < 0.0) value[1][i] += 360.0f;
+        }
+      }
+    });
     return value;
   }
 
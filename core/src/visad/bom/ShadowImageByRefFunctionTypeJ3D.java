@@ -26,6 +26,7 @@ MA 02111-1307, USA
 
 package visad.bom;
 
+import java.awt.Rectangle;
 import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.DataBufferByte;
@@ -133,6 +134,7 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
   boolean regen_colbytes = false;
   boolean regen_geom = false;
   boolean apply_alpha = false;
+  boolean data_update = false; // only FlatField samples changed in place
   //REUSE GEOMETRY/COLORBYTE VARIABLES (ENDS HERE)
 
   public ShadowImageByRefFunctionTypeJ3D(MathType t, DataDisplayLink link, ShadowType parent) 
@@ -362,6 +364,7 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
                                                 regen_colbytes = true;
                                         } else { //Assuming that ff.setSamples() has been called.
                                                 regen_colbytes = true;
+                                                data_update = true;
                                         }
 				}
 			}
@@ -594,6 +597,7 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
 	regen_colbytes = false;
   	regen_geom = false;
   	apply_alpha = false; 
+	data_update = false;
 	initRegenFlags((ImageRendererJ3D)renderer, adaptedShadowType, constant_alpha, cmap, cmaps, data, display, default_values, value_array, valueToScalar, valueArrayLength, link, curved_size, hasAlpha);
 	if(!reuseImages) {
 		regen_geom = true;
@@ -753,6 +757,17 @@ public class ShadowImageByRefFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
         	((ImageRendererJ3D) renderer).setBranchEarly((BranchGroup) group);
         }
 
+    // if only marked samples changed in place, recolor just those
+    Rectangle dirty = ((ImageRendererJ3D) renderer).takeDirtyRegion(data_width, data_height);
+    if (dirty != null && reuseImages && data_update && regen_colbytes && !regen_geom && !apply_alpha &&
+        (isTextureMap || curvedTexture) &&
+        updateDirtyRegion(data, imgFlatField, numImages, dirty, cmap, cmaps, constant_alpha, RangeComponents,
+                          color_length, domain_length, permute, data_width, data_height,
+                          dataCoordinateSystem, imageType)) {
+      ensureNotEmpty(bgImages);
+      return false;
+    }
+
     first_time =true; //Ghansham: this variable just indicates to makeColorBytes whether it's the first tile of the image
     if (isTextureMap) { // linear texture
 
@@ -1026,6 +1041,76 @@ private boolean isAlphaConstant(float[][] color_table) {
 }
 
 
+/**
+ * Recolor only the samples in dirty, for every image, and copy them into
+ * the overlapping sub-rectangles of the existing tile images.  Returns
+ * false, having changed nothing, if the existing images cannot be
+ * updated in place (different image type, or a sequence image that
+ * would need resampling); the caller then rebuilds all tiles.
+ */
+private boolean updateDirtyRegion(Data data, FlatField imgFlatField, int numImages, Rectangle dirty,
+              ScalarMap cmap, ScalarMap[] cmaps, float constant_alpha,
+              ShadowRealType[] RangeComponents, int color_length, int domain_length, int[] permute,
+              int data_width, int data_height, CoordinateSystem dataCoordinateSystem, int imageType)
+        throws VisADException, RemoteException {
+        FlatField[] ffs = new FlatField[numImages];
+        ffs[0] = imgFlatField;
+        for (int k=1; k<numImages; k++) {
+                ffs[k] = (FlatField) ((Field) data).getSample(k);
+                int[] lens = ((GriddedSet) ffs[k].getDomainSet()).getLengths();
+                CoordinateSystem dcs = ffs[k].getDomainCoordinateSystem();
+                if (lens[0] != data_width || lens[1] != data_height ||
+                    (dcs == null ? dataCoordinateSystem != null : !dcs.equals(dataCoordinateSystem))) {
+                        return false;
+                }
+        }
+        for (Iterator iter = imgNode.getTileIterator(); iter.hasNext();) {
+                VisADImageTile tile = (VisADImageTile) iter.next();
+                for (int k=0; k<numImages; k++) {
+                        BufferedImage image = tile.getImage(k);
+                        if (image == null || image.getType() != imageType ||
+                            !(image.getRaster().getDataBuffer() instanceof DataBufferByte)) {
+                                return false;
+                        }
+                }
+        }
+
+        for (int k=0; k<numImages; k++) {
+                first_time = true;
+                scaled_Bytes = null;
+                scaled_Floats = null;
+                fast_table = null;
+                rset_scalarmap_lookup = null;
+                itable = null;
+                threeD_itable = null;
+                color_values = null;
+                for (Iterator iter = imgNode.getTileIterator(); iter.hasNext();) {
+                        VisADImageTile tile = (VisADImageTile) iter.next();
+                        Rectangle r = dirty.intersection(
+                                new Rectangle(tile.xStart, tile.yStart, tile.width, tile.height));
+                        if (r.isEmpty()) continue;
+                        // color the sub-rectangle as a tile of its own, then
+                        // copy it into place
+                        byte[] bytes = new byte[r.width * r.height * color_length];
+                        makeColorBytes(ffs[k], cmap, cmaps, constant_alpha, RangeComponents, color_length,
+                                domain_length, permute, bytes, data_width, data_height,
+                                r.width, r.height, r.x, r.y, r.width, r.height);
+                        first_time = false;
+                        tile.updateImage(k, bytes, r.x - tile.xStart, r.y - tile.yStart,
+                                r.width, r.height, color_length);
+                }
+        }
+        first_time = true;
+        scaled_Bytes = null;
+        scaled_Floats = null;
+        fast_table = null;
+        rset_scalarmap_lookup = null;
+        itable = null;
+        threeD_itable = null;
+        color_values = null;
+        return true;
+}
+
 // This function calls makeColorBytes function (Ghansham)
 public void makeColorBytesDriver(Data imgFlatField, ScalarMap cmap, ScalarMap[] cmaps, float constant_alpha,
               ShadowRealType[] RangeComponents, int color_length, int domain_length, int[] permute,
@@ -34,8 +34,10 @@ import visad.data.gif.GIFForm;
 
 import javax.media.j3d.*;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.Vector;
 import java.rmi.*;
 
@@ -53,6 +55,13 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
 
   private static final int MISSING1 = Byte.MIN_VALUE;      // least byte
 
+  private static volatile boolean tilePyramid =
+    !"false".equalsIgnoreCase(System.getProperty("visad.bom.tilePyramid"));
+
+  private static volatile boolean tilePyramidAveraging =
+    !"false".equalsIgnoreCase(
+      System.getProperty("visad.bom.tilePyramidAveraging"));
+
   public ShadowImageFunctionTypeJ3D(MathType t, DataDisplayLink link,
                                 ShadowType parent)
          throws VisADException, RemoteException {
@@ -620,6 +629,17 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
           branch.setCapability(BranchGroup.ALLOW_CHILDREN_READ);
           branch.setCapability(BranchGroup.ALLOW_CHILDREN_WRITE);
 
+          // with a tile pyramid, each tile is drawn at the resolution
+          // its current size on the screen needs
+          TextureTiles tiles = null;
+          if (tilePyramid &&
+              display.getDisplayRenderer() instanceof DisplayRendererJ3D) {
+            tiles = new TextureTiles(branch, dataUnits, domain_units,
+                      default_values, DomainComponents, valueArrayLength,
+                      inherited_values, valueToScalar, mode, constant_alpha,
+                      value_array, constant_color, display);
+          }
+
           int start   = 0;
           int i_total = 0;
           for (int i=0; i<n_y_sub; i++) {
@@ -643,6 +663,10 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
                 }
                 cnt += lenx;
               }
+              if (tiles != null) {
+                tiles.addTile(x0, x1, lenx, y0, y1, leny, color_bytesW);
+                continue;
+              }
               BranchGroup branch1 = new BranchGroup();
               branch1.setCapability(BranchGroup.ALLOW_DETACH);
               branch1.setCapability(BranchGroup.ALLOW_CHILDREN_EXTEND);
@@ -655,6 +679,7 @@ public class ShadowImageFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
             }
             i_total += leny;
           }
+          if (tiles != null) tiles.start(renderer);
           // group: top level
           if (((Group) group).numChildren() > 0) {
             ((Group) group).setChild(branch, 0);
@@ -1319,46 +1344,276 @@ if (i == (len / 2)) {
 // System.out.println("end curved texture " + (System.currentTimeMillis() - link.start_time));
   }
 
-  public void buildLinearTexture(Object group, Set domain_set, Unit[] dataUnits, Unit[] domain_units,
-                                 float[] default_values, ShadowRealType[] DomainComponents,
-                                 int valueArrayLength, int[] inherited_values, int[] valueToScalar,
-                                 GraphicsModeControl mode, float constant_alpha,
-                                 float[] value_array, float[] constant_color, byte[][] color_bytes, DisplayImpl display)
-         throws VisADException, DisplayException {
+  /**
+   * Set whether texture mapped images too large for a single texture
+   * keep a pyramid of reduced resolution copies of each tile, and draw
+   * each tile at the coarsest level that still has at least one texel
+   * per screen pixel (tiles outside the window use the coarsest
+   * level).  Levels follow zooming and panning.  The default comes from
+   * the system property <code>visad.bom.tilePyramid</code> (default
+   * true).  Affects subsequent transforms.
+   * @param flag true to use tile pyramids
+   */
+  public static void setTilePyramid(boolean flag) {
+    tilePyramid = flag;
+  }
 
-    float[] coordinates = null;
-    float[] texCoords = null;
-    float[] normals = null;
-    byte[] colors = null;
-    int data_width = 0;
-    int data_height = 0;
-    int texture_width = 1;
-    int texture_height = 1;
+  /**
+   * @return true if large texture mapped images use tile pyramids
+   */
+  public static boolean isTilePyramid() {
+    return tilePyramid;
+  }
 
-    Linear1DSet X = null;
-    Linear1DSet Y = null;
-    if (domain_set instanceof Linear2DSet) {
-      X = ((Linear2DSet) domain_set).getX();
-      Y = ((Linear2DSet) domain_set).getY();
+  /**
+   * Set whether reduced resolution tile pyramid levels average each
+   * 2 x 2 block of pixels (true) or take its nearest pixel (false).
+   * The default comes from the system property
+   * <code>visad.bom.tilePyramidAveraging</code> (default true).
+   * @param flag true to average
+   */
+  public static void setTilePyramidAveraging(boolean flag) {
+    tilePyramidAveraging = flag;
+  }
+
+  /**
+   * @return true if tile pyramid levels are built by averaging
+   */
+  public static boolean isTilePyramidAveraging() {
+    return tilePyramidAveraging;
+  }
+
+  /**
+     TextureTiles holds the tiles of one texture mapped image, each
+     with an ImageTilePyramid, and re-textures a tile whenever a change
+     to the ProjectionControl moves it to another level.<P>
+  */
+  class TextureTiles implements ControlListener {
+
+    private BranchGroup branch;
+    private final Unit[] dataUnits;
+    private final Unit[] domain_units;
+    private final float[] default_values;
+    private final ShadowRealType[] DomainComponents;
+    private final int valueArrayLength;
+    private final int[] inherited_values;
+    private final int[] valueToScalar;
+    private final GraphicsModeControl mode;
+    private final float constant_alpha;
+    private final float[] value_array;
+    private final float[] constant_color;
+    private final DisplayImpl display;
+
+    private ArrayList<ImageTilePyramid> pyramids =
+      new ArrayList<ImageTilePyramid>();
+    // {x0, x1, y0, y1} of the full resolution samples of each tile
+    private final ArrayList<double[]> extents = new ArrayList<double[]>();
+    private final ArrayList<float[]> corners = new ArrayList<float[]>();
+    private final ArrayList<Integer> levels = new ArrayList<Integer>();
+
+    private ProjectionControl p_cntrl = null;
+    private boolean live = false;
+    private boolean released = false;
+
+    TextureTiles(BranchGroup branch, Unit[] dataUnits, Unit[] domain_units,
+                 float[] default_values, ShadowRealType[] DomainComponents,
+                 int valueArrayLength, int[] inherited_values,
+                 int[] valueToScalar, GraphicsModeControl mode,
+                 float constant_alpha, float[] value_array,
+                 float[] constant_color, DisplayImpl display) {
+      this.branch = branch;
+      this.dataUnits = dataUnits;
+      this.domain_units = domain_units;
+      // value arrays are reused by the caller's recursion
+      this.default_values = (float[]) default_values.clone();
+      this.DomainComponents = DomainComponents;
+      this.valueArrayLength = valueArrayLength;
+      this.inherited_values = (int[]) inherited_values.clone();
+      this.valueToScalar = valueToScalar;
+      this.mode = mode;
+      this.constant_alpha = constant_alpha;
+      this.value_array = (float[]) value_array.clone();
+      this.constant_color =
+        (constant_color == null) ? null : (float[]) constant_color.clone();
+      this.display = display;
     }
-    else {
-      X = ((LinearNDSet) domain_set).getLinear1DComponent(0);
-      Y = ((LinearNDSet) domain_set).getLinear1DComponent(1);
+
+    /** add a tile and its branch at the level it currently needs */
+    void addTile(double x0, double x1, int lenx, double y0, double y1,
+                 int leny, byte[][] color_bytes)
+         throws VisADException {
+      pyramids.add(new ImageTilePyramid(color_bytes, lenx, leny,
+                                        tilePyramidAveraging));
+      extents.add(new double[] {x0, x1, y0, y1});
+      corners.add(linearTextureCorners(
+                    new Linear2DSet(x0, x1, lenx, y0, y1, leny),
+                    dataUnits, domain_units, default_values,
+                    DomainComponents, valueArrayLength, inherited_values,
+                    valueToScalar, value_array, display));
+      int index = pyramids.size() - 1;
+      int level = chooseLevel(index);
+      levels.add(new Integer(level));
+      branch.addChild(makeTileBranch(index, level));
+    }
+
+    /**
+     * listen to the ProjectionControl; the listener is registered with
+     * renderer so clearScene removes it
+     */
+    void start(DataRenderer renderer) {
+      p_cntrl = display.getProjectionControl();
+      ArrayList<ControlListener> listeners =
+        renderer.getProjectionControlListeners();
+      // drop listeners whose images have left the scene graph
+      for (Iterator<ControlListener> iter = listeners.iterator();
+           iter.hasNext();) {
+        ControlListener l = iter.next();
+        if (l instanceof TextureTiles && ((TextureTiles) l).isReleased()) {
+          iter.remove();
+        }
+      }
+      listeners.add(this);
+      p_cntrl.addControlListener(this);
+    }
+
+    synchronized boolean isReleased() {
+      return released;
+    }
+
+    public synchronized void controlChanged(ControlEvent e)
+           throws VisADException, RemoteException {
+      if (released) return;
+      if (branch.isLive()) {
+        live = true;
+      }
+      else if (live) {
+        // image replaced by a new transform
+        released = true;
+        branch = null;
+        pyramids = null;
+        p_cntrl.removeControlListener(this);
+        return;
+      }
+      for (int i=0; i<levels.size(); i++) {
+        int level = chooseLevel(i);
+        if (level != levels.get(i).intValue()) {
+          levels.set(i, new Integer(level));
+          branch.setChild(makeTileBranch(i, level), i);
+        }
+      }
+    }
+
+    /**
+     * return the coarsest level of tile index with at least one texel
+     * per screen pixel, the coarsest level if it is outside the window,
+     * or 0 if the window cannot be measured yet
+     */
+    private int chooseLevel(int index) {
+      ImageTilePyramid pyramid = pyramids.get(index);
+      int coarsest = pyramid.getNumLevels() - 1;
+      if (coarsest == 0) return 0;
+      DisplayRendererJ3D renderer =
+        (DisplayRendererJ3D) display.getDisplayRenderer();
+      Canvas3D canvas = renderer.getCanvas();
+      MouseBehavior mouse = renderer.getMouseBehavior();
+      if (canvas == null || mouse == null) return 0;
+      int width = canvas.getWidth();
+      int height = canvas.getHeight();
+      if (width <= 0 || height <= 0) return 0;
+
+      float[] c = corners.get(index);
+      int xmin = Integer.MAX_VALUE;
+      int xmax = Integer.MIN_VALUE;
+      int ymin = Integer.MAX_VALUE;
+      int ymax = Integer.MIN_VALUE;
+      for (int k=0; k<12; k+=3) {
+        int[] xy;
+        try {
+          xy = mouse.getScreenCoords(new double[] {c[k], c[k+1], c[k+2]});
+        }
+        catch (RuntimeException e) {
+          xy = null;
+        }
+        if (xy == null) return 0;
+        xmin = Math.min(xmin, xy[0]);
+        xmax = Math.max(xmax, xy[0]);
+        ymin = Math.min(ymin, xy[1]);
+        ymax = Math.max(ymax, xy[1]);
+      }
+      if (xmax < 0 || xmin >= width || ymax < 0 || ymin >= height) {
+        return coarsest;
+      }
+      double ratio = Math.min(
+        pyramid.getWidth(0) / (double) Math.max(1, xmax - xmin),
+        pyramid.getHeight(0) / (double) Math.max(1, ymax - ymin));
+      int level = 0;
+      while (level < coarsest && ratio >= 2.0) {
+        ratio /= 2.0;
+        level++;
+      }
+      return level;
+    }
+
+    /** build the branch for tile index textured at level */
+    private BranchGroup makeTileBranch(int index, int level)
+            throws VisADException {
+      ImageTilePyramid pyramid = pyramids.get(index);
+      double[] e = extents.get(index);
+      int lenx = pyramid.getWidth(0);
+      int leny = pyramid.getHeight(0);
+      Set dset;
+      if (level == 0) {
+        dset = new Linear2DSet(e[0], e[1], lenx, e[2], e[3], leny);
+      }
+      else {
+        // coarser samples spread over the same extent, so the quad
+        // built by buildLinearTexture does not move
+        int nx = pyramid.getWidth(level);
+        int ny = pyramid.getHeight(level);
+        double hx = 0.5 * (e[1] - e[0]) / (lenx - 1);
+        double hy = 0.5 * (e[3] - e[2]) / (leny - 1);
+        double dx = 0.5 * (e[1] - e[0] + 2 * hx) / nx;
+        double dy = 0.5 * (e[3] - e[2] + 2 * hy) / ny;
+        dset = new Linear2DSet(e[0] - hx + dx, e[1] + hx - dx, nx,
+                               e[2] - hy + dy, e[3] + hy - dy, ny);
+      }
+      BranchGroup branch1 = new BranchGroup();
+      branch1.setCapability(BranchGroup.ALLOW_DETACH);
+      branch1.setCapability(BranchGroup.ALLOW_CHILDREN_EXTEND);
+      branch1.setCapability(BranchGroup.ALLOW_CHILDREN_READ);
+      branch1.setCapability(BranchGroup.ALLOW_CHILDREN_WRITE);
+      buildLinearTexture(branch1, dset, dataUnits, domain_units,
+                         default_values, DomainComponents, valueArrayLength,
+                         inherited_values, valueToScalar, mode,
+                         constant_alpha, value_array, constant_color,
+                         pyramid.getLevel(level), display);
+      return branch1;
     }
+  }
+
+  /**
+   * return the display coordinates of the four corners of the quad
+   * a linear texture over domain_set is mapped onto, extended by half
+   * a pixel on each side
+   */
+  float[] linearTextureCorners(Set domain_set, Unit[] dataUnits,
+                               Unit[] domain_units, float[] default_values,
+                               ShadowRealType[] DomainComponents,
+                               int valueArrayLength, int[] inherited_values,
+                               int[] valueToScalar, float[] value_array,
+                               DisplayImpl display)
+          throws VisADException {
+    Linear1DSet X = getLinear1DComponent(domain_set, 0);
+    Linear1DSet Y = getLinear1DComponent(domain_set, 1);
     float[][] limits = new float[2][2];
     limits[0][0] = (float) X.getFirst();
     limits[0][1] = (float) X.getLast();
     limits[1][0] = (float) Y.getFirst();
     limits[1][1] = (float) Y.getLast();
                                                                                                                        
-    // get domain_set sizes
-    data_width = X.getLength();
-    data_height = Y.getLength();
-    // texture sizes must be powers of two
-    texture_width = textureWidth(data_width);
-    texture_height = textureHeight(data_height);
-                                                                                                                       
-                                                                                                                       
+    int data_width = X.getLength();
+    int data_height = Y.getLength();
+
     // WLH 27 Jan 2003
     float half_width = 0.5f / ((float) (data_width - 1));
     float half_height = 0.5f / ((float) (data_height - 1));
@@ -1414,8 +1669,7 @@ if (i == (len / 2)) {
       }
     }
 
-    // create VisADQuadArray that texture is mapped onto
-    coordinates = new float[12];
+    float[] coordinates = new float[12];
     // corner 0
     coordinates[tuple_index[0]] = limits[0][0];
     coordinates[tuple_index[1]] = limits[1][0];
@@ -1435,7 +1689,46 @@ if (i == (len / 2)) {
                                                                                                                        
     // move image back in Java3D 2-D mode
     adjustZ(coordinates);
-                                                                                                                       
+    return coordinates;
+  }
+
+  private static Linear1DSet getLinear1DComponent(Set domain_set, int i)
+          throws VisADException {
+    if (domain_set instanceof Linear2DSet) {
+      return (i == 0) ? ((Linear2DSet) domain_set).getX()
+                      : ((Linear2DSet) domain_set).getY();
+    }
+    return ((LinearNDSet) domain_set).getLinear1DComponent(i);
+  }
+
+  public void buildLinearTexture(Object group, Set domain_set, Unit[] dataUnits, Unit[] domain_units,
+                                 float[] default_values, ShadowRealType[] DomainComponents,
+                                 int valueArrayLength, int[] inherited_values, int[] valueToScalar,
+                                 GraphicsModeControl mode, float constant_alpha,
+                                 float[] value_array, float[] constant_color, byte[][] color_bytes, DisplayImpl display)
+         throws VisADException, DisplayException {
+
+    float[] coordinates = null;
+    float[] texCoords = null;
+    float[] normals = null;
+    byte[] colors = null;
+    int data_width = 0;
+    int data_height = 0;
+    int texture_width = 1;
+    int texture_height = 1;
+
+    // get domain_set sizes
+    data_width = getLinear1DComponent(domain_set, 0).getLength();
+    data_height = getLinear1DComponent(domain_set, 1).getLength();
+    // texture sizes must be powers of two
+    texture_width = textureWidth(data_width);
+    texture_height = textureHeight(data_height);
+
+    // create VisADQuadArray that texture is mapped onto
+    coordinates = linearTextureCorners(domain_set, dataUnits, domain_units,
+                    default_values, DomainComponents, valueArrayLength,
+                    inherited_values, valueToScalar, value_array, display);
+
     texCoords = new float[8];
     float ratiow = ((float) data_width) / ((float) texture_width);
     float ratioh = ((float) data_height) / ((float) texture_height);
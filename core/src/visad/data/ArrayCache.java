@@ -27,17 +27,30 @@ MA 02111-1307, USA
 package visad.data;
 
 import java.util.Arrays;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import visad.util.Util;
 
 /**
  * This class is used by the CachingCoordinateSystem to do the actual caching mapping one array to another one
+ * <p>
+ * Entries are keyed on the key name, the array size and a fingerprint
+ * of a fixed number of input values, so a lookup does not depend on the
+ * array size and threads do not share a lock.  A hit is still checked
+ * against the whole cached input.  The cache holds at most
+ * <code>visad.data.arraycache.maxentries</code> entries (default 4) and
+ * <code>visad.data.arraycache.maxbytes</code> bytes (default 1/32 of the
+ * max memory), dropping the least recently used entries first.
  * @version $Revision: 1.5 $ $Date: 2010-01-05 21:02:43 $
  */
 public class ArrayCache {
 
+  /** number of values sampled from each row for the fingerprint */
+  private static final int FINGERPRINT_SAMPLES = 64;
+
   /** Do we cache */
   private boolean enabled =
     Boolean.parseBoolean(System.getProperty("visad.data.arraycache.enabled",
@@ -54,6 +67,16 @@ public class ArrayCache {
     Integer.parseInt(System.getProperty("visad.data.arraycache.upperthreshold",
                                         "1000000"));
 
+  /** max number of entries */
+  private int maxEntries =
+    Integer.parseInt(System.getProperty("visad.data.arraycache.maxentries",
+                                        "4"));
+
+  /** max number of bytes held by the entries */
+  private long maxBytes =
+    Long.parseLong(System.getProperty("visad.data.arraycache.maxbytes",
+                     Long.toString(Runtime.getRuntime().maxMemory() / 32)));
+
 
   private boolean useDataCacheManager = 
       Boolean.parseBoolean(System.getProperty("visad.data.arraycache.usedatacachemanager",
@@ -61,9 +84,18 @@ public class ArrayCache {
 
 
 
-  private Hashtable<String,Integer>  misses = new Hashtable<String,Integer>();
+  /** number of misses in a row for each key name and size */
+  private ConcurrentHashMap<String,AtomicInteger>  misses =
+      new ConcurrentHashMap<String,AtomicInteger>();
+
+  /** holds the entries */
+  private ConcurrentHashMap<Key, Entry> map = new ConcurrentHashMap<Key, Entry>();
 
+  /** bytes held by the entries */
+  private final AtomicLong totalBytes = new AtomicLong();
 
+  /** ticks for least recently used order */
+  private final AtomicLong clock = new AtomicLong();
 
 
 
@@ -103,21 +135,26 @@ public class ArrayCache {
   }
 
 
-   private synchronized FloatResult getInner(String key, float[][] input) {
+   private FloatResult getInner(String key, float[][] input) {
     key = getKey(key, input[0].length);
-    float[][][] pair = getFloatValue(key);
+    Key mapKey = new Key(key, fingerprint(input));
+    Entry entry = map.get(mapKey);
+    float[][][] pair = entry == null ? null : getFloatValue(entry);
     if (pair == null) {
       return handleCacheMiss(key, input);
     }
 
     float[][] lastInput = pair[0];
     float[][] lastOutput = pair[1];
-    if (lastInput.length != input.length) return null;
+    if (lastInput.length != input.length) {
+      return handleCacheMiss(key, input);
+    }
     for (int i = 0; i < input.length; i++) {
       if (!Arrays.equals(input[i], lastInput[i])) {
           return handleCacheMiss(key, input);
       }
     }
+    entry.lastUse = clock.incrementAndGet();
     misses.remove(key);
     //?? should we clone the output
     return new FloatResult(Util.clone(lastOutput));
@@ -145,22 +182,27 @@ public class ArrayCache {
 
 
 
- private synchronized  DoubleResult getInner(String key, double[][] input) {
+ private DoubleResult getInner(String key, double[][] input) {
 
     key = getKey(key, input[0].length);
-    double[][][] pair = getDoubleValue(key);
+    Key mapKey = new Key(key, fingerprint(input));
+    Entry entry = map.get(mapKey);
+    double[][][] pair = entry == null ? null : getDoubleValue(entry);
     if (pair == null) {
         return handleCacheMiss(key, input);
     }        
 
     double[][] lastInput = pair[0];
     double[][] lastOutput = pair[1];
-    if (lastInput.length != input.length) return null;
+    if (lastInput.length != input.length) {
+        return handleCacheMiss(key, input);
+    }
     for (int i = 0; i < input.length; i++) {
        if (!Arrays.equals(input[i], lastInput[i])) {
          return handleCacheMiss(key, input);
       }
     }
+    entry.lastUse = clock.incrementAndGet();
     misses.remove(key);
     return new DoubleResult(Util.clone(lastOutput));
   }
@@ -168,30 +210,37 @@ public class ArrayCache {
 
 
   private DoubleResult handleCacheMiss(String key, double[][]input) {
-        Integer numMisses = misses.get(key);
-        if(numMisses==null) {
-            misses.put(key, numMisses = new Integer(1));
-        } else {
-            misses.put(key, new Integer(numMisses.intValue()+1));
-        }
-        if(numMisses.intValue()>3) {
-            removeValue(key);
+        int numMisses = countMiss(key);
+        if(numMisses>3) {
+            removeValues(key);
         }
-        return new DoubleResult(numMisses.intValue()<=1);
+        return new DoubleResult(numMisses<=1);
   }
 
 
   private FloatResult handleCacheMiss(String key, float[][]input) {
-        Integer numMisses = misses.get(key);
-        if(numMisses==null) {
-            misses.put(key, numMisses = new Integer(1));
-        } else {
-            misses.put(key, new Integer(numMisses.intValue()+1));
+        int numMisses = countMiss(key);
+        if(numMisses>3) {
+            removeValues(key);
         }
-        if(numMisses.intValue()>3) {
-            removeValue(key);
+        return new FloatResult(numMisses<=1);
+  }
+
+  /**
+   * Count a miss for the key
+   *
+   * @param key the key name and size
+   *
+   * @return the number of misses in a row
+   */
+  private int countMiss(String key) {
+        AtomicInteger numMisses = misses.get(key);
+        if(numMisses==null) {
+            numMisses = new AtomicInteger();
+            AtomicInteger old = misses.putIfAbsent(key, numMisses);
+            if(old!=null) numMisses = old;
         }
-        return new FloatResult(numMisses.intValue()<=1);
+        return numMisses.incrementAndGet();
   }
 
 
@@ -235,14 +284,13 @@ public class ArrayCache {
   }
 
 
-  private synchronized void putInner(String key, double[][] input, DoubleResult results) {
+  private void putInner(String key, double[][] input, DoubleResult results) {
     if(!results.shouldCache || results.values==null) return;
     key = getKey(key, input[0].length);
-    storeValue(key,
-             new double[][][] {
-                 (double[][])Util.clone(input), (double[][])Util.clone(results.values)
-    });
-
+    double[][][] value = new double[][][] {
+        (double[][])Util.clone(input), (double[][])Util.clone(results.values)
+    };
+    storeValue(new Key(key, fingerprint(input)), value, getBytes(value));
   }
 
 
@@ -260,40 +308,109 @@ public class ArrayCache {
     putInner(key, input, results);
   }
 
-  private synchronized void putInner(String key, float[][] input, FloatResult results) {
+  private void putInner(String key, float[][] input, FloatResult results) {
     if(!results.shouldCache || results.values==null) return;
     key = getKey(key, input[0].length);
-    storeValue(key, new float[][][] {
+    float[][][] value = new float[][][] {
       (float[][])Util.clone(input), (float[][])Util.clone(results.values)
-    });
-
+    };
+    storeValue(new Key(key, fingerprint(input)), value, getBytes(value));
   }
 
 
 
+    /**
+     * Fingerprint the input from its row lengths and a fixed number of
+     * evenly spaced values
+     */
+    private static long fingerprint(float[][] input) {
+        long h = input.length;
+        for (int i = 0; i < input.length; i++) {
+            float[] row = input[i];
+            if (row == null) {
+                h = 31 * h - 1;
+                continue;
+            }
+            int n = row.length;
+            h = 31 * h + n;
+            if (n == 0) continue;
+            int step = Math.max(1, n / FINGERPRINT_SAMPLES);
+            for (int j = 0; j < n; j += step) {
+                h = 31 * h + Float.floatToIntBits(row[j]);
+            }
+            h = 31 * h + Float.floatToIntBits(row[n - 1]);
+        }
+        return h;
+    }
 
+    /**
+     * Fingerprint the input from its row lengths and a fixed number of
+     * evenly spaced values
+     */
+    private static long fingerprint(double[][] input) {
+        long h = input.length;
+        for (int i = 0; i < input.length; i++) {
+            double[] row = input[i];
+            if (row == null) {
+                h = 31 * h - 1;
+                continue;
+            }
+            int n = row.length;
+            h = 31 * h + n;
+            if (n == 0) continue;
+            int step = Math.max(1, n / FINGERPRINT_SAMPLES);
+            for (int j = 0; j < n; j += step) {
+                h = 31 * h + Double.doubleToLongBits(row[j]);
+            }
+            h = 31 * h + Double.doubleToLongBits(row[n - 1]);
+        }
+        return h;
+    }
 
-    /** holds float arrays or DataCacheManager ids */
-    private Hashtable<Object, Object> map = new Hashtable<Object, Object>();
+    private static long getBytes(float[][][] value) {
+        long bytes = 0;
+        for (float[][] a : value) {
+            for (float[] row : a) {
+                if (row != null) bytes += 4L * row.length;
+            }
+        }
+        return bytes;
+    }
 
-    private void storeValue(String key, double[][][]value) {
-        checkCache();
+    private static long getBytes(double[][][] value) {
+        long bytes = 0;
+        for (double[][] a : value) {
+            for (double[] row : a) {
+                if (row != null) bytes += 8L * row.length;
+            }
+        }
+        return bytes;
+    }
+
+    private void storeValue(Key key, double[][][]value, long bytes) {
         Object object = value;
         if(useDataCacheManager) {
-            removeValue(key);
             object = DataCacheManager.getCacheManager().addToCache("ArrayCache", value, true);
         }
-        map.put(key, object);
+        storeEntry(key, new Entry(object, bytes));
     }
 
-    private void storeValue(String key, float[][][]value) {
-        checkCache();
+    private void storeValue(Key key, float[][][]value, long bytes) {
         Object object = value;
         if(useDataCacheManager) {
-            removeValue(key);
             object = DataCacheManager.getCacheManager().addToCache("ArrayCache", value, true);
         }
-        map.put(key, object);
+        storeEntry(key, new Entry(object, bytes));
+    }
+
+    private void storeEntry(Key key, Entry entry) {
+        entry.lastUse = clock.incrementAndGet();
+        totalBytes.addAndGet(entry.bytes);
+        Entry old = map.put(key, entry);
+        if (old != null) {
+            release(old);
+        }
+        checkCache();
     }
 
     public void finalize() throws Throwable {
@@ -305,51 +422,119 @@ public class ArrayCache {
     }
 
 
+    /**
+     * Drop the least recently used entries until the cache is within
+     * its bounds
+     */
     private void checkCache() {
-        if(map.size()>4) {
-            clearCache();
+        while (map.size() > maxEntries || totalBytes.get() > maxBytes) {
+            Key oldestKey = null;
+            Entry oldest = null;
+            for (Map.Entry<Key, Entry> e : map.entrySet()) {
+                if (oldest == null || e.getValue().lastUse < oldest.lastUse) {
+                    oldestKey = e.getKey();
+                    oldest = e.getValue();
+                }
+            }
+            if (oldest == null) {
+                return;
+            }
+            if (map.remove(oldestKey, oldest)) {
+                release(oldest);
+            }
         }
     }
 
-    private void removeValue(Object key) {
-        Object object  = map.get(key);
-        if(object!=null) {
-            if(useDataCacheManager)
-                DataCacheManager.getCacheManager().removeFromCache(object);
-            map.remove(key);
+    /**
+     * Release an entry that has been taken out of the map
+     */
+    private void release(Entry entry) {
+        totalBytes.addAndGet(-entry.bytes);
+        if(useDataCacheManager)
+            DataCacheManager.getCacheManager().removeFromCache(entry.value);
+    }
+
+    /**
+     * Remove all the entries for a key name and size
+     */
+    private void removeValues(String key) {
+        for (Map.Entry<Key, Entry> e : map.entrySet()) {
+            if (e.getKey().name.equals(key)
+                && map.remove(e.getKey(), e.getValue())) {
+                release(e.getValue());
+            }
         }
     }
 
     private void clearCache() {
-        for(Enumeration keys= map.keys();keys.hasMoreElements(); ) {
-            Object key= keys.nextElement();
-            Object object  = map.get(key);
-            if(useDataCacheManager) {
-                DataCacheManager.getCacheManager().removeFromCache(object);
+        for (Map.Entry<Key, Entry> e : map.entrySet()) {
+            if (map.remove(e.getKey(), e.getValue())) {
+                release(e.getValue());
             }
         }
-        map = new Hashtable<Object, Object>();
     }
 
 
-    private double[][][] getDoubleValue(String key) {
-        Object object = map.get(key);
-        if(object==null) {
-            return null;
-        }
+    /**
+     * Get the pair for an entry; null if the DataCacheManager has
+     * dropped it
+     */
+    private double[][][] getDoubleValue(Entry entry) {
         if(useDataCacheManager)
-            return DataCacheManager.getCacheManager().getDoubleArray3D(object);
-        return (double[][][])object;
+            return DataCacheManager.getCacheManager().getDoubleArray3D(entry.value);
+        return entry.value instanceof double[][][]
+               ? (double[][][])entry.value
+               : null;
     }
 
-    private float[][][] getFloatValue(String key) {
-        Object object = map.get(key);
-        if(object==null) {
-            return null;
-        }
+    /**
+     * Get the pair for an entry; null if the DataCacheManager has
+     * dropped it
+     */
+    private float[][][] getFloatValue(Entry entry) {
         if(useDataCacheManager)
-            return DataCacheManager.getCacheManager().getFloatArray3D(object);
-        return (float[][][])object;
+            return DataCacheManager.getCacheManager().getFloatArray3D(entry.value);
+        return entry.value instanceof float[][][]
+               ? (float[][][])entry.value
+               : null;
+    }
+
+
+    /**
+     * Cache key: the key name and size plus a fingerprint of the input
+     */
+    private static class Key {
+        private final String name;
+        private final long fingerprint;
+
+        Key(String name, long fingerprint) {
+            this.name = name;
+            this.fingerprint = fingerprint;
+        }
+
+        public int hashCode() {
+            return name.hashCode() ^ (int) (fingerprint ^ (fingerprint >>> 32));
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) return false;
+            Key that = (Key) o;
+            return fingerprint == that.fingerprint && name.equals(that.name);
+        }
+    }
+
+    /**
+     * Cache entry: the input and output pair or its DataCacheManager id
+     */
+    private static class Entry {
+        private final Object value;
+        private final long bytes;
+        private volatile long lastUse;
+
+        Entry(Object value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
     }
 
 
@@ -0,0 +1,248 @@
+//
+// BufferRangeStorage.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import visad.VisADException;
+
+/**
+ * {@link RangeStorage} backed by <code>java.nio</code> buffers, either
+ * direct (off-heap) buffers or memory-mapped regions of a file.  Each
+ * range component is a separate buffer, so a component may hold up to
+ * <code>Integer.MAX_VALUE / 4</code> samples.<P>
+ *
+ * A mapped file is laid out component-major: all samples of component 0,
+ * then all samples of component 1, and so on, starting at the given
+ * byte offset.
+ */
+public class BufferRangeStorage implements RangeStorage {
+
+  private static final int BYTES_PER_FLOAT = 4;
+
+  private final int length;
+
+  /** one view per range component */
+  private final FloatBuffer[] buffers;
+
+  /** the underlying byte buffers, kept so mapped regions can be forced */
+  private final ByteBuffer[] bytes;
+
+  /** open file if this storage is mapped, otherwise null */
+  private RandomAccessFile file;
+
+  private BufferRangeStorage(ByteBuffer[] bytes, int length,
+                             RandomAccessFile file) {
+    this.length = length;
+    this.bytes = bytes;
+    this.file = file;
+    buffers = new FloatBuffer[bytes.length];
+    for (int i=0; i<bytes.length; i++) {
+      buffers[i] = bytes[i].asFloatBuffer();
+    }
+  }
+
+  /**
+   * Allocate storage in direct (off-heap) buffers.  All values are
+   * initially missing (<code>NaN</code>).
+   *
+   * @param dimension  number of range components
+   * @param length     number of samples per component
+   * @return the new storage
+   * @throws VisADException if the sizes are bad
+   */
+  public static BufferRangeStorage allocateDirect(int dimension, int length)
+         throws VisADException {
+    checkSize(dimension, length);
+    ByteBuffer[] bytes = new ByteBuffer[dimension];
+    for (int i=0; i<dimension; i++) {
+      bytes[i] = ByteBuffer.allocateDirect(length * BYTES_PER_FLOAT);
+      bytes[i].order(ByteOrder.nativeOrder());
+    }
+    BufferRangeStorage storage = new BufferRangeStorage(bytes, length, null);
+    for (int i=0; i<dimension; i++) {
+      FloatBuffer buf = storage.buffers[i];
+      for (int j=0; j<length; j++) buf.put(j, Float.NaN);
+    }
+    return storage;
+  }
+
+  /**
+   * Map a region of a file as range storage.  The file is extended if
+   * it is too short and <code>readOnly</code> is false.
+   *
+   * @param mapFile    the file
+   * @param offset     byte offset of the first value of component 0
+   * @param dimension  number of range components
+   * @param length     number of samples per component
+   * @param order      byte order of the values in the file
+   * @param readOnly   true to map the file read-only
+   * @return the new storage
+   * @throws VisADException if the file could not be mapped
+   */
+  public static BufferRangeStorage map(File mapFile, long offset,
+                                       int dimension, int length,
+                                       ByteOrder order, boolean readOnly)
+         throws VisADException {
+    checkSize(dimension, length);
+    long compBytes = (long) length * BYTES_PER_FLOAT;
+    RandomAccessFile raf = null;
+    try {
+      raf = new RandomAccessFile(mapFile, readOnly ? "r" : "rw");
+      FileChannel channel = raf.getChannel();
+      long needed = offset + compBytes * dimension;
+      if (channel.size() < needed) {
+        if (readOnly) {
+          throw new VisADException("BufferRangeStorage.map: file " +
+                                   mapFile + " is shorter than " + needed +
+                                   " bytes");
+        }
+        raf.setLength(needed);
+      }
+      FileChannel.MapMode mode = readOnly ? FileChannel.MapMode.READ_ONLY :
+                                            FileChannel.MapMode.READ_WRITE;
+      ByteBuffer[] bytes = new ByteBuffer[dimension];
+      for (int i=0; i<dimension; i++) {
+        bytes[i] = channel.map(mode, offset + i * compBytes, compBytes);
+        bytes[i].order(order);
+      }
+      return new BufferRangeStorage(bytes, length, raf);
+    }
+    catch (IOException e) {
+      if (raf != null) {
+        try {
+          raf.close();
+        }
+        catch (IOException e2) {
+        }
+      }
+      throw new VisADException("BufferRangeStorage.map: " + e.getMessage());
+    }
+  }
+
+  private static void checkSize(int dimension, int length)
+          throws VisADException {
+    if (dimension < 1 || length < 0) {
+      throw new VisADException("BufferRangeStorage: bad dimension " +
+                               dimension + " or length " + length);
+    }
+    if (length > Integer.MAX_VALUE / BYTES_PER_FLOAT) {
+      throw new VisADException("BufferRangeStorage: length " + length +
+                               " too large for one buffer");
+    }
+  }
+
+  /**
+   * @return true if this storage is a mapped file region
+   */
+  public boolean isMapped() {
+    return file != null;
+  }
+
+  public int getDimension() {
+    return buffers.length;
+  }
+
+  public int getLength() {
+    return length;
+  }
+
+  public float getFloat(int comp, int index) {
+    return buffers[comp].get(index);
+  }
+
+  public void setFloat(int comp, int index, float value) {
+    buffers[comp].put(index, value);
+  }
+
+  public void getFloats(int comp, int start, float[] dest, int offset,
+                        int count) {
+    FloatBuffer buf = buffers[comp].duplicate();
+    buf.position(start);
+    buf.get(dest, offset, count);
+  }
+
+  public void setFloats(int comp, int start, float[] src, int offset,
+                        int count) {
+    FloatBuffer buf = buffers[comp].duplicate();
+    buf.position(start);
+    buf.put(src, offset, count);
+  }
+
+  public FloatBuffer getFloatBuffer(int comp) {
+    return buffers[comp].asReadOnlyBuffer();
+  }
+
+  /**
+   * Copy into new direct buffers; a mapped region is not shared with
+   * its copy.
+   *
+   * @return the copy
+   * @throws VisADException if the copy could not be allocated
+   */
+  public RangeStorage copy() throws VisADException {
+    ByteBuffer[] newBytes = new ByteBuffer[bytes.length];
+    for (int i=0; i<bytes.length; i++) {
+      ByteBuffer src = bytes[i].duplicate();
+      src.order(bytes[i].order());
+      src.clear();
+      newBytes[i] = ByteBuffer.allocateDirect(src.capacity());
+      newBytes[i].order(bytes[i].order());
+      newBytes[i].put(src);
+      newBytes[i].clear();
+    }
+    return new BufferRangeStorage(newBytes, length, null);
+  }
+
+  public void flush() {
+    for (int i=0; i<bytes.length; i++) {
+      if (bytes[i] instanceof MappedByteBuffer && !bytes[i].isReadOnly()) {
+        ((MappedByteBuffer) bytes[i]).force();
+      }
+    }
+  }
+
+  public synchronized void close() {
+    flush();
+    if (file != null) {
+      try {
+        file.close();
+      }
+      catch (IOException e) {
+      }
+      file = null;
+    }
+  }
+
+}
@@ -41,7 +41,7 @@ public class CachedFlatField extends FlatField {
     /** the id for this instance */
     private Object cacheId;
 
-    private boolean inCache = false;
+    private volatile boolean inCache = false;
 
     /** Mutex */
     transient protected Object MUTEX = new Object();
@@ -441,13 +441,52 @@ public class CachedFlatField extends FlatField {
     private float[][] getMyValues() throws VisADException {
         //        msg("CCF - getMyValues " + inCache);
         if(inCache) {
-            if(cacheId == null) {
-                //                msg("CCF - WHoa, inCache=true but no cacheId");
-                return null;
+            return getValuesFromCache();
+        }
+
+        //Only read the data once if the prefetcher is reading it too
+        synchronized (getMutex()) {
+            if(inCache) {
+                return getValuesFromCache();
             }
-            return DataCacheManager.getCacheManager().getFloatArray2D(cacheId);
+            return readMyValues();
+        }
+    }
+
+    /**
+     * Get the values from the cache manager
+     *
+     * @return the values
+     */
+    private float[][] getValuesFromCache() {
+        if(cacheId == null) {
+            //                msg("CCF - WHoa, inCache=true but no cacheId");
+            return null;
         }
+        return DataCacheManager.getCacheManager().getFloatArray2D(cacheId);
+    }
 
+    /**
+     * Get the mutex, creating it if this object was deserialized
+     *
+     * @return the mutex
+     */
+    private synchronized Object getMutex() {
+        if (MUTEX == null) {
+            MUTEX = new Object();
+        }
+        return MUTEX;
+    }
+
+    /**
+     * Read the values from the parent or with readData and put them in
+     * the cache
+     *
+     * @return the values
+     *
+     * @throws VisADException   problem reading data
+     */
+    private float[][] readMyValues() throws VisADException {
         float[][] values = null;
 
         //If we don't have the values and we have a ccf that we were cloned from 
@@ -477,6 +516,37 @@ public class CachedFlatField extends FlatField {
         return inCache;
     }
 
+    /**
+     * Is the data read and in memory, so that accessing it will not
+     * touch the disk
+     *
+     * @return true if the data is in memory
+     */
+    public boolean isLoaded() {
+        return inCache && cacheId != null
+               && DataCacheManager.getCacheManager().inMemory(cacheId);
+    }
+
+    /**
+     * Read the data, or bring it back into memory if the cache manager
+     * wrote it to disk.  This is called by the {@link DataPrefetcher}
+     * threads.
+     *
+     * @throws VisADException   problem reading data
+     */
+    public void loadData() throws VisADException {
+        getMyValues();
+    }
+
+    /**
+     * Get the number of bytes the values take in memory
+     *
+     * @return the size of the values
+     */
+    public long getDataSize() {
+        return 4L * getLength() * TupleDimension;
+    }
+
 
 
     /**
@@ -30,15 +30,20 @@ package visad.data;
 
 import java.io.*;
 
+import java.lang.reflect.Array;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
-import java.util.Enumeration;
-import java.util.Hashtable;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import java.awt.*;
-import javax.swing.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 
 /**
@@ -69,7 +74,15 @@ import javax.swing.*;
       DataCacheManager.getCacheManager().getDoubleArray2D(cacheId); 
 </pre>
 
-* The cachemanager will keep the data arrays in memory until the total size is greater than getMaxSize(). Then it will serialize the data arrays in a least recently used manner until the totalSize less than the max size.
+* The cachemanager will keep the data arrays in memory until the total size is greater than getMaxSize(). Then it will write the data arrays to disk in a least recently used manner until the totalSize less than the max size.
+* Entries added with removeIfNeeded are dropped before any others are written.
+* <p>
+* Entries are split over several independently locked segments, so
+* clients using different arrays do not wait for each other, and an
+* array being read back from disk only blocks access to that array.
+* Arrays are written as raw primitives in native byte order and read back
+* with NIO channels.  Hit, miss, spill and reload counts are available
+* from the get...Count methods and getStats().
  */
 
 public class DataCacheManager  implements Runnable {
@@ -80,26 +93,60 @@ public class DataCacheManager  implements Runnable {
   /** the singleton */
   private static DataCacheManager cacheManager;
 
+  /** number of lock segments; a power of 2 */
+  private static final int NUM_SEGMENTS = 16;
+
+  /** size of the buffer for writing and reading cache files */
+  private static final int IO_BUFFER_SIZE = 1 << 20;
+
+  /** bytes per element for each element type, indexed by type % 5 */
+  private static final int[] ELEMENT_BYTES = { 8, 4, 4, 2, 1 };
+
+  /** element classes, indexed by type % 5 */
+  private static final Class[] ELEMENT_CLASSES = {
+    double.class, float.class, int.class, short.class, byte.class
+  };
+
 
   /** Where to store the cached data */
   private File cacheDir;
 
   /** for unique ids */
-  private int idCnt = 0;
+  private final AtomicInteger idCnt = new AtomicInteger();
 
   /** for unique ids */
   private long baseTime;
 
 
-  /** The cache */
-  private Hashtable<Object, CacheInfo> cache = new Hashtable<Object,
-                                                 CacheInfo>();
+  /** The cache, split into segments by id */
+  private final Segment[] segments = new Segment[NUM_SEGMENTS];
 
-  /** a mutex */
+  /** a mutex, held while making room in the cache */
   private Object MUTEX = new Object();
 
   /** Total number of bytes in memory */
-  private int totalSize = 0;
+  private final AtomicLong totalSize = new AtomicLong();
+
+  /** ticks for least recently used order */
+  private final AtomicLong clock = new AtomicLong();
+
+  /** number of accesses to data in memory */
+  private final AtomicLong hitCount = new AtomicLong();
+
+  /** number of accesses that read data back from disk */
+  private final AtomicLong missCount = new AtomicLong();
+
+  /** number of arrays written to disk */
+  private final AtomicLong spillCount = new AtomicLong();
+
+  /** bytes written to disk */
+  private final AtomicLong spillBytes = new AtomicLong();
+
+  /** bytes read back from disk */
+  private final AtomicLong reloadBytes = new AtomicLong();
+
+  /** nanoseconds spent reading data back from disk */
+  private final AtomicLong reloadNanos = new AtomicLong();
 
   private boolean running = false;
 
@@ -110,6 +157,9 @@ public class DataCacheManager  implements Runnable {
    */
   private DataCacheManager() {
     baseTime = System.currentTimeMillis();
+    for (int i = 0; i < NUM_SEGMENTS; i++) {
+      segments[i] = new Segment();
+    }
     try {
         //Start  the cache monitor in a thread
         Thread t = new Thread(this);
@@ -125,7 +175,7 @@ public class DataCacheManager  implements Runnable {
    *
    * @return the cache manager
    */
-  public static DataCacheManager getCacheManager() {
+  public static synchronized DataCacheManager getCacheManager() {
     if (cacheManager == null) {
       cacheManager = new DataCacheManager();
     }
@@ -179,7 +229,34 @@ public class DataCacheManager  implements Runnable {
    * @return unique id
    */
   public Object getId() {
-    return "data_" + baseTime + "_" + (idCnt++);
+    return "data_" + baseTime + "_" + idCnt.getAndIncrement();
+  }
+
+
+  /**
+   * Get the segment holding the given cache id
+   *
+   * @param cacheId  the cache id
+   * @return the segment
+   */
+  private Segment getSegment(Object cacheId) {
+    int h = cacheId.hashCode();
+    h ^= (h >>> 16);
+    return segments[h & (NUM_SEGMENTS - 1)];
+  }
+
+  /**
+   * Find the cache info for an id
+   *
+   * @param cacheId  the cache id
+   * @return the cache info, or null
+   */
+  private CacheInfo getCacheInfo(Object cacheId) {
+    if (cacheId == null) return null;
+    Segment segment = getSegment(cacheId);
+    synchronized (segment) {
+      return segment.entries.get(cacheId);
+    }
   }
 
 
@@ -192,14 +269,16 @@ public class DataCacheManager  implements Runnable {
    * @return the unique id
    */
     private Object addToCache(String what, Object data, int type, boolean removeIfNeeded) {
-    synchronized (MUTEX) {
-        CacheInfo info = new CacheInfo(this, getId(), data, type, removeIfNeeded);
+      CacheInfo info = new CacheInfo(this, getId(), data, type, removeIfNeeded);
       if(what!=null) info.what = what;
-      cache.put(info.getId(), info);
-      totalSize += info.getSize();
+      Segment segment = getSegment(info.getId());
+      synchronized (segment) {
+        segment.entries.put(info.getId(), info);
+        segment.touch(info, clock.incrementAndGet());
+      }
+      totalSize.addAndGet(info.getSize());
       checkCache();
       return info.getId();
-    }
   }
 
 
@@ -213,72 +292,78 @@ public class DataCacheManager  implements Runnable {
    * @param data  the new data
    */
   public void updateData(Object cacheId, Object data) {
-    synchronized (MUTEX) {
-        //      if(cacheId == null)
-        //          return addToCache(data, findType(data));
-        CacheInfo info = cache.get(cacheId);
-//      if(info==null) {
-//        return addToCache(data);
-//      }
-
-      int oldSize = info.data != null
-                    ? info.getSize()
-                    : 0;
-      info.setData(data);
-      int newSize = info.getSize();
-      totalSize -= oldSize;
-      totalSize += newSize;
+      CacheInfo info = getCacheInfo(cacheId);
+      Segment segment = getSegment(cacheId);
+      synchronized (info) {
+        long oldSize = info.data != null
+                      ? info.getSize()
+                      : 0;
+        info.setData(data);
+        long newSize = info.getSize();
+        totalSize.addAndGet(newSize - oldSize);
+        synchronized (segment) {
+          segment.touch(info, clock.incrementAndGet());
+        }
+      }
       checkCache();
-    }
   }
 
     public boolean inMemory(Object cacheId) {
-        synchronized (MUTEX) {
-        CacheInfo info =  cache.get(cacheId);
+        CacheInfo info = getCacheInfo(cacheId);
         if(info == null)return false;
-        info.dataAccessed();
-        return (info.data!=null);
+        synchronized (info) {
+          info.dataAccessed();
+          if (info.data == null) return false;
+          Segment segment = getSegment(cacheId);
+          synchronized (segment) {
+            segment.touch(info, clock.incrementAndGet());
+          }
+          return true;
         }
     }
 
 
 
   /**
-   * 
+   * Get the data for an id, reading it back from disk if it is not in
+   * memory
    *
    * @param cacheId  the cache id
    *
-   * @return 
+   * @return the data, or null if the id is not in the cache
    */
   private Object getData(Object cacheId) {
-    CacheInfo info = null;
-    Object data = null;
-    synchronized (MUTEX) {
-      info = cache.get(cacheId);
-      if (info == null) return null;
-      data = info.data;
+    CacheInfo info = getCacheInfo(cacheId);
+    if (info == null) return null;
+    Object data;
+    synchronized (info) {
       info.dataAccessed();
-      if (data != null) return data;
-      try {
-          long t1 = System.currentTimeMillis();
-        FileInputStream fis = new FileInputStream(info.cacheFile);
-        BufferedInputStream bis = new BufferedInputStream(fis,100000);
-        ObjectInputStream ois = new ObjectInputStream(bis);
-        info.setDataFromCache(data = ois.readObject());
-        long t2 = System.currentTimeMillis();
-        System.err.println("Read " + info.getSize() +" bytes from file in " + (t2-t1) +" ms");
-        totalSize += info.getSize();
-        ois.close();
-        bis.close();
-        fis.close();
-        checkCache();
+      data = info.data;
+      if (data == null) {
+        long t1 = System.nanoTime();
+        try {
+          data = readData(info.cacheFile, info.type);
+        }
+        catch (IOException exc) {
+          throw new RuntimeException(exc);
+        }
+        info.setDataFromCache(data);
+        reloadNanos.addAndGet(System.nanoTime() - t1);
+        reloadBytes.addAndGet(info.getSize());
+        missCount.incrementAndGet();
+        totalSize.addAndGet(info.getSize());
         info.cacheMissed();
-        return data;
       }
-      catch (Exception exc) {
-        throw new RuntimeException(exc);
+      else {
+        hitCount.incrementAndGet();
+      }
+      Segment segment = getSegment(cacheId);
+      synchronized (segment) {
+        segment.touch(info, clock.incrementAndGet());
       }
     }
+    checkCache();
+    return data;
   }
 
     public  File getCacheFile() {
@@ -296,9 +381,7 @@ public class DataCacheManager  implements Runnable {
    * @param cacheId  the cache id 
    */
   public void removeFromCache(Object cacheId) {
-    synchronized (MUTEX) {
-        removeFromCache(cache.get(cacheId));
-    }
+    removeFromCache(getCacheInfo(cacheId));
   }
 
 
@@ -306,12 +389,16 @@ public class DataCacheManager  implements Runnable {
         if (info == null) {
             return;
         }
-        synchronized (MUTEX) {
+        synchronized (info) {
             if (info.data != null) {
                 info.data = null;
-                totalSize -= info.getSize();
+                totalSize.addAndGet(-info.getSize());
+            }
+            Segment segment = getSegment(info.id);
+            synchronized (segment) {
+                segment.entries.remove(info.id);
+                segment.evict(info);
             }
-            cache.remove(info.id);
             info.remove();
         }
     }
@@ -340,24 +427,23 @@ public class DataCacheManager  implements Runnable {
           return;
       }
 
+      synchronized (info) {
+        if (info.data == null) {
+          return;
+        }
 
-      if (info.data == null) {
-        return;
-      }
-
-
-
-      if (!info.cacheFileGood) {
-        FileOutputStream fos = new FileOutputStream(info.cacheFile);
-        BufferedOutputStream bos = new BufferedOutputStream(fos,100000);
-        ObjectOutputStream oos = new ObjectOutputStream(fos);
-        oos.writeObject(info.data);
-        oos.close();
-        bos.close();
-        fos.close();
+        if (!info.cacheFileGood) {
+          long bytes = writeData(info.cacheFile, info.type, info.data);
+          spillCount.incrementAndGet();
+          spillBytes.addAndGet(bytes);
+        }
+        info.data = null;
+        totalSize.addAndGet(-info.getSize());
+        Segment segment = getSegment(info.id);
+        synchronized (segment) {
+          segment.evict(info);
+        }
       }
-      info.data = null;
-      totalSize -= info.getSize();
     }
     catch (Exception exc) {
       throw new RuntimeException(exc);
@@ -372,15 +458,36 @@ public class DataCacheManager  implements Runnable {
    * @return  Sorted list of cacheinfos
    */
   private List<CacheInfo> getCacheInfos() {
-    synchronized (MUTEX) {
       List<CacheInfo> infos = new ArrayList<CacheInfo>();
-      for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-        CacheInfo info = cache.get(keys.nextElement());
-        infos.add(info);
+      for (Segment segment : segments) {
+        synchronized (segment) {
+          infos.addAll(segment.entries.values());
+        }
       }
       Collections.sort(infos);
       return infos;
+  }
+
+  /**
+   * Find the least recently used entry with data in memory
+   *
+   * @param removeIfNeeded  true to look at entries that are not written
+   *                        to disk, false to look at the others
+   * @return the entry, or null if there is none
+   */
+  private CacheInfo getLeastRecentlyUsed(boolean removeIfNeeded) {
+    CacheInfo oldest = null;
+    long oldestTick = Long.MAX_VALUE;
+    for (Segment segment : segments) {
+      synchronized (segment) {
+        CacheInfo info = segment.getEldest(removeIfNeeded);
+        if (info != null && info.tick < oldestTick) {
+          oldest = info;
+          oldestTick = info.tick;
+        }
+      }
     }
+    return oldest;
   }
 
 
@@ -391,40 +498,80 @@ public class DataCacheManager  implements Runnable {
   }
 
   public int getMaxSize() {
-      return (int)(memoryPercentage*Runtime.getRuntime().maxMemory());
+      return (int) Math.min(Integer.MAX_VALUE, getMaxBytes());
+  }
+
+  /**
+   * @return the maximum number of bytes of data kept in memory
+   */
+  public long getMaxBytes() {
+      return (long)(memoryPercentage*Runtime.getRuntime().maxMemory());
   }
 
   /**
    *  Check if we are above the max size. If so then flush data from memory  until we are below the threshold
    */
     public  void checkCache() {
-        if (totalSize < getMaxSize()) {
+        if (totalSize.get() < getMaxBytes()) {
             return;
         }
         synchronized (MUTEX) {
-            //First do the volatile ones
-            for (CacheInfo info : getCacheInfos()) {
-                if(info.removeIfNeeded) {
-                    flushCachedData(info);
-                    if (totalSize <= getMaxSize()) {
-                        break;
-                    }
-                }
+            //First do the volatile ones, then the others
+            CacheInfo info;
+            while (totalSize.get() > getMaxBytes() &&
+                   (info = getLeastRecentlyUsed(true)) != null) {
+                flushCachedData(info);
             }
-
-            if (totalSize <= getMaxSize()) {
-                for (CacheInfo info : getCacheInfos()) {
-                    flushCachedData(info);
-                    if (totalSize <= getMaxSize()) {
-                        break;
-                    }
-                }
+            while (totalSize.get() > getMaxBytes() &&
+                   (info = getLeastRecentlyUsed(false)) != null) {
+                flushCachedData(info);
             }
         }
     }
 
 
+  /**
+   * @return the number of accesses to data in memory
+   */
+  public long getHitCount() {
+      return hitCount.get();
+  }
+
+  /**
+   * @return the number of accesses that read data back from disk
+   */
+  public long getMissCount() {
+      return missCount.get();
+  }
+
+  /**
+   * @return the number of arrays written to disk
+   */
+  public long getSpillCount() {
+      return spillCount.get();
+  }
+
+  /**
+   * @return the number of bytes written to disk
+   */
+  public long getSpillBytes() {
+      return spillBytes.get();
+  }
+
+  /**
+   * @return the number of bytes read back from disk
+   */
+  public long getReloadBytes() {
+      return reloadBytes.get();
+  }
 
+  /**
+   * @return the total time in milliseconds spent reading data back
+   *         from disk
+   */
+  public long getReloadTime() {
+      return reloadNanos.get() / 1000000;
+  }
 
 
   /**
@@ -436,12 +583,21 @@ public class DataCacheManager  implements Runnable {
 
 
   public String getStats() {
-    synchronized (MUTEX) {
         StringBuffer sb = new StringBuffer();
-        int mb =(int)( getMaxSize()/(double)1000000.0);
-        int total =(int)( totalSize/(double)1000000.0);
+        int mb =(int)( getMaxBytes()/(double)1000000.0);
+        int total =(int)( totalSize.get()/(double)1000000.0);
         sb.append("Cache total size:" + total +" MB   max size:" + mb +" MB  (" + (100*memoryPercentage)+"% of max memory)");
         sb.append("\n");
+        long misses = missCount.get();
+        sb.append("hits:" + hitCount.get() + "   misses:" + misses +
+                  "   spilled:" + spillCount.get() + " (" +
+                  (spillBytes.get() / 1000000) + " MB)   reloaded:" +
+                  (reloadBytes.get() / 1000000) + " MB in " +
+                  getReloadTime() + " ms");
+        if (misses > 0) {
+            sb.append(" (" + (getReloadTime() / misses) + " ms each)");
+        }
+        sb.append("\n");
         List<CacheInfo> infos= getCacheInfos();
         if(infos.size()==0) {
             sb.append("nothing in cache");
@@ -453,24 +609,11 @@ public class DataCacheManager  implements Runnable {
             for (CacheInfo info : infos) {
                 sb.append("   #" + (++cnt) +" ");
                 sb.append(info.toString());
-                /*
-                          "   #" + (++cnt) +" cache entry:" + info.getSize() + "   " + (info.data != null) +
-                                   "   " + info.dataAccessedCnt + "   " + info.cacheMissedCnt + "   " +
-                                   new Date(info.lastTime));
-                */
-                sb.append("\n");
-
-                /*
-                sb.append("what:" + info.what);
-                sb.append("\n");
-                sb.append(info.where.substring(300));
                 sb.append("\n");
-                */
             }
 
       }
         return sb.toString();
-    }
   }
 
 
@@ -481,25 +624,216 @@ public class DataCacheManager  implements Runnable {
    * @param where 
    */
   private void checkStats(String where) {
-    synchronized (MUTEX) {
-      int tmp = 0;
-      for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-        CacheInfo info = cache.get(keys.nextElement());
+      long tmp = 0;
+      List<CacheInfo> infos = getCacheInfos();
+      for (CacheInfo info : infos) {
         if (info.data != null) tmp += info.getSize();
       }
 
-      if (tmp != totalSize) {
+      if (tmp != totalSize.get()) {
         System.err.println(
-          "WHOAA: " + where + "  " + tmp + " != total size:" + totalSize);
-        for (Enumeration keys = cache.keys(); keys.hasMoreElements(); ) {
-          CacheInfo info = cache.get(keys.nextElement());
+          "WHOAA: " + where + "  " + tmp + " != total size:" + totalSize.get());
+        for (CacheInfo info : infos) {
           System.err.println(
             "   cache entry:" + info.getSize() + " " + (info.data != null));
         }
       }
+  }
+
+
+  /**
+   * Write an array to a cache file as raw primitives
+   *
+   * @param file  the cache file
+   * @param type  the type of the data
+   * @param data  the array
+   *
+   * @return the number of bytes written
+   *
+   * @throws IOException  on a write error
+   */
+  private static long writeData(File file, int type, Object data)
+          throws IOException {
+    FileOutputStream fos = new FileOutputStream(file);
+    try {
+      FileChannel channel = fos.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(IO_BUFFER_SIZE);
+      buffer.order(ByteOrder.nativeOrder());
+      write(channel, buffer, data, type % 5, type / 5 + 1);
+      drain(channel, buffer);
+      return channel.position();
+    }
+    finally {
+      fos.close();
     }
   }
 
+  /**
+   * Read an array back from a cache file
+   *
+   * @param file  the cache file
+   * @param type  the type of the data
+   *
+   * @return the array
+   *
+   * @throws IOException  on a read error
+   */
+  private static Object readData(File file, int type) throws IOException {
+    FileInputStream fis = new FileInputStream(file);
+    try {
+      FileChannel channel = fis.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(
+        (int) Math.min(IO_BUFFER_SIZE, Math.max(8, channel.size())));
+      buffer.order(ByteOrder.nativeOrder());
+      buffer.flip();
+      return read(channel, buffer, type % 5, type / 5 + 1);
+    }
+    finally {
+      fis.close();
+    }
+  }
+
+  /** write an array of dims dimensions; null arrays are length -1 */
+  private static void write(FileChannel channel, ByteBuffer buffer,
+                            Object data, int elem, int dims)
+          throws IOException {
+    if (data == null) {
+      putInt(channel, buffer, -1);
+      return;
+    }
+    if (dims > 1) {
+      Object[] rows = (Object[]) data;
+      putInt(channel, buffer, rows.length);
+      for (int i = 0; i < rows.length; i++) {
+        write(channel, buffer, rows[i], elem, dims - 1);
+      }
+      return;
+    }
+    int length = Array.getLength(data);
+    putInt(channel, buffer, length);
+    int size = ELEMENT_BYTES[elem];
+    int off = 0;
+    while (off < length) {
+      if (buffer.remaining() < size) drain(channel, buffer);
+      int n = Math.min(length - off, buffer.remaining() / size);
+      switch (elem) {
+        case 0: buffer.asDoubleBuffer().put((double[]) data, off, n); break;
+        case 1: buffer.asFloatBuffer().put((float[]) data, off, n); break;
+        case 2: buffer.asIntBuffer().put((int[]) data, off, n); break;
+        case 3: buffer.asShortBuffer().put((short[]) data, off, n); break;
+        default: buffer.duplicate().put((byte[]) data, off, n); break;
+      }
+      buffer.position(buffer.position() + n * size);
+      off += n;
+    }
+  }
+
+  /** read an array written by write */
+  private static Object read(FileChannel channel, ByteBuffer buffer,
+                             int elem, int dims) throws IOException {
+    fill(channel, buffer, 4);
+    int length = buffer.getInt();
+    if (length < 0) return null;
+    if (dims > 1) {
+      Class rowClass =
+        Array.newInstance(ELEMENT_CLASSES[elem], new int[dims - 1]).getClass();
+      Object[] rows = (Object[]) Array.newInstance(rowClass, length);
+      for (int i = 0; i < length; i++) {
+        rows[i] = read(channel, buffer, elem, dims - 1);
+      }
+      return rows;
+    }
+    Object data = Array.newInstance(ELEMENT_CLASSES[elem], length);
+    int size = ELEMENT_BYTES[elem];
+    int off = 0;
+    while (off < length) {
+      fill(channel, buffer, size);
+      int n = Math.min(length - off, buffer.remaining() / size);
+      switch (elem) {
+        case 0: buffer.asDoubleBuffer().get((double[]) data, off, n); break;
+        case 1: buffer.asFloatBuffer().get((float[]) data, off, n); break;
+        case 2: buffer.asIntBuffer().get((int[]) data, off, n); break;
+        case 3: buffer.asShortBuffer().get((short[]) data, off, n); break;
+        default: buffer.duplicate().get((byte[]) data, off, n); break;
+      }
+      buffer.position(buffer.position() + n * size);
+      off += n;
+    }
+    return data;
+  }
+
+  private static void putInt(FileChannel channel, ByteBuffer buffer,
+                             int value) throws IOException {
+    if (buffer.remaining() < 4) drain(channel, buffer);
+    buffer.putInt(value);
+  }
+
+  /** write the buffered bytes and empty the buffer */
+  private static void drain(FileChannel channel, ByteBuffer buffer)
+          throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /** read until at least n bytes are buffered */
+  private static void fill(FileChannel channel, ByteBuffer buffer, int n)
+          throws IOException {
+    if (buffer.remaining() >= n) return;
+    buffer.compact();
+    while (buffer.position() < n) {
+      if (channel.read(buffer) < 0) {
+        throw new EOFException("DataCacheManager: cache file is truncated");
+      }
+    }
+    buffer.flip();
+  }
+
+
+
+  /**
+   * A lock stripe of the cache
+   */
+  private static class Segment {
+
+    /** all entries in this segment */
+    private final HashMap<Object, CacheInfo> entries =
+      new HashMap<Object, CacheInfo>();
+
+    /** entries with data in memory, least recently used first */
+    private final LinkedHashMap<Object, CacheInfo> resident =
+      new LinkedHashMap<Object, CacheInfo>(16, 0.75f, true);
+
+    /** removeIfNeeded entries with data in memory, least recently used
+        first */
+    private final LinkedHashMap<Object, CacheInfo> residentVolatile =
+      new LinkedHashMap<Object, CacheInfo>(16, 0.75f, true);
+
+    private LinkedHashMap<Object, CacheInfo> getResident(CacheInfo info) {
+      return info.removeIfNeeded ? residentVolatile : resident;
+    }
+
+    /** mark info as the most recently used entry with data in memory */
+    private void touch(CacheInfo info, long tick) {
+      info.tick = tick;
+      LinkedHashMap<Object, CacheInfo> map = getResident(info);
+      if (map.get(info.id) == null) map.put(info.id, info);
+    }
+
+    /** note that info no longer has data in memory */
+    private void evict(CacheInfo info) {
+      getResident(info).remove(info.id);
+    }
+
+    private CacheInfo getEldest(boolean removeIfNeeded) {
+      LinkedHashMap<Object, CacheInfo> map =
+        removeIfNeeded ? residentVolatile : resident;
+      if (map.isEmpty()) return null;
+      return map.values().iterator().next();
+    }
+  }
 
 
   /**
@@ -517,7 +851,7 @@ public class DataCacheManager  implements Runnable {
     private int type;
 
     /**  */
-    private int size;
+    private long size;
 
     /**  */
     private Object id;
@@ -525,8 +859,11 @@ public class DataCacheManager  implements Runnable {
     /**  */
     private long lastTime;
 
+    /** least recently used order; guarded by the segment lock */
+    private long tick;
+
     /**  */
-    private Object data;
+    private volatile Object data;
 
     /**  */
     private File cacheFile;
@@ -649,7 +986,7 @@ public class DataCacheManager  implements Runnable {
      *
      * @return 
      */
-    public int getSize() {
+    public long getSize() {
       return size;
     }
 
@@ -1451,110 +1788,110 @@ private static final int TYPE_BYTE3D = 14;
 
 
 /** Get the size of the array **/
-private static int getArraySize(int type, Object values) {
+private static long getArraySize(int type, Object values) {
 
    if (type == TYPE_DOUBLE1D) {
         double[] data= (double[]) values;
         
-        return 8*data.length;
+        return 8L*data.length;
 
    }
 
    if (type == TYPE_FLOAT1D) {
         float[] data= (float[]) values;
         
-        return 4*data.length;
+        return 4L*data.length;
 
    }
 
    if (type == TYPE_INT1D) {
         int[] data= (int[]) values;
         
-        return 4*data.length;
+        return 4L*data.length;
 
    }
 
    if (type == TYPE_SHORT1D) {
         short[] data= (short[]) values;
         
-        return 2*data.length;
+        return 2L*data.length;
 
    }
 
    if (type == TYPE_BYTE1D) {
         byte[] data= (byte[]) values;
         
-        return 1*data.length;
+        return 1L*data.length;
 
    }
 
    if (type == TYPE_DOUBLE2D) {
         double[][] data= (double[][]) values;
         if (data[0]==null) return 0;
-        return 8*data.length * data[0].length;
+        return 8L*data.length * data[0].length;
 
    }
 
    if (type == TYPE_FLOAT2D) {
         float[][] data= (float[][]) values;
         if (data[0]==null) return 0;
-        return 4*data.length * data[0].length;
+        return 4L*data.length * data[0].length;
 
    }
 
    if (type == TYPE_INT2D) {
         int[][] data= (int[][]) values;
         if (data[0]==null) return 0;
-        return 4*data.length * data[0].length;
+        return 4L*data.length * data[0].length;
 
    }
 
    if (type == TYPE_SHORT2D) {
         short[][] data= (short[][]) values;
         if (data[0]==null) return 0;
-        return 2*data.length * data[0].length;
+        return 2L*data.length * data[0].length;
 
    }
 
    if (type == TYPE_BYTE2D) {
         byte[][] data= (byte[][]) values;
         if (data[0]==null) return 0;
-        return 1*data.length * data[0].length;
+        return 1L*data.length * data[0].length;
 
    }
 
    if (type == TYPE_DOUBLE3D) {
         double[][][] data= (double[][][]) values;
         if (data[0]==null) return 0; if(data[0][0]==null) return 0;
-        return 8*data.length * data[0].length*data[0][0].length;
+        return 8L*data.length * data[0].length*data[0][0].length;
 
    }
 
    if (type == TYPE_FLOAT3D) {
         float[][][] data= (float[][][]) values;
         if (data[0]==null) return 0; if(data[0][0]==null) return 0;
-        return 4*data.length * data[0].length*data[0][0].length;
+        return 4L*data.length * data[0].length*data[0][0].length;
 
    }
 
    if (type == TYPE_INT3D) {
         int[][][] data= (int[][][]) values;
         if (data[0]==null) return 0; if(data[0][0]==null) return 0;
-        return 4*data.length * data[0].length*data[0][0].length;
+        return 4L*data.length * data[0].length*data[0][0].length;
 
    }
 
    if (type == TYPE_SHORT3D) {
         short[][][] data= (short[][][]) values;
         if (data[0]==null) return 0; if(data[0][0]==null) return 0;
-        return 2*data.length * data[0].length*data[0][0].length;
+        return 2L*data.length * data[0].length*data[0][0].length;
 
    }
 
    if (type == TYPE_BYTE3D) {
         byte[][][] data= (byte[][][]) values;
         if (data[0]==null) return 0; if(data[0][0]==null) return 0;
-        return 1*data.length * data[0].length*data[0][0].length;
+        return 1L*data.length * data[0].length*data[0][0].length;
 
    }
 
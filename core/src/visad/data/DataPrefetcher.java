@@ -0,0 +1,322 @@
+//
+// DataPrefetcher.java
+//
+
+/*
+ * VisAD system for interactive analysis and visualization of numerical
+ * data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+ * Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+ * Tommy Jasmin, Jeff McWhirter.
+ *
+ * This library is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU Library General Public
+ * License as published by the Free Software Foundation; either
+ * version 2 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Library General Public License for more details.
+ *
+ * You should have received a copy of the GNU Library General Public
+ * License along with this library; if not, write to the Free
+ * Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+ * MA 02111-1307, USA
+ */
+
+
+package visad.data;
+
+
+import visad.*;
+
+import java.rmi.RemoteException;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+
+
+/**
+ * Reads {@link CachedFlatField} data on background threads before it is
+ * needed, e.g. the next few time steps of an animation.  You access it
+ * via the singleton:<pre>
+     DataPrefetcher.getPrefetcher()
+</pre>
+ * A client hints the fields it will use next, nearest first:<pre>
+     DataPrefetcher.getPrefetcher().prefetch(sequence, current, step, 3);
+</pre>
+ * Each call replaces the fields hinted by the previous one that have not
+ * been started, so hints for the old direction are cancelled when an
+ * animation reverses.  Loads that have started run to completion.
+ * <p>
+ * The number of bytes being read at once is bounded by
+ * getMaxInFlightBytes(); a single field larger than that is still read,
+ * but alone.  The defaults come from the system properties
+ * <code>visad.prefetch.threads</code> (default 2) and
+ * <code>visad.prefetch.maxBytes</code> (default 1/16 of the max memory).
+ */
+public class DataPrefetcher implements Runnable {
+
+  /** the singleton */
+  private static DataPrefetcher prefetcher;
+
+  /** the hinted fields that have not been started, nearest first */
+  private final LinkedList<CachedFlatField> pending =
+    new LinkedList<CachedFlatField>();
+
+  /** the fields being read; FlatField.equals compares the data, so
+      fields are compared by identity */
+  private final IdentityHashMap<CachedFlatField, Object> inFlight =
+    new IdentityHashMap<CachedFlatField, Object>();
+
+  /** bytes being read */
+  private long inFlightBytes = 0;
+
+  /** max bytes being read at once */
+  private long maxInFlightBytes =
+    Long.getLong("visad.prefetch.maxBytes",
+                 Runtime.getRuntime().maxMemory() / 16).longValue();
+
+  /** number of reader threads */
+  private final int numThreads =
+    Math.max(1, Integer.getInteger("visad.prefetch.threads", 2).intValue());
+
+  /** true once the reader threads are started */
+  private boolean started = false;
+
+  /** number of fields read */
+  private long loadCount = 0;
+
+  /** number of hinted fields dropped before they were started */
+  private long cancelCount = 0;
+
+
+  /**
+   * ctor
+   */
+  private DataPrefetcher() {}
+
+
+  /**
+   * The singleton access
+   *
+   * @return the prefetcher
+   */
+  public static synchronized DataPrefetcher getPrefetcher() {
+    if (prefetcher == null) {
+      prefetcher = new DataPrefetcher();
+    }
+    return prefetcher;
+  }
+
+
+  /**
+   * Read the given fields in the background, nearest first.  This
+   * replaces the fields from the previous call that have not been
+   * started.  Null fields and fields that are already in memory are
+   * ignored.
+   *
+   * @param fields  the fields to read
+   */
+  public synchronized void prefetch(CachedFlatField[] fields) {
+    cancelCount += pending.size();
+    pending.clear();
+    for (int i = 0; i < fields.length; i++) {
+      CachedFlatField field = fields[i];
+      if (field != null && !inFlight.containsKey(field)
+          && !isPending(field) && !field.isLoaded()) {
+        pending.add(field);
+      }
+    }
+    if (!pending.isEmpty()) {
+      startThreads();
+      notifyAll();
+    }
+  }
+
+
+  /**
+   * Is the field in the pending list
+   *
+   * @param field  the field
+   * @return true if it is pending
+   */
+  private boolean isPending(CachedFlatField field) {
+    for (CachedFlatField other : pending) {
+      if (other == field) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+
+  /**
+   * Read the samples of a sequence that follow the current one in the
+   * background.  The samples at current + step, current + 2 * step, ...
+   * are hinted, wrapping around the ends of the sequence as an animation
+   * does; samples that are not CachedFlatFields are skipped.
+   *
+   * @param sequence  the sequence, e.g. a time sequence of images
+   * @param current   index of the current sample
+   * @param step      the animation step; negative to animate backwards
+   * @param count     the number of samples to read ahead
+   *
+   * @throws VisADException  problem getting the samples
+   * @throws RemoteException  problem getting the samples
+   */
+  public void prefetch(FieldImpl sequence, int current, int step, int count)
+          throws VisADException, RemoteException {
+    int length = sequence.getLength();
+    List<CachedFlatField> fields = new ArrayList<CachedFlatField>();
+    if (length > 0 && step != 0) {
+      for (int k = 1; k <= count && k < length; k++) {
+        int index = (int) ((current + (long) k * step) % length);
+        if (index < 0) {
+          index += length;
+        }
+        if (index == current) {
+          break;
+        }
+        Data sample = sequence.getSample(index, false);
+        if (sample instanceof CachedFlatField) {
+          fields.add((CachedFlatField) sample);
+        }
+      }
+    }
+    prefetch(fields.toArray(new CachedFlatField[fields.size()]));
+  }
+
+
+  /**
+   * Drop the hinted fields that have not been started
+   */
+  public synchronized void cancel() {
+    cancelCount += pending.size();
+    pending.clear();
+  }
+
+
+  /**
+   * Set the max number of bytes read at once
+   *
+   * @param bytes  the max bytes
+   */
+  public synchronized void setMaxInFlightBytes(long bytes) {
+    maxInFlightBytes = bytes;
+    notifyAll();
+  }
+
+  /**
+   * @return the max number of bytes read at once
+   */
+  public synchronized long getMaxInFlightBytes() {
+    return maxInFlightBytes;
+  }
+
+  /**
+   * @return the number of bytes being read
+   */
+  public synchronized long getInFlightBytes() {
+    return inFlightBytes;
+  }
+
+  /**
+   * @return the number of fields read
+   */
+  public synchronized long getLoadCount() {
+    return loadCount;
+  }
+
+  /**
+   * @return the number of hinted fields dropped before they were started
+   */
+  public synchronized long getCancelCount() {
+    return cancelCount;
+  }
+
+
+  /**
+   * Start the reader threads if needed
+   */
+  private void startThreads() {
+    if (started) {
+      return;
+    }
+    started = true;
+    for (int i = 0; i < numThreads; i++) {
+      Thread t = new Thread(this, "VisAD Prefetch-" + (i + 1));
+      t.setDaemon(true);
+      t.start();
+    }
+  }
+
+
+  /**
+   * Take the next field to read, waiting until there is one and there
+   * is room for it
+   *
+   * @return the field
+   *
+   * @throws InterruptedException  if interrupted while waiting
+   */
+  private synchronized CachedFlatField take() throws InterruptedException {
+    while (true) {
+      if (!pending.isEmpty()) {
+        CachedFlatField field = pending.getFirst();
+        long size = field.getDataSize();
+        if (inFlightBytes == 0 || inFlightBytes + size <= maxInFlightBytes) {
+          pending.removeFirst();
+          inFlight.put(field, field);
+          inFlightBytes += size;
+          return field;
+        }
+      }
+      wait();
+    }
+  }
+
+
+  /**
+   * Note that a field has been read
+   *
+   * @param field  the field
+   */
+  private synchronized void done(CachedFlatField field) {
+    inFlight.remove(field);
+    inFlightBytes -= field.getDataSize();
+    loadCount++;
+    notifyAll();
+  }
+
+
+  /**
+   * The reader thread loop
+   */
+  public void run() {
+    while (true) {
+      CachedFlatField field;
+      try {
+        field = take();
+      }
+      catch (InterruptedException exc) {
+        return;
+      }
+      try {
+        if (!field.isLoaded()) {
+          field.loadData();
+        }
+      }
+      catch (Exception exc) {
+        System.err.println("Error in DataPrefetcher:");
+        exc.printStackTrace();
+      }
+      finally {
+        done(field);
+      }
+    }
+  }
+
+}
@@ -0,0 +1,118 @@
+//
+// RangeStorage.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.nio.FloatBuffer;
+
+import visad.VisADException;
+
+/**
+ * Backing store for the range samples of a {@link StorageFlatField}.
+ * Values are held as floats, dimensioned [component][sample] just like
+ * the arrays returned by <code>FlatField.getFloats()</code>, but the
+ * storage itself need not live on the Java heap.
+ */
+public interface RangeStorage {
+
+  /**
+   * @return the number of range components
+   */
+  int getDimension();
+
+  /**
+   * @return the number of samples per component
+   */
+  int getLength();
+
+  /**
+   * Get a single value.
+   *
+   * @param comp    range component index
+   * @param index   sample index
+   * @return the value
+   */
+  float getFloat(int comp, int index);
+
+  /**
+   * Set a single value.
+   *
+   * @param comp    range component index
+   * @param index   sample index
+   * @param value   the new value
+   */
+  void setFloat(int comp, int index, float value);
+
+  /**
+   * Copy a run of values of one component into <code>dest</code>.
+   *
+   * @param comp    range component index
+   * @param start   first sample index
+   * @param dest    destination array
+   * @param offset  first index in <code>dest</code>
+   * @param count   number of values to copy
+   */
+  void getFloats(int comp, int start, float[] dest, int offset, int count);
+
+  /**
+   * Copy a run of values from <code>src</code> into one component.
+   *
+   * @param comp    range component index
+   * @param start   first sample index
+   * @param src     source array
+   * @param offset  first index in <code>src</code>
+   * @param count   number of values to copy
+   */
+  void setFloats(int comp, int start, float[] src, int offset, int count);
+
+  /**
+   * Get a read-only view of one component, positioned at sample 0.
+   * No values are copied.
+   *
+   * @param comp    range component index
+   * @return the view
+   */
+  FloatBuffer getFloatBuffer(int comp);
+
+  /**
+   * Make an independent copy of this storage.
+   *
+   * @return the copy
+   * @throws VisADException if the copy could not be allocated
+   */
+  RangeStorage copy() throws VisADException;
+
+  /**
+   * Write any pending changes through to the underlying medium.
+   */
+  void flush();
+
+  /**
+   * Flush and release any resources held by this storage.  The storage
+   * must not be used afterwards.
+   */
+  void close();
+}
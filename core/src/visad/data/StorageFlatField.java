@@ -0,0 +1,447 @@
+//
+// StorageFlatField.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data;
+
+import java.nio.FloatBuffer;
+import java.rmi.RemoteException;
+
+import visad.*;
+
+/**
+ * A FlatField whose range values live in a {@link RangeStorage} rather
+ * than in on-heap arrays, for example a direct buffer or a memory-mapped
+ * file region (see {@link BufferRangeStorage}).<P>
+ *
+ * All of the usual accessors (<code>getFloats</code>,
+ * <code>getValues</code>, <code>getSample</code>, math operations) work,
+ * but they copy values out of the storage.  Callers that can work on the
+ * storage directly should use {@link #getFloatBuffer(int)}.  Range values
+ * are held in the field's range units as floats.
+ */
+public class StorageFlatField extends FlatField {
+
+  /** the range values */
+  private RangeStorage storage;
+
+  /**
+   * Create a StorageFlatField with default range sets and units.
+   *
+   * @param type       function type
+   * @param domainSet  domain set
+   * @param storage    range values; its dimension and length must match
+   *                   the flat range and the domain set
+   * @throws VisADException if the storage does not match
+   */
+  public StorageFlatField(FunctionType type, Set domainSet,
+                          RangeStorage storage)
+         throws VisADException {
+    this(type, domainSet, null, null, null, null, storage);
+  }
+
+  /**
+   * Create a StorageFlatField.
+   *
+   * @param type            function type
+   * @param domainSet       domain set
+   * @param rangeCoordSys   range CoordinateSystem, if the range is a
+   *                        RealTupleType
+   * @param rangeCoordSyses range CoordinateSystems, if the range is a
+   *                        flat TupleType
+   * @param rangeSets       range sets; if null, FloatSets are used
+   * @param units           range units
+   * @param storage         range values; its dimension and length must
+   *                        match the flat range and the domain set
+   * @throws VisADException if the storage does not match
+   */
+  public StorageFlatField(FunctionType type, Set domainSet,
+                          CoordinateSystem rangeCoordSys,
+                          CoordinateSystem[] rangeCoordSyses,
+                          Set[] rangeSets, Unit[] units,
+                          RangeStorage storage)
+         throws VisADException {
+    super(type, domainSet, rangeCoordSys, rangeCoordSyses,
+          (rangeSets == null) ? floatSets(type) : rangeSets, units);
+    if (storage == null) {
+      throw new FieldException("StorageFlatField: storage cannot be null");
+    }
+    if (storage.getDimension() != TupleDimension ||
+        storage.getLength() != getLength()) {
+      throw new FieldException("StorageFlatField: storage is " +
+                               storage.getDimension() + " x " +
+                               storage.getLength() + ", need " +
+                               TupleDimension + " x " + getLength());
+    }
+    this.storage = storage;
+    clearMissing();
+  }
+
+  private static Set[] floatSets(FunctionType type) throws VisADException {
+    RealTupleType flat = type.getFlatRange();
+    Set[] sets = new Set[flat.getDimension()];
+    for (int i=0; i<sets.length; i++) {
+      sets[i] = new FloatSet(new SetType(flat.getComponent(i)));
+    }
+    return sets;
+  }
+
+  /**
+   * @return the storage holding the range values
+   */
+  public RangeStorage getStorage() {
+    return storage;
+  }
+
+  /**
+   * Get a read-only view of one range component in the range units,
+   * without copying.
+   *
+   * @param comp  flat range component index
+   * @return the view
+   */
+  public FloatBuffer getFloatBuffer(int comp) {
+    return storage.getFloatBuffer(comp);
+  }
+
+  /**
+   * Get views of the range values that read the storage directly.
+   *
+   * @return one view per flat range component
+   * @throws VisADException  problem in VisAD land
+   */
+  public RangeView[] getRangeViews() throws VisADException {
+    RangeView[] views = new RangeView[TupleDimension];
+    for (int i=0; i<TupleDimension; i++) {
+      views[i] = RangeView.of(storage.getFloatBuffer(i));
+    }
+    return views;
+  }
+
+  /**
+   * Set range values; values are always copied into the storage.
+   *
+   * @param range   new values, dimensioned [component][sample]
+   * @param errors  new errors, may be null
+   * @param copy    ignored
+   * @throws VisADException  bad array sizes
+   * @throws RemoteException Java RMI error
+   */
+  public void setSamples(float[][] range, ErrorEstimate[] errors,
+                         boolean copy)
+         throws VisADException, RemoteException {
+    checkSamples(range.length, errors);
+    for (int i=0; i<TupleDimension; i++) {
+      if (range[i].length != getLength()) {
+        throw new FieldException("setSamples: bad array length");
+      }
+      storage.setFloats(i, 0, range[i], 0, getLength());
+    }
+    setRangeErrors(errors);
+    notifyReferences();
+  }
+
+  /**
+   * Set range values; values are always copied into the storage.
+   *
+   * @param range   new values, dimensioned [component][sample]
+   * @param errors  new errors, may be null
+   * @param copy    ignored
+   * @throws VisADException  bad array sizes
+   * @throws RemoteException Java RMI error
+   */
+  public void setSamples(double[][] range, ErrorEstimate[] errors,
+                         boolean copy)
+         throws VisADException, RemoteException {
+    checkSamples(range.length, errors);
+    for (int i=0; i<TupleDimension; i++) {
+      if (range[i].length != getLength()) {
+        throw new FieldException("setSamples: bad array length");
+      }
+      double[] rangeI = range[i];
+      for (int j=0; j<rangeI.length; j++) {
+        storage.setFloat(i, j, (float) rangeI[j]);
+      }
+    }
+    setRangeErrors(errors);
+    notifyReferences();
+  }
+
+  /**
+   * Update a contiguous subset of the range values.
+   *
+   * @param start  index of the first sample to update
+   * @param range  new values, dimensioned [component][count]
+   * @throws VisADException  bad array sizes
+   * @throws RemoteException Java RMI error
+   */
+  public void setSamples(int start, double[][] range)
+         throws VisADException, RemoteException {
+    checkSamples(range.length, null);
+    for (int i=0; i<TupleDimension; i++) {
+      if (range[i].length + start > getLength()) {
+        throw new FieldException("setSamples: bad array length");
+      }
+      double[] rangeI = range[i];
+      for (int j=0; j<rangeI.length; j++) {
+        storage.setFloat(i, start + j, (float) rangeI[j]);
+      }
+    }
+    setRangeErrors(null);
+    notifyReferences();
+  }
+
+  /**
+   * Update the range values at the given sample indices.
+   *
+   * @param indices  sample indices to update
+   * @param range    new values, dimensioned [component][indices.length]
+   * @throws VisADException  bad array sizes
+   * @throws RemoteException Java RMI error
+   */
+  public void setSamples(int[] indices, double[][] range)
+         throws VisADException, RemoteException {
+    checkSamples(range.length, null);
+    if (indices.length > getLength()) {
+      throw new FieldException("setSamples: indices array too long");
+    }
+    for (int i=0; i<TupleDimension; i++) {
+      if (range[i].length != indices.length) {
+        throw new FieldException("setSamples: bad data array length");
+      }
+      double[] rangeI = range[i];
+      for (int j=0; j<indices.length; j++) {
+        storage.setFloat(i, indices[j], (float) rangeI[j]);
+      }
+    }
+    setRangeErrors(null);
+    notifyReferences();
+  }
+
+  /**
+   * Set the range value at the index-th sample.  The value is converted
+   * to the range units and coordinate systems of this field the same way
+   * <code>FlatField.setSample</code> does.
+   *
+   * @param index  sample index
+   * @param range  new range value
+   * @throws VisADException  bad type or index
+   * @throws RemoteException Java RMI error
+   */
+  public void setSample(int index, Data range)
+         throws VisADException, RemoteException {
+    if (index < 0 || index >= getLength()) return;
+    // let a one-sample FlatField do the unit and coordinate conversion
+    FunctionType type = (FunctionType) getType();
+    FlatField one = new FlatField(
+      new FunctionType(RealType.Generic, type.getRange()),
+      new Integer1DSet(1), RangeCoordinateSystem, RangeCoordinateSystems,
+      floatSets(type), RangeUnits);
+    one.setSample(0, range);
+    double[][] values = one.unpackValues();
+    for (int i=0; i<TupleDimension; i++) {
+      storage.setFloat(i, index, (float) values[i][0]);
+    }
+    notifyReferences();
+  }
+
+  /**
+   * Set the range value at the index-th sample.
+   *
+   * @param index  sample index
+   * @param range  new range value
+   * @param copy   ignored
+   * @throws VisADException  bad type or index
+   * @throws RemoteException Java RMI error
+   */
+  public void setSample(int index, Data range, boolean copy)
+         throws VisADException, RemoteException {
+    setSample(index, range);
+  }
+
+  private void checkSamples(int dimension, ErrorEstimate[] errors)
+          throws VisADException {
+    if (dimension != TupleDimension ||
+        (errors != null && errors.length != TupleDimension)) {
+      throw new FieldException("StorageFlatField.setSamples: " +
+                               "bad tuple length");
+    }
+  }
+
+  /**
+   * Copy the range values out of the storage.
+   *
+   * @param copy  ignored, the values are always a copy
+   * @return the values
+   * @throws VisADException  problem in VisAD land
+   */
+  protected float[][] unpackFloats(boolean copy) throws VisADException {
+    float[][] range = new float[TupleDimension][];
+    for (int i=0; i<TupleDimension; i++) {
+      range[i] = unpackOneFloatRangeComp(i, true);
+    }
+    return range;
+  }
+
+  /**
+   * Copy the range values out of the storage.
+   *
+   * @param copy  ignored, the values are always a copy
+   * @return the values
+   * @throws VisADException  problem in VisAD land
+   */
+  protected double[][] unpackValues(boolean copy) throws VisADException {
+    double[][] range = new double[TupleDimension][];
+    for (int i=0; i<TupleDimension; i++) {
+      range[i] = unpackOneRangeComp(i, true);
+    }
+    return range;
+  }
+
+  protected float[] unpackOneFloatRangeComp(int comp, boolean copy)
+            throws VisADException {
+    float[] range = new float[getLength()];
+    storage.getFloats(comp, 0, range, 0, range.length);
+    return range;
+  }
+
+  protected double[] unpackOneRangeComp(int comp, boolean copy)
+            throws VisADException {
+    FloatBuffer buf = storage.getFloatBuffer(comp);
+    double[] range = new double[getLength()];
+    for (int j=0; j<range.length; j++) {
+      range[j] = buf.get(j);
+    }
+    return range;
+  }
+
+  protected float[] unpackFloats(int s_index) throws VisADException {
+    float[] range = new float[TupleDimension];
+    for (int i=0; i<TupleDimension; i++) {
+      range[i] = storage.getFloat(i, s_index);
+    }
+    return range;
+  }
+
+  protected double[] unpackValues(int s_index) throws VisADException {
+    double[] range = new double[TupleDimension];
+    for (int i=0; i<TupleDimension; i++) {
+      range[i] = storage.getFloat(i, s_index);
+    }
+    return range;
+  }
+
+  /**
+   * Get the range value at the index-th sample.
+   *
+   * @param index  index of the sample
+   * @return Data object (Real, RealTuple, or Tuple) corresponding to
+   *         the range at the index-th sample.
+   * @throws VisADException  problem getting data
+   * @throws RemoteException problem getting data from remote object
+   */
+  public Data getSample(int index) throws VisADException, RemoteException {
+    MathType RangeType = ((FunctionType) getType()).getRange();
+    if (isMissing() || index < 0 || index >= getLength()) {
+      return RangeType.missingData();
+    }
+    ErrorEstimate[] RangeErrors = getRangeErrors();
+    double[] range = unpackValues(index);
+    if (RangeType instanceof RealType) {
+      return new Real((RealType) RangeType, range[0], RangeUnits[0],
+                      RangeErrors[0]);
+    }
+    else if (RangeType instanceof RealTupleType) {
+      Real[] reals = new Real[TupleDimension];
+      for (int j=0; j<TupleDimension; j++) {
+        MathType type = ((RealTupleType) RangeType).getComponent(j);
+        reals[j] = new Real((RealType) type, range[j], RangeUnits[j],
+                            RangeErrors[j]);
+      }
+      return new RealTuple((RealTupleType) RangeType, reals,
+                           RangeCoordinateSystem);
+    }
+    else { // RangeType is a Flat TupleType
+      int n = ((TupleType) RangeType).getDimension();
+      int j = 0;
+      Data[] datums = new Data[n];
+      for (int i=0; i<n; i++) {
+        MathType type = ((TupleType) RangeType).getComponent(i);
+        if (type instanceof RealType) {
+          datums[i] = new Real((RealType) type, range[j], RangeUnits[j],
+                               RangeErrors[j]);
+          j++;
+        }
+        else { // type instanceof RealTupleType
+          int m = ((RealTupleType) type).getDimension();
+          Real[] reals = new Real[m];
+          for (int k=0; k<m; k++) {
+            RealType ctype = (RealType) ((RealTupleType) type).getComponent(k);
+            reals[k] = new Real(ctype, range[j], RangeUnits[j],
+                                RangeErrors[j]);
+            j++;
+          }
+          datums[i] = new RealTuple((RealTupleType) type, reals,
+                                    RangeCoordinateSystems[i]);
+        }
+      }
+      return new Tuple(datums, false);
+    }
+  }
+
+  /**
+   * Clone this field.  The clone gets its own copy of the storage (see
+   * {@link RangeStorage#copy()}), so a mapped file is not shared.
+   *
+   * @return the clone
+   */
+  public Object clone() {
+    try {
+      StorageFlatField clone =
+        new StorageFlatField((FunctionType) getType(), getDomainSet(),
+                             RangeCoordinateSystem, RangeCoordinateSystems,
+                             getRangeSets(), RangeUnits, storage.copy());
+      clone.setRangeErrors(getRangeErrors());
+      return clone;
+    }
+    catch (VisADException e) {
+      throw new RuntimeException(e.toString());
+    }
+  }
+
+  public boolean equals(Object obj) {
+    if (!(obj instanceof StorageFlatField) || !super.equals(obj)) {
+      return false;
+    }
+    RangeStorage other = ((StorageFlatField) obj).storage;
+    for (int i=0; i<TupleDimension; i++) {
+      if (!storage.getFloatBuffer(i).equals(other.getFloatBuffer(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+}
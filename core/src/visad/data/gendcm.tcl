@@ -65,7 +65,7 @@ set sizeTemplate {
    if (type == TYPE_%TYPE%%dimension%D) {
         %type%%brackets% data= (%type%%brackets%) values;
         %sizecheck%
-        return %bytes%*%sizecode%;
+        return %bytes%L*%sizecode%;
 
    }
 }
@@ -75,7 +75,7 @@ puts "/********\n  Begin generated access methods\n*****/"
 
 set procs "";
 set types ""
-set sizeMethod "/** Get the size of the array **/\nprivate static int getArraySize(int type, Object values) {\n";
+set sizeMethod "/** Get the size of the array **/\nprivate static long getArraySize(int type, Object values) {\n";
 set nameMethod "/** Get the name of the type **/\nprivate static String getNameForType(int type) {\n";
 set cnt 0
 for {set dimension 1} {$dimension<4} {incr dimension} {
@@ -36,6 +36,7 @@ import visad.QuickSort;
 import visad.RealTupleType;
 import visad.Unit;
 import visad.VisADException;
+import visad.util.Parallel;
 
 /**
  * AREACoordinateSystem is the VisAD CoordinateSystem class
@@ -54,6 +55,19 @@ public class AREACoordinateSystem
   private int[] navBlock;
   private int[] auxBlock;
   private boolean useSpline = true;
+  private transient volatile ThreadLocal<AREAnav> threadNav;
+  /** the navigation made by init, which getThreadNav can copy */
+  private transient AREAnav initNav;
+  /** the navigation grid, if one is in use */
+  private transient volatile NavigationGrid grid;
+
+  /** lines and elements between navigation grid points; 0 for none */
+  private static volatile int gridSpacing =
+    Integer.getInteger("visad.areanav.grid.spacing", 0).intValue();
+  /** max navigation grid error, in degrees */
+  private static volatile double gridMaxError =
+    Double.parseDouble(System.getProperty("visad.areanav.grid.maxerror",
+                                          "0.01"));
 
   private static Unit[] coordinate_system_units =
     {null, null};
@@ -243,16 +257,172 @@ public class AREACoordinateSystem
     this.useSpline = !useSpline 
                        ? false  // user overrode
                        : anav.canApproximateWithSpline(); // let nav decide
-    anav.setImageStart(dir[5], dir[6]);
-    anav.setRes(dir[11], dir[12]);
-    anav.setStart(0,0);
-    anav.setMag(1,1);
+    configure(anav, dir);
+    initNav = anav;
     lines = dir[8];
     elements = dir[9];
+  }
+
+  /** set up a navigation for the image described by a directory block */
+  private static void configure(AREAnav nav, int[] dir) {
+    nav.setImageStart(dir[5], dir[6]);
+    nav.setRes(dir[11], dir[12]);
+    nav.setStart(0,0);
+    nav.setMag(1,1);
     // the following is done because VisAD's (0,0) coordinate is in
     // the lower-left corner; whereas, AREA files are in the upper-left
 
-    anav.setFlipLineCoordinates(dir[8]-1); // invert Y axis coordinates
+    nav.setFlipLineCoordinates(dir[8]-1); // invert Y axis coordinates
+  }
+
+  /**
+   * Get a navigation for the calling thread.  Navigations keep state
+   * between calls, so each thread of a parallel transform uses its own
+   * copy made from the directory, navigation and aux blocks.
+   */
+  private AREAnav getThreadNav() throws VisADException {
+    if (threadNav == null) {
+      synchronized (this) {
+        if (threadNav == null) threadNav = new ThreadLocal<AREAnav>();
+      }
+    }
+    AREAnav nav = threadNav.get();
+    if (nav == null) {
+      try {
+        nav = AREAnav.makeAreaNav(navBlock, auxBlock);
+      } catch (McIDASException excp) {
+        throw new CoordinateSystemException(
+            "AREACoordinateSystem: problem creating navigation" + excp);
+      }
+      configure(nav, dirBlock);
+      threadNav.set(nav);
+    }
+    return nav;
+  }
+
+  /**
+   * Use a {@link NavigationGrid} for the element,line to latitude,longitude
+   * transforms of all AREACoordinateSystems.  The navigation is evaluated
+   * exactly every <code>spacing</code> lines and elements and interpolated
+   * in between, except in grid cells whose interpolation error at the
+   * center or at any edge midpoint is more than <code>maxError</code>
+   * degrees, or whose corners are off the earth or straddle the dateline;
+   * those cells are navigated exactly.  Grids are shared
+   * by systems for the same AREA directory and navigation.  The defaults
+   * come from the system properties
+   * <code>visad.areanav.grid.spacing</code> (default 0, no grid) and
+   * <code>visad.areanav.grid.maxerror</code> (default 0.01).
+   *
+   * @param spacing   lines and elements between grid points; 0 for no
+   *                  grid
+   * @param maxError  max interpolation error, in degrees, at the cell
+   *                  centers and edge midpoints
+   */
+  public static void setNavigationGrid(int spacing, double maxError) {
+    gridMaxError = maxError;
+    gridSpacing = spacing;
+  }
+
+  /**
+   * @return the lines and elements between navigation grid points, or 0
+   *         if no grid is used
+   */
+  public static int getNavigationGridSpacing() {
+    return gridSpacing;
+  }
+
+  /**
+   * @return the max navigation grid error, in degrees
+   */
+  public static double getNavigationGridMaxError() {
+    return gridMaxError;
+  }
+
+  /**
+   * Get the navigation grid for this image, or null if grids are off or
+   * the navigation was not made by init
+   */
+  private NavigationGrid getNavigationGrid(AREAnav anav)
+          throws VisADException {
+    int spacing = gridSpacing;
+    double maxError = gridMaxError;
+    if (spacing <= 0 || anav != initNav || lines < 2 || elements < 2) {
+      return null;
+    }
+    NavigationGrid g = grid;
+    if (g == null || g.getSpacing() != spacing ||
+        g.getMaxError() != maxError) {
+      g = NavigationGrid.getGrid(dirBlock, navBlock, auxBlock,
+                                 getThreadNav(), spacing, maxError);
+      grid = g;
+    }
+    return g;
+  }
+
+  /**
+   * Navigate values with anav, splitting large arrays across threads
+   * when the navigation can be copied
+   */
+  private double[][] navigate(AREAnav anav, final double[][] values,
+                              final boolean toLatLon)
+          throws VisADException {
+    int len = values[0].length;
+    final NavigationGrid grid = toLatLon ? getNavigationGrid(anav) : null;
+    if (anav != initNav || !Parallel.isParallel(len)) {
+      if (grid != null) return grid.toLatLon(values, anav);
+      return toLatLon ? anav.toLatLon(values) : anav.toLinEle(values);
+    }
+    final double[][] result = new double[2][len];
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        double[][] part = new double[2][end - start];
+        System.arraycopy(values[0], start, part[0], 0, end - start);
+        System.arraycopy(values[1], start, part[1], 0, end - start);
+        AREAnav nav = getThreadNav();
+        if (grid != null) {
+          part = grid.toLatLon(part, nav);
+        }
+        else {
+          part = toLatLon ? nav.toLatLon(part) : nav.toLinEle(part);
+        }
+        System.arraycopy(part[0], 0, result[0], start, end - start);
+        System.arraycopy(part[1], 0, result[1], start, end - start);
+      }
+    });
+    return result;
+  }
+
+  /**
+   * Navigate values with anav, splitting large arrays across threads
+   * when the navigation can be copied
+   */
+  private float[][] navigate(AREAnav anav, final float[][] values,
+                             final boolean toLatLon)
+          throws VisADException {
+    int len = values[0].length;
+    final NavigationGrid grid = toLatLon ? getNavigationGrid(anav) : null;
+    if (anav != initNav || !Parallel.isParallel(len)) {
+      if (grid != null) return grid.toLatLon(values, anav);
+      return toLatLon ? anav.toLatLon(values) : anav.toLinEle(values);
+    }
+    final float[][] result = new float[2][len];
+    Parallel.forRange(len, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        float[][] part = new float[2][end - start];
+        System.arraycopy(values[0], start, part[0], 0, end - start);
+        System.arraycopy(values[1], start, part[1], 0, end - start);
+        AREAnav nav = getThreadNav();
+        if (grid != null) {
+          part = grid.toLatLon(part, nav);
+        }
+        else {
+          part = toLatLon ? nav.toLatLon(part) : nav.toLinEle(part);
+        }
+        System.arraycopy(part[0], 0, result[0], start, end - start);
+        System.arraycopy(part[1], 0, result[1], start, end - start);
+      }
+    });
+    return result;
   }
 
 
@@ -307,10 +477,11 @@ public class AREACoordinateSystem
     int[] nums = new int[2];
     double[] mins = new double[2];
     double[] maxs = new double[2];
-    double[][] newval = makeSpline(tuples, mins, maxs, nums);
+    double[][] newval = (getNavigationGrid(anav) != null)
+                          ? null : makeSpline(tuples, mins, maxs, nums);
     if (newval != null) {
 // System.out.println("new 1 " + tuples[0].length + " " + newval[0].length);
-      double[][] newtrans = anav.toLatLon(newval);
+      double[][] newtrans = navigate(anav, newval, true);
 
       int len = tuples[0].length;
       double[][] misstrans = new double[2][len];
@@ -318,7 +489,7 @@ public class AREACoordinateSystem
       double[][] val = applySpline(tuples, mins, maxs, nums, newtrans,
                                    misstrans, miss_to_trans);
       if (miss_to_trans[0] != null) {
-        double[][] newmiss = anav.toLatLon(misstrans);
+        double[][] newmiss = navigate(anav, misstrans, true);
         for (int i=0; i<miss_to_trans[0].length; i++) {
           val[0][miss_to_trans[0][i]] = newmiss[0][i];
           val[1][miss_to_trans[0][i]] = newmiss[1][i];
@@ -327,7 +498,7 @@ public class AREACoordinateSystem
       return val;
     }
     else {
-      return anav.toLatLon(tuples);
+      return navigate(anav, tuples, true);
     }
   }
 
@@ -353,7 +524,7 @@ public class AREACoordinateSystem
     double[][] newval = makeSpline(tuples, mins, maxs, nums);
     if (newval != null) {
 // System.out.println("new 2 " + tuples[0].length + " " + newval[0].length);
-      double[][] newtrans = anav.toLinEle(newval);
+      double[][] newtrans = navigate(anav, newval, false);
 
       int len = tuples[0].length;
       double[][] misstrans = new double[2][len];
@@ -361,7 +532,7 @@ public class AREACoordinateSystem
       double[][] val = applySpline(tuples, mins, maxs, nums, newtrans,
                                    misstrans, miss_to_trans);
       if (miss_to_trans[0] != null) {
-        double[][] newmiss = anav.toLinEle(misstrans);
+        double[][] newmiss = navigate(anav, misstrans, false);
         for (int i=0; i<miss_to_trans[0].length; i++) {
           val[0][miss_to_trans[0][i]] = newmiss[0][i];
           val[1][miss_to_trans[0][i]] = newmiss[1][i];
@@ -370,7 +541,7 @@ public class AREACoordinateSystem
       return val;
     }
     else {
-      return anav.toLinEle(tuples);
+      return navigate(anav, tuples, false);
     }
 
   }
@@ -397,10 +568,11 @@ public class AREACoordinateSystem
     int[] nums = new int[2];
     float[] mins = new float[2];
     float[] maxs = new float[2];
-    float[][] newval = makeSpline(val, mins, maxs, nums);
+    float[][] newval = (getNavigationGrid(anav) != null)
+                         ? null : makeSpline(val, mins, maxs, nums);
     if (newval != null) {
 // System.out.println("new 3");
-      float[][] newtrans = anav.toLatLon(newval);
+      float[][] newtrans = navigate(anav, newval, true);
 
       int len = tuples[0].length;
       float[][] misstrans = new float[2][len];
@@ -408,7 +580,7 @@ public class AREACoordinateSystem
       val = applySpline(val, mins, maxs, nums, newtrans,
                         misstrans, miss_to_trans);
       if (miss_to_trans[0] != null) {
-        float[][] newmiss = anav.toLatLon(misstrans);
+        float[][] newmiss = navigate(anav, misstrans, true);
         for (int i=0; i<miss_to_trans[0].length; i++) {
           val[0][miss_to_trans[0][i]] = newmiss[0][i];
           val[1][miss_to_trans[0][i]] = newmiss[1][i];
@@ -416,7 +588,7 @@ public class AREACoordinateSystem
       }
     }
     else {
-      val = anav.toLatLon(val);
+      val = navigate(anav, val, true);
     }
     //return Set.doubleToFloat(val);
     return val;
@@ -448,7 +620,7 @@ public class AREACoordinateSystem
     float[][] newval = makeSpline(val, mins, maxs, nums);
     if (newval != null) {
 // System.out.println("new 4");
-      float[][] newtrans = anav.toLinEle(newval);
+      float[][] newtrans = navigate(anav, newval, false);
 
       int len = tuples[0].length;
       float[][] misstrans = new float[2][len];
@@ -456,7 +628,7 @@ public class AREACoordinateSystem
       val = applySpline(val, mins, maxs, nums, newtrans,
                         misstrans, miss_to_trans);
       if (miss_to_trans[0] != null) {
-        float[][] newmiss = anav.toLinEle(misstrans);
+        float[][] newmiss = navigate(anav, misstrans, false);
         for (int i=0; i<miss_to_trans[0].length; i++) {
           val[0][miss_to_trans[0][i]] = newmiss[0][i];
           val[1][miss_to_trans[0][i]] = newmiss[1][i];
@@ -464,7 +636,7 @@ public class AREACoordinateSystem
       }
     }
     else {
-      val = anav.toLinEle(val);
+      val = navigate(anav, val, false);
     }
     //return Set.doubleToFloat(val);
     return val;
@@ -0,0 +1,402 @@
+//
+// NavigationGrid.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.data.mcidas;
+
+import edu.wisc.ssec.mcidas.AREAnav;
+
+import java.lang.ref.SoftReference;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Approximates the line/element to latitude/longitude navigation of an
+ * image by bilinear interpolation between control points.  The exact
+ * navigation is evaluated on a lattice of control points every
+ * <code>spacing</code> lines and elements, and at the center and edge
+ * midpoints of each lattice cell.  A cell is interpolated only if its
+ * corners are all on the earth, do not straddle the dateline, and the
+ * interpolated center and edge midpoints are within
+ * <code>maxError</code> degrees of the exact values; points in other
+ * cells, and points outside the image, are navigated exactly.<P>
+ *
+ * Grids are immutable and may be used from several threads; the
+ * navigation passed to toLatLon is only used for the exact points.
+ * {@link #getGrid} keeps the grids for recently used images.
+ */
+public class NavigationGrid {
+
+  /** max number of grids kept by getGrid */
+  private static final int CACHE_SIZE = 16;
+
+  /** grids for recently used images */
+  private static final LinkedHashMap<Key, SoftReference<NavigationGrid>>
+    cache = new LinkedHashMap<Key, SoftReference<NavigationGrid>>(16, 0.75f,
+                                                                  true);
+
+  private final int lines;
+  private final int elements;
+  private final int spacing;
+  private final double maxError;
+
+  /** number of control points in each direction */
+  private final int nx, ny;
+
+  /** control point latitudes and longitudes, element varying fastest */
+  private final double[] lats, lons;
+
+  /** true for cells that are navigated exactly */
+  private final boolean[] exact;
+
+  /**
+   * Create a grid for an image.  Points are (element, line) pairs in
+   * the coordinates passed to <code>nav.toLatLon</code>, covering
+   * 0 to elements - 1 and 0 to lines - 1.
+   *
+   * @param nav       navigation for the image
+   * @param lines     number of lines
+   * @param elements  number of elements
+   * @param spacing   lines and elements between control points
+   * @param maxError  max interpolation error, in degrees, at the cell
+   *                  centers and edge midpoints
+   */
+  public NavigationGrid(AREAnav nav, int lines, int elements, int spacing,
+                        double maxError) {
+    if (lines < 2 || elements < 2 || spacing < 1) {
+      throw new IllegalArgumentException("NavigationGrid: bad size " +
+        lines + " x " + elements + " spacing " + spacing);
+    }
+    this.lines = lines;
+    this.elements = elements;
+    this.spacing = spacing;
+    this.maxError = maxError;
+    nx = (elements - 2) / spacing + 2;
+    ny = (lines - 2) / spacing + 2;
+
+    // evaluate on a lattice at half the spacing, which holds the
+    // control points and the cell centers and edge midpoints
+    int mx = 2 * nx - 1;
+    int my = 2 * ny - 1;
+    double[][] points = new double[2][mx * my];
+    int k = 0;
+    for (int j=0; j<my; j++) {
+      for (int i=0; i<mx; i++) {
+        points[nav.indexEle][k] = halfX(i);
+        points[nav.indexLine][k] = halfY(j);
+        k++;
+      }
+    }
+    double[][] latlon = nav.toLatLon(points);
+    double[] hlat = latlon[nav.indexLat];
+    double[] hlon = latlon[nav.indexLon];
+
+    lats = new double[nx * ny];
+    lons = new double[nx * ny];
+    k = 0;
+    for (int j=0; j<ny; j++) {
+      for (int i=0; i<nx; i++) {
+        lats[k] = hlat[2 * j * mx + 2 * i];
+        lons[k] = hlon[2 * j * mx + 2 * i];
+        k++;
+      }
+    }
+
+    // interpolate the center and edge midpoints of each cell, as
+    // offsets (di, dj) on the half spacing lattice and weights of the
+    // corners p, p + 1, p + nx and p + nx + 1
+    int[][] offsets = {{1, 1}, {1, 0}, {1, 2}, {0, 1}, {2, 1}};
+    double[][] weights = {{0.25, 0.25, 0.25, 0.25}, {0.5, 0.5, 0, 0},
+                          {0, 0, 0.5, 0.5}, {0.5, 0, 0.5, 0},
+                          {0, 0.5, 0, 0.5}};
+    exact = new boolean[(nx - 1) * (ny - 1)];
+    k = 0;
+    for (int j=0; j<ny-1; j++) {
+      for (int i=0; i<nx-1; i++) {
+        int p = j * nx + i;
+        int[] corners = {p, p + 1, p + nx, p + nx + 1};
+        double minLon = Double.MAX_VALUE;
+        double maxLon = -Double.MAX_VALUE;
+        boolean bad = false;
+        for (int c=0; c<4; c++) {
+          double o = lons[corners[c]];
+          if (lats[corners[c]] != lats[corners[c]] || o != o) {
+            bad = true;
+            break;
+          }
+          if (o < minLon) minLon = o;
+          if (o > maxLon) maxLon = o;
+        }
+        bad = bad || maxLon - minLon > 180.0;
+        for (int t=0; !bad && t<offsets.length; t++) {
+          int h = (2 * j + offsets[t][1]) * mx + 2 * i + offsets[t][0];
+          double lat = 0.0;
+          double lon = 0.0;
+          for (int c=0; c<4; c++) {
+            lat += weights[t][c] * lats[corners[c]];
+            lon += weights[t][c] * lons[corners[c]];
+          }
+          bad = !(Math.abs(lat - hlat[h]) <= maxError) ||
+                !(Math.abs(lon - hlon[h]) <= maxError);
+        }
+        exact[k] = bad;
+        k++;
+      }
+    }
+  }
+
+  private double halfX(int i) {
+    return (i % 2 == 0) ? controlX(i / 2)
+                        : 0.5 * (controlX(i / 2) + controlX(i / 2 + 1));
+  }
+
+  private double halfY(int j) {
+    return (j % 2 == 0) ? controlY(j / 2)
+                        : 0.5 * (controlY(j / 2) + controlY(j / 2 + 1));
+  }
+
+  private double controlX(int i) {
+    return Math.min(i * spacing, elements - 1);
+  }
+
+  private double controlY(int j) {
+    return Math.min(j * spacing, lines - 1);
+  }
+
+  /**
+   * Get a grid for an image, reusing the grid made for the same
+   * directory, navigation and aux blocks if it is still in memory.
+   *
+   * @param dir       AREA directory block
+   * @param navBlock  AREA navigation block
+   * @param auxBlock  AREA aux block; may be null
+   * @param nav       navigation made from the blocks, used if a new
+   *                  grid is made
+   * @param spacing   lines and elements between control points
+   * @param maxError  max interpolation error, in degrees
+   *
+   * @return the grid
+   */
+  public static NavigationGrid getGrid(int[] dir, int[] navBlock,
+                                       int[] auxBlock, AREAnav nav,
+                                       int spacing, double maxError) {
+    Key key = new Key(dir, navBlock, auxBlock, spacing, maxError);
+    synchronized (cache) {
+      SoftReference<NavigationGrid> ref = cache.get(key);
+      NavigationGrid grid = (ref == null) ? null : ref.get();
+      if (grid != null) return grid;
+    }
+    NavigationGrid grid =
+      new NavigationGrid(nav, dir[8], dir[9], spacing, maxError);
+    synchronized (cache) {
+      cache.put(key, new SoftReference<NavigationGrid>(grid));
+      Iterator<Map.Entry<Key, SoftReference<NavigationGrid>>> it =
+        cache.entrySet().iterator();
+      while (it.hasNext()) {
+        Map.Entry<Key, SoftReference<NavigationGrid>> e = it.next();
+        if (cache.size() > CACHE_SIZE || e.getValue().get() == null) {
+          it.remove();
+        }
+      }
+    }
+    return grid;
+  }
+
+  /**
+   * Remove all grids kept by getGrid
+   */
+  public static void clearCache() {
+    synchronized (cache) {
+      cache.clear();
+    }
+  }
+
+  /**
+   * @return the number of lines and elements between control points
+   */
+  public int getSpacing() {
+    return spacing;
+  }
+
+  /**
+   * @return the max interpolation error, in degrees
+   */
+  public double getMaxError() {
+    return maxError;
+  }
+
+  /**
+   * Find the cell holding a point, or -1 if the point must be
+   * navigated exactly.  On return, frac holds the position of the point
+   * within the cell.
+   */
+  private int findCell(double x, double y, double[] frac) {
+    if (!(x >= 0.0 && x <= elements - 1 && y >= 0.0 && y <= lines - 1)) {
+      return -1;
+    }
+    int i = Math.min((int) (x / spacing), nx - 2);
+    int j = Math.min((int) (y / spacing), ny - 2);
+    int cell = j * (nx - 1) + i;
+    if (exact[cell]) return -1;
+    double x0 = controlX(i);
+    double y0 = controlY(j);
+    frac[0] = (x - x0) / (controlX(i + 1) - x0);
+    frac[1] = (y - y0) / (controlY(j + 1) - y0);
+    return cell;
+  }
+
+  /**
+   * Convert line/element pairs to latitude/longitude.
+   *
+   * @param linele  line/element pairs, as for AREAnav.toLatLon
+   * @param nav     navigation for points that are navigated exactly
+   *
+   * @return latitude/longitude pairs, in a new array
+   */
+  public double[][] toLatLon(double[][] linele, AREAnav nav) {
+    int n = linele[0].length;
+    double[] xs = linele[nav.indexEle];
+    double[] ys = linele[nav.indexLine];
+    double[][] latlon = new double[2][n];
+    double[] lat = latlon[nav.indexLat];
+    double[] lon = latlon[nav.indexLon];
+    int[] missing = new int[n];
+    int nmiss = 0;
+    double[] frac = new double[2];
+    for (int k=0; k<n; k++) {
+      int cell = findCell(xs[k], ys[k], frac);
+      if (cell < 0) {
+        missing[nmiss++] = k;
+        continue;
+      }
+      int p = cell + cell / (nx - 1);
+      double a = frac[0];
+      double b = frac[1];
+      lat[k] = (1.0 - b) * ((1.0 - a) * lats[p] + a * lats[p + 1]) +
+               b * ((1.0 - a) * lats[p + nx] + a * lats[p + nx + 1]);
+      lon[k] = (1.0 - b) * ((1.0 - a) * lons[p] + a * lons[p + 1]) +
+               b * ((1.0 - a) * lons[p + nx] + a * lons[p + nx + 1]);
+    }
+    if (nmiss > 0) {
+      double[][] points = new double[2][nmiss];
+      for (int m=0; m<nmiss; m++) {
+        points[0][m] = linele[0][missing[m]];
+        points[1][m] = linele[1][missing[m]];
+      }
+      points = nav.toLatLon(points);
+      for (int m=0; m<nmiss; m++) {
+        latlon[0][missing[m]] = points[0][m];
+        latlon[1][missing[m]] = points[1][m];
+      }
+    }
+    return latlon;
+  }
+
+  /**
+   * Convert line/element pairs to latitude/longitude.
+   *
+   * @param linele  line/element pairs, as for AREAnav.toLatLon
+   * @param nav     navigation for points that are navigated exactly
+   *
+   * @return latitude/longitude pairs, in a new array
+   */
+  public float[][] toLatLon(float[][] linele, AREAnav nav) {
+    int n = linele[0].length;
+    float[] xs = linele[nav.indexEle];
+    float[] ys = linele[nav.indexLine];
+    float[][] latlon = new float[2][n];
+    float[] lat = latlon[nav.indexLat];
+    float[] lon = latlon[nav.indexLon];
+    int[] missing = new int[n];
+    int nmiss = 0;
+    double[] frac = new double[2];
+    for (int k=0; k<n; k++) {
+      int cell = findCell(xs[k], ys[k], frac);
+      if (cell < 0) {
+        missing[nmiss++] = k;
+        continue;
+      }
+      int p = cell + cell / (nx - 1);
+      double a = frac[0];
+      double b = frac[1];
+      lat[k] = (float)
+        ((1.0 - b) * ((1.0 - a) * lats[p] + a * lats[p + 1]) +
+         b * ((1.0 - a) * lats[p + nx] + a * lats[p + nx + 1]));
+      lon[k] = (float)
+        ((1.0 - b) * ((1.0 - a) * lons[p] + a * lons[p + 1]) +
+         b * ((1.0 - a) * lons[p + nx] + a * lons[p + nx + 1]));
+    }
+    if (nmiss > 0) {
+      float[][] points = new float[2][nmiss];
+      for (int m=0; m<nmiss; m++) {
+        points[0][m] = linele[0][missing[m]];
+        points[1][m] = linele[1][missing[m]];
+      }
+      points = nav.toLatLon(points);
+      for (int m=0; m<nmiss; m++) {
+        latlon[0][missing[m]] = points[0][m];
+        latlon[1][missing[m]] = points[1][m];
+      }
+    }
+    return latlon;
+  }
+
+  /**
+   * Cache key: the contents of the AREA blocks and the grid settings
+   */
+  private static class Key {
+    private final int[] dir, nav, aux;
+    private final int spacing;
+    private final double maxError;
+    private final int hash;
+
+    Key(int[] dir, int[] nav, int[] aux, int spacing, double maxError) {
+      this.dir = (int[]) dir.clone();
+      this.nav = (int[]) nav.clone();
+      this.aux = (aux == null) ? null : (int[]) aux.clone();
+      this.spacing = spacing;
+      this.maxError = maxError;
+      long bits = Double.doubleToLongBits(maxError);
+      hash = Arrays.hashCode(dir) ^ 31 * Arrays.hashCode(nav) ^
+             Arrays.hashCode(aux) ^ spacing ^ (int) (bits ^ (bits >>> 32));
+    }
+
+    public int hashCode() {
+      return hash;
+    }
+
+    public boolean equals(Object o) {
+      if (!(o instanceof Key)) return false;
+      Key that = (Key) o;
+      return hash == that.hash && spacing == that.spacing &&
+             Double.doubleToLongBits(maxError) ==
+               Double.doubleToLongBits(that.maxError) &&
+             Arrays.equals(dir, that.dir) && Arrays.equals(nav, that.nav) &&
+             Arrays.equals(aux, that.aux);
+    }
+  }
+}
@@ -312,6 +312,22 @@ public class FormulaManager {
     return v.getFormula();
   }
 
+  /** whether FlatField arithmetic in formulas is fused */
+  boolean lazy = false;
+
+  /** set whether formulas evaluate chains of FlatField operations lazily,
+      in a single pass over the samples (see visad.LazyFlatField) rather
+      than one operation at a time; each formula's result is still fully
+      computed before it is stored in its variable */
+  public void setLazy(boolean lazy) {
+    this.lazy = lazy;
+  }
+
+  /** return whether FlatField arithmetic in formulas is fused */
+  public boolean isLazy() {
+    return lazy;
+  }
+
   /** list of all variables in this FormulaManager object */
   private Vector Vars = new Vector();
 
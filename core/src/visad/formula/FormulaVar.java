@@ -412,7 +412,7 @@ public class FormulaVar extends ActionImpl {
   public void doAction() {
     synchronized (Lock) {
       try {
-        if (postfix != null) tref.setThing(compute(postfix));
+        if (postfix != null) tref.setThing(computeLazy(postfix));
       }
       catch (VisADException exc) {
         evalError("Could not store final value in variable");
@@ -434,6 +434,31 @@ public class FormulaVar extends ActionImpl {
     else return (Thing) s.pop();
   }
 
+  /** compute the solution to this variable's postfix formula, deferring
+      FlatField operations until the end if the FormulaManager is lazy */
+  private Thing computeLazy(Postfix formula) {
+    if (!fm.lazy) return compute(formula);
+    Boolean old = LazyFlatField.setLazy(Boolean.TRUE);
+    Thing ans;
+    try {
+      ans = compute(formula);
+    }
+    finally {
+      LazyFlatField.setLazy(old);
+    }
+    if (ans instanceof LazyFlatField) {
+      try {
+        ((LazyFlatField) ans).evaluate();
+      }
+      catch (VisADException exc) {
+        if (DEBUG) exc.printStackTrace();
+        evalError("Could not evaluate formula", exc);
+        return null;
+      }
+    }
+    return ans;
+  }
+
   /** compute the solution to this variable's postfix formula */
   private Thing compute(Postfix formula) {
     if (formula.tokens == null) return null;
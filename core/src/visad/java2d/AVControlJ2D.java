@@ -30,6 +30,7 @@ import visad.*;
 
 import java.util.Vector;
 import java.util.Enumeration;
+import java.util.Map;
 
 /**
    AVControlJ2D is the VisAD abstract superclass for AnimationControlJ2D
@@ -53,49 +54,68 @@ public abstract class AVControlJ2D extends Control implements AVControl {
        throws VisADException {
     // check for missing
     if (value != value) return;
-    double[][] fvalues = new double[1][1];
-    fvalues[0][0] = value;
     Enumeration pairs = ((Vector) switches.clone()).elements();
     while (pairs.hasMoreElements()) {
       SwitchSet ss = (SwitchSet) pairs.nextElement();
-      Set set = ss.set;
-      double[][] values = null;
-      RealTupleType out = ((SetType) set.getType()).getDomain();
-      if (animation_set != null) {
-        RealTupleType in =
-          ((SetType) animation_set.getType()).getDomain();
-        values = CoordinateSystem.transformCoordinates(
-                             out, set.getCoordinateSystem(),
-                             set.getSetUnits(), null /* errors */,
-                             in, animation_set.getCoordinateSystem(),
-                             animation_set.getSetUnits(),
-                             null /* errors */, fvalues);
-      }
-      else {
-        // use RealType for value Unit and CoordinateSystem
-        // for SelectValue
-        values = CoordinateSystem.transformCoordinates(
-                             out, set.getCoordinateSystem(),
-                             set.getSetUnits(), null /* errors */,
-                             out, out.getCoordinateSystem(),
-                             out.getDefaultUnits(), null /* errors */,
-                             fvalues);
-      }
-      // compute set index from converted value
-      int [] indices;
-      if (set.getLength() == 1) {
-        indices = new int[] {0};
-      }
-      else {
-        indices = set.doubleToIndex(values);
-      }
+      ss.swit.setWhichChild(switchIndex(ss, value, animation_set));
+    }
+  }
+
+  /** put the child index each VisADSwitch would select for value into
+      selections, without selecting it */
+  void getSelections(double value, Set animation_set, Map selections)
+       throws VisADException {
+    // check for missing
+    if (value != value) return;
+    Enumeration pairs = ((Vector) switches.clone()).elements();
+    while (pairs.hasMoreElements()) {
+      SwitchSet ss = (SwitchSet) pairs.nextElement();
+      selections.put(ss.swit,
+                     new Integer(switchIndex(ss, value, animation_set)));
+    }
+  }
+
+  private int switchIndex(SwitchSet ss, double value, Set animation_set)
+          throws VisADException {
+    double[][] fvalues = new double[1][1];
+    fvalues[0][0] = value;
+    Set set = ss.set;
+    double[][] values = null;
+    RealTupleType out = ((SetType) set.getType()).getDomain();
+    if (animation_set != null) {
+      RealTupleType in =
+        ((SetType) animation_set.getType()).getDomain();
+      values = CoordinateSystem.transformCoordinates(
+                           out, set.getCoordinateSystem(),
+                           set.getSetUnits(), null /* errors */,
+                           in, animation_set.getCoordinateSystem(),
+                           animation_set.getSetUnits(),
+                           null /* errors */, fvalues);
+    }
+    else {
+      // use RealType for value Unit and CoordinateSystem
+      // for SelectValue
+      values = CoordinateSystem.transformCoordinates(
+                           out, set.getCoordinateSystem(),
+                           set.getSetUnits(), null /* errors */,
+                           out, out.getCoordinateSystem(),
+                           out.getDefaultUnits(), null /* errors */,
+                           fvalues);
+    }
+    // compute set index from converted value
+    int [] indices;
+    if (set.getLength() == 1) {
+      indices = new int[] {0};
+    }
+    else {
+      indices = set.doubleToIndex(values);
+    }
 /*
 System.out.println("selectSwitches: value = " + value +
                    " indices[0] = " + indices[0] +
                    " values[0][0] = " + values[0][0]);
 */
-      ss.swit.setWhichChild(indices[0]);
-    }
+    return indices[0];
   }
 
   /** clear all 'pairs' in switches that involve re */
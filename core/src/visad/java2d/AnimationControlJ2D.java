@@ -31,6 +31,8 @@ import visad.browser.Convert;
 import visad.util.Delay;
 
 import java.rmi.*;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.StringTokenizer;
 
 /**
@@ -303,6 +305,23 @@ public class AnimationControlJ2D extends AVControlJ2D
     }
   }
 
+  /** return the VisADSwitch child indices for step, keyed by
+      VisADSwitch, without selecting them, and put the animation
+      string of step into animation_string; return null if there is
+      no animation Set */
+  Map getStepSelections(int step, String[] animation_string)
+      throws VisADException {
+    if (animationSet == null || animationSet.getSet() == null) return null;
+    Set set = animationSet.getSet();
+    double value = animationSet.getValue(step);
+    String[] s = makeAnimationString(real, set, value, step);
+    animation_string[0] = s[0];
+    animation_string[1] = s[1];
+    Map selections = new IdentityHashMap();
+    getSelections(value, set, selections);
+    return selections;
+  }
+
   public Set getSet() {
     if (animationSet != null) {
       return animationSet.getSet();
@@ -286,6 +286,33 @@ public abstract class DisplayRendererJ2D
   }
 
   public BufferedImage getImage() {
+    BufferedImage image = captureImage();
+
+    if (getDisplay().getComponent() == null) {
+      // offscreen
+      // this is a total hack; works for reasons not understood
+      for (int i=0; i<2; i++) {
+        try {
+          ByteArrayOutputStream bout = new ByteArrayOutputStream();
+          ImageIO.write(image, "image/jpeg", bout);
+          bout.flush();
+          bout.close();
+        }
+        catch (IOException e) {
+        }
+      }
+// System.out.println("ByteArrayOutputStream done");
+    }
+
+    return image;
+  }
+
+  /**
+   * render the canvas if needed and return a copy of its image,
+   * without the extra work getImage() does for offscreen displays
+   * @return the captured image
+   */
+  BufferedImage captureImage() {
     BufferedImage image = null;
     while (image == null) {
       try {
@@ -305,22 +332,6 @@ public abstract class DisplayRendererJ2D
 // System.out.println("getImage (image == null) = " + (image == null));
     }
 
-    if (getDisplay().getComponent() == null) {
-      // offscreen
-      // this is a total hack; works for reasons not understood
-      for (int i=0; i<2; i++) {
-        try {
-          ByteArrayOutputStream bout = new ByteArrayOutputStream();
-          ImageIO.write(image, "image/jpeg", bout);
-          bout.flush();
-          bout.close();
-        }
-        catch (IOException e) {
-        }
-      }
-// System.out.println("ByteArrayOutputStream done");
-    }
-
     return image;
   }
 
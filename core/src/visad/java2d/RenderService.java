@@ -0,0 +1,480 @@
+//
+// RenderService.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.java2d;
+
+import visad.*;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.rmi.RemoteException;
+import java.util.Enumeration;
+import java.util.LinkedList;
+import java.util.Vector;
+import javax.imageio.ImageIO;
+import javax.swing.SwingUtilities;
+
+/**
+   RenderService renders batches of images with a pool of offscreen
+   DisplayImplJ2D displays that are built and configured once, rather
+   than building a display for each image.<P>
+
+   Each display has a fixed number of DataReferences.  A Configurer
+   adds the ScalarMaps and links the references when the display is
+   built, e.g.:<PRE>
+     RenderService service = new RenderService("products", 4, 800, 600, 1,
+       new RenderService.Configurer() {
+         public void configure(DisplayImplJ2D display,
+                               DataReferenceImpl[] refs)
+                throws VisADException, RemoteException {
+           display.addMap(new ScalarMap(RealType.Longitude, Display.XAxis));
+           ...
+           display.addReference(refs[0]);
+         }
+       });
+     byte[] png = service.render(new Data[] {field}, true).getPNG();
+</PRE>
+   render() may be called from any number of threads; each call takes a
+   free display from the pool, waiting if there is none.  Because the
+   displays are reused, ScalarMaps should be given fixed ranges (e.g.
+   with setRange()) rather than relying on auto-scaling to the first
+   data rendered.  The displays do not show the "please wait" message;
+   a Configurer may turn it back on.  render() cannot be called from
+   the event dispatch thread, which delivers the DisplayEvents it waits
+   for.<P>
+
+   The time to render an image is split into transform (building the
+   scene graph from the data), rasterize (drawing it) and encode (PNG),
+   and is reported for each Result and in total.  The time a render
+   waits for a transform is bounded by setTimeout(); the default comes
+   from the system property <code>visad.render.timeout</code>
+   (milliseconds, default 60000).<P>
+*/
+public class RenderService {
+
+  /**
+   * Configurer sets up each display of a RenderService when it is built
+   */
+  public interface Configurer {
+    /**
+     * add ScalarMaps to display and link refs to it
+     * @param display the offscreen display
+     * @param refs the references whose data render() sets
+     * @throws VisADException a VisAD error occurred
+     * @throws RemoteException an RMI error occurred
+     */
+    void configure(DisplayImplJ2D display, DataReferenceImpl[] refs)
+         throws VisADException, RemoteException;
+  }
+
+  /**
+   * Result holds a rendered image and the time taken by each stage
+   */
+  public static class Result {
+    private final BufferedImage image;
+    private final byte[] png;
+    private final long transformNanos;
+    private final long rasterizeNanos;
+    private final long encodeNanos;
+
+    Result(BufferedImage image, byte[] png, long transformNanos,
+           long rasterizeNanos, long encodeNanos) {
+      this.image = image;
+      this.png = png;
+      this.transformNanos = transformNanos;
+      this.rasterizeNanos = rasterizeNanos;
+      this.encodeNanos = encodeNanos;
+    }
+
+    /**
+     * @return the rendered image (TYPE_INT_RGB)
+     */
+    public BufferedImage getImage() {
+      return image;
+    }
+
+    /**
+     * @return the pixels of the image, one RGB int per pixel, row by
+     *         row; this is the image's buffer, not a copy
+     */
+    public int[] getPixels() {
+      return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * @return the image encoded as PNG, or null if not requested
+     */
+    public byte[] getPNG() {
+      return png;
+    }
+
+    /**
+     * @return nanoseconds spent transforming the data
+     */
+    public long getTransformNanos() {
+      return transformNanos;
+    }
+
+    /**
+     * @return nanoseconds spent drawing and capturing the image
+     */
+    public long getRasterizeNanos() {
+      return rasterizeNanos;
+    }
+
+    /**
+     * @return nanoseconds spent encoding the PNG
+     */
+    public long getEncodeNanos() {
+      return encodeNanos;
+    }
+  }
+
+  /**
+   * a pooled display and its references
+   */
+  private static class Slot implements DisplayListener {
+    final DisplayImplJ2D display;
+    final DataReferenceImpl[] refs;
+    private boolean transformed = false;
+
+    Slot(DisplayImplJ2D display, DataReferenceImpl[] refs) {
+      this.display = display;
+      this.refs = refs;
+    }
+
+    synchronized void reset() {
+      transformed = false;
+    }
+
+    public void displayChanged(DisplayEvent e) {
+      if (e.getId() == DisplayEvent.TRANSFORM_DONE) {
+        synchronized (this) {
+          transformed = true;
+          notifyAll();
+        }
+      }
+    }
+
+    /**
+     * @return false if no transform was done within timeout ms
+     */
+    synchronized boolean awaitTransform(long timeout)
+           throws InterruptedException {
+      long end = System.currentTimeMillis() + timeout;
+      while (!transformed) {
+        long left = end - System.currentTimeMillis();
+        if (left <= 0) return false;
+        wait(left);
+      }
+      return true;
+    }
+  }
+
+  private final String name;
+  private final int width, height;
+
+  /** the free displays */
+  private final LinkedList<Slot> free = new LinkedList<Slot>();
+
+  /** all displays */
+  private final Slot[] slots;
+
+  private boolean destroyed = false;
+
+  /** max milliseconds to wait for a transform */
+  private volatile long timeout =
+    Long.getLong("visad.render.timeout", 60000).longValue();
+
+  private long renderCount = 0;
+  private long transformNanos = 0;
+  private long rasterizeNanos = 0;
+  private long encodeNanos = 0;
+
+  /**
+   * construct a RenderService and build its displays
+   * @param name name of the service, used to name its displays
+   * @param size number of displays, i.e. of images rendered at once
+   * @param width width of the images in pixels
+   * @param height height of the images in pixels
+   * @param nrefs number of DataReferences of each display
+   * @param configurer sets up each display
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public RenderService(String name, int size, int width, int height,
+                       int nrefs, Configurer configurer)
+         throws VisADException, RemoteException {
+    if (size < 1 || width < 1 || height < 1 || nrefs < 0) {
+      throw new DisplayException("RenderService: bad size");
+    }
+    if (configurer == null) {
+      throw new DisplayException("RenderService: configurer is null");
+    }
+    this.name = name;
+    this.width = width;
+    this.height = height;
+    slots = new Slot[size];
+    for (int i=0; i<size; i++) {
+      DisplayImplJ2D display =
+        new DisplayImplJ2D(name + "_" + i, width, height);
+      DataReferenceImpl[] refs = new DataReferenceImpl[nrefs];
+      for (int j=0; j<nrefs; j++) {
+        refs[j] = new DataReferenceImpl(name + "_" + i + "_" + j);
+      }
+      display.getDisplayRenderer().setWaitMessageVisible(false);
+      configurer.configure(display, refs);
+      slots[i] = new Slot(display, refs);
+      display.addDisplayListener(slots[i]);
+      free.add(slots[i]);
+    }
+  }
+
+  /**
+   * render data to an image
+   * @param data data for each DataReference; a null element leaves
+   *             the data of its reference unchanged
+   * @param png true to also encode the image as PNG
+   * @return the image and the time taken by each stage
+   * @throws VisADException a VisAD error occurred, or data could not
+   *                        be transformed
+   * @throws RemoteException an RMI error occurred
+   */
+  public Result render(Data[] data, boolean png)
+         throws VisADException, RemoteException {
+    if (SwingUtilities.isEventDispatchThread()) {
+      throw new DisplayException("RenderService.render: cannot be called " +
+                                 "from the event dispatch thread");
+    }
+    Slot slot = take();
+    try {
+      if (data.length != slot.refs.length) {
+        throw new DisplayException("RenderService.render: expected " +
+                                   slot.refs.length + " Data, not " +
+                                   data.length);
+      }
+      long t0 = System.nanoTime();
+      DisplayImplJ2D display = slot.display;
+      // change all the data in one transform, and make sure there is one;
+      // DisplayEvents are delivered on the event dispatch thread, so
+      // flush any from an earlier transform before waiting for this one
+      display.disableAction();
+      try {
+        try {
+          SwingUtilities.invokeAndWait(new Runnable() {
+            public void run() {
+            }
+          });
+        }
+        catch (InterruptedException e) {
+          throw new DisplayException("RenderService.render: interrupted");
+        }
+        catch (InvocationTargetException e) {
+        }
+        slot.reset();
+        for (int i=0; i<data.length; i++) {
+          if (data[i] != null) slot.refs[i].setData(data[i]);
+        }
+        display.reDisplayAll();
+      }
+      finally {
+        display.enableAction();
+      }
+      try {
+        if (!slot.awaitTransform(timeout)) {
+          throw new DisplayException("RenderService.render: transform " +
+                                     "timed out in " + display.getName());
+        }
+      }
+      catch (InterruptedException e) {
+        throw new DisplayException("RenderService.render: interrupted");
+      }
+      // TRANSFORM_DONE is sent before doAction() marks the canvas image
+      // out of date, so wait for doAction() to return
+      display.disableAction();
+      display.enableAction();
+      checkExceptions(display);
+
+      long t1 = System.nanoTime();
+      BufferedImage image =
+        ((DisplayRendererJ2D) display.getDisplayRenderer()).captureImage();
+
+      long t2 = System.nanoTime();
+      byte[] bytes = null;
+      if (png) {
+        ByteArrayOutputStream bout =
+          new ByteArrayOutputStream(width * height / 4 + 1024);
+        try {
+          ImageIO.write(image, "png", bout);
+        }
+        catch (IOException e) {
+          throw new VisADException("RenderService.render: " + e.getMessage());
+        }
+        bytes = bout.toByteArray();
+      }
+
+      long t3 = System.nanoTime();
+      synchronized (this) {
+        renderCount++;
+        transformNanos += t1 - t0;
+        rasterizeNanos += t2 - t1;
+        encodeNanos += t3 - t2;
+      }
+      return new Result(image, bytes, t1 - t0, t2 - t1, t3 - t2);
+    }
+    finally {
+      give(slot);
+    }
+  }
+
+  /**
+   * render data to a PNG
+   * @param data data for each DataReference, as in render()
+   * @return the PNG bytes
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public byte[] renderPNG(Data[] data)
+         throws VisADException, RemoteException {
+    return render(data, true).getPNG();
+  }
+
+  /**
+   * throw the first exception recorded by a renderer of display
+   */
+  private static void checkExceptions(DisplayImplJ2D display)
+          throws VisADException {
+    Vector renderers = display.getRenderers();
+    Enumeration en = renderers.elements();
+    while (en.hasMoreElements()) {
+      DataRenderer renderer = (DataRenderer) en.nextElement();
+      Vector exceptions = renderer.getExceptionVector();
+      if (exceptions != null && !exceptions.isEmpty()) {
+        Exception e = (Exception) exceptions.elementAt(0);
+        if (e instanceof VisADException) throw (VisADException) e;
+        throw new DisplayException("RenderService.render: " + e);
+      }
+    }
+  }
+
+  private synchronized Slot take() throws VisADException {
+    while (free.isEmpty() && !destroyed) {
+      try {
+        wait();
+      }
+      catch (InterruptedException e) {
+        throw new DisplayException("RenderService.render: interrupted");
+      }
+    }
+    if (destroyed) {
+      throw new DisplayException("RenderService " + name + " destroyed");
+    }
+    return free.removeFirst();
+  }
+
+  private synchronized void give(Slot slot) {
+    free.add(slot);
+    notifyAll();
+  }
+
+  /**
+   * @param ms max milliseconds render() waits for data to be transformed
+   */
+  public void setTimeout(long ms) {
+    timeout = ms;
+  }
+
+  /**
+   * @return max milliseconds render() waits for data to be transformed
+   */
+  public long getTimeout() {
+    return timeout;
+  }
+
+  /**
+   * @return number of displays
+   */
+  public int getSize() {
+    return slots.length;
+  }
+
+  /**
+   * @return number of images rendered
+   */
+  public synchronized long getRenderCount() {
+    return renderCount;
+  }
+
+  /**
+   * @return total nanoseconds spent transforming data
+   */
+  public synchronized long getTransformNanos() {
+    return transformNanos;
+  }
+
+  /**
+   * @return total nanoseconds spent drawing and capturing images
+   */
+  public synchronized long getRasterizeNanos() {
+    return rasterizeNanos;
+  }
+
+  /**
+   * @return total nanoseconds spent encoding PNGs
+   */
+  public synchronized long getEncodeNanos() {
+    return encodeNanos;
+  }
+
+  /**
+   * destroy the displays, once renders in progress have finished
+   * @throws VisADException a VisAD error occurred
+   * @throws RemoteException an RMI error occurred
+   */
+  public void destroy() throws VisADException, RemoteException {
+    synchronized (this) {
+      if (destroyed) return;
+      destroyed = true;
+      notifyAll();
+      while (free.size() < slots.length) {
+        try {
+          wait();
+        }
+        catch (InterruptedException e) {
+          break;
+        }
+      }
+    }
+    for (int i=0; i<slots.length; i++) {
+      slots[i].display.removeDisplayListener(slots[i]);
+      slots[i].display.destroy();
+    }
+  }
+
+}
@@ -28,6 +28,7 @@ package visad.java2d;
 
 import visad.*;
 import visad.util.Delay;
+import visad.util.Parallel;
 
 import java.awt.*;
 import java.awt.event.*;
@@ -57,6 +58,10 @@ public class VisADCanvasJ2D extends JPanel
     null, {8}, {1, 7}, {7, 4, 1, 4}
   };
 
+  /** true to render offscreen images in parallel bands */
+  private static volatile boolean tiled =
+    !"false".equalsIgnoreCase(System.getProperty("visad.java2d.tiled"));
+
   private DisplayRendererJ2D displayRenderer;
   private DisplayImplJ2D display;
   private Component component;
@@ -77,6 +82,19 @@ public class VisADCanvasJ2D extends JPanel
   private AffineTransform tgeometry; // transform for current display
   private Image aux_image;
 
+  // animation frame cache: images are allocated when first drawn, and
+  // the least recently used are dropped to keep within frameCacheBytes
+  private long frameCacheBytes = Long.getLong("visad.java2d.frameCacheBytes",
+    Runtime.getRuntime().maxMemory() / 4).longValue();
+  private int prefetchFrames =
+    Integer.getInteger("visad.java2d.prefetchFrames", 4).intValue();
+  private long[] frame_used; // frame_clock when each image was last used
+  private long frame_clock = 0;
+  private int generation = 0; // incremented when all images are scratched
+  private int last_image = 0; // last animation step painted
+  private int prefetch_direction = 1; // direction of animation steps
+  private transient FramePrefetcher prefetcher;
+
   boolean captureFlag = false;
   BufferedImage captureImage = null;
 
@@ -284,18 +302,11 @@ public class VisADCanvasJ2D extends JPanel
       }
       if (width <= 0) width = 1;
       if (height <= 0) height = 1;
+      // images are allocated by allocateFrame() when first drawn
       BufferedImage[] new_images = new BufferedImage[length];
       boolean[] new_valid_images = new boolean[length];
-      for (int i=0; i<length; i++) {
-        if (component != null) {
-          new_images[i] = (BufferedImage) createImage(width, height);
-        }
-        else {
-          new_images[i] =
-            new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
-        }
-        new_valid_images[i] = false;
-      }
+      frame_used = new long[length];
+      generation++;
       if (aux_image != null) aux_image.flush();
       if (component != null) {
         aux_image = createImage(width, height);
@@ -323,10 +334,230 @@ System.out.println("VisADCanvasJ2D.createImages: len = " + len +
   public void scratchImages() {
     synchronized (images) {
       for (int i=0; i<length; i++) valid_images[i] = false;
+      generation++;
     }
     renderTrigger();
   }
 
+  /**
+   * Set the most bytes of images kept for the steps of an animation.
+   * The image of the current step is always kept.  The default comes
+   * from the system property <code>visad.java2d.frameCacheBytes</code>
+   * (default 1/4 of the max memory).
+   * @param bytes max bytes of images
+   */
+  public void setFrameCacheBytes(long bytes) {
+    synchronized (images) {
+      frameCacheBytes = bytes;
+      evictFrames(-1);
+    }
+  }
+
+  /**
+   * @return the most bytes of images kept for the steps of an animation
+   */
+  public long getFrameCacheBytes() {
+    return frameCacheBytes;
+  }
+
+  /**
+   * Set the number of animation steps ahead of the current step, in
+   * the direction of animation, that are drawn in the background, so
+   * that stepping to them only has to copy their image.  The default
+   * comes from the system property
+   * <code>visad.java2d.prefetchFrames</code> (default 4); 0 turns this
+   * off.
+   * @param n number of steps
+   */
+  public void setPrefetchFrames(int n) {
+    prefetchFrames = Math.max(0, n);
+  }
+
+  /**
+   * @return the number of animation steps drawn in the background
+   */
+  public int getPrefetchFrames() {
+    return prefetchFrames;
+  }
+
+  /**
+   * @return a new image of the canvas size, or null if none can be
+   *         made yet
+   */
+  private BufferedImage newImage(int w, int h) {
+    if (component != null) {
+      return (BufferedImage) createImage(w, h);
+    }
+    else {
+      return new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+    }
+  }
+
+  /**
+   * allocate the image for step i and drop least recently used images
+   * to keep within frameCacheBytes; call with images locked
+   */
+  private BufferedImage allocateFrame(int i) {
+    BufferedImage image = newImage(width, height);
+    if (image == null) return null;
+    images[i] = image;
+    valid_images[i] = false;
+    touchFrame(i);
+    evictFrames(i);
+    return image;
+  }
+
+  /** mark the image of step i as used; call with images locked */
+  private void touchFrame(int i) {
+    if (frame_used == null || frame_used.length != images.length) {
+      frame_used = new long[images.length];
+    }
+    frame_used[i] = ++frame_clock;
+  }
+
+  /**
+   * drop least recently used images, other than those of step keep and
+   * of the last step painted, until they fit in frameCacheBytes; call
+   * with images locked
+   */
+  private void evictFrames(int keep) {
+    if (frame_used == null || frame_used.length != images.length) {
+      frame_used = new long[images.length];
+    }
+    long bytes = Math.max(1L, 4L * width * height);
+    long max = Math.max(1L, frameCacheBytes / bytes);
+    int count = 0;
+    for (int i=0; i<images.length; i++) {
+      if (images[i] != null) count++;
+    }
+    while (count > max) {
+      int lru = -1;
+      for (int i=0; i<images.length; i++) {
+        if (images[i] != null && i != keep && i != last_image &&
+            (lru < 0 || frame_used[i] < frame_used[lru])) {
+          lru = i;
+        }
+      }
+      if (lru < 0) break;
+      images[lru].flush();
+      images[lru] = null;
+      valid_images[lru] = false;
+      count--;
+    }
+  }
+
+  /**
+   * note that step current was painted, and wake the prefetcher to
+   * draw the steps after it
+   */
+  private void prefetchTrigger(int current) {
+    synchronized (images) {
+      if (current != last_image) {
+        int d = current - last_image;
+        // allow for wrapping around the ends of the animation
+        if (d > length / 2) d -= length;
+        else if (d < -(length / 2)) d += length;
+        prefetch_direction = (d < 0) ? -1 : 1;
+        last_image = current;
+      }
+      if (length <= 1 || prefetchFrames <= 0) return;
+      if (prefetcher == null) {
+        prefetcher = new FramePrefetcher();
+        Thread thread = new Thread(prefetcher, "VisADCanvasJ2D prefetch");
+        thread.setDaemon(true);
+        prefetcher.thread = thread;
+        thread.start();
+      }
+    }
+    prefetcher.trigger();
+  }
+
+  /**
+   * draw the images of the steps after the last one painted that are
+   * not already drawn; return early if another step is painted
+   */
+  private void prefetchFrames(FramePrefetcher me) {
+    AnimationControlJ2D control = (AnimationControlJ2D)
+      display.getControl(AnimationControlJ2D.class);
+    if (control == null) return;
+    for (int k=1; k<=prefetchFrames; k++) {
+      int step, gen, w, h;
+      synchronized (images) {
+        long bytes = Math.max(1L, 4L * width * height);
+        if (length <= 1 || k >= frameCacheBytes / bytes) return;
+        step = ((last_image + prefetch_direction * k) % length + length) %
+               length;
+        if (step == last_image) return;
+        if (images[step] != null && valid_images[step]) {
+          touchFrame(step);
+          continue;
+        }
+        gen = generation;
+        w = width;
+        h = height;
+      }
+      if (me.isTriggered() || me.thread == null) return;
+      BufferedImage frame = newImage(w, h);
+      if (frame == null) return;
+      try {
+        String[] animation_string = new String[2];
+        Map selections = control.getStepSelections(step, animation_string);
+        if (selections == null) return;
+        if (!displayRenderer.getAnimationStringVisible()) {
+          animation_string = new String[] {null, null};
+        }
+        drawFrame(frame, makeTransform(w, h), displayRenderer.getRoot(),
+                  selections, animation_string, w, h);
+      }
+      catch (VisADException e) {
+        return;
+      }
+      synchronized (images) {
+        // drop the frame if the scene changed while it was drawn
+        if (gen == generation && step < length && w == width &&
+            h == height && !valid_images[step]) {
+          if (images[step] != null) images[step].flush();
+          images[step] = frame;
+          valid_images[step] = true;
+          touchFrame(step);
+          evictFrames(step);
+        }
+      }
+    }
+  }
+
+  /** FramePrefetcher runs prefetchFrames() each time a step is painted */
+  private class FramePrefetcher implements Runnable {
+    Thread thread;
+    private boolean triggered = false;
+
+    synchronized void trigger() {
+      triggered = true;
+      notify();
+    }
+
+    synchronized boolean isTriggered() {
+      return triggered;
+    }
+
+    public void run() {
+      Thread me = Thread.currentThread();
+      while (thread == me) {
+        try {
+          synchronized (this) {
+            while (!triggered && thread == me) wait();
+            triggered = false;
+          }
+        }
+        catch (InterruptedException e) {
+          return;
+        }
+        if (thread != me) return;
+        prefetchFrames(this);
+      }
+    }
+  }
+
   /** trigger render to screen */
   public void renderTrigger() {
     synchronized (this) {
@@ -337,6 +568,11 @@ System.out.println("VisADCanvasJ2D.createImages: len = " + len +
 
   public void stop() {
     renderThread = null;
+    FramePrefetcher p = prefetcher;
+    if (p != null) {
+      p.thread = null;
+      p.trigger();
+    }
   }
 
   public void run() {
@@ -377,6 +613,24 @@ System.out.println("VisADCanvasJ2D.createImages: len = " + len +
     }
   }
 
+  /**
+   * Set whether offscreen canvases render large images in horizontal
+   * bands on several threads.  The pixels are the same either way.  The
+   * default comes from the system property
+   * <code>visad.java2d.tiled</code> (default true).
+   * @param flag true to render in bands
+   */
+  public static void setTiled(boolean flag) {
+    tiled = flag;
+  }
+
+  /**
+   * @return true if offscreen canvases render large images in bands
+   */
+  public static boolean isTiled() {
+    return tiled;
+  }
+
   public void paintComponent(Graphics g) {
     AffineTransform tsave = null;
     BufferedImage image = null;
@@ -384,6 +638,9 @@ System.out.println("VisADCanvasJ2D.createImages: len = " + len +
     int w = 0, h = 0;
     int current_image = 0;
     AnimationControlJ2D animate_control = null;
+    // only capture for requests made before this image is drawn; later
+    // requests are served by the next call, as they also trigger render
+    boolean capture = captureFlag;
     try {
       animate_control = (AnimationControlJ2D)
         display.getControl(AnimationControlJ2D.class);
@@ -403,8 +660,14 @@ System.out.println("VisADCanvasJ2D.paint: current = " + current_image +
       if (0 <= current_image && current_image < length) {
         image = images[current_image];
         if (image == null) {
-          createImages(-1);
-          image = images[current_image];
+          if (component != null && (getSize().width != width ||
+                                    getSize().height != height)) {
+            createImages(-1);
+          }
+          image = allocateFrame(current_image);
+        }
+        else {
+          touchFrame(current_image);
         }
         valid = valid_images[current_image];
         w = width;
@@ -425,66 +688,25 @@ System.out.println("VisADCanvasJ2D.paint: current_image = " + current_image +
     if (image != null) {
       if (!valid) {
         VisADGroup root = displayRenderer.getRoot();
-        AffineTransform trans = displayRenderer.getTrans();
-        Graphics ggg = image.createGraphics(); // ordinary Graphics for fast lines
-        Graphics2D g2 = image.createGraphics(); // Graphics2D for the fancy stuff
-// System.out.println("(g2 == null) = " + (g2 == null));
-        g2.setBackground(getBackground());
-        g2.setRenderingHint(RenderingHints.KEY_RENDERING,
-                            RenderingHints.VALUE_RENDER_SPEED);
-        g2.clearRect(0, 0, width, height);
-
         // render into image;
         synchronized (images) {
-          tgeometry = new AffineTransform();
-          tgeometry.setToTranslation(0.5 * w, 0.5 * h);
-          AffineTransform s1 = new AffineTransform();
-          int wh = (w < h) ? w : h;
-          s1.setToScale(0.33 * wh, 0.33 * wh);
-          tgeometry.concatenate(s1);
-          tgeometry.concatenate(trans);
+          tgeometry = makeTransform(w, h);
           tsave = new AffineTransform(tgeometry);
-          g2.setTransform(tgeometry);
         }
         try {
           if (animate_control != null) animate_control.init();
-          render(g2, ggg, root, 0, null);
-          render(g2, ggg, root, 1, null);
-          // draw Animation string in upper right corner of screen
-          String[] animation_string = displayRenderer.getAnimationString();
-          if (animation_string[0] != null) {
-/*
-System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
-                   " " + animation_string[1]);
-*/
-            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                                RenderingHints.VALUE_ANTIALIAS_ON);
-            g2.setFont(new Font("Times New Roman", Font.PLAIN, 12));
-            g2.setTransform(new AffineTransform());
-            // hack for mystery NullPointerException
-            try {
-              int nchars = animation_string[0].length();
-              if (nchars < 12) nchars = 12;
-              float x = w - 7 * nchars;
-              float y = h - 12;
-              g2.drawString(animation_string[0], x, y);
-              g2.drawString(animation_string[1], x, y+10);
-            }
-            catch (NullPointerException e) {
-            }
-          }
+          drawFrame(image, tsave, root, null,
+                    displayRenderer.getAnimationString(), w, h);
         }
         catch (VisADException e) {
         }
-        g2.dispose();
-        ggg.dispose();
       } // end if (!valid)
 
       if (tsave == null || !displayRenderer.anyCursorStringVector()) {
         if (g != null) {
           g.drawImage(image, 0, 0, this);
         }
-        if (captureFlag || display.hasSlaves()) {
+        if (capture || display.hasSlaves()) {
 // System.out.println("image capture " + width + " " + height);
           captureFlag = false;
           if (component != null) {
@@ -527,7 +749,7 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
         if (g != null) {
           g.drawImage(aux_copy, 0, 0, this);
         }
-        if (captureFlag || display.hasSlaves()) {
+        if (capture || display.hasSlaves()) {
 // System.out.println("aux_copy capture " + width + " " + height);
           captureFlag = false;
           if (component != null) {
@@ -553,6 +775,7 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
       }
       catch (VisADException e) {}
       catch (RemoteException e) {}
+      if (animate_control != null) prefetchTrigger(current_image);
     } // end if (image != null)
     else { // image == null
       timeout = true;
@@ -563,13 +786,13 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
 
   private void render(Graphics2D g2, Graphics ggg,
                       VisADSceneGraphObject scene, int pass,
-                      Rectangle2D.Float clip)
+                      Rectangle2D.Float clip, Map selections)
           throws VisADException {
     if (scene == null) return;
     if (scene instanceof VisADSwitch) {
       VisADSceneGraphObject child =
-        ((VisADSwitch) scene).getSelectedChild();
-      if (child != null) render(g2, ggg, child, pass, clip);
+        getSelectedChild((VisADSwitch) scene, selections);
+      if (child != null) render(g2, ggg, child, pass, clip, selections);
     }
     else if (scene instanceof VisADGroup) {
       if (clip_rectangle != null &&
@@ -580,437 +803,444 @@ System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
       for (int i=children.size()-1; i>=0; i--) {
         VisADSceneGraphObject child =
           (VisADSceneGraphObject) children.elementAt(i);
-        if (child != null) render(g2, ggg, child, pass, clip);
+        if (child != null) render(g2, ggg, child, pass, clip, selections);
       }
     }
     else { // scene instanceof VisADAppearance
-      g2.setClip(clip);
-      VisADAppearance appearance = (VisADAppearance) scene;
-      VisADGeometryArray array = appearance.array;
-      if (array == null) return;
-      BufferedImage image = (BufferedImage) appearance.image;
-      AffineTransform tg = g2.getTransform();
-      if (image != null) {
-        if (pass != 0) return; // non-lines on first pass
+      renderAppearance(g2, ggg, (VisADAppearance) scene, pass, clip, null);
+    }
+  }
+
+  /**
+   * @return the transform from graphics to pixel coordinates for an
+   *         image of size w by h
+   */
+  private AffineTransform makeTransform(int w, int h) {
+    AffineTransform tg = new AffineTransform();
+    tg.setToTranslation(0.5 * w, 0.5 * h);
+    AffineTransform s1 = new AffineTransform();
+    int wh = (w < h) ? w : h;
+    s1.setToScale(0.33 * wh, 0.33 * wh);
+    tg.concatenate(s1);
+    tg.concatenate(displayRenderer.getTrans());
+    return tg;
+  }
+
+  /**
+   * clear image and draw the scene graph and animation string into it;
+   * selections, if not null, maps VisADSwitches to the child indices
+   * to draw in place of their selected children
+   */
+  private void drawFrame(BufferedImage image, AffineTransform tg,
+                         VisADGroup root, Map selections,
+                         String[] animation_string, int w, int h)
+          throws VisADException {
+    Graphics ggg = image.createGraphics(); // ordinary Graphics for fast lines
+    Graphics2D g2 = image.createGraphics(); // Graphics2D for the fancy stuff
+// System.out.println("(g2 == null) = " + (g2 == null));
+    g2.setBackground(getBackground());
+    g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                        RenderingHints.VALUE_RENDER_SPEED);
+    g2.clearRect(0, 0, w, h);
+    g2.setTransform(tg);
+    try {
+      if (component == null && tiled && Parallel.isParallel(w * h)) {
+        renderTiled(image, tg, root, selections, w, h);
+      }
+      else {
+        render(g2, ggg, root, 0, null, selections);
+        render(g2, ggg, root, 1, null, selections);
+      }
+      // draw Animation string in upper right corner of screen
+      if (animation_string[0] != null) {
+/*
+System.out.println("VisADCanvasJ2D.paint: " + animation_string[0] +
+                   " " + animation_string[1]);
+*/
         g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                            RenderingHints.VALUE_ANTIALIAS_OFF);
-        if (!(array instanceof VisADQuadArray)) {
-          throw new VisADError("VisADCanvasJ2D.render: array must be quad");
+                            RenderingHints.VALUE_ANTIALIAS_ON);
+        g2.setFont(new Font("Times New Roman", Font.PLAIN, 12));
+        g2.setTransform(new AffineTransform());
+        // hack for mystery NullPointerException
+        try {
+          int nchars = animation_string[0].length();
+          if (nchars < 12) nchars = 12;
+          float x = w - 7 * nchars;
+          float y = h - 12;
+          g2.drawString(animation_string[0], x, y);
+          g2.drawString(animation_string[1], x, y+10);
+        }
+        catch (NullPointerException e) {
+        }
+      }
+    }
+    finally {
+      g2.dispose();
+      ggg.dispose();
+    }
+  }
+
+  /**
+   * render the scene graph into image in horizontal bands, one per
+   * thread.  Each band draws, in the usual order, the appearances whose
+   * device space bounds meet it, clipped to the band, so the pixels are
+   * the same as those of a single pass over the whole image
+   */
+  private void renderTiled(final BufferedImage image,
+                           final AffineTransform tg,
+                           VisADSceneGraphObject root, Map selections,
+                           final int w, final int h)
+          throws VisADException {
+    final Vector leaves = new Vector();
+    final Vector clips = new Vector();
+    collect(root, null, selections, leaves, clips);
+    final int nleaves = leaves.size();
+    final Rectangle[] bounds = new Rectangle[nleaves];
+    Parallel.forRange(nleaves, new Parallel.Chunk() {
+      public void run(int start, int end) {
+        for (int i=start; i<end; i++) {
+          bounds[i] = getBounds((VisADAppearance) leaves.elementAt(i), tg);
+        }
+      }
+    });
+
+    final int ntiles = Math.min(h, Parallel.getParallelism());
+    Parallel.forRange(ntiles, 1, w * h, new Parallel.Chunk() {
+      public void run(int start, int end) throws VisADException {
+        for (int t=start; t<end; t++) {
+          int y0 = (int) (((long) h * t) / ntiles);
+          int y1 = (int) (((long) h * (t + 1)) / ntiles);
+          Rectangle tile = new Rectangle(0, y0, w, y1 - y0);
+          Graphics ggg = image.createGraphics();
+          Graphics2D g2 = image.createGraphics();
+          g2.setRenderingHint(RenderingHints.KEY_RENDERING,
+                              RenderingHints.VALUE_RENDER_SPEED);
+          g2.setTransform(tg);
+          try {
+            for (int pass=0; pass<2; pass++) {
+              for (int i=0; i<nleaves; i++) {
+                if (bounds[i] == null || !bounds[i].intersects(tile)) continue;
+                renderAppearance(g2, ggg,
+                                 (VisADAppearance) leaves.elementAt(i), pass,
+                                 (Rectangle2D.Float) clips.elementAt(i), tile);
+              }
+            }
+          }
+          finally {
+            g2.dispose();
+            ggg.dispose();
+          }
         }
-        float x00 = array.coordinates[0];
-        float y00 = array.coordinates[1];
-        float xw0 = array.coordinates[3];
-        float yw0 = array.coordinates[4];
-        float xwh = array.coordinates[6];
-        float ywh = array.coordinates[7];
-        float x0h = array.coordinates[9];
-        float y0h = array.coordinates[10];
-        int width = image.getWidth();
-        int height = image.getHeight();
+      }
+    });
+  }
+
+  /**
+   * @return the child of swit in selections, if there, else its
+   *         selected child
+   */
+  private static VisADSceneGraphObject getSelectedChild(VisADSwitch swit,
+                                                        Map selections) {
+    Integer which =
+      (selections == null) ? null : (Integer) selections.get(swit);
+    if (which == null) return swit.getSelectedChild();
+    synchronized (swit) {
+      int index = which.intValue();
+      return (0 <= index && index < swit.numChildren()) ?
+             swit.getChild(index) : null;
+    }
+  }
+
+  /**
+   * add the appearances under scene to leaves, and their clip
+   * rectangles to clips, in the order render visits them
+   */
+  private void collect(VisADSceneGraphObject scene, Rectangle2D.Float clip,
+                       Map selections, Vector leaves, Vector clips) {
+    if (scene == null) return;
+    if (scene instanceof VisADSwitch) {
+      collect(getSelectedChild((VisADSwitch) scene, selections), clip,
+              selections, leaves, clips);
+    }
+    else if (scene instanceof VisADGroup) {
+      if (clip_rectangle != null &&
+          (scene.equals(direct) || scene.equals(non_direct))) {
+        clip = clip_rectangle;
+      }
+      Vector children = ((VisADGroup) scene).getChildren();
+      for (int i=children.size()-1; i>=0; i--) {
+        collect((VisADSceneGraphObject) children.elementAt(i), clip,
+                selections, leaves, clips);
+      }
+    }
+    else if (((VisADAppearance) scene).array != null) {
+      leaves.addElement(scene);
+      clips.addElement(clip);
+    }
+  }
+
+  /**
+   * @return device space bounds of an appearance, widened to cover
+   *         line and point sizes, or null if it has no finite vertices
+   */
+  private static Rectangle getBounds(VisADAppearance appearance,
+                                     AffineTransform tg) {
+    VisADGeometryArray array = appearance.array;
+    float[] coordinates = array.coordinates;
+    if (coordinates == null) return null;
+    int count = Math.min(array.vertexCount, coordinates.length / 3);
+    double xmin = Double.POSITIVE_INFINITY, xmax = Double.NEGATIVE_INFINITY;
+    double ymin = Double.POSITIVE_INFINITY, ymax = Double.NEGATIVE_INFINITY;
+    double m00 = tg.getScaleX(), m01 = tg.getShearX(), m02 = tg.getTranslateX();
+    double m10 = tg.getShearY(), m11 = tg.getScaleY(), m12 = tg.getTranslateY();
+    for (int i=0; i<3*count; i += 3) {
+      float x = coordinates[i];
+      float y = coordinates[i+1];
+      if (x != x || y != y) continue;
+      double dx = m00 * x + m01 * y + m02;
+      double dy = m10 * x + m11 * y + m12;
+      if (dx < xmin) xmin = dx;
+      if (dx > xmax) xmax = dx;
+      if (dy < ymin) ymin = dy;
+      if (dy > ymax) ymax = dy;
+    }
+    if (!(xmin <= xmax && ymin <= ymax)) return null;
+    // half the width of the widest stroke, times the miter limit
+    double size = Math.max(1.05, Math.max(appearance.lineWidth,
+                                          appearance.pointSize));
+    double pad = 5.0 * size + 2.0;
+    xmin = Math.floor(xmin - pad);
+    ymin = Math.floor(ymin - pad);
+    xmax = Math.ceil(xmax + pad);
+    ymax = Math.ceil(ymax + pad);
+    if (xmin < -1.0e9) xmin = -1.0e9;
+    if (ymin < -1.0e9) ymin = -1.0e9;
+    if (xmax > 1.0e9) xmax = 1.0e9;
+    if (ymax > 1.0e9) ymax = 1.0e9;
+    return new Rectangle((int) xmin, (int) ymin,
+                         (int) (xmax - xmin), (int) (ymax - ymin));
+  }
+
+  /**
+   * intersect the clip of g2 with a device space rectangle
+   */
+  private static void clipToTile(Graphics2D g2, Rectangle tile) {
+    AffineTransform tg = g2.getTransform();
+    g2.setTransform(new AffineTransform());
+    g2.clipRect(tile.x, tile.y, tile.width, tile.height);
+    g2.setTransform(tg);
+  }
+
+  /**
+   * render one appearance; if tile is not null, drawing is confined
+   * to that device space rectangle
+   */
+  private void renderAppearance(Graphics2D g2, Graphics ggg,
+                                VisADAppearance appearance, int pass,
+                                Rectangle2D.Float clip, Rectangle tile)
+          throws VisADException {
+    g2.setClip(clip);
+    if (tile != null) clipToTile(g2, tile);
+    VisADGeometryArray array = appearance.array;
+    if (array == null) return;
+    BufferedImage image = (BufferedImage) appearance.image;
+    AffineTransform tg = g2.getTransform();
+    if (image != null) {
+      if (pass != 0) return; // non-lines on first pass
+      g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                          RenderingHints.VALUE_ANTIALIAS_OFF);
+      if (!(array instanceof VisADQuadArray)) {
+        throw new VisADError("VisADCanvasJ2D.render: array must be quad");
+      }
+      float x00 = array.coordinates[0];
+      float y00 = array.coordinates[1];
+      float xw0 = array.coordinates[3];
+      float yw0 = array.coordinates[4];
+      float xwh = array.coordinates[6];
+      float ywh = array.coordinates[7];
+      float x0h = array.coordinates[9];
+      float y0h = array.coordinates[10];
+      int width = image.getWidth();
+      int height = image.getHeight();
 
 /*
 now:
-  x00 = m00 * 0 + m01 * 0 + m02
-  y00 = m10 * 0 + m11 * 0 + m12
+x00 = m00 * 0 + m01 * 0 + m02
+y00 = m10 * 0 + m11 * 0 + m12
 
-  xw0 = m00 * width + m01 * 0 + m02
-  yw0 = m10 * width + m11 * 0 + m12
+xw0 = m00 * width + m01 * 0 + m02
+yw0 = m10 * width + m11 * 0 + m12
 
-  xwh = m00 * width + m01 * height + m02
-  ywh = m10 * width + m11 * height + m12
+xwh = m00 * width + m01 * height + m02
+ywh = m10 * width + m11 * height + m12
 
-  x0h = m00 * 0 + m01 * height + m02
-  y0h = m10 * 0 + m11 * height + m12
+x0h = m00 * 0 + m01 * height + m02
+y0h = m10 * 0 + m11 * height + m12
 so:
 */
-        float m02 = x00;
-        float m12 = y00;
-        float m00 = (xw0 - x00) / width;
-        float m10 = (yw0 - y00) / width;
-        float m01 = (x0h - x00) / height;
-        float m11 = (y0h - y00) / height;
-        float xerr = xwh - (m00 * width + m01 * height + m02);
-        float yerr = ywh - (m10 * width + m11 * height + m12);
-
-        AffineTransform timage = new AffineTransform(m00, m10, m01, m11, m02, m12);
-        g2.transform(timage); // concatenate timage onto tg
-        try {
-          g2.drawImage(image, 0, 0, this);
-        } catch (java.awt.image.ImagingOpException e) { }
-        g2.setTransform(tg); // restore tg
+      float m02 = x00;
+      float m12 = y00;
+      float m00 = (xw0 - x00) / width;
+      float m10 = (yw0 - y00) / width;
+      float m01 = (x0h - x00) / height;
+      float m11 = (y0h - y00) / height;
+      float xerr = xwh - (m00 * width + m01 * height + m02);
+      float yerr = ywh - (m10 * width + m11 * height + m12);
+
+      AffineTransform timage = new AffineTransform(m00, m10, m01, m11, m02, m12);
+      g2.transform(timage); // concatenate timage onto tg
+      try {
+        g2.drawImage(image, 0, 0, this);
+      } catch (java.awt.image.ImagingOpException e) { }
+      g2.setTransform(tg); // restore tg
+    }
+    else { // image == null
+      if (array instanceof VisADPointArray ||
+          array instanceof VisADLineArray ||
+          array instanceof VisADLineStripArray) {
+        if (pass != 1) return; // lines on second pass
+      }
+      else {
+        if (pass != 0) return; // non-lines on first pass
       }
-      else { // image == null
-        if (array instanceof VisADPointArray ||
-            array instanceof VisADLineArray ||
-            array instanceof VisADLineStripArray) {
-          if (pass != 1) return; // lines on second pass
+      int count = array.vertexCount;
+      if (count == 0) return;
+      float[] coordinates = array.coordinates;
+      byte[] colors = array.colors;
+      if (colors == null) {
+        if (appearance.color_flag) {
+          float red = (float) Math.max(Math.min(appearance.red, 1.0f), 0.0f);
+          float green = (float) Math.max(Math.min(appearance.green, 1.0f), 0.0f);
+          float blue = (float) Math.max(Math.min(appearance.blue, 1.0f), 0.0f);
+          g2.setColor(new Color(red, green, blue));
         }
         else {
-          if (pass != 0) return; // non-lines on first pass
+          g2.setColor(new Color(1.0f, 1.0f, 1.0f));
         }
-        int count = array.vertexCount;
-        if (count == 0) return;
-        float[] coordinates = array.coordinates;
-        byte[] colors = array.colors;
-        if (colors == null) {
-          if (appearance.color_flag) {
-            float red = (float) Math.max(Math.min(appearance.red, 1.0f), 0.0f);
-            float green = (float) Math.max(Math.min(appearance.green, 1.0f), 0.0f);
-            float blue = (float) Math.max(Math.min(appearance.blue, 1.0f), 0.0f);
-            g2.setColor(new Color(red, green, blue));
-          }
-          else {
-            g2.setColor(new Color(1.0f, 1.0f, 1.0f));
-          }
+      }
+      else {
+      }
+      if (array instanceof VisADPointArray ||
+          array instanceof VisADLineArray ||
+          array instanceof VisADLineStripArray) {
+        float fsize = (array instanceof VisADPointArray) ?
+                         appearance.pointSize :
+                         appearance.lineWidth;
+        double dsize = fsize;
+        if (dsize < 1.05) dsize = 1.05; // hack for Java2D problem
+        double[] pts = {0.0, 0.0, 0.0, dsize, dsize, 0.0};
+        double[] newpts = new double[6];
+        double xx = 0.0, yy = 0.0;
+        try {
+          tg.inverseTransform(pts, 0, newpts, 0, 3);
+          xx = (newpts[2] - newpts[0]) * (newpts[2] - newpts[0]) +
+               (newpts[3] - newpts[1]) * (newpts[3] - newpts[1]);
+          yy = (newpts[4] - newpts[0]) * (newpts[4] - newpts[0]) +
+               (newpts[5] - newpts[1]) * (newpts[5] - newpts[1]);
         }
-        else {
+        catch (NoninvertibleTransformException e) {
+          xx = 1.05;
+          yy = 1.05;
         }
-        if (array instanceof VisADPointArray ||
-            array instanceof VisADLineArray ||
-            array instanceof VisADLineStripArray) {
-          float fsize = (array instanceof VisADPointArray) ?
-                           appearance.pointSize :
-                           appearance.lineWidth;
-          double dsize = fsize;
-          if (dsize < 1.05) dsize = 1.05; // hack for Java2D problem
-          double[] pts = {0.0, 0.0, 0.0, dsize, dsize, 0.0};
-          double[] newpts = new double[6];
-          double xx = 0.0, yy = 0.0;
-          try {
-            tg.inverseTransform(pts, 0, newpts, 0, 3);
-            xx = (newpts[2] - newpts[0]) * (newpts[2] - newpts[0]) +
-                 (newpts[3] - newpts[1]) * (newpts[3] - newpts[1]);
-            yy = (newpts[4] - newpts[0]) * (newpts[4] - newpts[0]) +
-                 (newpts[5] - newpts[1]) * (newpts[5] - newpts[1]);
-          }
-          catch (NoninvertibleTransformException e) {
-            xx = 1.05;
-            yy = 1.05;
-          }
-          float size = (float) (0.5 * (Math.sqrt(xx) + Math.sqrt(yy)));
-          float hsize = 0.5f * size;
-          float[] style = LINE_PATTERN[appearance.lineStyle];
-          float[] pattern = null;
-          if (style != null) {
-            pattern = new float[style.length];
-            float scale = size / appearance.lineWidth;
-            for (int i=0; i<style.length; i++) pattern[i] = scale * style[i];
-          }
-          g2.setStroke(new BasicStroke(size, BasicStroke.CAP_SQUARE,
-            BasicStroke.JOIN_MITER, 10, pattern, 0));
+        float size = (float) (0.5 * (Math.sqrt(xx) + Math.sqrt(yy)));
+        float hsize = 0.5f * size;
+        float[] style = LINE_PATTERN[appearance.lineStyle];
+        float[] pattern = null;
+        if (style != null) {
+          pattern = new float[style.length];
+          float scale = size / appearance.lineWidth;
+          for (int i=0; i<style.length; i++) pattern[i] = scale * style[i];
+        }
+        g2.setStroke(new BasicStroke(size, BasicStroke.CAP_SQUARE,
+          BasicStroke.JOIN_MITER, 10, pattern, 0));
 
 /*
 System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
-                   xx + " " + yy +
-                   (array instanceof VisADPointArray ? " point" : " line"));
+                 xx + " " + yy +
+                 (array instanceof VisADPointArray ? " point" : " line"));
 */
-          if (array instanceof VisADPointArray) {
-            if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
-            }
-            else {
-              g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                                  RenderingHints.VALUE_ANTIALIAS_OFF);
-              if (colors == null) {
-                for (int i=0; i<3*count; i += 3) {
-                  if (coordinates[i] == coordinates[i] &&
-                      coordinates[i+1] == coordinates[i+1]) {
-                    g2.fill(new Rectangle2D.Float(coordinates[i]-hsize,
-                                                  coordinates[i+1]-hsize,
-                                                  size, size));
-                  }
-                }
-              }
-              else { // colors != null
-                int j = 0;
-                int jinc = (colors.length == coordinates.length) ? 3 : 4;
-                for (int i=0; i<3*count; i += 3) {
-                  if (coordinates[i] == coordinates[i] &&
-                      coordinates[i+1] == coordinates[i+1]) {
-                    g2.setColor(new Color(
-                      ((colors[j] < 0) ? (((int) colors[j]) + 256) :
-                                         ((int) colors[j]) ),
-                      ((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
-                                         ((int) colors[j+1]) ),
-                      ((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
-                                         ((int) colors[j+2]) ) ));
-                    g2.fill(new Rectangle2D.Float(coordinates[i]-hsize,
-                                                  coordinates[i+1]-hsize,
-                                                  size, size));
-                  }
-                  j += jinc;
-                }
-              }
-            }
+        if (array instanceof VisADPointArray) {
+          if (Math.abs(fsize - 1.0f) < 0.1f) {
+            drawAppearance(ggg, appearance, tg, clip, tile);
           }
-          else if (array instanceof VisADLineArray) {
-            if (Math.abs(fsize - 1.0f) < 0.1f) {
-              drawAppearance(ggg, appearance, tg, clip);
-            }
-            else {
-              g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                                  RenderingHints.VALUE_ANTIALIAS_ON);
-              if (colors == null) {
-                for (int i=0; i<3*count; i += 6) {
-                  g2.draw(new Line2D.Float(coordinates[i], coordinates[i+1],
-                                           coordinates[i+3], coordinates[i+4]));
-                }
-              }
-              else { // colors != null
-                int j = 0;
-                int jinc = (colors.length == coordinates.length) ? 3 : 4;
-                for (int i=0; i<3*count; i += 6) {
-                  g2.setColor(new Color(
-                    (((colors[j] < 0) ? (((int) colors[j]) + 256) :
-                                        ((int) colors[j]) ) +
-                     ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
-                                        ((int) colors[j+jinc]) ) ) / 2,
-                    (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
-                                        ((int) colors[j+1]) ) +
-                     ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
-                                        ((int) colors[j+jinc+1]) ) ) / 2,
-                    (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
-                                        ((int) colors[j+2]) ) +
-                     ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
-                                        ((int) colors[j+jinc+2]) ) ) / 2 ));
-                  j += 2 * jinc;
-                  g2.draw(new Line2D.Float(coordinates[i], coordinates[i+1],
-                                           coordinates[i+3], coordinates[i+4]));
-                }
-              }
-            }
-          }
-          else { // (array instanceof VisADLineStripArray)
+          else {
             g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                                RenderingHints.VALUE_ANTIALIAS_ON);
-
-            int[] stripVertexCounts =
-               ((VisADLineStripArray) array).stripVertexCounts;
-            int base = 0;
-            int basec = 0;
-            int jinc = 0;
-            if (colors != null) {
-              jinc = (colors.length == coordinates.length) ? 3 : 4;
-            }
-            for (int strip=0; strip<stripVertexCounts.length; strip++) {
-              count = stripVertexCounts[strip];
-
-              float lastx = coordinates[base];
-              float lasty = coordinates[base+1];
-              int lastr = 0, lastg = 0, lastb = 0;
-              int thisr, thisg, thisb;
-              if (colors != null) {
-                lastr = (colors[basec] < 0) ? (((int) colors[basec]) + 256) :
-                                             ((int) colors[basec]);
-                lastg = (colors[basec+1] < 0) ? (((int) colors[basec+1]) + 256) :
-                                               ((int) colors[basec+1]);
-                lastb = (colors[basec+2] < 0) ? (((int) colors[basec+2]) + 256) :
-                                               ((int) colors[basec+2]);
-              }
-              if (colors == null) {
-                for (int i=3; i<3*count; i += 3) {
-                  g2.draw(new Line2D.Float(lastx, lasty,
-                                           coordinates[base+i],
-                                           coordinates[base+i+1]));
-                  lastx = coordinates[base+i];
-                  lasty = coordinates[base+i+1];
+                                RenderingHints.VALUE_ANTIALIAS_OFF);
+            if (colors == null) {
+              for (int i=0; i<3*count; i += 3) {
+                if (coordinates[i] == coordinates[i] &&
+                    coordinates[i+1] == coordinates[i+1]) {
+                  g2.fill(new Rectangle2D.Float(coordinates[i]-hsize,
+                                                coordinates[i+1]-hsize,
+                                                size, size));
                 }
               }
-              else {
-                int j = jinc;
-                for (int i=3; i<3*count; i += 3) {
-                  thisr = (colors[basec+j] < 0) ? (((int) colors[basec+j]) + 256) :
-                                               ((int) colors[basec+j]);
-                  thisg = (colors[basec+j+1] < 0) ? (((int) colors[basec+j+1]) + 256) :
-                                                 ((int) colors[basec+j+1]);
-                  thisb = (colors[basec+j+2] < 0) ? (((int) colors[basec+j+2]) + 256) :
-                                                 ((int) colors[basec+j+2]);
-                  g2.setColor(new Color((lastr + thisr) / 2,
-                                        (lastg + thisg) / 2,
-                                        (lastb + thisb) / 2));
-                  lastr = thisr;
-                  lastg = thisg;
-                  lastb = thisb;
-                  j += jinc;
-                  g2.draw(new Line2D.Float(lastx, lasty,
-                                           coordinates[base+i],
-                                           coordinates[base+i+1]));
-                  lastx = coordinates[base+i];
-                  lasty = coordinates[base+i+1];
+            }
+            else { // colors != null
+              int j = 0;
+              int jinc = (colors.length == coordinates.length) ? 3 : 4;
+              for (int i=0; i<3*count; i += 3) {
+                if (coordinates[i] == coordinates[i] &&
+                    coordinates[i+1] == coordinates[i+1]) {
+                  g2.setColor(new Color(
+                    ((colors[j] < 0) ? (((int) colors[j]) + 256) :
+                                       ((int) colors[j]) ),
+                    ((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
+                                       ((int) colors[j+1]) ),
+                    ((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
+                                       ((int) colors[j+2]) ) ));
+                  g2.fill(new Rectangle2D.Float(coordinates[i]-hsize,
+                                                coordinates[i+1]-hsize,
+                                                size, size));
                 }
+                j += jinc;
               }
-              base += 3 * count;
-              basec += jinc * count;
-            } // end for (int strip=0; strip<stripVertexCounts.length; strip++)
-          } // end if (array instanceof VisADLineStripArray)
-        }
-        else if (array instanceof VisADTriangleArray) {
-          g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                              RenderingHints.VALUE_ANTIALIAS_OFF);
-
-          if (colors == null) {
-            for (int i=0; i<3*count; i += 9) {
-              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-              path.moveTo(coordinates[i], coordinates[i+1]);
-              path.lineTo(coordinates[i+3], coordinates[i+4]);
-              path.lineTo(coordinates[i+6], coordinates[i+7]);
-              path.closePath();
-              g2.fill(path);
-            }
-          }
-          else { // colors != null
-            int j = 0;
-            int jinc = (colors.length == coordinates.length) ? 3 : 4;
-            for (int i=0; i<3*count; i += 9) {
-              g2.setColor(new Color(
-                (((colors[j] < 0) ? (((int) colors[j]) + 256) :
-                                    ((int) colors[j]) ) +
-                 ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
-                                    ((int) colors[j+jinc]) ) +
-                 ((colors[j+2*jinc] < 0) ? (((int) colors[j+2*jinc]) + 256) :
-                                    ((int) colors[j+2*jinc]) ) ) / 3,
-                (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
-                                    ((int) colors[j+1]) ) +
-                 ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
-                                    ((int) colors[j+jinc+1]) ) +
-                 ((colors[j+2*jinc+1] < 0) ? (((int) colors[j+2*jinc+1]) + 256) :
-                                    ((int) colors[j+2*jinc+1]) ) ) / 3,
-                (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
-                                    ((int) colors[j+2]) ) +
-                 ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
-                                    ((int) colors[j+jinc+2]) ) +
-                 ((colors[j+2*jinc+2] < 0) ? (((int) colors[j+2*jinc+2]) + 256) :
-                                    ((int) colors[j+2*jinc+2]) ) ) / 3 ));
-              j += 3 * jinc;
-              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-              path.moveTo(coordinates[i], coordinates[i+1]);
-              path.lineTo(coordinates[i+3], coordinates[i+4]);
-              path.lineTo(coordinates[i+6], coordinates[i+7]);
-              path.closePath();
-              g2.fill(path);
             }
           }
         }
-        else if (array instanceof VisADQuadArray) {
-          g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                              RenderingHints.VALUE_ANTIALIAS_OFF);
-          if (colors == null) {
-            for (int i=0; i<3*count; i += 12) {
-              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-              path.moveTo(coordinates[i], coordinates[i+1]);
-              path.lineTo(coordinates[i+3], coordinates[i+4]);
-              path.lineTo(coordinates[i+6], coordinates[i+7]);
-              path.lineTo(coordinates[i+9], coordinates[i+10]);
-              path.closePath();
-              g2.fill(path);
-            }
+        else if (array instanceof VisADLineArray) {
+          if (Math.abs(fsize - 1.0f) < 0.1f) {
+            drawAppearance(ggg, appearance, tg, clip, tile);
           }
-          else { // colors != null
-            int j = 0;
-            int jinc = (colors.length == coordinates.length) ? 3 : 4;
-            for (int i=0; i<3*count; i += 12) {
-              g2.setColor(new Color(
-                (((colors[j] < 0) ? (((int) colors[j]) + 256) :
-                                    ((int) colors[j]) ) +
-                 ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
-                                    ((int) colors[j+jinc]) ) +
-                 ((colors[j+2*jinc] < 0) ? (((int) colors[j+2*jinc]) + 256) :
-                                    ((int) colors[j+2*jinc]) ) +
-                 ((colors[j+3*jinc] < 0) ? (((int) colors[j+3*jinc]) + 256) :
-                                    ((int) colors[j+3*jinc]) ) ) / 4,
-                (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
-                                    ((int) colors[j+1]) ) +
-                 ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
-                                    ((int) colors[j+jinc+1]) ) +
-                 ((colors[j+2*jinc+1] < 0) ? (((int) colors[j+2*jinc+1]) + 256) :
-                                    ((int) colors[j+2*jinc+1]) ) +
-                 ((colors[j+3*jinc+1] < 0) ? (((int) colors[j+3*jinc+1]) + 256) :
-                                    ((int) colors[j+3*jinc+1]) ) ) / 4,
-                (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
-                                    ((int) colors[j+2]) ) +
-                 ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
-                                    ((int) colors[j+jinc+2]) ) +
-                 ((colors[j+2*jinc+2] < 0) ? (((int) colors[j+2*jinc+2]) + 256) :
-                                    ((int) colors[j+2*jinc+2]) ) +
-                 ((colors[j+3*jinc+2] < 0) ? (((int) colors[j+3*jinc+2]) + 256) :
-                                    ((int) colors[j+3*jinc+2]) ) ) / 4 ));
-              j += 4 * jinc;
-              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-              path.moveTo(coordinates[i], coordinates[i+1]);
-              path.lineTo(coordinates[i+3], coordinates[i+4]);
-              path.lineTo(coordinates[i+6], coordinates[i+7]);
-              path.lineTo(coordinates[i+9], coordinates[i+10]);
-              path.closePath();
-              g2.fill(path);
-            }
-          }
-        }
-        else if (array instanceof VisADIndexedTriangleStripArray) {
-          g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                              RenderingHints.VALUE_ANTIALIAS_OFF);
-          int[] indices = ((VisADIndexedTriangleStripArray) array).indices;
-          int indexCount = ((VisADIndexedTriangleStripArray) array).indexCount;
-          int[] stripVertexCounts =
-             ((VisADIndexedTriangleStripArray) array).stripVertexCounts;
-          int base = 0;
-          for (int strip=0; strip<stripVertexCounts.length; strip++) {
-            count = stripVertexCounts[strip];
-            int index0 = indices[base];
-            int index1 = indices[base+1];
+          else {
+            g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                                RenderingHints.VALUE_ANTIALIAS_ON);
             if (colors == null) {
-              for (int i=base+2; i<base+count; i++) {
-                int index2 = indices[i];
-                GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-                path.moveTo(coordinates[3*index0], coordinates[3*index0+1]);
-                path.lineTo(coordinates[3*index1], coordinates[3*index1+1]);
-                path.lineTo(coordinates[3*index2], coordinates[3*index2+1]);
-                path.closePath();
-                g2.fill(path);
-                index0 = index1;
-                index1 = index2;
+              for (int i=0; i<3*count; i += 6) {
+                g2.draw(new Line2D.Float(coordinates[i], coordinates[i+1],
+                                         coordinates[i+3], coordinates[i+4]));
               }
             }
             else { // colors != null
+              int j = 0;
               int jinc = (colors.length == coordinates.length) ? 3 : 4;
-              for (int i=base+2; i<base+count; i++) {
-                int index2 = indices[i];
+              for (int i=0; i<3*count; i += 6) {
                 g2.setColor(new Color(
-                  (((colors[jinc*index0] < 0) ? (((int) colors[jinc*index0]) + 256) :
-                                      ((int) colors[jinc*index0]) ) +
-                   ((colors[jinc*index1] < 0) ? (((int) colors[jinc*index1]) + 256) :
-                                      ((int) colors[jinc*index1]) ) +
-                   ((colors[jinc*index2] < 0) ? (((int) colors[jinc*index2]) + 256) :
-                                      ((int) colors[jinc*index2]) ) ) / 3,
-                  (((colors[jinc*index0+1] < 0) ? (((int) colors[jinc*index0+1]) + 256) :
-                                      ((int) colors[jinc*index0+1]) ) +
-                   ((colors[jinc*index1+1] < 0) ? (((int) colors[jinc*index1+1]) + 256) :
-                                      ((int) colors[jinc*index1+1]) ) +
-                   ((colors[jinc*index2+1] < 0) ? (((int) colors[jinc*index2+1]) + 256) :
-                                      ((int) colors[jinc*index2+1]) ) ) / 3,
-                  (((colors[jinc*index0+2] < 0) ? (((int) colors[jinc*index0+2]) + 256) :
-                                      ((int) colors[jinc*index0+2]) ) +
-                   ((colors[jinc*index1+2] < 0) ? (((int) colors[jinc*index1+2]) + 256) :
-                                      ((int) colors[jinc*index1+2]) ) +
-                   ((colors[jinc*index2+2] < 0) ? (((int) colors[jinc*index2+2]) + 256) :
-                                      ((int) colors[jinc*index2+2]) ) ) / 3 ));
-                GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-                path.moveTo(coordinates[3*index0], coordinates[3*index0+1]);
-                path.lineTo(coordinates[3*index1], coordinates[3*index1+1]);
-                path.lineTo(coordinates[3*index2], coordinates[3*index2+1]);
-                path.closePath();
-                g2.fill(path);
-                index0 = index1;
-                index1 = index2;
+                  (((colors[j] < 0) ? (((int) colors[j]) + 256) :
+                                      ((int) colors[j]) ) +
+                   ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
+                                      ((int) colors[j+jinc]) ) ) / 2,
+                  (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
+                                      ((int) colors[j+1]) ) +
+                   ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
+                                      ((int) colors[j+jinc+1]) ) ) / 2,
+                  (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
+                                      ((int) colors[j+2]) ) +
+                   ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
+                                      ((int) colors[j+jinc+2]) ) ) / 2 ));
+                j += 2 * jinc;
+                g2.draw(new Line2D.Float(coordinates[i], coordinates[i+1],
+                                         coordinates[i+3], coordinates[i+4]));
               }
             }
-            base += count;
           }
-        } // end if (array instanceof VisADIndexedTriangleStripArray)
-        else if (array instanceof VisADTriangleStripArray) {
+        }
+        else { // (array instanceof VisADLineStripArray)
           g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                              RenderingHints.VALUE_ANTIALIAS_OFF);
+                              RenderingHints.VALUE_ANTIALIAS_ON);
+
           int[] stripVertexCounts =
-             ((VisADTriangleStripArray) array).stripVertexCounts;
+             ((VisADLineStripArray) array).stripVertexCounts;
           int base = 0;
           int basec = 0;
           int jinc = 0;
@@ -1020,94 +1250,318 @@ System.out.println("dsize = " + dsize + " size = " + size + " xx, yy = " +
           for (int strip=0; strip<stripVertexCounts.length; strip++) {
             count = stripVertexCounts[strip];
 
-            float oldx = coordinates[base];
-            float oldy = coordinates[base+1];
-            float lastx = coordinates[base+3];
-            float lasty = coordinates[base+4];
-            int oldr = 0, oldg = 0, oldb = 0;
+            float lastx = coordinates[base];
+            float lasty = coordinates[base+1];
             int lastr = 0, lastg = 0, lastb = 0;
             int thisr, thisg, thisb;
-
             if (colors != null) {
-              oldr = (colors[basec] < 0) ? (((int) colors[basec]) + 256) :
+              lastr = (colors[basec] < 0) ? (((int) colors[basec]) + 256) :
                                            ((int) colors[basec]);
-              oldg = (colors[basec+1] < 0) ? (((int) colors[basec+1]) + 256) :
+              lastg = (colors[basec+1] < 0) ? (((int) colors[basec+1]) + 256) :
                                              ((int) colors[basec+1]);
-              oldb = (colors[basec+2] < 0) ? (((int) colors[basec+2]) + 256) :
+              lastb = (colors[basec+2] < 0) ? (((int) colors[basec+2]) + 256) :
                                              ((int) colors[basec+2]);
-              lastr = (colors[basec+jinc] < 0) ? (((int) colors[basec+jinc]) + 256) :
-                                           ((int) colors[basec+jinc]);
-              lastg = (colors[basec+jinc+1] < 0) ? (((int) colors[basec+jinc+1]) + 256) :
-                                             ((int) colors[basec+jinc+1]);
-              lastb = (colors[basec+jinc+2] < 0) ? (((int) colors[basec+jinc+2]) + 256) :
-                                             ((int) colors[basec+jinc+2]);
             }
-
             if (colors == null) {
-              for (int i=6; i<3*count; i+=3) {
-                GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-                path.moveTo(oldx, oldy);
-                path.lineTo(lastx, lasty);
-                path.lineTo(coordinates[base+i], coordinates[base+i+1]);
-                path.closePath();
-                g2.fill(path);
-                oldx = lastx;
-                oldy = lasty;
+              for (int i=3; i<3*count; i += 3) {
+                g2.draw(new Line2D.Float(lastx, lasty,
+                                         coordinates[base+i],
+                                         coordinates[base+i+1]));
                 lastx = coordinates[base+i];
                 lasty = coordinates[base+i+1];
-              } // end for (int i=6; i<3*count; i+=3)
+              }
             }
-            else { // colors != null
-              int j = 2 * jinc;
-/*
-System.out.println(j + " " + jinc + " " + basec);
-*/
-              for (int i=6; i<3*count; i+=3) {
+            else {
+              int j = jinc;
+              for (int i=3; i<3*count; i += 3) {
                 thisr = (colors[basec+j] < 0) ? (((int) colors[basec+j]) + 256) :
-                                                ((int) colors[basec+j]);
+                                             ((int) colors[basec+j]);
                 thisg = (colors[basec+j+1] < 0) ? (((int) colors[basec+j+1]) + 256) :
-                                                  ((int) colors[basec+j+1]);
+                                               ((int) colors[basec+j+1]);
                 thisb = (colors[basec+j+2] < 0) ? (((int) colors[basec+j+2]) + 256) :
-                                                  ((int) colors[basec+j+2]);
-                g2.setColor(new Color((thisr + lastr + oldr)/3,
-                                      (thisg + lastg + oldg)/3,
-                                      (thisb + lastb + oldb)/3));
-/*
-System.out.println(i + " " + oldr + " " + oldg + " " + oldb + " " + lastr + " " +
-                   lastg + " " + lastb + " " + thisr + " " + thisg + " " + thisb);
-*/
-                oldr = lastr;
-                oldg = lastg;
-                oldb = lastb;
+                                               ((int) colors[basec+j+2]);
+                g2.setColor(new Color((lastr + thisr) / 2,
+                                      (lastg + thisg) / 2,
+                                      (lastb + thisb) / 2));
                 lastr = thisr;
                 lastg = thisg;
                 lastb = thisb;
                 j += jinc;
-                GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
-                path.moveTo(oldx, oldy);
-                path.lineTo(lastx, lasty);
-                path.lineTo(coordinates[base+i], coordinates[base+i+1]);
-                path.closePath();
-                g2.fill(path);
-/*
-System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
-                   " " + coordinates[base+i] + " " + coordinates[base+i+1]);
-*/
-                oldx = lastx;
-                oldy = lasty;
+                g2.draw(new Line2D.Float(lastx, lasty,
+                                         coordinates[base+i],
+                                         coordinates[base+i+1]));
                 lastx = coordinates[base+i];
                 lasty = coordinates[base+i+1];
-              } // end for (int i=6; i<3*count; i+=3)
+              }
             }
             base += 3 * count;
             basec += jinc * count;
           } // end for (int strip=0; strip<stripVertexCounts.length; strip++)
-        } // end if (array instanceof VisADTriangleStripArray)
-        else {
-          throw new VisADError("VisADCanvasJ2D.render: bad array class");
+        } // end if (array instanceof VisADLineStripArray)
+      }
+      else if (array instanceof VisADTriangleArray) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                            RenderingHints.VALUE_ANTIALIAS_OFF);
+
+        if (colors == null) {
+          for (int i=0; i<3*count; i += 9) {
+            GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+            path.moveTo(coordinates[i], coordinates[i+1]);
+            path.lineTo(coordinates[i+3], coordinates[i+4]);
+            path.lineTo(coordinates[i+6], coordinates[i+7]);
+            path.closePath();
+            g2.fill(path);
+          }
         }
-      } // end if (image == null)
-    } // end if (scene instanceof VisADAppearance)
+        else { // colors != null
+          int j = 0;
+          int jinc = (colors.length == coordinates.length) ? 3 : 4;
+          for (int i=0; i<3*count; i += 9) {
+            g2.setColor(new Color(
+              (((colors[j] < 0) ? (((int) colors[j]) + 256) :
+                                  ((int) colors[j]) ) +
+               ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
+                                  ((int) colors[j+jinc]) ) +
+               ((colors[j+2*jinc] < 0) ? (((int) colors[j+2*jinc]) + 256) :
+                                  ((int) colors[j+2*jinc]) ) ) / 3,
+              (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
+                                  ((int) colors[j+1]) ) +
+               ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
+                                  ((int) colors[j+jinc+1]) ) +
+               ((colors[j+2*jinc+1] < 0) ? (((int) colors[j+2*jinc+1]) + 256) :
+                                  ((int) colors[j+2*jinc+1]) ) ) / 3,
+              (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
+                                  ((int) colors[j+2]) ) +
+               ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
+                                  ((int) colors[j+jinc+2]) ) +
+               ((colors[j+2*jinc+2] < 0) ? (((int) colors[j+2*jinc+2]) + 256) :
+                                  ((int) colors[j+2*jinc+2]) ) ) / 3 ));
+            j += 3 * jinc;
+            GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+            path.moveTo(coordinates[i], coordinates[i+1]);
+            path.lineTo(coordinates[i+3], coordinates[i+4]);
+            path.lineTo(coordinates[i+6], coordinates[i+7]);
+            path.closePath();
+            g2.fill(path);
+          }
+        }
+      }
+      else if (array instanceof VisADQuadArray) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                            RenderingHints.VALUE_ANTIALIAS_OFF);
+        if (colors == null) {
+          for (int i=0; i<3*count; i += 12) {
+            GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+            path.moveTo(coordinates[i], coordinates[i+1]);
+            path.lineTo(coordinates[i+3], coordinates[i+4]);
+            path.lineTo(coordinates[i+6], coordinates[i+7]);
+            path.lineTo(coordinates[i+9], coordinates[i+10]);
+            path.closePath();
+            g2.fill(path);
+          }
+        }
+        else { // colors != null
+          int j = 0;
+          int jinc = (colors.length == coordinates.length) ? 3 : 4;
+          for (int i=0; i<3*count; i += 12) {
+            g2.setColor(new Color(
+              (((colors[j] < 0) ? (((int) colors[j]) + 256) :
+                                  ((int) colors[j]) ) +
+               ((colors[j+jinc] < 0) ? (((int) colors[j+jinc]) + 256) :
+                                  ((int) colors[j+jinc]) ) +
+               ((colors[j+2*jinc] < 0) ? (((int) colors[j+2*jinc]) + 256) :
+                                  ((int) colors[j+2*jinc]) ) +
+               ((colors[j+3*jinc] < 0) ? (((int) colors[j+3*jinc]) + 256) :
+                                  ((int) colors[j+3*jinc]) ) ) / 4,
+              (((colors[j+1] < 0) ? (((int) colors[j+1]) + 256) :
+                                  ((int) colors[j+1]) ) +
+               ((colors[j+jinc+1] < 0) ? (((int) colors[j+jinc+1]) + 256) :
+                                  ((int) colors[j+jinc+1]) ) +
+               ((colors[j+2*jinc+1] < 0) ? (((int) colors[j+2*jinc+1]) + 256) :
+                                  ((int) colors[j+2*jinc+1]) ) +
+               ((colors[j+3*jinc+1] < 0) ? (((int) colors[j+3*jinc+1]) + 256) :
+                                  ((int) colors[j+3*jinc+1]) ) ) / 4,
+              (((colors[j+2] < 0) ? (((int) colors[j+2]) + 256) :
+                                  ((int) colors[j+2]) ) +
+               ((colors[j+jinc+2] < 0) ? (((int) colors[j+jinc+2]) + 256) :
+                                  ((int) colors[j+jinc+2]) ) +
+               ((colors[j+2*jinc+2] < 0) ? (((int) colors[j+2*jinc+2]) + 256) :
+                                  ((int) colors[j+2*jinc+2]) ) +
+               ((colors[j+3*jinc+2] < 0) ? (((int) colors[j+3*jinc+2]) + 256) :
+                                  ((int) colors[j+3*jinc+2]) ) ) / 4 ));
+            j += 4 * jinc;
+            GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+            path.moveTo(coordinates[i], coordinates[i+1]);
+            path.lineTo(coordinates[i+3], coordinates[i+4]);
+            path.lineTo(coordinates[i+6], coordinates[i+7]);
+            path.lineTo(coordinates[i+9], coordinates[i+10]);
+            path.closePath();
+            g2.fill(path);
+          }
+        }
+      }
+      else if (array instanceof VisADIndexedTriangleStripArray) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                            RenderingHints.VALUE_ANTIALIAS_OFF);
+        int[] indices = ((VisADIndexedTriangleStripArray) array).indices;
+        int indexCount = ((VisADIndexedTriangleStripArray) array).indexCount;
+        int[] stripVertexCounts =
+           ((VisADIndexedTriangleStripArray) array).stripVertexCounts;
+        int base = 0;
+        for (int strip=0; strip<stripVertexCounts.length; strip++) {
+          count = stripVertexCounts[strip];
+          int index0 = indices[base];
+          int index1 = indices[base+1];
+          if (colors == null) {
+            for (int i=base+2; i<base+count; i++) {
+              int index2 = indices[i];
+              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+              path.moveTo(coordinates[3*index0], coordinates[3*index0+1]);
+              path.lineTo(coordinates[3*index1], coordinates[3*index1+1]);
+              path.lineTo(coordinates[3*index2], coordinates[3*index2+1]);
+              path.closePath();
+              g2.fill(path);
+              index0 = index1;
+              index1 = index2;
+            }
+          }
+          else { // colors != null
+            int jinc = (colors.length == coordinates.length) ? 3 : 4;
+            for (int i=base+2; i<base+count; i++) {
+              int index2 = indices[i];
+              g2.setColor(new Color(
+                (((colors[jinc*index0] < 0) ? (((int) colors[jinc*index0]) + 256) :
+                                    ((int) colors[jinc*index0]) ) +
+                 ((colors[jinc*index1] < 0) ? (((int) colors[jinc*index1]) + 256) :
+                                    ((int) colors[jinc*index1]) ) +
+                 ((colors[jinc*index2] < 0) ? (((int) colors[jinc*index2]) + 256) :
+                                    ((int) colors[jinc*index2]) ) ) / 3,
+                (((colors[jinc*index0+1] < 0) ? (((int) colors[jinc*index0+1]) + 256) :
+                                    ((int) colors[jinc*index0+1]) ) +
+                 ((colors[jinc*index1+1] < 0) ? (((int) colors[jinc*index1+1]) + 256) :
+                                    ((int) colors[jinc*index1+1]) ) +
+                 ((colors[jinc*index2+1] < 0) ? (((int) colors[jinc*index2+1]) + 256) :
+                                    ((int) colors[jinc*index2+1]) ) ) / 3,
+                (((colors[jinc*index0+2] < 0) ? (((int) colors[jinc*index0+2]) + 256) :
+                                    ((int) colors[jinc*index0+2]) ) +
+                 ((colors[jinc*index1+2] < 0) ? (((int) colors[jinc*index1+2]) + 256) :
+                                    ((int) colors[jinc*index1+2]) ) +
+                 ((colors[jinc*index2+2] < 0) ? (((int) colors[jinc*index2+2]) + 256) :
+                                    ((int) colors[jinc*index2+2]) ) ) / 3 ));
+              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+              path.moveTo(coordinates[3*index0], coordinates[3*index0+1]);
+              path.lineTo(coordinates[3*index1], coordinates[3*index1+1]);
+              path.lineTo(coordinates[3*index2], coordinates[3*index2+1]);
+              path.closePath();
+              g2.fill(path);
+              index0 = index1;
+              index1 = index2;
+            }
+          }
+          base += count;
+        }
+      } // end if (array instanceof VisADIndexedTriangleStripArray)
+      else if (array instanceof VisADTriangleStripArray) {
+        g2.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                            RenderingHints.VALUE_ANTIALIAS_OFF);
+        int[] stripVertexCounts =
+           ((VisADTriangleStripArray) array).stripVertexCounts;
+        int base = 0;
+        int basec = 0;
+        int jinc = 0;
+        if (colors != null) {
+          jinc = (colors.length == coordinates.length) ? 3 : 4;
+        }
+        for (int strip=0; strip<stripVertexCounts.length; strip++) {
+          count = stripVertexCounts[strip];
+
+          float oldx = coordinates[base];
+          float oldy = coordinates[base+1];
+          float lastx = coordinates[base+3];
+          float lasty = coordinates[base+4];
+          int oldr = 0, oldg = 0, oldb = 0;
+          int lastr = 0, lastg = 0, lastb = 0;
+          int thisr, thisg, thisb;
+
+          if (colors != null) {
+            oldr = (colors[basec] < 0) ? (((int) colors[basec]) + 256) :
+                                         ((int) colors[basec]);
+            oldg = (colors[basec+1] < 0) ? (((int) colors[basec+1]) + 256) :
+                                           ((int) colors[basec+1]);
+            oldb = (colors[basec+2] < 0) ? (((int) colors[basec+2]) + 256) :
+                                           ((int) colors[basec+2]);
+            lastr = (colors[basec+jinc] < 0) ? (((int) colors[basec+jinc]) + 256) :
+                                         ((int) colors[basec+jinc]);
+            lastg = (colors[basec+jinc+1] < 0) ? (((int) colors[basec+jinc+1]) + 256) :
+                                           ((int) colors[basec+jinc+1]);
+            lastb = (colors[basec+jinc+2] < 0) ? (((int) colors[basec+jinc+2]) + 256) :
+                                           ((int) colors[basec+jinc+2]);
+          }
+
+          if (colors == null) {
+            for (int i=6; i<3*count; i+=3) {
+              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+              path.moveTo(oldx, oldy);
+              path.lineTo(lastx, lasty);
+              path.lineTo(coordinates[base+i], coordinates[base+i+1]);
+              path.closePath();
+              g2.fill(path);
+              oldx = lastx;
+              oldy = lasty;
+              lastx = coordinates[base+i];
+              lasty = coordinates[base+i+1];
+            } // end for (int i=6; i<3*count; i+=3)
+          }
+          else { // colors != null
+            int j = 2 * jinc;
+/*
+System.out.println(j + " " + jinc + " " + basec);
+*/
+            for (int i=6; i<3*count; i+=3) {
+              thisr = (colors[basec+j] < 0) ? (((int) colors[basec+j]) + 256) :
+                                              ((int) colors[basec+j]);
+              thisg = (colors[basec+j+1] < 0) ? (((int) colors[basec+j+1]) + 256) :
+                                                ((int) colors[basec+j+1]);
+              thisb = (colors[basec+j+2] < 0) ? (((int) colors[basec+j+2]) + 256) :
+                                                ((int) colors[basec+j+2]);
+              g2.setColor(new Color((thisr + lastr + oldr)/3,
+                                    (thisg + lastg + oldg)/3,
+                                    (thisb + lastb + oldb)/3));
+/*
+System.out.println(i + " " + oldr + " " + oldg + " " + oldb + " " + lastr + " " +
+                 lastg + " " + lastb + " " + thisr + " " + thisg + " " + thisb);
+*/
+              oldr = lastr;
+              oldg = lastg;
+              oldb = lastb;
+              lastr = thisr;
+              lastg = thisg;
+              lastb = thisb;
+              j += jinc;
+              GeneralPath path = new GeneralPath(GeneralPath.WIND_EVEN_ODD);
+              path.moveTo(oldx, oldy);
+              path.lineTo(lastx, lasty);
+              path.lineTo(coordinates[base+i], coordinates[base+i+1]);
+              path.closePath();
+              g2.fill(path);
+/*
+System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
+                 " " + coordinates[base+i] + " " + coordinates[base+i+1]);
+*/
+              oldx = lastx;
+              oldy = lasty;
+              lastx = coordinates[base+i];
+              lasty = coordinates[base+i+1];
+            } // end for (int i=6; i<3*count; i+=3)
+          }
+          base += 3 * count;
+          basec += jinc * count;
+        } // end for (int strip=0; strip<stripVertexCounts.length; strip++)
+      } // end if (array instanceof VisADTriangleStripArray)
+      else {
+        throw new VisADError("VisADCanvasJ2D.render: bad array class");
+      }
+    } // end if (image == null)
   }
 
   /**
@@ -1119,6 +1573,22 @@ System.out.println(i + " " + oldx + " " + oldy + " " + lastx + " " + lasty +
    */
   public static void drawAppearance(Graphics graphics, VisADAppearance appearance,
                                     AffineTransform t, Rectangle2D.Float clip) {
+    drawAppearance(graphics, appearance, t, clip, null);
+  }
+
+  /**
+   * This assumes only VisADPointArray or VisADLineArray.
+   * @param graphics
+   * @param appearance
+   * @param t
+   * @param clip
+   * @param tile if not null, the device space rectangle drawing is
+   *             confined to, as well as to clip
+   */
+  private static void drawAppearance(Graphics graphics,
+                                     VisADAppearance appearance,
+                                     AffineTransform t, Rectangle2D.Float clip,
+                                     Rectangle tile) {
     VisADGeometryArray array = appearance.array;
     if (array == null) return;
     byte[] colors = array.colors;
@@ -1167,6 +1637,7 @@ System.out.println("drawAppearance: color = " + appearance.red + " " +
       path.closePath();
       graphics.setClip(path);
     }
+    if (tile != null) graphics.clipRect(tile.x, tile.y, tile.width, tile.height);
 
     if (array instanceof VisADPointArray) {
 /*
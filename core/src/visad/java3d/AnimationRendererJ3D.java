@@ -72,20 +72,24 @@ public class AnimationRendererJ3D extends DefaultRendererJ3D {
     return setSetOnReUseFrames;
   }
 
-  // logic to 'mark' missing frames
-  private VisADBranchGroup vbranch = null;
+  // logic to 'mark' missing frames; frames may be transformed
+  // concurrently, so the branch being built is tracked per thread
+  private final ThreadLocal<VisADBranchGroup> vbranch =
+    new ThreadLocal<VisADBranchGroup>();
 
   public void clearScene() {
-    vbranch = null;
+    vbranch.remove();
     super.clearScene();
   }
 
   void setVisADBranch(VisADBranchGroup branch) {
-    vbranch = branch;
+    if (branch == null) vbranch.remove();
+    else vbranch.set(branch);
   }
 
   void markMissingVisADBranch() {
-    if (vbranch != null) vbranch.scratchTime();
+    VisADBranchGroup branch = vbranch.get();
+    if (branch != null) branch.scratchTime();
   }
   // end of logic to 'mark' missing frames
 
@@ -153,7 +157,7 @@ public class AnimationRendererJ3D extends DefaultRendererJ3D {
      
       link.start_time = System.currentTimeMillis();
       link.time_flag = false;
-      vbranch = null;
+      vbranch.remove();
 
 
       if (!animation1D) {
@@ -27,10 +27,12 @@ MA 02111-1307, USA
 package visad.java3d;
 
 import visad.*;
+import visad.util.ThreadManager;
 
 import javax.media.j3d.*;
 
 import java.util.Vector;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.rmi.*;
 
 /**
@@ -205,19 +207,64 @@ public class ShadowAnimationFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
       old_times = null;
       old_mark = null;
 
-      // render new frames
+      // render new frames; each time step is transformed as a separate
+      // task, bounded by ThreadManager's global maximum thread count
+      final Field field = (Field) data;
+      final float[] fvalue_array = value_array;
+      final float[] fdefault_values = default_values;
+      final DataRenderer frenderer = renderer;
+      final DataDisplayLink flink = link;
+      final BranchGroup[] branches = new BranchGroup[len];
+      final AtomicBoolean cancelled = new AtomicBoolean(false);
+      ThreadManager threadManager = new ThreadManager("animation frames");
       for (int i=0; i<len; i++) {
         if (!mark[i]) {
-          // not necessary, but perhaps if this is modified
-          // int[] lat_lon_indices = renderer.getLatLonIndices();
-          BranchGroup branch = (BranchGroup) makeBranch();
-          ((AnimationRendererJ3D) renderer).setVisADBranch(nodes[i]);
-          recurseRange(branch, ((Field) data).getSample(i),
-                       value_array, default_values, renderer);
-          ((AnimationRendererJ3D) renderer).setVisADBranch(null);
-          nodes[i].addChild(branch);
-          // not necessary, but perhaps if this is modified
-          // renderer.setLatLonIndices(lat_lon_indices);
+          final int index = i;
+          final VisADBranchGroup node = nodes[i];
+          threadManager.addRunnable(new ThreadManager.MyRunnable() {
+            public void run() throws Exception {
+              // skip remaining frames once a sibling failed or the
+              // Data changed and a new transform has been requested
+              if (cancelled.get()) return;
+              boolean ok = false;
+              try {
+                checkInterrupt(flink, frenderer);
+                // not necessary, but perhaps if this is modified
+                // int[] lat_lon_indices = renderer.getLatLonIndices();
+                BranchGroup branch = (BranchGroup) makeBranch();
+                ((AnimationRendererJ3D) frenderer).setVisADBranch(node);
+                try {
+                  // recursion may write inherited values, so give each
+                  // frame its own copy
+                  recurseRange(branch, field.getSample(index),
+                               (float[]) fvalue_array.clone(),
+                               fdefault_values, frenderer);
+                }
+                finally {
+                  ((AnimationRendererJ3D) frenderer).setVisADBranch(null);
+                }
+                branches[index] = branch;
+                ok = true;
+                // not necessary, but perhaps if this is modified
+                // renderer.setLatLonIndices(lat_lon_indices);
+              }
+              finally {
+                if (!ok) cancelled.set(true);
+              }
+            }
+          });
+        }
+      }
+      try {
+        threadManager.runInParallel();
+      }
+      finally {
+        // attach completed frames in time order, even if some failed
+        for (int i=0; i<len; i++) {
+          if (branches[i] != null) {
+            nodes[i].addChild(branches[i]);
+            branches[i] = null;
+          }
         }
       }
     }
@@ -228,4 +275,34 @@ public class ShadowAnimationFunctionTypeJ3D extends ShadowFunctionTypeJ3D {
     ensureNotEmpty(group);
     return false;
   }
+
+  /**
+   * throw a DisplayInterruptException if the transform has run
+   * for more than 500 milliseconds and a re-transform has been
+   * requested for the Data or its ScalarMaps, following the test
+   * in ShadowFunctionOrSetType.doTransform
+   */
+  private static void checkInterrupt(DataDisplayLink link,
+                                     DataRenderer renderer)
+          throws VisADException, RemoteException {
+    if (link == null) return;
+    if (!link.time_flag) {
+      if (500 < System.currentTimeMillis() - link.start_time) {
+        link.time_flag = true;
+      }
+      else {
+        return;
+      }
+    }
+    if (link.peekTicks()) {
+      throw new DisplayInterruptException("please wait . . .");
+    }
+    Vector maps = link.getSelectedMapVector();
+    for (int i=0; i<maps.size(); i++) {
+      ScalarMap map = (ScalarMap) maps.elementAt(i);
+      if (map.peekTicks(renderer, link)) {
+        throw new DisplayInterruptException("please wait . . .");
+      }
+    }
+  }
 }
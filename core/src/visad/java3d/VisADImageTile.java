@@ -63,10 +63,60 @@ public class VisADImageTile implements ImageComponent2D.Updater {
      this.imageComp = imageComp;
    }
 
+   // sub-rectangle waiting to be copied by updateData
+   private byte[] updateBytes = null;
+   private byte[] updateTarget = null;
+   private int updateStride = 0;
+   private int updatePixel = 0;
+
    public void updateData(ImageComponent2D imageC2d, int x, int y, int lenx, int leny) {
      if (images != null) {
        //-imageComp.set(images[current_index]); // This should probably not be done in updateData
      }
+     if (updateBytes != null) {
+       int row = lenx * updatePixel;
+       for (int j=0; j<leny; j++) {
+         System.arraycopy(updateBytes, j * row, updateTarget,
+                          (y + j) * updateStride + x * updatePixel, row);
+       }
+     }
+   }
+
+   /**
+    * Copy a sub-rectangle of pixel bytes into one of the images of this
+    * tile.  If that image is the one being displayed the copy is made
+    * through ImageComponent2D.updateData, so only the sub-rectangle of
+    * the texture is updated.
+    * @param index image index
+    * @param bytes lenx * leny pixels of pixel_length bytes each, in the
+    *              image's band order, rows of lenx pixels
+    * @param x first column in the image
+    * @param y first row in the image
+    * @param lenx sub-rectangle width
+    * @param leny sub-rectangle height
+    * @param pixel_length bytes per pixel in the image
+    */
+   public synchronized void updateImage(int index, byte[] bytes, int x, int y,
+                                        int lenx, int leny, int pixel_length) {
+     BufferedImage image = images[index];
+     updateBytes = bytes;
+     updateTarget = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+     updateStride = image.getWidth() * pixel_length;
+     updatePixel = pixel_length;
+     try {
+       ImageComponent2D theImageComp = imageComp;
+       if (theImageComp != null && theImageComp.isByReference() &&
+           index == current_index && theImageComp.getImage() == image) {
+         theImageComp.updateData(this, x, y, lenx, leny);
+       }
+       else {
+         updateData(null, x, y, lenx, leny);
+       }
+     }
+     finally {
+       updateBytes = null;
+       updateTarget = null;
+     }
    }
 
 
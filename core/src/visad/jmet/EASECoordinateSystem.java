@@ -120,6 +120,13 @@ public class EASECoordinateSystem extends visad.georef.MapProjection {
 
   }
 
+  /** the transforms keep no state, so large arrays may be split across
+  *   threads
+  */
+  protected boolean canTransformInParallel() {
+    return true;
+  }
+
   /** determine if the Coordinate System in question is an EASECoordinateSystem
   *
   */
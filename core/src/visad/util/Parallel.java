@@ -0,0 +1,279 @@
+//
+// Parallel.java
+//
+
+/*
+VisAD system for interactive analysis and visualization of numerical
+data.  Copyright (C) 1996 - 2023 Bill Hibbard, Curtis Rueden, Tom
+Rink, Dave Glowacki, Steve Emmerson, Tom Whittaker, Don Murray, and
+Tommy Jasmin.
+
+This library is free software; you can redistribute it and/or
+modify it under the terms of the GNU Library General Public
+License as published by the Free Software Foundation; either
+version 2 of the License, or (at your option) any later version.
+
+This library is distributed in the hope that it will be useful,
+but WITHOUT ANY WARRANTY; without even the implied warranty of
+MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+Library General Public License for more details.
+
+You should have received a copy of the GNU Library General Public
+License along with this library; if not, write to the Free
+Software Foundation, Inc., 59 Temple Place - Suite 330, Boston,
+MA 02111-1307, USA
+*/
+
+package visad.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import visad.VisADException;
+
+/**
+ * Runs loops over sample ranges in parallel.  A range of samples
+ * [0, length) is split into contiguous chunks which are run on a shared
+ * pool of daemon threads, with the calling thread running the first
+ * chunk itself.  Chunks must write disjoint parts of their output, so
+ * results are identical to running the loop on one thread.<P>
+ *
+ * Loops shorter than the threshold, loops started from inside another
+ * parallel loop, and all loops when parallel execution is disabled run
+ * serially on the calling thread.  The defaults come from the system
+ * properties <code>visad.parallel.enabled</code> (default true),
+ * <code>visad.parallel.threshold</code> (default 100000 samples) and
+ * <code>visad.parallel.threads</code> (default the number of
+ * processors).
+ */
+public class Parallel {
+
+  /** A loop body over the samples [start, end). */
+  public interface Chunk {
+    void run(int start, int end) throws VisADException;
+  }
+
+  private static volatile boolean enabled =
+    Boolean.parseBoolean(System.getProperty("visad.parallel.enabled", "true"));
+
+  private static volatile int threshold =
+    Integer.parseInt(System.getProperty("visad.parallel.threshold", "100000"));
+
+  private static int threads =
+    Integer.parseInt(System.getProperty("visad.parallel.threads",
+      Integer.toString(Runtime.getRuntime().availableProcessors())));
+
+  private static ExecutorService executor = null;
+
+  /** true in threads that are running a chunk */
+  private static final ThreadLocal<Boolean> inChunk =
+    new ThreadLocal<Boolean>() {
+      protected Boolean initialValue() {
+        return Boolean.FALSE;
+      }
+    };
+
+  private Parallel() {
+  }
+
+  /**
+   * Turn parallel execution on or off.
+   *
+   * @param enable  false to run every loop serially
+   */
+  public static void setEnabled(boolean enable) {
+    enabled = enable;
+  }
+
+  /**
+   * @return true if parallel execution is enabled
+   */
+  public static boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Set the minimum loop length that is split across threads.
+   *
+   * @param length  minimum number of samples
+   */
+  public static void setThreshold(int length) {
+    threshold = length;
+  }
+
+  /**
+   * @return the minimum loop length that is split across threads
+   */
+  public static int getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * Use the given executor for parallel loops.  The executor is not shut
+   * down when it is replaced.
+   *
+   * @param exec         executor to run chunks on; null to restore the
+   *                     default pool
+   * @param parallelism  number of chunks to split a loop into
+   */
+  public static synchronized void setExecutor(ExecutorService exec,
+                                              int parallelism) {
+    executor = exec;
+    threads = Math.max(1, parallelism);
+  }
+
+  /**
+   * @return the number of chunks a loop is split into
+   */
+  public static synchronized int getParallelism() {
+    return threads;
+  }
+
+  private static synchronized ExecutorService getExecutor() {
+    if (executor == null) {
+      final AtomicInteger count = new AtomicInteger();
+      executor = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+          Thread t = new Thread(r, "VisAD Parallel-" + count.incrementAndGet());
+          t.setDaemon(true);
+          return t;
+        }
+      });
+    }
+    return executor;
+  }
+
+  /**
+   * Test whether a loop of the given length would run in parallel.
+   *
+   * @param length  number of samples
+   * @return true if the loop would be split across threads
+   */
+  public static boolean isParallel(int length) {
+    return enabled && length >= threshold && getParallelism() > 1 &&
+           !inChunk.get().booleanValue();
+  }
+
+  /**
+   * Run chunk over [0, length), splitting it across threads if the loop
+   * is long enough.
+   *
+   * @param length  number of samples
+   * @param chunk   loop body
+   * @throws VisADException  the first exception thrown by any chunk
+   */
+  public static void forRange(int length, Chunk chunk)
+         throws VisADException {
+    forRange(length, 1, chunk);
+  }
+
+  /**
+   * Run chunk over [0, length), splitting it across threads if the loop
+   * is long enough.  Chunk boundaries are multiples of <code>align</code>,
+   * e.g. a row length, except for the end of the last chunk.
+   *
+   * @param length  number of samples
+   * @param align   chunk boundary alignment
+   * @param chunk   loop body
+   * @throws VisADException  the first exception thrown by any chunk
+   */
+  public static void forRange(int length, int align, Chunk chunk)
+         throws VisADException {
+    forRange(length, align, length, chunk);
+  }
+
+  /**
+   * Run chunk over [0, length), splitting it across threads if the work
+   * is large enough.  This is for loops over a few coarse items, e.g.
+   * contour levels, whose total number of samples is known.
+   *
+   * @param length  number of items
+   * @param align   chunk boundary alignment
+   * @param work    number of samples processed by the whole loop,
+   *                compared to the threshold instead of length
+   * @param chunk   loop body
+   * @throws VisADException  the first exception thrown by any chunk
+   */
+  public static void forRange(int length, int align, int work,
+                              final Chunk chunk)
+         throws VisADException {
+    if (!isParallel(work)) {
+      chunk.run(0, length);
+      return;
+    }
+    int n = getParallelism();
+    if (align < 1) align = 1;
+    int units = (length + align - 1) / align;
+    if (units < n) n = units;
+    if (n < 2) {
+      chunk.run(0, length);
+      return;
+    }
+    int[] bounds = new int[n + 1];
+    for (int i=0; i<=n; i++) {
+      bounds[i] = Math.min(length, (int) (((long) units * i) / n) * align);
+    }
+    bounds[n] = length;
+
+    ExecutorService exec = getExecutor();
+    List<Future<?>> futures = new ArrayList<Future<?>>(n - 1);
+    for (int i=1; i<n; i++) {
+      final int start = bounds[i];
+      final int end = bounds[i + 1];
+      futures.add(exec.submit(new java.util.concurrent.Callable<Object>() {
+        public Object call() throws Exception {
+          inChunk.set(Boolean.TRUE);
+          try {
+            chunk.run(start, end);
+          }
+          finally {
+            inChunk.set(Boolean.FALSE);
+          }
+          return null;
+        }
+      }));
+    }
+
+    Throwable failure = null;
+    inChunk.set(Boolean.TRUE);
+    try {
+      chunk.run(bounds[0], bounds[1]);
+    }
+    catch (Throwable t) {
+      failure = t;
+    }
+    finally {
+      inChunk.set(Boolean.FALSE);
+    }
+    for (int i=0; i<futures.size(); i++) {
+      try {
+        futures.get(i).get();
+      }
+      catch (ExecutionException e) {
+        if (failure == null) failure = e.getCause();
+      }
+      catch (InterruptedException e) {
+        if (failure == null) failure = e;
+      }
+    }
+    if (failure instanceof VisADException) {
+      throw (VisADException) failure;
+    }
+    if (failure instanceof RuntimeException) {
+      throw (RuntimeException) failure;
+    }
+    if (failure instanceof Error) {
+      throw (Error) failure;
+    }
+    if (failure != null) {
+      throw new VisADException("Parallel: " + failure);
+    }
+  }
+
+}